@@ -0,0 +1,139 @@
+package romeo.benchmarks;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import romeo.battle.IBattleCalculator.IProgressor;
+import romeo.battle.IBattleMetrics;
+import romeo.battle.impl.BattleCalculatorImpl;
+import romeo.fleet.model.FleetContents;
+
+/**
+ * End to end benchmarks of {@link BattleCalculatorImpl} for each of the
+ * {@link BattleScenario}s, with and without sampling, on one worker thread and
+ * on several. The single threaded figures measure the simulation itself, and
+ * comparing them with the multi threaded ones gives the speedup (which of
+ * course depends on the number of cores on the machine). A progressor that
+ * records the progress the way the ui does is set, so the cost of reporting
+ * progress is included, as is starting the worker pool for each simulation.
+ * <ul>
+ * <li>battles reports the throughput in battles per second</li>
+ * <li>rounds reports the average time per round of combat in nanoseconds (as
+ * the secondary result for the rounds counter)</li>
+ * </ul>
+ * Run with the gc profiler (the default for the benchmarks profile) to get the
+ * allocation per battle.
+ * <p>
+ * There is no case comparing against the old simulation loop, which slept for
+ * a second every 6475 battles to let the ui breathe. That code is gone, so it
+ * cant be run alongside. The time it cost is fixed: about 154 microseconds per
+ * battle, or 15 seconds per 100k battles. Compare that with the time per
+ * battle reported here (the reciprocal of battles).
+ */
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = "-Dorg.apache.commons.logging.Log=org.apache.commons.logging.impl.NoOpLog")
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class BattleCalculatorBenchmark {
+  /**
+   * Number of battles simulated by each invocation of the benchmark methods
+   */
+  public static final int BATTLES = 200;
+
+  @Param
+  public BattleScenario scenario;
+
+  @Param({ "false", "true" })
+  public boolean sampling;
+
+  @Param({ "1", "4" })
+  public int threads;
+
+  private DefaultXFactors _compiler;
+  private Map<String, FleetContents> _fleets;
+
+  /**
+   * Progressor that just records the progress, as the ui progressor does
+   */
+  private static class RecordingProgressor implements IProgressor {
+    private final AtomicInteger _progress = new AtomicInteger();
+
+    @Override
+    public boolean setCurrentBattle(int progress) {
+      _progress.set(progress);
+      return false;
+    }
+
+    @Override
+    public void complete(IBattleMetrics metrics) {
+    }
+  }
+
+  /**
+   * Counts the rounds fought so that the time per round can be reported
+   */
+  @State(Scope.Thread)
+  @AuxCounters(AuxCounters.Type.OPERATIONS)
+  public static class RoundCounter {
+    public long rounds;
+
+    @Setup(Level.Iteration)
+    public void clear() {
+      rounds = 0;
+    }
+  }
+
+  @Setup
+  public void setup() {
+    _compiler = new DefaultXFactors();
+    _fleets = scenario.createFleets(_compiler);
+  }
+
+  private IBattleMetrics simulate() {
+    BattleCalculatorImpl calculator = new BattleCalculatorImpl(_compiler);
+    for(Map.Entry<String, FleetContents> entry : _fleets.entrySet()) {
+      calculator.setFleet(entry.getKey(), entry.getValue());
+    }
+    calculator.setDefender(scenario.getDefender());
+    calculator.setNumberOfBattles(BATTLES);
+    calculator.setThreads(threads);
+    calculator.setProgressor(new RecordingProgressor());
+    calculator.setSampling(sampling);
+    calculator.setSeed(42L);
+    calculator.run();
+    return calculator.getBattleMetrics();
+  }
+
+  @Benchmark
+  @BenchmarkMode(Mode.Throughput)
+  @OutputTimeUnit(TimeUnit.SECONDS)
+  @OperationsPerInvocation(BATTLES)
+  public IBattleMetrics battles() {
+    return simulate();
+  }
+
+  @Benchmark
+  @BenchmarkMode(Mode.AverageTime)
+  @OutputTimeUnit(TimeUnit.NANOSECONDS)
+  public IBattleMetrics rounds(RoundCounter counter) {
+    IBattleMetrics metrics = simulate();
+    counter.rounds += Math.round(metrics.getAverageRounds() * BATTLES);
+    return metrics;
+  }
+}
@@ -0,0 +1,121 @@
+package romeo.benchmarks;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import romeo.fleet.model.FleetContents;
+import romeo.fleet.model.FleetElement;
+import romeo.units.api.IUnit;
+import romeo.units.impl.UnitImpl;
+
+/**
+ * The canonical battles used by the benchmarks. The fleets are made up of
+ * synthetic units, except that units whose acronym is linked to one of the
+ * default xFactors are given that xFactor. The first player is the defender.
+ */
+public enum BattleScenario {
+  /**
+   * Two players with a few types of unit and some tens of units each
+   */
+  SMALL {
+    @Override
+    protected void addFleets(Map<String, FleetContents> fleets, DefaultXFactors xFactors) {
+      fleets.put("Earth", fleet(element("Viper", 2, 40, 60, 20), element("Raider", 1, 50, 50, 30),
+          element("Tanker", 0, 0, 0, 5)));
+      fleets.put("Mars", fleet(element("Lancer", 3, 35, 45, 25), element("Warden", 1, 60, 70, 10)));
+    }
+  },
+
+  /**
+   * Two players each with a single stack of 200,000 units
+   */
+  HUGE_STACK {
+    @Override
+    protected void addFleets(Map<String, FleetContents> fleets, DefaultXFactors xFactors) {
+      fleets.put("Earth", fleet(element("Swarmer", 2, 30, 40, 200000)));
+      fleets.put("Mars", fleet(element("Locust", 3, 25, 35, 200000)));
+    }
+  },
+
+  /**
+   * Six players with mixed fleets of a few hundred units, all fighting each
+   * other
+   */
+  FREE_FOR_ALL {
+    @Override
+    protected void addFleets(Map<String, FleetContents> fleets, DefaultXFactors xFactors) {
+      String[] players = new String[] { "Earth", "Mars", "Venus", "Jupiter", "Saturn", "Mercury" };
+      for(int p = 0; p < players.length; p++) {
+        FleetContents fleet = new FleetContents();
+        for(int t = 0; t < 8; t++) {
+          fleet.addElement(element(players[p] + t, 1 + (t % 3), 25 + 5 * t, 30 + 4 * p, 20 + 10 * t));
+        }
+        fleets.put(players[p], fleet);
+      }
+    }
+  },
+
+  /**
+   * Two players whose fleets are mostly units with the default xFactors, so
+   * that expressions are evaluated for most elements every round
+   */
+  XFACTOR_HEAVY {
+    @Override
+    protected void addFleets(Map<String, FleetContents> fleets, DefaultXFactors xFactors) {
+      FleetContents earth = fleet(xfElement(xFactors, "NZF", 2, 40, 50, 350), xfElement(xFactors, "HEW10", 1, 60, 0, 40),
+          xfElement(xFactors, "SOG", 3, 45, 60, 60), xfElement(xFactors, "TAPS", 2, 35, 40, 80),
+          xfElement(xFactors, "BRBv3", 1, 20, 20, 10), xfElement(xFactors, "Bio", 0, 0, 10, 20));
+      earth.setFlag("ORN", true);
+      fleets.put("Earth", earth);
+      fleets.put("Mars", fleet(xfElement(xFactors, "OMG", 4, 50, 40, 60), xfElement(xFactors, "HEW9", 1, 55, 0, 50),
+          xfElement(xFactors, "X5", 1, 40, 35, 80), xfElement(xFactors, "X6", 2, 40, 40, 60),
+          xfElement(xFactors, "X7", 2, 45, 45, 40), xfElement(xFactors, "X8", 3, 45, 50, 20),
+          xfElement(xFactors, "HC4", 1, 30, 60, 5), xfElement(xFactors, "A90", 0, 0, 10, 20)));
+    }
+  };
+
+  /**
+   * Returns a new set of fleets for this scenario keyed by player name
+   * @param xFactors
+   * @return fleets
+   */
+  public Map<String, FleetContents> createFleets(DefaultXFactors xFactors) {
+    Map<String, FleetContents> fleets = new LinkedHashMap<>();
+    addFleets(fleets, xFactors);
+    return fleets;
+  }
+
+  /**
+   * Returns the name of the defending player
+   * @return defender
+   */
+  public String getDefender() {
+    return "Earth";
+  }
+
+  protected abstract void addFleets(Map<String, FleetContents> fleets, DefaultXFactors xFactors);
+
+  private static FleetContents fleet(FleetElement... elements) {
+    FleetContents fleet = new FleetContents();
+    for(FleetElement element : elements) {
+      fleet.addElement(element);
+    }
+    return fleet;
+  }
+
+  private static FleetElement element(String name, int attacks, int offense, int defense, int quantity) {
+    IUnit unit = new UnitImpl(null, name, attacks, offense, defense, 0, 100, 0, 100, 30, 25, 200, name, null);
+    return new FleetElement(unit, quantity, 0);
+  }
+
+  private static FleetElement xfElement(DefaultXFactors xFactors,
+                                        String acronym,
+                                        int attacks,
+                                        int offense,
+                                        int defense,
+                                        int quantity) {
+    IUnit unit = new UnitImpl(null, acronym, attacks, offense, defense, 10, 100, 0, 100, 30, 25, 200, acronym,
+        xFactors.getLinkedXFactor(acronym));
+    return new FleetElement(unit, quantity, 1); //nb: not from the base so that the IS_NOT_BASE xFactors trigger
+  }
+}
@@ -0,0 +1,103 @@
+package romeo.benchmarks;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import romeo.importdata.impl.XFactorFileReader;
+import romeo.xfactors.api.CompiledXFactor;
+import romeo.xfactors.api.IExpression;
+import romeo.xfactors.api.IXFactor;
+import romeo.xfactors.api.IXFactorCompiler;
+import romeo.xfactors.api.NoSuchXFactorException;
+import romeo.xfactors.api.XFactorId;
+import romeo.xfactors.compiled.ExpressionCompiler;
+import romeo.xfactors.impl.ExpressionParserImpl;
+import romeo.xfactors.impl.XFactorCompilerImpl;
+import romeo.xfactors.impl.XFactorImpl;
+
+/**
+ * An {@link IXFactorCompiler} for the benchmarks that serves the xFactors in
+ * defaultXFactors.xml without needing a database. Each xFactor is given its
+ * name as its id. The acronyms of the units linked to each xFactor are
+ * recorded so that benchmark units can be given the right xFactor.
+ */
+public class DefaultXFactors implements IXFactorCompiler {
+  private ExpressionParserImpl _parser = new ExpressionParserImpl();
+  private ExpressionCompiler _expressionCompiler;
+  private Map<XFactorId, CompiledXFactor> _compiled = new HashMap<>();
+  private Map<String, XFactorId> _linkedUnits = new HashMap<>();
+
+  /**
+   * Constructor. Reads and compiles the default xFactors from the classpath.
+   */
+  public DefaultXFactors() {
+    this(true);
+  }
+
+  /**
+   * Constructor. Reads the default xFactors from the classpath and compiles
+   * them, leaving the parsed expressions to be interpreted if compileExpressions
+   * is false.
+   * @param compileExpressions
+   */
+  public DefaultXFactors(boolean compileExpressions) {
+    _expressionCompiler = compileExpressions ? new ExpressionCompiler() : null;
+    List<Map<String, Object>> xFactors = new XFactorFileReader().read();
+    for(Map<String, Object> xfMap : xFactors) {
+      String name = (String) xfMap.get("name");
+      XFactorId id = new XFactorId(name);
+      IXFactor xFactor = new XFactorImpl(id, name, (String) xfMap.get("description"), (String) xfMap.get("trigger"),
+          (String) xfMap.get("attacks"), (String) xfMap.get("offense"), (String) xfMap.get("defense"),
+          (String) xfMap.get("pd"), (String) xfMap.get("remove"));
+      _compiled.put(id, compile(xFactor));
+      @SuppressWarnings("unchecked")
+      List<String> linkedUnits = (List<String>) xfMap.get("link");
+      for(String acronym : linkedUnits) {
+        _linkedUnits.put(acronym.toUpperCase(Locale.US), id);
+      }
+    }
+  }
+
+  /**
+   * Returns the id of the default xFactor linked to the unit with the
+   * specified acronym, or null if there isnt one
+   * @param acronym
+   * @return id
+   */
+  public XFactorId getLinkedXFactor(String acronym) {
+    return _linkedUnits.get(acronym.toUpperCase(Locale.US));
+  }
+
+  /**
+   * Compiles the xFactor in the same way as {@link XFactorCompilerImpl}
+   * @param xFactor
+   * @return compiled
+   */
+  @Override
+  public CompiledXFactor compile(IXFactor xFactor) {
+    CompiledXFactor compiled = new CompiledXFactor();
+    compiled.setTrigger(parse(xFactor.getTrigger()));
+    compiled.setXfAttacks(parse(xFactor.getXfAttacks()));
+    compiled.setXfOffense(parse(xFactor.getXfOffense()));
+    compiled.setXfDefense(parse(xFactor.getXfDefense()));
+    compiled.setXfPd(parse(xFactor.getXfPd()));
+    compiled.setXfRemove(parse(xFactor.getXfRemove()));
+    return compiled;
+  }
+
+  private IExpression parse(String xfel) {
+    IExpression expression = _parser.getExpression(xfel);
+    return _expressionCompiler == null ? expression : _expressionCompiler.compile(expression);
+  }
+
+  @Override
+  public CompiledXFactor getXFactor(XFactorId id) {
+    CompiledXFactor compiled = _compiled.get(id);
+    if(compiled == null) {
+      throw new NoSuchXFactorException(id.toString());
+    }
+    return compiled;
+  }
+}
@@ -0,0 +1,98 @@
+package romeo.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import romeo.battle.impl.BattleFleet;
+import romeo.battle.impl.RoundContext;
+import romeo.fleet.model.FleetContents;
+import romeo.fleet.model.FleetElement;
+import romeo.units.impl.UnitImpl;
+import romeo.utils.StreamRandom;
+
+/**
+ * Benchmarks of the individual combat operations: rolling the hits for an
+ * element and firing a burst of hits at a fleet. The fleet fired on has 20
+ * elements with 500,000 combat units between them and the casualties are
+ * cleared before each burst, so every burst has the same sized target.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class FleetCombatBenchmark {
+  /**
+   * The number of attack rolls made, or the number of hits fired at the fleet
+   */
+  @Param({ "100", "10000", "1000000" })
+  public int rolls;
+
+  @Param({ "false", "true" })
+  public boolean sampling;
+
+  private Random _random;
+  private FleetContents _target;
+  private BattleFleet _battleTarget;
+
+  @Setup
+  public void setup() {
+    _random = new StreamRandom(42);
+    _target = new FleetContents();
+    for(int t = 0; t < 20; t++) {
+      String name = "Target" + t;
+      _target.addElement(new FleetElement(
+          new UnitImpl(null, name, 1, 30, 5 * t, 0, 100, 0, 100, 30, 25, 200, name, null), 5000 * (t + 1) - 2500, 0));
+    }
+    RoundContext context = new RoundContext(new String[] { "Earth" });
+    context.setFleet("Earth", _target);
+    _target.evaluateXFactors(context);
+    _battleTarget = new BattleFleet("Earth", _target);
+    _battleTarget.setSampling(sampling);
+  }
+
+  /**
+   * Rolls (or samples) the hits for an element at 35% offense
+   * @return hits
+   */
+  @Benchmark
+  public int rollHits() {
+    return sampling ? FleetElement.sampleHits(rolls, 35, _random) : FleetElement.rollHits(rolls, 35, _random);
+  }
+
+  /**
+   * Fires on the {@link FleetContents} (always rolls, as the fleet contents has
+   * no sampling mode)
+   * @return kills
+   */
+  @Benchmark
+  public int fleetContentsFireOnFleet() {
+    for(FleetElement element : _target) {
+      element.setCasualties(0);
+    }
+    return _target.fireOnFleet(rolls, _random);
+  }
+
+  /**
+   * Fires on the {@link BattleFleet} working copy used by the battle workers
+   * @return kills
+   */
+  @Benchmark
+  public int battleFleetFireOnFleet() {
+    _battleTarget.reset();
+    return _battleTarget.fireOnFleet(rolls, _random);
+  }
+}
@@ -0,0 +1,99 @@
+package romeo.benchmarks;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import romeo.battle.impl.RoundContext;
+import romeo.fleet.model.FleetContents;
+import romeo.utils.StreamRandom;
+import romeo.xfactors.api.IExpression;
+import romeo.xfactors.compiled.ExpressionCompiler;
+import romeo.xfactors.impl.ExpressionParserImpl;
+
+/**
+ * Benchmarks the evaluation of the default xFactors, using the fleets of the
+ * {@link BattleScenario#XFACTOR_HEAVY} scenario. Several of the default
+ * xFactors depend on the round so it is a parameter, as is whether the parsed
+ * expressions are compiled or left to be interpreted.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class XFactorBenchmark {
+  /**
+   * The xfel text of the NZF attacks expression, one of the more complex of
+   * the default expressions
+   */
+  public static final String NZF_ATTACKS = "ARITHMETIC(CONTEXT(ATTACKS),ADD,ARITHMETIC(ADJUST(ARITHMETIC("
+      + "QUANTITY(THIS_PLAYER,NZF,null),DIVIDE,VALUE(100.0)),FLOOR),MIN,VALUE(5)))";
+
+  @Param({ "1", "5" })
+  public int round;
+
+  @Param({ "false", "true" })
+  public boolean compiled;
+
+  private RoundContext _context;
+  private FleetContents[] _fleets;
+  private ExpressionParserImpl _parser;
+  private ExpressionCompiler _expressionCompiler;
+
+  @Setup
+  public void setup() {
+    DefaultXFactors compiler = new DefaultXFactors(compiled);
+    Map<String, FleetContents> fleets = BattleScenario.XFACTOR_HEAVY.createFleets(compiler);
+    _context = new RoundContext(fleets.keySet().toArray(new String[fleets.size()]));
+    _context.setRandom(new StreamRandom(42));
+    _context.setDefendingPlayer(BattleScenario.XFACTOR_HEAVY.getDefender());
+    _fleets = new FleetContents[fleets.size()];
+    int i = 0;
+    for(Map.Entry<String, FleetContents> entry : fleets.entrySet()) {
+      FleetContents fleet = entry.getValue();
+      fleet.normalise(false);
+      fleet.compileXFactors(compiler);
+      _context.setFleet(entry.getKey(), fleet);
+      _fleets[i++] = fleet;
+    }
+    _context.setRound(round);
+    _parser = new ExpressionParserImpl();
+    _expressionCompiler = new ExpressionCompiler();
+  }
+
+  /**
+   * Evaluates the xFactors of every element of both fleets, as is done at the
+   * start of each round of a battle
+   * @return context
+   */
+  @Benchmark
+  public RoundContext evaluateXFactors() {
+    for(FleetContents fleet : _fleets) {
+      fleet.evaluateXFactors(_context);
+    }
+    return _context;
+  }
+
+  /**
+   * Parses the xfel of an expression
+   * @return expression
+   */
+  @Benchmark
+  public IExpression parseExpression() {
+    IExpression expression = _parser.getExpression(NZF_ATTACKS);
+    return compiled ? _expressionCompiler.compile(expression) : expression;
+  }
+}
@@ -204,9 +204,10 @@ public class Romeo {
    * Runs the IServiceInitialisers defined in the initialisers property (which
    * we set using spring DI). The initialisers are responsible for examining the
    * state of the database and initialising it or updating schemas inherited
-   * from older versions of Romeo.
+   * from older versions of Romeo. (This is public so that the batch simulator
+   * can prepare the database without starting the UI).
    */
-  protected void runInitialisers() {
+  public void runInitialisers() {
     Log log = LogFactory.getLog(this.getClass());
     if(_dataSource == null) {
       throw new NullPointerException("dataSource not set");
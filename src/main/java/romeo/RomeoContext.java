@@ -22,6 +22,7 @@ import romeo.utils.Convert;
 import romeo.utils.events.IEventHub;
 import romeo.worlds.api.IWorldService;
 import romeo.worlds.ui.WorldForm;
+import romeo.xfactors.api.IXFactorCompiler;
 import romeo.xfactors.api.IXFactorService;
 
 /**
@@ -85,6 +86,10 @@ public class RomeoContext {
     return _context.getBean("xFactorService", IXFactorService.class);
   }
 
+  public IXFactorCompiler getXFactorCompiler() {
+    return _context.getBean("xFactorCompiler", IXFactorCompiler.class);
+  }
+
   public IEventHub getEventHub(String name) {
     IEventHub hub = _context.getBean(name, IEventHub.class);
     return hub;
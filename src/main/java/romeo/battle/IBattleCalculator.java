@@ -17,7 +17,14 @@ public interface IBattleCalculator extends Runnable {
   public static interface IProgressor {
     /**
      * Calculator calls this to set the current battle number and checks the
-     * result to see if the cancel button was clicked.
+     * result to see if the cancel button was clicked. The progress passed is
+     * the total number of battles completed so far. It is called every hundred
+     * battles or so rather than for every battle. When the battles are split
+     * between several worker threads this may be called from any of them, and
+     * calls may be concurrent, so a call may pass a lower total than one that
+     * has already returned. It should return quickly and must not wait on the
+     * event dispatch thread. (Record the progress and have the ui poll it
+     * instead.)
      * @param progress
      */
     public boolean setCurrentBattle(int progress);
@@ -44,6 +51,14 @@ public interface IBattleCalculator extends Runnable {
    */
   public IBattleMetrics getBattleMetrics();
 
+  /**
+   * Returns interim results for the battles simulated so far while the
+   * simulation is running, or null if there are none. This must not block
+   * while the simulation runs.
+   * @return snapshot
+   */
+  public IBattleMetrics getSnapshot();
+
   /**
    * Set the input fleet for the named player. At least two fleets must be set
    * before combat can be simulated.
@@ -60,7 +75,8 @@ public interface IBattleCalculator extends Runnable {
   public void setDefender(String player);
 
   /**
-   * Sets the number of battles to be simulated
+   * Sets the number of battles to be simulated. If a target precision is set
+   * this is the most that will be simulated.
    * @paran n the number of battles to run
    */
   public void setNumberOfBattles(int n);
@@ -70,6 +86,85 @@ public interface IBattleCalculator extends Runnable {
    */
   public int getNumberOfBattles();
 
+  /**
+   * Sets the precision at which the simulation may stop before all the battles
+   * have been run. Once at least the minimum number of battles have been run,
+   * the calculator stops as soon as the 95% confidence intervals on the win
+   * percentage and average surviving firepower of every player are within this
+   * much of the estimates (see {@link IBattleMetrics#getPrecision()}). For
+   * example 0.01 stops when the win percentages are known to within a
+   * percentage point. Zero (the default) runs all the battles.
+   * @param precision
+   */
+  public void setTargetPrecision(double precision);
+
+  /**
+   * Returns the precision at which the simulation may stop, or zero if all the
+   * battles are to be run
+   * @return precision
+   */
+  public double getTargetPrecision();
+
+  /**
+   * Sets the least number of battles to run before stopping at the target
+   * precision. (With too few battles the confidence intervals arent reliable).
+   * @param battles
+   */
+  public void setMinimumBattles(int battles);
+
+  /**
+   * Returns the least number of battles to run before stopping at the target
+   * precision
+   * @return battles
+   */
+  public int getMinimumBattles();
+
+  /**
+   * Sets the number of worker threads the battles will be split between. Each
+   * worker simulates its share of the battles independently and the results
+   * are combined once they are all done.
+   * @param threads
+   *          the number of workers (at least 1)
+   */
+  public void setThreads(int threads);
+
+  /**
+   * Returns the number of worker threads the battles will be split between
+   */
+  public int getThreads();
+
+  /**
+   * Sets the seed for the random numbers used in the simulation. Each battle
+   * draws its random numbers from its own stream derived from the seed and the
+   * battle number, so running the same fleets with the same seed reproduces
+   * every battle exactly, however many threads are used. If the seed is null a
+   * new one is chosen each time the simulation is run.
+   * @param seed
+   *          the seed or null
+   */
+  public void setSeed(Long seed);
+
+  /**
+   * Returns the seed that was set, or null if none was
+   * @return seed
+   */
+  public Long getSeed();
+
+  /**
+   * Set whether the outcome of the attack and defence rolls of each element is
+   * to be sampled from the appropriate probability distributions rather than
+   * rolled die by die. The results are statistically the same but sampling is
+   * much faster for large stacks of units. Defaults to false.
+   * @param sampling
+   */
+  public void setSampling(boolean sampling);
+
+  /**
+   * Returns true if rolls are to be sampled rather than rolled die by die
+   * @return sampling
+   */
+  public boolean isSampling();
+
   /**
    * Sets the reference to the progressor object. The UI code provides the
    * implementation object. Its 'cancelled' property will be checked from time
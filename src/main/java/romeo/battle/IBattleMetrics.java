@@ -22,12 +22,27 @@ public interface IBattleMetrics {
    */
   public String getNotes();
 
+  /**
+   * Returns the seed for the random numbers used by the simulation. Running
+   * the same fleets again with this seed will reproduce the results.
+   * @return seed
+   */
+  public long getSeed();
+
   /**
    * Returns the number of battles that were simulated
    * @return battles
    */
   public int getNumberOfBattles();
 
+  /**
+   * Returns false if these are interim results taken while the simulation was
+   * still running, in which case the number of battles is those that had been
+   * simulated so far.
+   * @return complete
+   */
+  public boolean isComplete();
+
   /**
    * Returns the average number of rounds taken to complete a battle
    * @return averageRounds
@@ -36,8 +51,7 @@ public interface IBattleMetrics {
 
   /**
    * Returns a list containing the length each battle lasted in rounds. The list
-   * is sorted from shortest to longest. The list returned is a copy and may be
-   * safely modified without affecting the metrics object.
+   * is sorted from shortest to longest. The list returned is read only.
    * @return battleLengths
    */
   public List<? extends Number> getBattleLengths();
@@ -172,4 +186,30 @@ public interface IBattleMetrics {
    */
   public List<? extends Number> getPopulationDamage(String player, boolean adjusted);
 
+  /**
+   * Returns the half width of the 95% confidence interval on the fraction of
+   * battles won by the specified player (as returned by getWinsPercentage()).
+   * @param player
+   * @return halfWidth
+   */
+  public double getWinsHalfWidth(String player);
+
+  /**
+   * Returns the half width of the 95% confidence interval on the (unadjusted)
+   * average surviving firepower of the specified player.
+   * @param player
+   * @return halfWidth
+   */
+  public double getSurvivingFirepowerHalfWidth(String player);
+
+  /**
+   * Returns the precision achieved by the simulation. This is the widest of the
+   * half widths of the 95% confidence intervals on the win percentages of the
+   * players and on their average surviving firepowers, with the latter taken as
+   * a fraction of the players initial firepower. When the calculator is asked
+   * to stop at a target precision this is the figure compared with the target.
+   * @return precision
+   */
+  public double getPrecision();
+
 }
@@ -0,0 +1,210 @@
+package romeo.battle.batch;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+import romeo.battle.IBattleMetrics;
+import romeo.utils.Convert;
+
+/**
+ * Writes the results of the scenarios run by the {@link BatchSimulator} as
+ * they complete, either as CSV with a row for each player in each scenario, or
+ * as JSON with an object for each scenario on a line of its own. Where several
+ * sweeps set quantities in a scenario the CSV sweep columns list them all,
+ * separated by semicolons, and the JSON has an object for each. The output is
+ * flushed after each scenario so that it can be followed while a long batch
+ * runs.
+ */
+public class BatchResultWriter {
+  public static final int FORMAT_CSV = 0;
+  public static final int FORMAT_JSON = 1;
+
+  /**
+   * Names of the CSV columns
+   */
+  protected static final List<String> CSV_COLUMNS = Arrays.asList("scenario", "sweepPlayer", "sweepUnit",
+      "sweepQuantity", "player", "defender", "battles", "winRate", "winRateHalfWidth", "tieRate", "initialFirepower",
+      "survivingFirepower", "survivingFirepowerHalfWidth", "averageRounds", "precision", "seed", "time");
+
+  private final Writer _out;
+  private final int _format;
+
+  /**
+   * Constructor
+   * @param out
+   *          where the results are written
+   * @param format
+   *          FORMAT_CSV or FORMAT_JSON
+   */
+  public BatchResultWriter(Writer out, int format) {
+    _out = Objects.requireNonNull(out, "out may not be null");
+    if(format != FORMAT_CSV && format != FORMAT_JSON) {
+      throw new IllegalArgumentException("Bad format:" + format);
+    }
+    _format = format;
+  }
+
+  /**
+   * Writes the CSV header row. Does nothing for JSON.
+   * @throws IOException
+   */
+  public synchronized void writeHeader() throws IOException {
+    if(_format == FORMAT_CSV) {
+      _out.write(Convert.toCsv(CSV_COLUMNS));
+      _out.write('\n');
+      _out.flush();
+    }
+  }
+
+  /**
+   * Writes the results of a scenario
+   * @param scenario
+   * @param metrics
+   * @throws IOException
+   */
+  public synchronized void write(BatchScenario scenario, IBattleMetrics metrics) throws IOException {
+    if(_format == FORMAT_CSV) {
+      writeCsv(scenario, metrics);
+    } else {
+      writeJson(scenario, metrics);
+    }
+    _out.flush();
+  }
+
+  private void writeCsv(BatchScenario scenario, IBattleMetrics metrics) throws IOException {
+    StringBuilder sweepPlayers = new StringBuilder();
+    StringBuilder sweepUnits = new StringBuilder();
+    StringBuilder sweepQuantities = new StringBuilder();
+    for(BatchScenario.QuantitySetting setting : scenario.getQuantities()) {
+      String separator = sweepPlayers.length() == 0 ? "" : ";";
+      sweepPlayers.append(separator).append(setting.getPlayer());
+      sweepUnits.append(separator).append(setting.getAcronym());
+      sweepQuantities.append(separator).append(setting.getQuantity());
+    }
+    for(String player : metrics.getPlayers()) {
+      List<String> row = new ArrayList<String>(CSV_COLUMNS.size());
+      row.add(scenario.getName());
+      row.add(sweepPlayers.toString());
+      row.add(sweepUnits.toString());
+      row.add(sweepQuantities.toString());
+      row.add(player);
+      row.add(Boolean.toString(player.equals(metrics.getDefendingPlayer())));
+      row.add(Integer.toString(metrics.getNumberOfBattles()));
+      row.add(Double.toString(metrics.getWinsPercentage(player)));
+      row.add(Double.toString(metrics.getWinsHalfWidth(player)));
+      row.add(Double.toString(metrics.getWinsPercentage(null)));
+      row.add(Double.toString(getInitialFirepower(metrics, player)));
+      row.add(Double.toString(metrics.getAverageSurvivingFirepower(player, false)));
+      row.add(Double.toString(metrics.getSurvivingFirepowerHalfWidth(player)));
+      row.add(Double.toString(metrics.getAverageRounds()));
+      row.add(Double.toString(metrics.getPrecision()));
+      row.add(Long.toString(metrics.getSeed()));
+      row.add(Long.toString(metrics.getTime()));
+      _out.write(Convert.toCsv(row));
+      _out.write('\n');
+    }
+  }
+
+  private void writeJson(BatchScenario scenario, IBattleMetrics metrics) throws IOException {
+    StringBuilder json = new StringBuilder();
+    json.append("{\"scenario\":").append(quote(scenario.getName()));
+    List<BatchScenario.QuantitySetting> quantities = scenario.getQuantities();
+    if(!quantities.isEmpty()) {
+      json.append(",\"sweep\":[");
+      for(int i = 0; i < quantities.size(); i++) {
+        BatchScenario.QuantitySetting setting = quantities.get(i);
+        json.append(i == 0 ? "{" : ",{").append("\"player\":").append(setting.getPlayer());
+        json.append(",\"unit\":").append(quote(setting.getAcronym()));
+        json.append(",\"quantity\":").append(setting.getQuantity()).append('}');
+      }
+      json.append(']');
+    }
+    json.append(",\"battles\":").append(metrics.getNumberOfBattles());
+    json.append(",\"tieRate\":").append(number(metrics.getWinsPercentage(null)));
+    json.append(",\"averageRounds\":").append(number(metrics.getAverageRounds()));
+    json.append(",\"precision\":").append(number(metrics.getPrecision()));
+    json.append(",\"seed\":").append(metrics.getSeed());
+    json.append(",\"time\":").append(metrics.getTime());
+    json.append(",\"players\":[");
+    String[] players = metrics.getPlayers();
+    for(int p = 0; p < players.length; p++) {
+      String player = players[p];
+      if(p > 0) {
+        json.append(',');
+      }
+      json.append("{\"name\":").append(quote(player));
+      json.append(",\"defender\":").append(player.equals(metrics.getDefendingPlayer()));
+      json.append(",\"winRate\":").append(number(metrics.getWinsPercentage(player)));
+      json.append(",\"winRateHalfWidth\":").append(number(metrics.getWinsHalfWidth(player)));
+      json.append(",\"initialFirepower\":").append(number(getInitialFirepower(metrics, player)));
+      json.append(",\"survivingFirepower\":").append(number(metrics.getAverageSurvivingFirepower(player, false)));
+      json.append(",\"survivingFirepowerHalfWidth\":").append(number(metrics.getSurvivingFirepowerHalfWidth(player)));
+      json.append('}');
+    }
+    json.append("]}\n");
+    _out.write(json.toString());
+  }
+
+  /**
+   * Returns the firepower of a player before the battle, with xFactors applied
+   * @param metrics
+   * @param player
+   * @return firepower
+   */
+  private static double getInitialFirepower(IBattleMetrics metrics, String player) {
+    List<? extends Number> firepower = metrics.getFirepower(player, false);
+    return firepower.isEmpty() ? 0 : firepower.get(0).doubleValue();
+  }
+
+  /**
+   * Returns a double as a JSON number. JSON has no NaN or infinity, so those
+   * are written as null.
+   * @param value
+   * @return number
+   */
+  protected static String number(double value) {
+    return Double.isNaN(value) || Double.isInfinite(value) ? "null" : Double.toString(value);
+  }
+
+  /**
+   * Returns a string as a quoted JSON string
+   * @param value
+   * @return quoted
+   */
+  protected static String quote(String value) {
+    StringBuilder quoted = new StringBuilder(value.length() + 2);
+    quoted.append('"');
+    for(int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      switch (c){
+        case '"':
+          quoted.append("\\\"");
+          break;
+        case '\\':
+          quoted.append("\\\\");
+          break;
+        case '\n':
+          quoted.append("\\n");
+          break;
+        case '\r':
+          quoted.append("\\r");
+          break;
+        case '\t':
+          quoted.append("\\t");
+          break;
+        default:
+          if(c < ' ') {
+            quoted.append(String.format("\\u%04x", (int) c));
+          } else {
+            quoted.append(c);
+          }
+      }
+    }
+    quoted.append('"');
+    return quoted.toString();
+  }
+}
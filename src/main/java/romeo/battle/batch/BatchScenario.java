@@ -0,0 +1,144 @@
+package romeo.battle.batch;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * A scenario to be simulated by the {@link BatchSimulator}. This is the text
+ * of each players fleet, in the same form as is entered in the battle
+ * simulator (the first fleet being the defenders), and optionally quantities of
+ * units in the fleets to set when the fleets are parsed, which is how sweeps
+ * vary the scenario. (Each sweep applied to a scenario adds a quantity.)
+ */
+public class BatchScenario {
+  /**
+   * The quantity of a unit to set in one of the fleets of a scenario
+   */
+  public static class QuantitySetting {
+    private final int _player;
+    private final String _acronym;
+    private final int _quantity;
+
+    /**
+     * Constructor
+     * @param player
+     *          index of the fleet to set the quantity in
+     * @param acronym
+     *          acronym of the unit whose quantity is set
+     * @param quantity
+     */
+    public QuantitySetting(int player, String acronym, int quantity) {
+      _player = player;
+      _acronym = Objects.requireNonNull(acronym, "acronym may not be null");
+      _quantity = quantity;
+    }
+
+    public int getPlayer() {
+      return _player;
+    }
+
+    public String getAcronym() {
+      return _acronym;
+    }
+
+    public int getQuantity() {
+      return _quantity;
+    }
+
+    @Override
+    public String toString() {
+      return _player + ":" + _quantity + "*" + _acronym;
+    }
+  }
+
+  private final String _name;
+  private final List<String> _fleets;
+  private final List<QuantitySetting> _quantities;
+
+  /**
+   * Constructor
+   * @param name
+   *          used to identify the scenario in the results
+   * @param fleets
+   *          text of each fleet, defender first. There must be at least two.
+   */
+  public BatchScenario(String name, List<String> fleets) {
+    this(name, fleets, Collections.<QuantitySetting> emptyList());
+  }
+
+  /**
+   * Constructor for a scenario with quantities of units set
+   * @param name
+   * @param fleets
+   * @param quantities
+   *          the quantities to set, in the order they are applied
+   */
+  protected BatchScenario(String name, List<String> fleets, List<QuantitySetting> quantities) {
+    _name = Objects.requireNonNull(name, "name may not be null");
+    Objects.requireNonNull(fleets, "fleets may not be null");
+    Objects.requireNonNull(quantities, "quantities may not be null");
+    if(fleets.size() < 2) {
+      throw new IllegalArgumentException("Scenario " + name + " has only " + fleets.size() + " fleets");
+    }
+    for(QuantitySetting setting : quantities) {
+      if(setting.getPlayer() < 0 || setting.getPlayer() >= fleets.size()) {
+        throw new IllegalArgumentException("Scenario " + name + " has no fleet " + setting.getPlayer());
+      }
+    }
+    _fleets = Collections.unmodifiableList(new ArrayList<String>(fleets));
+    _quantities = Collections.unmodifiableList(new ArrayList<QuantitySetting>(quantities));
+  }
+
+  /**
+   * Returns a copy of this scenario with the quantity of a unit in one of the
+   * fleets set as well as any quantities already set. If the quantity of the
+   * same unit in the same fleet was already set it is replaced.
+   * @param player
+   *          index of the fleet
+   * @param acronym
+   *          acronym of the unit
+   * @param quantity
+   * @return scenario
+   */
+  public BatchScenario withQuantity(int player, String acronym, int quantity) {
+    Objects.requireNonNull(acronym, "acronym may not be null");
+    List<QuantitySetting> quantities = new ArrayList<QuantitySetting>(_quantities.size() + 1);
+    for(QuantitySetting setting : _quantities) {
+      if(setting.getPlayer() != player || !setting.getAcronym().equalsIgnoreCase(acronym)) {
+        quantities.add(setting);
+      }
+    }
+    quantities.add(new QuantitySetting(player, acronym, quantity));
+    return new BatchScenario(_name, _fleets, quantities);
+  }
+
+  public String getName() {
+    return _name;
+  }
+
+  public List<String> getFleets() {
+    return _fleets;
+  }
+
+  /**
+   * Returns the quantities of units set in the fleets
+   * @return quantities, empty if none are set
+   */
+  public List<QuantitySetting> getQuantities() {
+    return _quantities;
+  }
+
+  @Override
+  public String toString() {
+    if(_quantities.isEmpty()) {
+      return _name;
+    }
+    StringBuilder text = new StringBuilder(_name).append(" [");
+    for(int i = 0; i < _quantities.size(); i++) {
+      text.append(i == 0 ? "" : ", ").append(_quantities.get(i));
+    }
+    return text.append(']').toString();
+  }
+}
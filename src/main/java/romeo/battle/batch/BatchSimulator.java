@@ -0,0 +1,418 @@
+package romeo.battle.batch;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.sql.DataSource;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.context.support.ClassPathXmlApplicationContext;
+
+import romeo.Romeo;
+import romeo.RomeoContext;
+import romeo.battle.IBattleMetrics;
+import romeo.battle.impl.BattleCalculatorImpl;
+import romeo.battle.ui.BattleFleetsManager;
+import romeo.fleet.model.FleetContents;
+import romeo.fleet.model.FleetElement;
+import romeo.fleet.model.FleetParser;
+import romeo.scenarios.api.IScenario;
+import romeo.scenarios.api.IScenarioService;
+import romeo.units.api.IUnit;
+import romeo.units.api.IUnitService;
+import romeo.utils.BackgroundThreadFactory;
+import romeo.utils.DbUtils;
+import romeo.xfactors.api.IXFactorCompiler;
+
+/**
+ * Runs battle simulations without any user interface, so that large numbers of
+ * scenarios can be simulated on a machine with no display. The units, xFactors
+ * and saved scenarios are read from Romeos database (which is created from the
+ * unit csv and default xFactors on first use just as when Romeo is started
+ * normally). Scenarios are run several at a time and their results written as
+ * CSV or JSON as each completes.
+ *
+ * Run from Romeos folder with the jar, its libraries and the resources folder
+ * on the classpath. See main() for the arguments.
+ */
+public class BatchSimulator {
+  protected static final String USAGE = "Usage: BatchSimulator [options]\n"
+      + " -scenario NAME   run a saved scenario (may be repeated, * runs all of them)\n"
+      + " -fleet TEXT      a fleet for an ad hoc scenario, defender first (repeat for each fleet)\n"
+      + " -sweep P:ACR:FROM:TO:STEP  run each scenario with FROM to TO of the unit ACR in fleet P\n"
+      + "                  (0 is the defender, 1 the attacker) in increments of STEP. May be\n"
+      + "                  repeated to run every combination of the quantities.\n"
+      + " -battles N       battles to simulate per scenario (default 1000)\n"
+      + " -precision PCT   stop each scenario early once the results are this precise\n"
+      + " -seed N          seed for the random numbers, for repeatable results\n"
+      + " -parallel N      number of scenarios to run at once (default is the number of processors)\n"
+      + " -format csv|json output format (default csv)\n"
+      + " -out FILE        file to write the results to (default is the console)\n";
+
+  private IUnitService _unitService;
+  private IScenarioService _scenarioService;
+  private IXFactorCompiler _compiler;
+  private int _numberOfBattles = 1000;
+  private double _targetPrecision = 0;
+  private Long _seed;
+  private int _parallel = Runtime.getRuntime().availableProcessors();
+
+  /**
+   * Constructor
+   * @param unitService
+   *          used to look up the units in the fleets
+   * @param scenarioService
+   *          used to load the saved scenarios. May be null if they arent used.
+   * @param compiler
+   *          xFactor compiler
+   */
+  public BatchSimulator(IUnitService unitService, IScenarioService scenarioService, IXFactorCompiler compiler) {
+    _unitService = Objects.requireNonNull(unitService, "unitService may not be null");
+    _scenarioService = scenarioService;
+    _compiler = Objects.requireNonNull(compiler, "compiler may not be null");
+  }
+
+  /**
+   * Returns the saved scenario with the given name (ignoring case), or all of
+   * the saved scenarios if the name is *
+   * @param name
+   * @return scenarios
+   * @throws IllegalArgumentException
+   *           if there is no such scenario
+   */
+  public List<BatchScenario> getSavedScenarios(String name) {
+    Objects.requireNonNull(_scenarioService, "scenarioService not set");
+    List<BatchScenario> scenarios = new ArrayList<BatchScenario>();
+    for(IScenario scenario : _scenarioService.getScenarios()) {
+      if("*".equals(name) || scenario.getName().equalsIgnoreCase(name)) {
+        scenarios.add(new BatchScenario(scenario.getName(), scenario.getFleets()));
+      }
+    }
+    if(scenarios.isEmpty()) {
+      throw new IllegalArgumentException("No saved scenario named " + name);
+    }
+    return scenarios;
+  }
+
+  /**
+   * Runs the scenarios, writing the results of each as it completes. A
+   * scenario that fails is logged and counted, and the rest are still run.
+   * @param scenarios
+   * @param writer
+   * @return the number of scenarios that failed
+   * @throws IOException
+   *           if the header cant be written
+   */
+  public int run(List<BatchScenario> scenarios, final BatchResultWriter writer) throws IOException {
+    final Log log = LogFactory.getLog(this.getClass());
+    writer.writeHeader();
+    final AtomicInteger failures = new AtomicInteger();
+    int workers = Math.max(1, Math.min(_parallel, scenarios.size()));
+    //Any processors not needed to run scenarios side by side go to the simulations themselves
+    int threads = Math.max(1, Runtime.getRuntime().availableProcessors() / workers);
+    ExecutorService pool = Executors.newFixedThreadPool(workers, new BackgroundThreadFactory("BatchSimulator"));
+    try {
+      List<Future<?>> futures = new ArrayList<Future<?>>(scenarios.size());
+      for(final BatchScenario scenario : scenarios) {
+        final BattleCalculatorImpl calculator;
+        try { //Fleets are parsed here as the unit service isnt used from the pool
+          calculator = createCalculator(scenario, threads);
+        } catch(RuntimeException e) {
+          log.error("Invalid scenario " + scenario, e);
+          failures.incrementAndGet();
+          continue;
+        }
+        futures.add(pool.submit(new Runnable() {
+          @Override
+          public void run() {
+            try {
+              IBattleMetrics metrics = calculator.simulate();
+              writer.write(scenario, metrics);
+              log.info("Completed scenario " + scenario);
+            } catch(Exception e) {
+              log.error("Error simulating scenario " + scenario, e);
+              failures.incrementAndGet();
+            }
+          }
+        }));
+      }
+      for(Future<?> future : futures) {
+        future.get();
+      }
+    } catch(InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException("Interrupted while running scenarios", e);
+    } catch(ExecutionException e) {
+      throw new RuntimeException("Error running scenarios", e.getCause());
+    } finally {
+      pool.shutdownNow();
+    }
+    return failures.get();
+  }
+
+  /**
+   * Creates a calculator set up to simulate a scenario
+   * @param scenario
+   * @param threads
+   *          number of threads for the calculator to use
+   * @return calculator
+   */
+  protected BattleCalculatorImpl createCalculator(BatchScenario scenario, int threads) {
+    BattleCalculatorImpl calculator = new BattleCalculatorImpl(_compiler);
+    FleetParser parser = new FleetParser(_unitService);
+    List<String> fleets = scenario.getFleets();
+    for(int p = 0; p < fleets.size(); p++) {
+      FleetContents fleet = parser.parseFleet(fleets.get(p));
+      for(BatchScenario.QuantitySetting setting : scenario.getQuantities()) {
+        if(setting.getPlayer() == p) {
+          fleet = setQuantity(fleet, setting.getAcronym(), setting.getQuantity());
+        }
+      }
+      calculator.setFleet(BattleFleetsManager.presetFleetName(p), fleet);
+    }
+    calculator.setDefender(BattleFleetsManager.presetFleetName(0));
+    calculator.setNumberOfBattles(_numberOfBattles);
+    calculator.setTargetPrecision(_targetPrecision);
+    calculator.setSeed(_seed);
+    calculator.setThreads(threads);
+    return calculator;
+  }
+
+  /**
+   * Returns a copy of the fleet in which the quantity of the unit from source 0
+   * is that specified
+   * @param fleet
+   * @param acronym
+   * @param quantity
+   * @return fleet
+   */
+  protected FleetContents setQuantity(FleetContents fleet, String acronym, int quantity) {
+    IUnit unit = _unitService.getByAcronym(acronym);
+    if(unit == null) {
+      throw new IllegalArgumentException("Bad acronym:" + acronym);
+    }
+    FleetContents swept = new FleetContents();
+    for(Iterator<String> i = fleet.getFlags(); i.hasNext();) {
+      swept.setFlag(i.next(), true);
+    }
+    for(FleetElement element : fleet) {
+      boolean isSwept = element.getSource() == 0 && acronym.equalsIgnoreCase(element.getUnit().getAcronym());
+      if(!isSwept) {
+        swept.addElement(element);
+      }
+    }
+    if(quantity > 0) {
+      swept.addElement(new FleetElement(unit, quantity, 0));
+    }
+    return swept;
+  }
+
+  public int getNumberOfBattles() {
+    return _numberOfBattles;
+  }
+
+  public void setNumberOfBattles(int battles) {
+    if(battles < 1) {
+      throw new IllegalArgumentException("Number of battles must be at least 1");
+    }
+    _numberOfBattles = battles;
+  }
+
+  /**
+   * Returns the precision at which each simulation stops, as a fraction
+   * @return precision or 0 to always run all the battles
+   */
+  public double getTargetPrecision() {
+    return _targetPrecision;
+  }
+
+  public void setTargetPrecision(double precision) {
+    if(precision < 0) {
+      throw new IllegalArgumentException("Target precision may not be negative");
+    }
+    _targetPrecision = precision;
+  }
+
+  public Long getSeed() {
+    return _seed;
+  }
+
+  public void setSeed(Long seed) {
+    _seed = seed;
+  }
+
+  /**
+   * Returns the number of scenarios run at the same time
+   * @return parallel
+   */
+  public int getParallel() {
+    return _parallel;
+  }
+
+  public void setParallel(int parallel) {
+    if(parallel < 1) {
+      throw new IllegalArgumentException("Must run at least 1 scenario at a time");
+    }
+    _parallel = parallel;
+  }
+
+  /**
+   * Starts Romeo without its user interface and runs the scenarios specified
+   * in the arguments (see {@link #USAGE}). Exits with 0 if all the scenarios
+   * were simulated, 1 if any failed and 2 if the arguments were invalid.
+   * @param args
+   */
+  public static void main(String[] args) {
+    System.setProperty("java.awt.headless", "true");
+    List<String> scenarioNames = new ArrayList<String>();
+    List<String> fleets = new ArrayList<String>();
+    List<BatchSweep> sweeps = new ArrayList<BatchSweep>();
+    int battles = 1000;
+    double precision = 0;
+    Long seed = null;
+    int parallel = Runtime.getRuntime().availableProcessors();
+    int format = BatchResultWriter.FORMAT_CSV;
+    String out = null;
+    try {
+      for(int i = 0; i < args.length; i++) {
+        String option = args[i];
+        if(i + 1 == args.length) {
+          throw new IllegalArgumentException("Missing value for " + option);
+        }
+        String value = args[++i];
+        switch (option){
+          case "-scenario":
+            scenarioNames.add(value);
+            break;
+          case "-fleet":
+            fleets.add(value);
+            break;
+          case "-sweep":
+            sweeps.add(BatchSweep.parse(value));
+            break;
+          case "-battles":
+            battles = Integer.parseInt(value);
+            break;
+          case "-precision":
+            precision = Double.parseDouble(value) / 100;
+            break;
+          case "-seed":
+            seed = Long.valueOf(value);
+            break;
+          case "-parallel":
+            parallel = Integer.parseInt(value);
+            break;
+          case "-format":
+            if("json".equals(value.toLowerCase(Locale.US))) {
+              format = BatchResultWriter.FORMAT_JSON;
+            } else if("csv".equals(value.toLowerCase(Locale.US))) {
+              format = BatchResultWriter.FORMAT_CSV;
+            } else {
+              throw new IllegalArgumentException("Unknown format " + value);
+            }
+            break;
+          case "-out":
+            out = value;
+            break;
+          default:
+            throw new IllegalArgumentException("Unknown option " + option);
+        }
+      }
+      if(scenarioNames.isEmpty() && fleets.isEmpty()) {
+        throw new IllegalArgumentException("No scenarios specified");
+      }
+      if(!fleets.isEmpty() && fleets.size() < 2) {
+        throw new IllegalArgumentException("An ad hoc scenario needs at least two fleets");
+      }
+    } catch(IllegalArgumentException e) { //nb: includes NumberFormatException
+      System.err.println(e.getMessage());
+      System.err.println(USAGE);
+      System.exit(2);
+    }
+
+    Log log = LogFactory.getLog(BatchSimulator.class);
+    int failures = 1;
+    ClassPathXmlApplicationContext context = new ClassPathXmlApplicationContext("context.xml");
+    try {
+      Romeo.CONTEXT = new RomeoContext(context);
+      context.getBean("romeo", Romeo.class).runInitialisers();
+
+      BatchSimulator simulator = new BatchSimulator(Romeo.CONTEXT.getUnitService(),
+          Romeo.CONTEXT.getScenarioService(), Romeo.CONTEXT.getXFactorCompiler());
+      simulator.setNumberOfBattles(battles);
+      simulator.setTargetPrecision(precision);
+      simulator.setSeed(seed);
+      simulator.setParallel(parallel);
+
+      List<BatchScenario> scenarios = new ArrayList<BatchScenario>();
+      for(String name : scenarioNames) {
+        scenarios.addAll(simulator.getSavedScenarios(name));
+      }
+      if(!fleets.isEmpty()) {
+        scenarios.add(new BatchScenario("fleets", fleets));
+      }
+      for(BatchSweep sweep : sweeps) {
+        List<BatchScenario> swept = new ArrayList<BatchScenario>();
+        for(BatchScenario scenario : scenarios) {
+          swept.addAll(sweep.expand(scenario));
+        }
+        scenarios = swept;
+      }
+
+      Writer writer = out == null ? new OutputStreamWriter(System.out, StandardCharsets.UTF_8)
+          : new OutputStreamWriter(new FileOutputStream(out), StandardCharsets.UTF_8);
+      try {
+        log.info("Running " + scenarios.size() + " scenarios");
+        failures = simulator.run(scenarios, new BatchResultWriter(writer, format));
+        log.info("Completed " + scenarios.size() + " scenarios with " + failures + " failures");
+      } finally {
+        writer.flush();
+        if(out != null) {
+          writer.close();
+        }
+      }
+    } catch(Exception e) {
+      log.error("Batch simulation failed", e);
+      System.err.println("Batch simulation failed: " + e.getMessage());
+    } finally {
+      shutdownDatabase(Romeo.CONTEXT == null ? null : Romeo.CONTEXT.getDataSource());
+      context.close();
+    }
+    System.exit(failures == 0 ? 0 : 1);
+  }
+
+  /**
+   * Issues a SHUTDOWN to the database so that it is left in a clean state
+   * @param dataSource
+   */
+  private static void shutdownDatabase(DataSource dataSource) {
+    if(dataSource == null) {
+      return;
+    }
+    try {
+      Connection connection = dataSource.getConnection();
+      try {
+        DbUtils.writeQuery("SHUTDOWN", null, connection);
+      } finally {
+        connection.close();
+      }
+    } catch(Exception e) {
+      LogFactory.getLog(BatchSimulator.class).error("Error shutting down database", e);
+    }
+  }
+}
@@ -0,0 +1,86 @@
+package romeo.battle.batch;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Varies the quantity of a unit in one of the fleets of a scenario over a
+ * range of values, giving a scenario for each.
+ */
+public class BatchSweep {
+  private final int _player;
+  private final String _acronym;
+  private final int _from;
+  private final int _to;
+  private final int _step;
+
+  /**
+   * Constructor
+   * @param player
+   *          index of the fleet (0 is the defender, 1 the attacker)
+   * @param acronym
+   *          acronym of the unit whose quantity is varied
+   * @param from
+   *          first quantity
+   * @param to
+   *          last quantity (inclusive)
+   * @param step
+   *          increment
+   */
+  public BatchSweep(int player, String acronym, int from, int to, int step) {
+    _acronym = Objects.requireNonNull(acronym, "acronym may not be null");
+    if(player < 0) {
+      throw new IllegalArgumentException("Bad player index:" + player);
+    }
+    if(from < 0 || to < from) {
+      throw new IllegalArgumentException("Bad range:" + from + " to " + to);
+    }
+    if(step < 1) {
+      throw new IllegalArgumentException("Bad step:" + step);
+    }
+    _player = player;
+    _from = from;
+    _to = to;
+    _step = step;
+  }
+
+  /**
+   * Parses a sweep in the form player:acronym:from:to:step (eg: "1:VIP:100:10000:100")
+   * @param text
+   * @return sweep
+   */
+  public static BatchSweep parse(String text) {
+    String[] parts = text.split(":");
+    if(parts.length != 5) {
+      throw new IllegalArgumentException("Expected player:acronym:from:to:step but found " + text);
+    }
+    try {
+      return new BatchSweep(Integer.parseInt(parts[0].trim()), parts[1].trim(), Integer.parseInt(parts[2].trim()),
+          Integer.parseInt(parts[3].trim()), Integer.parseInt(parts[4].trim()));
+    } catch(NumberFormatException e) {
+      throw new IllegalArgumentException("Bad number in sweep " + text, e);
+    }
+  }
+
+  /**
+   * Returns a scenario for each quantity in the sweep
+   * @param scenario
+   * @return scenarios
+   */
+  public List<BatchScenario> expand(BatchScenario scenario) {
+    List<BatchScenario> scenarios = new ArrayList<BatchScenario>();
+    for(long quantity = _from; quantity <= _to; quantity += _step) {
+      scenarios.add(scenario.withQuantity(_player, _acronym, (int) quantity));
+    }
+    return scenarios;
+  }
+
+  public int getPlayer() {
+    return _player;
+  }
+
+  public String getAcronym() {
+    return _acronym;
+  }
+}
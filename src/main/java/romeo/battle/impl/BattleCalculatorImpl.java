@@ -1,5 +1,7 @@
 package romeo.battle.impl;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
@@ -7,6 +9,12 @@ import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -16,15 +24,46 @@ import romeo.battle.IBattleMetrics;
 import romeo.fleet.model.FleetContents;
 import romeo.fleet.model.FleetElement;
 import romeo.ui.ErrorDialog;
+import romeo.utils.BackgroundThreadFactory;
 import romeo.utils.Convert;
+import romeo.utils.StreamRandom;
 import romeo.xfactors.api.IXFactorCompiler;
 
 /**
  * This is the implementation of the battle simulator logic.
  */
 public class BattleCalculatorImpl implements IBattleCalculator {
-  protected Random _rnd = new Random();
+  /**
+   * Least number of battles run before stopping at the target precision,
+   * unless set otherwise
+   */
+  public static final int DEFAULT_MINIMUM_BATTLES = 500;
+
+  /**
+   * When stopping at a target precision, the precision is checked after each
+   * batch of battles. Batches are a quarter of the battles run so far, so we
+   * overshoot by at most that much, but no smaller than this.
+   */
+  protected static final int MINIMUM_BATCH = 100;
+
+  /**
+   * Number of battles each worker simulates between publishing a copy of its
+   * partial results for {@link #getSnapshot()}
+   */
+  protected static final int SNAPSHOT_INTERVAL = 2000;
+
+  /**
+   * Number of battles each worker simulates between adding them to the count
+   * of battles completed and passing that to the progressor
+   */
+  protected static final int PROGRESS_INTERVAL = 100;
+
   protected int _numberOfBattles = 1;
+  protected double _targetPrecision = 0;
+  protected int _minimumBattles = DEFAULT_MINIMUM_BATTLES;
+  protected int _threads = Runtime.getRuntime().availableProcessors();
+  protected Long _seed;
+  protected boolean _sampling = false;
   protected IProgressor _progressor;
   protected IXFactorCompiler _compiler;
   protected int _maxNotes = 5;
@@ -32,6 +71,11 @@ public class BattleCalculatorImpl implements IBattleCalculator {
   protected Map<String, FleetContents> _fleets = new LinkedHashMap<String, FleetContents>();
   protected String _defenderName;
   protected BattleMetricsImpl _metrics;
+  protected BattleResultCache _resultCache;
+
+  private final AtomicInteger _battlesCompleted = new AtomicInteger();
+  private volatile boolean _cancelled;
+  private volatile SnapshotState _snapshotState; //null when not simulating
 
   /**
    * Constructor. Note that defender and fleets will need to be set prior to
@@ -70,8 +114,9 @@ public class BattleCalculatorImpl implements IBattleCalculator {
    * Run the battle. This method expects that the progressor and fleet objects
    * have already been set. The progressor will be updated as the battle runs,
    * and its isCancelled method checked each battle. If the simulation
-   * encounters an exception it will be written to the log and an
-   * {@link ErrorDialog} will be shown.
+   * encounters an exception it will be written to the log, the progressor
+   * completed with no results (as if cancelled) and an {@link ErrorDialog}
+   * shown.
    */
   @Override
   public synchronized void run() {
@@ -80,13 +125,28 @@ public class BattleCalculatorImpl implements IBattleCalculator {
       runInternal(log);
     } catch(Exception e) {
       log.error("Error running simulation", e);
+      _metrics = null;
+      if(_progressor != null) { //so the ui stops tracking the progress of the simulation
+        _progressor.complete(null);
+      }
       ErrorDialog dialog = new ErrorDialog("Simulation error", e, false);
       dialog.show();
     }
   }
 
   /**
-   * Runs the battle. Called by run().
+   * Runs the battle without any user interface, for use by the batch
+   * simulator. Unlike run(), errors are thrown to the caller rather than being
+   * shown in a dialog.
+   * @return metrics, or null if the simulation was cancelled
+   */
+  public synchronized IBattleMetrics simulate() {
+    runInternal(LogFactory.getLog(this.getClass()));
+    return _metrics;
+  }
+
+  /**
+   * Runs the battle. Called by run() and simulate().
    * @param log
    */
   private void runInternal(Log log) {
@@ -108,6 +168,23 @@ public class BattleCalculatorImpl implements IBattleCalculator {
       throw new IllegalStateException(msg);
     }
 
+    //If we have already simulated this scenario with the same seed then just show those results. A run without a
+    //seed should give fresh results so it doesnt use the cache.
+    String cacheKey = null;
+    if(_resultCache != null && _seed != null) {
+      cacheKey = _resultCache.createKey(_fleets, _defenderName, getNumberOfBattles(), _seed.longValue(), _sampling,
+          _targetPrecision, _minimumBattles, _compiler);
+      IBattleMetrics cached = _resultCache.get(cacheKey);
+      if(cached != null) {
+        log.info("Using cached results for this scenario");
+        _metrics = (BattleMetricsImpl) cached; //only we put results in the cache
+        if(_progressor != null) {
+          _progressor.complete(_metrics);
+        }
+        return;
+      }
+    }
+
     long startTime = System.currentTimeMillis();
 
     //Initialise the array of player names based on the fleets that were set
@@ -126,9 +203,11 @@ public class BattleCalculatorImpl implements IBattleCalculator {
     //Create the battle metrics object that will be used to return the battle results
     //and statistics to the battle report panel
     int numberOfBattles = getNumberOfBattles();
+    long seed = _seed == null ? new StreamRandom().nextLong() : _seed.longValue();
     _metrics = new BattleMetricsImpl(playerNames, _defenderName, numberOfBattles);
+    _metrics.setSeed(seed);
     RoundContext context = new RoundContext(playerNames);
-    int sumOfRounds = 0; //Counter to tally total rounds simulated for later determing avg per battle
+    context.setRandom(new StreamRandom(seed, -1)); //pre-battle evaluation gets a stream of its own
     StringBuffer notes = new StringBuffer(); //Buffer used to write details of first few battles etc
 
     Map<String, FleetContents> masters = new HashMap<String, FleetContents>(); //Stores master copies of input fleets
@@ -145,14 +224,12 @@ public class BattleCalculatorImpl implements IBattleCalculator {
       master.normalise(false);
       String xErr = master.compileXFactors(_compiler);
       notes.append(xErr);
-      masters.put(player, new FleetContents(master));
 
       //Set the master into the round context for pre battle XF calculation purposes
       context.setFleet(player, master);
     }
 
     context.setDefendingPlayer(_defenderName);
-    _metrics.setRoundAchievement(0, numberOfBattles); //All battles achieve at least round 0
 
     //We need to pre-evaluate xFactors now to get the correct round zero FP
     for(int p = playerNames.length - 1; p >= 0; p--) {
@@ -163,6 +240,9 @@ public class BattleCalculatorImpl implements IBattleCalculator {
       //Couldnt do this in the above loop as need to set up all the fleets first
       fleet.evaluateXFactors(context);
 
+      //The workers take their copies of the fleets from the evaluated masters
+      masters.put(player, new FleetContents(fleet));
+
       //Now we can record the real initial firepower values taking xfactors into account
       double initialFp = fleet.getFirepower();
       _metrics.setFirepower(player, false, 0, initialFp);
@@ -174,284 +254,517 @@ public class BattleCalculatorImpl implements IBattleCalculator {
       _metrics.setPopulationDamage(player, true, 0, initialPd);
     }
 
-    //Create some counters that will be used later inside the nested rounds loop
-    PlayerIndexedValues hitsOnPlayer = new PlayerIndexedValues(playerNames);
-    PlayerIndexedValues lostByPlayer = new PlayerIndexedValues(playerNames);
-    PlayerIndexedValues removedFromPlayer = new PlayerIndexedValues(playerNames);
-    //
-
     ///////////////////////////////
     //Now to commence the fighting!
-    boolean cancelled = false;
-    for(int battle = 0; battle < numberOfBattles; battle++) {
-      if(battle % 6475 == 0) { //Every so many battles give other threads a breath
-        try {
-          Thread.sleep(1000);
-        } catch(Exception e) {
-          /* ignore */}
-      }
+    //The battles are run in batches. Without a target precision there is just the one batch,
+    //otherwise we check after each batch whether the results are precise enough to stop.
+    //The batch sizes depend only on the number of battles run so far (not the threads) so
+    //that a given seed always gives the same results.
+    int workerCount = Math.min(getThreads(), numberOfBattles);
+    ExecutorService pool = workerCount == 1 ? null
+        : Executors.newFixedThreadPool(workerCount, new BackgroundThreadFactory("BattleWorker"));
+    _battlesCompleted.set(0);
+    _cancelled = false;
+    int battlesRun = 0;
+    int sumOfRounds = 0; //Counter to tally total rounds simulated for later determing avg per battle
+    try {
+      while(battlesRun < numberOfBattles) {
+        int batch = getBatchSize(battlesRun, numberOfBattles);
+        BattleWorker[] workers = createWorkers(playerNames, masters, seed, battlesRun, battlesRun + batch);
+        SnapshotState snapshotState = new SnapshotState(_metrics.copy(), battlesRun, startTime, workers.length);
+        for(int w = 0; w < workers.length; w++) {
+          workers[w].setSnapshotSlot(snapshotState, w);
+        }
+        _snapshotState = snapshotState;
+        runWorkers(pool, workers);
+
+        if(_cancelled) { //User cancelled the simulation so there are no results to report
+          _metrics = null;
+          if(_progressor != null) {
+            _progressor.complete(null);
+          }
+          return;
+        }
 
-      if(battle < _maxNotes) {
-        notes.append("\nCommencing battle " + battle + "\n");
+        //Combine the partial results of the workers
+        for(int w = 0; w < workers.length; w++) {
+          _metrics.merge(workers[w].getMetrics());
+          sumOfRounds += workers[w].getSumOfRounds();
+          notes.append(workers[w].getNotes());
+        }
+        battlesRun += batch;
+        _metrics.setNumberOfBattles(battlesRun);
+
+        if(_targetPrecision > 0 && battlesRun >= _minimumBattles && battlesRun < numberOfBattles) {
+          _metrics.calculatePrecision();
+          if(_metrics.getPrecision() <= _targetPrecision) {
+            notes.append("\nTarget precision reached after " + battlesRun + " battles\n");
+            break;
+          }
+        }
+      }
+    } finally {
+      _snapshotState = null;
+      if(pool != null) {
+        pool.shutdown();
       }
+    }
+    _metrics.setRoundAchievement(0, battlesRun); //All battles achieve at least round 0
 
-      if(cancelled) { //Check once each battle to see if user cancelled the simulation
-        _metrics = null;
-        _progressor.complete(null);
+    //convert fp lists to averages
+    //nb: we iterate from round 1 as already averaged stuff for pre-battle round zero
+
+    _metrics.calculateAverages(sumOfRounds);
+
+    String notesString = notes.toString();
+    log.info(notesString); //20080213
+    _metrics.setNotes(notesString);
+
+    _metrics.setTime(System.currentTimeMillis() - startTime);
+
+    if(cacheKey != null) {
+      _resultCache.put(cacheKey, _metrics);
+    }
+
+    //And use the progressor to finish up if we have one
+    if(_progressor != null) {
+      _progressor.complete(_metrics);
+    }
+  }
+
+  /**
+   * Returns interim results for the battles simulated so far while the
+   * simulation is running, or null if it isnt running or no results are
+   * available yet. These are put together from the totals of the batches
+   * already completed and the copies of their partial results that the workers
+   * publish every {@link #SNAPSHOT_INTERVAL} battles, so the simulation doesnt
+   * wait for this and it may be called from any thread (eg: the ui polling for
+   * progress). The results are marked as not complete.
+   * @return snapshot
+   */
+  @Override
+  public IBattleMetrics getSnapshot() {
+    SnapshotState state = _snapshotState;
+    return state == null ? null : state.createSnapshot();
+  }
+
+  /**
+   * Returns the number of battles to run in the next batch. This is all of them
+   * unless there is a target precision, in which case the first batch is the
+   * minimum number of battles and later ones are a quarter of the battles run
+   * so far (but at least {@link #MINIMUM_BATCH}).
+   * @param battlesRun
+   *          battles run so far
+   * @param numberOfBattles
+   *          most battles to run
+   * @return batch
+   */
+  protected int getBatchSize(int battlesRun, int numberOfBattles) {
+    int remaining = numberOfBattles - battlesRun;
+    if(_targetPrecision <= 0) {
+      return remaining;
+    }
+    int batch = battlesRun == 0 ? _minimumBattles : Math.max(battlesRun / 4, MINIMUM_BATCH);
+    return Math.max(1, Math.min(batch, remaining));
+  }
+
+  /**
+   * Splits a range of battles into contiguous ranges, one for each worker. Each
+   * worker has its own round context, working fleets and partial metrics so
+   * they dont need to share anything but the (read only) masters. The first
+   * worker gets the first range, so notes for the first few battles still come
+   * out in order when they are appended.
+   * @param playerNames
+   * @param masters
+   * @param seed
+   * @param firstBattle
+   * @param endBattle
+   * @return workers
+   */
+  private BattleWorker[] createWorkers(String[] playerNames,
+                                       Map<String, FleetContents> masters,
+                                       long seed,
+                                       int firstBattle,
+                                       int endBattle) {
+    int battles = endBattle - firstBattle;
+    int workerCount = Math.min(getThreads(), battles);
+    BattleWorker[] workers = new BattleWorker[workerCount];
+    int start = firstBattle;
+    for(int w = 0; w < workerCount; w++) {
+      int end = firstBattle + (int) ((long) battles * (w + 1) / workerCount);
+      workers[w] = new BattleWorker(playerNames, masters, seed, start, end);
+      start = end;
+    }
+    return workers;
+  }
+
+  /**
+   * Executes the workers. If there is only one it is run in the calling thread,
+   * otherwise they are each given a thread from the pool created for this
+   * simulation. Returns once all the workers have finished. If a worker fails
+   * the others are cancelled and the failure is rethrown. Interrupting the
+   * calling thread cancels the simulation.
+   * @param pool
+   *          pool to run the workers in, may be null if there is only one
+   * @param workers
+   */
+  private void runWorkers(ExecutorService pool, BattleWorker[] workers) {
+    if(workers.length == 1) {
+      workers[0].run();
+      return;
+    }
+    List<Future<?>> futures = new ArrayList<Future<?>>(workers.length);
+    for(BattleWorker worker : workers) {
+      futures.add(pool.submit(worker));
+    }
+    for(Future<?> future : futures) {
+      try {
+        future.get();
+      } catch(ExecutionException e) {
+        _cancelled = true; //stop the other workers
+        Throwable cause = e.getCause();
+        throw cause instanceof RuntimeException ? (RuntimeException) cause : new RuntimeException(cause);
+      } catch(InterruptedException e) { //treat as a cancellation, the workers will see the flag and stop
+        _cancelled = true;
+        Thread.currentThread().interrupt();
         return;
       }
+    }
+  }
 
-      //Makes working copies of the fleet masters
-      for(int p = playerNames.length - 1; p >= 0; p--) {
-        String player = playerNames[p];
-        FleetContents master = (FleetContents) masters.get(player);
-        FleetContents workingCopy = new FleetContents(master);
-        //fleets.put(player, workingCopy);
-        context.setFleet(player, workingCopy);
-        //Note that we cant evaluate xfactors here as we need to copy all the fleets first
-
-        //Reset the defender fleet reference to the appropriate working copy for this battle
-        //if( defenderName.equals(player) ) context.setDefender(workingCopy);
-      }
+  /**
+   * Called by the workers every {@link #PROGRESS_INTERVAL} battles (and when
+   * they finish) to add the battles they have completed to the count and update
+   * the progressor with the total so far. If the progressor reports that the
+   * user cancelled, the workers are signalled to stop. No lock is held, so
+   * the progressor may be called by several workers at once.
+   * @param battles
+   *          number of battles completed since the worker last called this
+   */
+  private void battlesCompleted(int battles) {
+    int total = _battlesCompleted.addAndGet(battles);
+    IProgressor progressor = _progressor;
+    if(progressor != null && progressor.setCurrentBattle(total)) {
+      _cancelled = true;
+    }
+  }
 
-      context.setDefendingPlayer(_defenderName);
+  /**
+   * Simulates a contiguous range of the battles. Each worker has its own
+   * {@link RoundContext}, working {@link BattleFleet}s and a partial
+   * {@link BattleMetricsImpl} into which the results of its battles are
+   * accumulated. Once all the workers are done the calculator merges the partial
+   * metrics. Before each battle the workers random number generator is reset to
+   * the stream for that battle, so a battle plays out the same whichever worker
+   * runs it.
+   */
+  protected class BattleWorker implements Runnable {
+    private final String[] _playerNames;
+    private final Map<String, FleetContents> _masters;
+    private final int _firstBattle;
+    private final int _endBattle;
+    private final BattleMetricsImpl _workerMetrics;
+    private final StringBuffer _notes = new StringBuffer();
+    private final long _seed;
+    private int _sumOfRounds = 0;
+    private SnapshotState _snapshotState;
+    private int _snapshotSlot;
+
+    /**
+     * Constructor
+     * @param playerNames
+     * @param masters
+     *          master copies of the fleets keyed by player. These are not modified.
+     * @param seed
+     *          seed for the random number streams of the battles
+     * @param firstBattle
+     *          index of the first battle to simulate
+     * @param endBattle
+     *          index of the battle after the last one to simulate
+     */
+    public BattleWorker(String[] playerNames,
+                        Map<String, FleetContents> masters,
+                        long seed,
+                        int firstBattle,
+                        int endBattle) {
+      _playerNames = playerNames;
+      _masters = masters;
+      _seed = seed;
+      _firstBattle = firstBattle;
+      _endBattle = endBattle;
+      _workerMetrics = new BattleMetricsImpl(playerNames, _defenderName, endBattle - firstBattle);
+    }
 
-      //Evaluate the X-Factors for use in round 1, note however that we are
-      //still in round 0 (pre-battle)
-      int round = 1;
-      context.setRound(round);
-      int activeFleets = 0;
-      for(int p = playerNames.length - 1; p >= 0; p--) {
-        String player = playerNames[p];
-        FleetContents fleet = (FleetContents) context.getFleet(player);
-        fleet.evaluateXFactors(context);
-        if(fleet.getSize(true) > 0)
-          activeFleets++;
-      }
+    public BattleMetricsImpl getMetrics() {
+      return _workerMetrics;
+    }
 
-      //Rounds loop//////////////////////
-      while(activeFleets > 1) { //Iterate rounds for a battle while there are still units on both sides
+    public int getSumOfRounds() {
+      return _sumOfRounds;
+    }
 
-        if(battle < _maxNotes) { //Record any units with active x-factors in the notes
-          for(int p = playerNames.length - 1; p >= 0; p--) { //Append notes for xfactors prior to setting current round and evaluating xfactors
-                                                               //(why this order?)
-            String player = playerNames[p];
-            FleetContents fleet = (FleetContents) context.getFleet(player);
-            appendXFList(notes, battle + "." + round + " X-Factor " + player + ": ", fleet);
-          }
-        }
+    public String getNotes() {
+      return _notes.toString();
+    }
 
-        //Now we can set correct round into the context
-        context.setRound(round);
+    /**
+     * Sets where the worker publishes copies of its partial results
+     * @param state
+     * @param slot
+     *          index of this worker in the batch
+     */
+    public void setSnapshotSlot(SnapshotState state, int slot) {
+      _snapshotState = state;
+      _snapshotSlot = slot;
+    }
 
-        //Now evaluate X-Factors with the correct round in context. This is a bit redundant 
-        //In the case of round 1. We also record the population damage values for each fleet here.
-        for(int p = playerNames.length - 1; p >= 0; p--) {
-          String player = playerNames[p];
-          FleetContents fleet = (FleetContents) context.getFleet(player);
-          fleet.evaluateXFactors(context);
-          //PD for the round is recorded BEFORE combat starts. Even if the unit dies
-          //in the round its pd will still count. Add to the total pd for each player
-          //in this round. This is added to the figures accumulated from previous battles
-          //for this round of battle, and after the simulation is complete these totals will
-          //be divided by the appropriate number of battles to get an average result.
-          _metrics.addPopulationDamage(player, false, round, fleet.getFleetPd());
-        }
+    @Override
+    public void run() {
+      String[] playerNames = _playerNames;
+      int players = playerNames.length;
+      BattleMetricsImpl metrics = _workerMetrics;
+      StringBuffer notes = _notes;
+      RoundContext context = new RoundContext(playerNames);
+      StreamRandom random = new StreamRandom(_seed);
+      context.setRandom(random);
+
+      //Create the working fleets. These are reset from the masters at the start of each
+      //battle rather than copied, so their views only need setting into the context once.
+      //The metrics accumulate survivors by unit type, so we look up the type of each element now.
+      BattleFleet[] fleets = new BattleFleet[players];
+      int[][] unitIndices = new int[players][];
+      for(int p = players - 1; p >= 0; p--) {
+        String player = playerNames[p];
+        fleets[p] = new BattleFleet(player, _masters.get(player));
+        fleets[p].setSampling(_sampling);
+        context.setFleet(player, fleets[p].getContents());
+        unitIndices[p] = metrics.getUnitIndices(fleets[p]);
+      }
+      context.setDefendingPlayer(_defenderName);
 
-        //Increment the counter of battles that reached or surpassed this round
-        _metrics.addRoundAchievement(round);
-
-        //Fleets fire 'simultaneously' and we calculate the number of well targeted shots
-        //and allocate these to opponents.
-        hitsOnPlayer.clear();
-        for(int p = playerNames.length - 1; p >= 0; p--) {
-          String player = playerNames[p];
-          FleetContents fleet = context.getFleet(player);
-          int numberOfHits = fleet.rollHits(); //get number of successful offense rolls
-          //And allocate them randomly between the opponent fleets (with the chances being
-          //proportionate to fleet sizes)
-          allocateHits(hitsOnPlayer, player, context, numberOfHits);
+      //Create some counters that will be used later inside the nested rounds loop
+      //(these are indexed by player in the same way as the fleets array)
+      int[] hitsOnPlayer = new int[players];
+      int[] lostByPlayer = new int[players];
+      int[] targetSizes = new int[players];
+      int unreportedBattles = 0; //battles completed but not yet added to the count of battles completed
+      //
+
+      for(int battle = _firstBattle; battle < _endBattle; battle++) {
+        if(battle < _maxNotes) {
+          notes.append("\nCommencing battle " + battle + "\n");
         }
 
-        // Now that allocation of hits is complete the fleets have to brave the
-        // barrages they received and roll defense rolls.
-        // Failed defense rolls see casualties being accumulated. It only takes one
-        // failed roll for a particular targetted unit to die, but it may have
-        // more hits targetting it. These are not reallocated and are thus wasted.
-        lostByPlayer.clear();
-        for(int p = playerNames.length - 1; p >= 0; p--) { //Iterate players and call fireOnPlayer() for each passing in number of hits on them
-          String player = playerNames[p];
-          int hitCount = (int) hitsOnPlayer.getValue(player);
-          FleetContents fleet = (FleetContents) context.getFleet(player);
-          int deadCount = fleet.fireOnFleet(hitCount);
-          lostByPlayer.setValue(player, deadCount);
+        //Check once each battle to see if user cancelled the simulation or our thread was interrupted
+        if(_cancelled || Thread.currentThread().isInterrupted()) {
+          _cancelled = true;
+          return;
         }
+        //nb: the ui stays responsive because the workers run below normal priority (see BackgroundThreadFactory)
 
-        //Now we remove the casualties that were accumulated
-        //(must be done _after_ firing loop completed???) why? xfactors already evaluated, defense rolls dont
-        //take any other fleet into consideration. I dont see why it couldnt be rolled into the one loop?
-        removedFromPlayer.clear();
-        for(int p = playerNames.length - 1; p >= 0; p--) {
-          String player = playerNames[p];
-          FleetContents fleet = (FleetContents) context.getFleet(player);
-          fleet.clearCasualties();
-        }
+        random.setStream(_seed, battle);
 
-        //Done the combat part. Now record post round metrics and prep for next round
-        for(int p = playerNames.length - 1; p >= 0; p--) { //Reevaluate X-Factors prior to recording post-round metrics
-          String player = playerNames[p];
-          FleetContents fleet = (FleetContents) context.getFleet(player);
-          fleet.evaluateXFactors(context);
+        //Reset the working fleets to the state of the masters
+        for(int p = players - 1; p >= 0; p--) {
+          fleets[p].reset();
         }
 
-        //The round is over
-        activeFleets = 0;
-        StringBuffer roundNotes = (battle < _maxNotes) ? new StringBuffer() : null;
-        for(int p = playerNames.length - 1; p >= 0; p--) { //Iterate fleets recording post round firepower and determining how many still active
-          String player = playerNames[p];
-          FleetContents fleet = (FleetContents) context.getFleet(player);
-          _metrics.addFirepower(player, false, round, fleet.getFirepower());
+        //Evaluate the X-Factors for use in round 1, note however that we are
+        //still in round 0 (pre-battle)
+        int round = 1;
+        context.setRound(round);
+        int activeFleets = 0;
+        for(int p = players - 1; p >= 0; p--) {
+          BattleFleet fleet = fleets[p];
+          fleet.evaluateXFactors(context);
           if(fleet.getSize(true) > 0)
             activeFleets++;
-          appendRoundNotes(roundNotes, battle, round, player, hitsOnPlayer, lostByPlayer, context.getFleets());
         }
 
-        if(roundNotes != null) { //Append any notes we made about this round to the main notes buffer
-          notes.append(roundNotes);
-          notes.append('\n');
-        }
+        //Rounds loop//////////////////////
+        while(activeFleets > 1) { //Iterate rounds for a battle while there are still units on both sides
 
-        round++;
-      } //End of iterating rounds for battle
-      //////////////////////////////////////
+          if(battle < _maxNotes) { //Record any units with active x-factors in the notes
+            for(int p = players - 1; p >= 0; p--) { //Append notes for xfactors prior to setting current round and evaluating xfactors
+                                                      //(why this order?)
+              appendXFList(notes, battle + "." + round + " X-Factor " + playerNames[p] + ": ", fleets[p].getContents());
+            }
+          }
 
-      round--; //Correct back to the last round
-      sumOfRounds += round;
-      _metrics.addBattleLength(round);
+          //Now we can set correct round into the context
+          context.setRound(round);
+
+          //Now evaluate X-Factors with the correct round in context. This is a bit redundant 
+          //In the case of round 1. We also record the population damage values for each fleet here.
+          for(int p = players - 1; p >= 0; p--) {
+            BattleFleet fleet = fleets[p];
+            fleet.evaluateXFactors(context);
+            //PD for the round is recorded BEFORE combat starts. Even if the unit dies
+            //in the round its pd will still count. Add to the total pd for each player
+            //in this round. This is added to the figures accumulated from previous battles
+            //for this round of battle, and after the simulation is complete these totals will
+            //be divided by the appropriate number of battles to get an average result.
+            metrics.addPopulationDamage(p, round, fleet.getFleetPd());
+          }
 
-      if(battle < _maxNotes)
-        notes.append("Battle " + battle + " over. Total rounds=" + round + "\n");
+          //Increment the counter of battles that reached or surpassed this round
+          metrics.addRoundAchievement(round);
+
+          //Fleets fire 'simultaneously' and we calculate the number of well targeted shots
+          //and allocate these to opponents.
+          Arrays.fill(hitsOnPlayer, 0);
+          for(int p = players - 1; p >= 0; p--) {
+            int numberOfHits = fleets[p].rollHits(random); //get number of successful offense rolls
+            //And allocate them randomly between the opponent fleets (with the chances being
+            //proportionate to fleet sizes)
+            allocateHits(hitsOnPlayer, p, fleets, targetSizes, numberOfHits, random);
+          }
 
-      //Create flag to remember if we found the winner yet. If its a tie we consider the winner found.
-      boolean foundWinnerAlready = false;
-      if(activeFleets == 0) { //The battle ended in a tie with all units eliminated from all sides
-        foundWinnerAlready = true;
-        if(battle < _maxNotes)
-          notes.append("Tied result\n");
-      }
-      //Find who winner is (if there was one) and record it. Also do some error checking
-      //This block is executed both for ties and where there is a winner (ie: always)
-      String winner = null;
-      if(activeFleets <= 1) {
-        for(int p = playerNames.length - 1; p >= 0; p--) {
-          String player = playerNames[p];
-          FleetContents fleet = (FleetContents) context.getFleet(player);
-          //Examine the number of units to determine if this fleet is the winner
-          //and to do some error checking. We do not count noncoms towards size.
-          int numberOfCombatUnits = fleet.getSize(true);
-          if(numberOfCombatUnits == 0) { //This is one of the losing fleets
-            ; //no-op (this block is here as it means using only 1 'if' for most common condition)
-          } else if(numberOfCombatUnits < 0) { //Sanity check to catch potential logic errors
-            throw new IllegalStateException("Negative combat unit count for " + player);
-          } else { //This fleet has surviving units which means that we have found the winner
-            if(foundWinnerAlready)
-              throw new IllegalStateException("alreadyFoundWinner");
-            winner = player;
-            _metrics.addWin(player);
-            if(battle < _maxNotes)
-              notes.append(player + " wins\n");
+          // Now that allocation of hits is complete the fleets have to brave the
+          // barrages they received and roll defense rolls.
+          // Failed defense rolls see casualties being accumulated. It only takes one
+          // failed roll for a particular targetted unit to die, but it may have
+          // more hits targetting it. These are not reallocated and are thus wasted.
+          for(int p = players - 1; p >= 0; p--) { //Iterate players and fire the hits on them at their fleet
+            lostByPlayer[p] = fleets[p].fireOnFleet(hitsOnPlayer[p], random);
           }
-        }
-      } else { //The battle should not be over if there are still multiple players active
-        throw new IllegalStateException("activeFleets=" + activeFleets + " after battle complete");
-      }
 
-      //Now we know the winner we can give them all the noncoms and then add to the survivor
-      //averaging tally for each player
-      FleetContents winnerFleet = winner == null ? null : context.getFleet(winner); //TODO use defender?
-      for(int p = playerNames.length - 1; p >= 0; p--) {
-        String player = playerNames[p];
-        FleetContents fleet = context.getFleet(player);
-        if(fleet != winnerFleet) { //Note that we cant add the winners survivors to the metrics until after we have iterated
-                                     //all the other players fleets and confiscated their noncom units.
-          fleet.transferNonCombatUnitsTo(winnerFleet);
-          // Record the numbers of surviving types and units after the battle
-          // for this fleet (even if the fleet lost in which case there would be zero)
-          //We call it anyway as there are internal counters and stuff that also need to update
-          _metrics.addSurvivors(player, fleet);
-        }
-      }
+          //Now we remove the casualties that were accumulated
+          //(must be done _after_ firing loop completed???) why? xfactors already evaluated, defense rolls dont
+          //take any other fleet into consideration. I dont see why it couldnt be rolled into the one loop?
+          int removed = 0;
+          for(int p = players - 1; p >= 0; p--) {
+            removed += fleets[p].clearCasualties();
+          }
+          if(removed > 0) { //xFactors that depend on quantities will need evaluating again
+            context.quantitiesChanged();
+          }
 
-      if(winner != null) { //Having confiscated opponents noncom units the winners survivors may now be added
-                             //to the metrics
-        _metrics.addSurvivors(winner, winnerFleet);
-      }
+          //Done the combat part. Now record post round metrics and prep for next round
+          //(the fleets only evaluate the xFactors whose inputs have changed)
+          for(int p = players - 1; p >= 0; p--) { //Reevaluate X-Factors prior to recording post-round metrics
+            fleets[p].evaluateXFactors(context);
+          }
 
-      if(_progressor != null) { //Update the battle number in the progressor for the UI
-        cancelled = _progressor.setCurrentBattle(battle);
-      }
-    } //End of iterating battles
-    /////////////////////////////
+          //The round is over
+          activeFleets = 0;
+          StringBuffer roundNotes = (battle < _maxNotes) ? new StringBuffer() : null;
+          for(int p = players - 1; p >= 0; p--) { //Iterate fleets recording post round firepower and determining how many still active
+            BattleFleet fleet = fleets[p];
+            metrics.addFirepower(p, round, fleet.getFirepower());
+            if(fleet.getSize(true) > 0)
+              activeFleets++;
+            appendRoundNotes(roundNotes, battle, round, fleet, hitsOnPlayer[p], lostByPlayer[p]);
+          }
 
-    //convert fp lists to averages
-    //nb: we iterate from round 1 as already averaged stuff for pre-battle round zero
+          if(roundNotes != null) { //Append any notes we made about this round to the main notes buffer
+            notes.append(roundNotes);
+            notes.append('\n');
+          }
 
-    _metrics.calculateAverages(sumOfRounds);
+          round++;
+        } //End of iterating rounds for battle
+        //////////////////////////////////////
 
-    String notesString = notes.toString();
-    log.info(notesString); //20080213
-    _metrics.setNotes(notesString);
+        round--; //Correct back to the last round
+        _sumOfRounds += round;
+        metrics.addBattleLength(round);
 
-    _metrics.setTime(System.currentTimeMillis() - startTime);
+        if(battle < _maxNotes)
+          notes.append("Battle " + battle + " over. Total rounds=" + round + "\n");
+
+        //Create flag to remember if we found the winner yet. If its a tie we consider the winner found.
+        boolean foundWinnerAlready = false;
+        if(activeFleets == 0) { //The battle ended in a tie with all units eliminated from all sides
+          foundWinnerAlready = true;
+          if(battle < _maxNotes)
+            notes.append("Tied result\n");
+        }
+        //Find who winner is (if there was one) and record it. Also do some error checking
+        //This block is executed both for ties and where there is a winner (ie: always)
+        int winner = -1;
+        if(activeFleets <= 1) {
+          for(int p = players - 1; p >= 0; p--) {
+            String player = playerNames[p];
+            //Examine the number of units to determine if this fleet is the winner
+            //and to do some error checking. We do not count noncoms towards size.
+            int numberOfCombatUnits = fleets[p].getSize(true);
+            if(numberOfCombatUnits == 0) { //This is one of the losing fleets
+              ; //no-op (this block is here as it means using only 1 'if' for most common condition)
+            } else if(numberOfCombatUnits < 0) { //Sanity check to catch potential logic errors
+              throw new IllegalStateException("Negative combat unit count for " + player);
+            } else { //This fleet has surviving units which means that we have found the winner
+              if(foundWinnerAlready)
+                throw new IllegalStateException("alreadyFoundWinner");
+              winner = p;
+              metrics.addWin(player);
+              if(battle < _maxNotes)
+                notes.append(player + " wins\n");
+            }
+          }
+        } else { //The battle should not be over if there are still multiple players active
+          throw new IllegalStateException("activeFleets=" + activeFleets + " after battle complete");
+        }
 
-    //And use the progressor to finish up if we have one
-    if(_progressor != null) {
-      _progressor.complete(_metrics);
+        //Now we know the winner we can record the survivors. The losers have no combat units left,
+        //and the winner confiscates their noncom units, so only the winner has any survivors to add
+        //to the averaging tally. (In a tie the noncoms are lost along with everything else).
+        if(winner != -1) {
+          String player = playerNames[winner];
+          for(int p = players - 1; p >= 0; p--) {
+            if(p != winner) {
+              metrics.addSurvivors(winner, fleets[p], unitIndices[p], false);
+            }
+          }
+          metrics.addSurvivors(winner, fleets[winner], unitIndices[winner], true);
+          metrics.addSurvivingFirepower(player, fleets[winner].getFirepower());
+        }
+
+        if(++unreportedBattles == PROGRESS_INTERVAL) { //Update the battle count in the progressor for the UI
+          battlesCompleted(unreportedBattles);
+          unreportedBattles = 0;
+        }
+
+        int battlesDone = battle + 1 - _firstBattle;
+        if(_snapshotState != null && battlesDone % SNAPSHOT_INTERVAL == 0 && battle + 1 < _endBattle) {
+          _snapshotState.publish(_snapshotSlot, metrics.copy(), battlesDone);
+        }
+      } //End of iterating battles
+      /////////////////////////////
+      if(unreportedBattles > 0) {
+        battlesCompleted(unreportedBattles);
+      }
     }
   }
 
   /**
    * Randomly allocates hits between the fleets opposing the specified player.
-   * The hits are added to those recorded in the hitsOnPlayer object. The chance
+   * The hits are added to those recorded in the hitsOnPlayer array. The chance
    * of a hit going to a particular fleet is proportionate to its fraction of
-   * the total number of live opposing units. This method will alter the current
-   * player set in the round context.
+   * the total number of live opposing units.
    * @param hitsOnPlayer
-   * @paran player
-   * @paran roundContext
-   * @param hits
+   *          hits on each player, indexed as the fleets
+   * @param player
+   *          index of the player whose hits are being allocated
+   * @param fleets
+   * @param sizes
+   *          work array the same length as fleets
+   * @param numberOfHits
    *          number of hits to be allocated
+   * @param random
    */
-  protected void allocateHits(PlayerIndexedValues hitsOnPlayer, String player, RoundContext context, int numberOfHits) {
-    context.setThisPlayer(player);
-    FleetContents[] opponents = context.getOpposingFleets();
-    String[] opponentNames = context.getOpposingNames();
-
-    /*
-     * if(opponents.length == 1) { //Shortcut. If only one opponent, they get
-     * allocated all the hits hitsOnPlayer.setValue( opponentNames[0] ,
-     * numberOfHits ); return; //Done! }
-     */
-
-    int sizes[] = new int[opponents.length];
-    int hits[] = new int[opponents.length];
+  protected void allocateHits(int[] hitsOnPlayer, int player, BattleFleet[] fleets, int[] sizes, int numberOfHits,
+      Random random) {
     int numberOfTargets = 0;
-    for(int i = 0; i < opponents.length; i++) { // Sum the number of units (Dead units not removed yet are included as
-                                                  // they are still targets this round) and build a sizes arrays.
-      int size = opponents[i].getSize(true);
+    for(int i = 0; i < fleets.length; i++) { // Sum the number of units (Dead units not removed yet are included as
+                                               // they are still targets this round) and build a sizes arrays.
+      int size = i == player ? 0 : fleets[i].getSize(true);
       numberOfTargets += size;
       sizes[i] = size;
     }
     for(int i = 0; i < numberOfHits; i++) { //Allocate each hit to a particular opponent
-      int target = _rnd.nextInt(numberOfTargets);
-      int targetOpponentIndex = Convert.getIndexOfItem(sizes, target);
-      hits[targetOpponentIndex]++;
-    }
-    //Now copy the allocated hits into the hitsOnPlayer object
-    //We used a temp array to hold them first to avoid all the extra addValue calls
-    //and their hash lookups that doing it in the main loop would entail
-    for(int i = 0; i < opponents.length; i++) {
-      hitsOnPlayer.addValue(opponentNames[i], hits[i]);
+      int target = random.nextInt(numberOfTargets);
+      hitsOnPlayer[Convert.getIndexOfItem(sizes, target)]++;
     }
   }
 
@@ -463,26 +776,25 @@ public class BattleCalculatorImpl implements IBattleCalculator {
    *          battle number
    * @param round
    *          round index
-   * @param player
-   *          player name
-   * @param hitsOnPlayer
-   * @param lostByPlayer
-   * @param fleets
-   *          map of FleetContents keyed by player
+   * @param fleet
+   *          the players fleet
+   * @param hits
+   *          hits taken by the player this round
+   * @param lost
+   *          units lost by the player this round
    */
-  private void appendRoundNotes(StringBuffer roundNotes, int battle, int round, String player,
-      PlayerIndexedValues hitsOnPlayer, PlayerIndexedValues lostByPlayer, Map<String, FleetContents> fleets) {
+  private void appendRoundNotes(StringBuffer roundNotes, int battle, int round, BattleFleet fleet, int hits,
+      int lost) {
     if(roundNotes != null) { //Recording detailed information on hits and losses (first few battles only)
-      FleetContents fleet = (FleetContents) fleets.get(player);
       roundNotes.append(battle);
       roundNotes.append('.');
       roundNotes.append(round);
       roundNotes.append(' ');
-      roundNotes.append(player);
+      roundNotes.append(fleet.getPlayer());
       roundNotes.append(" took ");
-      roundNotes.append((int) hitsOnPlayer.getValue(player));
+      roundNotes.append(hits);
       roundNotes.append(" hits lost ");
-      roundNotes.append((int) lostByPlayer.getValue(player));
+      roundNotes.append(lost);
       roundNotes.append(" left ");
       roundNotes.append(fleet.getSize(true));
       roundNotes.append(" (fp=");
@@ -545,6 +857,122 @@ public class BattleCalculatorImpl implements IBattleCalculator {
     _numberOfBattles = battles;
   }
 
+  /**
+   * Returns the precision at which the simulation may stop early
+   * @return precision, or zero to run all the battles
+   */
+  @Override
+  public synchronized double getTargetPrecision() {
+    return _targetPrecision;
+  }
+
+  /**
+   * Sets the precision at which the simulation may stop before running all the
+   * battles. See {@link IBattleMetrics#getPrecision()}.
+   * @param precision
+   *          the precision, or zero to run all the battles
+   * @throws IllegalArgumentException
+   *           if negative
+   */
+  @Override
+  public synchronized void setTargetPrecision(double precision) {
+    if(precision < 0) {
+      throw new IllegalArgumentException("targetPrecision < 0 =" + precision);
+    }
+    _targetPrecision = precision;
+  }
+
+  /**
+   * Returns the least number of battles run before stopping at the target
+   * precision
+   * @return battles
+   */
+  @Override
+  public synchronized int getMinimumBattles() {
+    return _minimumBattles;
+  }
+
+  /**
+   * Sets the least number of battles to run before stopping at the target
+   * precision. The default is {@link #DEFAULT_MINIMUM_BATTLES}.
+   * @param battles
+   * @throws IllegalArgumentException
+   *           if less than 1
+   */
+  @Override
+  public synchronized void setMinimumBattles(int battles) {
+    if(battles < 1) {
+      throw new IllegalArgumentException("minimumBattles < 1 =" + battles);
+    }
+    _minimumBattles = battles;
+  }
+
+  /**
+   * Returns the number of worker threads the battles are split between
+   * @return threads
+   */
+  @Override
+  public synchronized int getThreads() {
+    return _threads;
+  }
+
+  /**
+   * Sets the number of worker threads to split the battles between. The
+   * default is the number of available processors. Specify 1 to run all the
+   * battles in the thread that calls run().
+   * @param threads
+   * @throws IllegalArgumentException
+   *           if less than 1
+   */
+  @Override
+  public synchronized void setThreads(int threads) {
+    if(threads < 1) {
+      throw new IllegalArgumentException("threads < 1 =" + threads);
+    }
+    _threads = threads;
+  }
+
+  /**
+   * Returns the seed that was set for the simulation
+   * @return seed or null if a new seed is chosen for each run
+   */
+  @Override
+  public synchronized Long getSeed() {
+    return _seed;
+  }
+
+  /**
+   * Sets the seed for the random numbers used in the simulation. If null (the
+   * default) a new seed is chosen each time the simulation is run. The seed
+   * used is available from the metrics.
+   * @param seed
+   */
+  @Override
+  public synchronized void setSeed(Long seed) {
+    _seed = seed;
+  }
+
+  /**
+   * Returns true if the attack and defence rolls are sampled rather than rolled
+   * die by die
+   * @return sampling
+   */
+  @Override
+  public synchronized boolean isSampling() {
+    return _sampling;
+  }
+
+  /**
+   * Set whether the attack and defence rolls are to be sampled from the
+   * binomial distribution rather than rolled die by die. See
+   * {@link BattleFleet#setSampling(boolean)}.
+   * @param sampling
+   */
+  @Override
+  public synchronized void setSampling(boolean sampling) {
+    _sampling = sampling;
+  }
+
   /**
    * Returns the battle metrics object
    * @return metrics
@@ -554,6 +982,25 @@ public class BattleCalculatorImpl implements IBattleCalculator {
     return _metrics;
   }
 
+  /**
+   * Set the cache in which the results of simulations are kept so that the
+   * same scenario neednt be simulated twice. Only simulations with a seed set
+   * are cached.
+   * @param cache
+   *          the cache, or null to always run the simulation
+   */
+  public synchronized void setResultCache(BattleResultCache cache) {
+    _resultCache = cache;
+  }
+
+  /**
+   * Returns the cache of simulation results
+   * @return cache or null if there isnt one
+   */
+  public synchronized BattleResultCache getResultCache() {
+    return _resultCache;
+  }
+
   /**
    * Set the progressor used by the UI to track the progress of the simulation
    * @param progressor
@@ -563,4 +1010,63 @@ public class BattleCalculatorImpl implements IBattleCalculator {
     _progressor = progressor;
   }
 
+  /**
+   * Holds what is needed to put together a snapshot of the results during one
+   * batch of a simulation. The totals of the previous batches are a copy taken
+   * when the batch starts, and each worker of the batch has a slot into which
+   * it publishes copies of its partial results. Snapshots only read these
+   * copies, which are never modified once published.
+   */
+  private static final class SnapshotState {
+    private final BattleMetricsImpl _completed;
+    private final int _completedBattles;
+    private final long _startTime;
+    private final AtomicReferenceArray<BattleMetricsImpl> _partials;
+
+    private SnapshotState(BattleMetricsImpl completed, int battles, long startTime, int workers) {
+      _completed = completed;
+      _completedBattles = battles;
+      _startTime = startTime;
+      _partials = new AtomicReferenceArray<BattleMetricsImpl>(workers);
+    }
+
+    /**
+     * Called by a worker to publish a copy of its partial results
+     * @param slot
+     * @param partial
+     * @param battles
+     *          battles the worker has simulated
+     */
+    private void publish(int slot, BattleMetricsImpl partial, int battles) {
+      partial.setNumberOfBattles(battles);
+      _partials.set(slot, partial);
+    }
+
+    /**
+     * Combines the totals of the completed batches with the latest partial
+     * results of the workers
+     * @return snapshot, or null if no battles have been simulated yet
+     */
+    private IBattleMetrics createSnapshot() {
+      BattleMetricsImpl snapshot = _completed.copy();
+      int battles = _completedBattles;
+      for(int w = 0; w < _partials.length(); w++) {
+        BattleMetricsImpl partial = _partials.get(w);
+        if(partial != null) {
+          snapshot.merge(partial);
+          battles += partial.getNumberOfBattles();
+        }
+      }
+      if(battles == 0) {
+        return null;
+      }
+      snapshot.setNumberOfBattles(battles);
+      snapshot.setRoundAchievement(0, battles);
+      snapshot.calculateAverages(snapshot.getSumOfRounds());
+      snapshot.setNotes("Notes are added when the simulation is complete");
+      snapshot.setTime(System.currentTimeMillis() - _startTime);
+      snapshot.setComplete(false);
+      return snapshot;
+    }
+  }
 }
@@ -0,0 +1,460 @@
+package romeo.battle.impl;
+
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Random;
+import java.util.Set;
+
+import romeo.fleet.model.FleetContents;
+import romeo.fleet.model.FleetElement;
+import romeo.fleet.model.UnitIndex;
+import romeo.fleet.model.UnitQuantities;
+import romeo.utils.Convert;
+import romeo.utils.RandomSampling;
+import romeo.xfactors.api.CompiledXFactor;
+import romeo.xfactors.api.ITypedExpression;
+
+/**
+ * The working copy of a players fleet used by a battle worker. Rather than
+ * deep copying the master {@link FleetContents} for every battle, a BattleFleet
+ * is created once per worker and is reset from the master at the start of each
+ * battle. The state used in combat is held in primitive arrays indexed by
+ * element (in the same order as the elements of the master) so the rounds loop
+ * doesnt allocate anything or walk linked lists.
+ *
+ * xFactor expressions still need to see the fleet as a FleetContents, so a
+ * view of the fleet is maintained alongside the arrays (see
+ * {@link #getContents()}). It is this view that is set into the
+ * {@link RoundContext}. The quantities in the view are kept in step with the
+ * arrays each time casualties are cleared, as is a table of the quantity of
+ * each unit in the view (see {@link UnitQuantities}) so that the QUANTITY and
+ * PRESENT expressions needn't search the elements. Only elements whose unit has an
+ * xFactor need to be evaluated each round, the computed stats of the others
+ * are always those of the unit. Even those are only evaluated again when
+ * something their xFactor depends on (see
+ * {@link ITypedExpression#getDependencies()}) has changed since they were last
+ * evaluated in the battle.
+ */
+public class BattleFleet {
+  protected String _player;
+  protected FleetContents _contents;
+  protected FleetElement[] _elements;
+  protected boolean[] _combat;
+  protected int[] _xFactorElements;
+  protected int[] _xfDependencies;
+  protected boolean[] _xfEvaluated;
+  protected int[] _xfRound;
+  protected int[] _xfQuantityVersion;
+  protected int[] _xfQuantity;
+  protected int[] _masterQuantity;
+  protected int[] _quantity;
+  protected int[] _casualties;
+  protected int[] _attacks;
+  protected int[] _offense;
+  protected int[] _defense;
+  protected int[] _pd;
+  protected int[] _hits;
+  protected int[] _cumulativeQuantity;
+  protected UnitQuantities _unitQuantities;
+  protected boolean _sampling;
+
+  /**
+   * Constructor. The master should be normalised and have had its xFactors
+   * compiled and evaluated. It is not modified.
+   * @param player
+   *          name of the player that owns the fleet
+   * @param master
+   */
+  public BattleFleet(String player, FleetContents master) {
+    _player = Objects.requireNonNull(player, "player may not be null");
+    Objects.requireNonNull(master, "master may not be null");
+    _contents = new FleetContents(master);
+    List<FleetElement> elements = _contents.getElements();
+    int size = elements.size();
+    _elements = elements.toArray(new FleetElement[size]);
+    _combat = new boolean[size];
+    _masterQuantity = new int[size];
+    _quantity = new int[size];
+    _casualties = new int[size];
+    _attacks = new int[size];
+    _offense = new int[size];
+    _defense = new int[size];
+    _pd = new int[size];
+    _hits = new int[size];
+    _cumulativeQuantity = new int[size];
+    int xFactorCount = 0;
+    for(int i = 0; i < size; i++) {
+      FleetElement element = _elements[i];
+      _combat[i] = element.getUnit().isCombatUnit();
+      _masterQuantity[i] = (int) element.getQuantity();
+      if(element.getUnit().getXFactor() != null) {
+        xFactorCount++;
+      }
+      copyStats(i);
+    }
+    _xFactorElements = new int[xFactorCount];
+    _xfDependencies = new int[xFactorCount];
+    _xfEvaluated = new boolean[xFactorCount];
+    _xfRound = new int[xFactorCount];
+    _xfQuantityVersion = new int[xFactorCount];
+    _xfQuantity = new int[xFactorCount];
+    for(int i = 0, x = 0; i < size; i++) {
+      if(_elements[i].getUnit().getXFactor() != null) {
+        CompiledXFactor xFactor = _elements[i].getCompiledXFactor();
+        _xfDependencies[x] = xFactor == null ? 0 : xFactor.getDependencies();
+        _xFactorElements[x++] = i;
+      }
+    }
+    Set<Integer> sources = new LinkedHashSet<Integer>();
+    for(int i = 0; i < size; i++) {
+      sources.add(_elements[i].getSource());
+    }
+    _unitQuantities = new UnitQuantities(UnitIndex.size(), Convert.toPrimitiveIntArray(sources));
+    _contents.setUnitQuantities(_unitQuantities);
+    reset();
+  }
+
+  /**
+   * Copies the computed stats of an element of the view into the arrays
+   * @param i
+   */
+  private void copyStats(int i) {
+    FleetElement element = _elements[i];
+    _attacks[i] = element.getAttacks();
+    _offense[i] = element.getOffense();
+    _defense[i] = element.getDefense();
+    _pd[i] = element.getPd();
+    _casualties[i] = element.getCasualties();
+  }
+
+  /**
+   * Restores the quantities of all elements to those of the master ready for a
+   * new battle and clears any casualties. All the xFactors will be evaluated
+   * the next time they are evaluated.
+   */
+  public void reset() {
+    _unitQuantities.clear();
+    for(int i = 0; i < _elements.length; i++) {
+      _quantity[i] = _masterQuantity[i];
+      _casualties[i] = 0;
+      _elements[i].setQuantity(_quantity[i]);
+      addUnitQuantity(i, _quantity[i]);
+    }
+    Arrays.fill(_xfEvaluated, false);
+  }
+
+  /**
+   * Returns the name of the player that owns this fleet
+   * @return player
+   */
+  public String getPlayer() {
+    return _player;
+  }
+
+  /**
+   * Returns true if the outcome of the attack and defence rolls is sampled
+   * from the appropriate distributions rather than rolled die by die. See
+   * {@link FleetElement#sampleHits(int, int, Random)}.
+   * @return sampling
+   */
+  public boolean isSampling() {
+    return _sampling;
+  }
+
+  /**
+   * Set whether to sample the outcome of rolls rather than rolling each die.
+   * Sampling is statistically equivalent but much faster for large stacks.
+   * @param sampling
+   */
+  public void setSampling(boolean sampling) {
+    _sampling = sampling;
+  }
+
+  /**
+   * Returns the FleetContents view of this fleet. Its elements always have the
+   * same quantities as this fleet (outside of the firing phase of a round) and
+   * must not be modified directly.
+   * @return contents
+   */
+  public FleetContents getContents() {
+    return _contents;
+  }
+
+  /**
+   * Returns the number of elements in the fleet
+   * @return elementCount
+   */
+  public int getElementCount() {
+    return _elements.length;
+  }
+
+  /**
+   * Returns the element of the view at the specified index
+   * @param index
+   * @return element
+   */
+  public FleetElement getElement(int index) {
+    return _elements[index];
+  }
+
+  /**
+   * Returns the current quantity of the element at the specified index
+   * (including any casualties not yet cleared)
+   * @param index
+   * @return quantity
+   */
+  public int getQuantity(int index) {
+    return _quantity[index];
+  }
+
+  /**
+   * Returns true if the unit of the element at the specified index is a
+   * combat unit
+   * @param index
+   * @return combat
+   */
+  public boolean isCombatUnit(int index) {
+    return _combat[index];
+  }
+
+  /**
+   * Evaluates the xFactors of those elements that have them and updates the
+   * computed stats. The view of this fleet must have been set into the context.
+   * See {@link FleetContents#evaluateXFactors(RoundContext)}.
+   *
+   * An element is skipped if it has been evaluated since the last reset, its
+   * quantity is the same, and its xFactor doesnt draw random numbers or depend
+   * on anything that has changed since then: the round, or the quantities in
+   * the fleets (as given by {@link RoundContext#getQuantityVersion()}). Flags
+   * and the stats of the element dont change during a battle. As skipped
+   * elements would have drawn no random numbers the outcome of the battle is
+   * the same as if every element were evaluated.
+   * @param context
+   */
+  public void evaluateXFactors(RoundContext context) {
+    int round = context.getRound();
+    int quantityVersion = context.getQuantityVersion();
+    boolean playerSet = false;
+    for(int x = 0; x < _xFactorElements.length; x++) {
+      int i = _xFactorElements[x];
+      if(isXFactorCurrent(x, i, round, quantityVersion)) {
+        continue;
+      }
+      if(!playerSet) {
+        context.setThisPlayer(_player);
+        playerSet = true;
+      }
+      _elements[i].evaluateXFactor(context);
+      copyStats(i); //nb: this includes casualties, as an xFactor may remove units
+      _xfEvaluated[x] = true;
+      _xfRound[x] = round;
+      _xfQuantityVersion[x] = quantityVersion;
+      _xfQuantity[x] = _quantity[i];
+    }
+  }
+
+  /**
+   * Returns true if evaluating the xFactor of an element again would give the
+   * same result as when it was last evaluated
+   * @param x
+   *          index of the element in the xFactor arrays
+   * @param i
+   *          index of the element
+   * @param round
+   * @param quantityVersion
+   * @return current
+   */
+  private boolean isXFactorCurrent(int x, int i, int round, int quantityVersion) {
+    int dependencies = _xfDependencies[x];
+    if(!_xfEvaluated[x] || _xfQuantity[x] != _quantity[i]) {
+      return false;
+    }
+    if((dependencies & (ITypedExpression.USES_RANDOM | ITypedExpression.MAY_FAIL)) != 0) {
+      return false;
+    }
+    if((dependencies & ITypedExpression.DEPENDS_ON_ROUND) != 0 && _xfRound[x] != round) {
+      return false;
+    }
+    if((dependencies & ITypedExpression.DEPENDS_ON_QUANTITIES) != 0 && _xfQuantityVersion[x] != quantityVersion) {
+      return false;
+    }
+    return true;
+  }
+
+  /**
+   * Returns the number of units in the fleet. Casualties not yet cleared are
+   * included.
+   * @param ignoreNonComs
+   * @return size
+   */
+  public int getSize(boolean ignoreNonComs) {
+    int size = 0;
+    for(int i = 0; i < _quantity.length; i++) {
+      if(_combat[i] || !ignoreNonComs) {
+        size += _quantity[i];
+      }
+    }
+    return size;
+  }
+
+  /**
+   * Calculates the total firepower of the fleet using the computed stats. See
+   * {@link FleetContents#getFirepower(boolean)}.
+   * @return firepower
+   */
+  public double getFirepower() {
+    double totalAttack = 0;
+    double totalSoak = 0;
+    for(int i = 0; i < _quantity.length; i++) {
+      if(_combat[i]) {
+        double qty = _quantity[i];
+        totalAttack += (double) (_offense[i] * _attacks[i]) * qty;
+        totalSoak += qty * (1d / (100d - (double) _defense[i]));
+      }
+    }
+    return Math.sqrt(totalAttack * totalSoak);
+  }
+
+  /**
+   * Returns the total population damage of the fleet using the computed stats
+   * @return pd
+   */
+  public int getFleetPd() {
+    int pd = 0;
+    for(int i = 0; i < _quantity.length; i++) {
+      pd += _pd[i] * _quantity[i];
+    }
+    return pd;
+  }
+
+  /**
+   * Rolls hits for all the units in the fleet (including casualties that have
+   * not been cleared yet as fleets fire simultaneously). See
+   * {@link FleetContents#rollHits(Random)}.
+   * @param rnd
+   * @return hits
+   */
+  public int rollHits(Random rnd) {
+    int hits = 0;
+    for(int i = 0; i < _quantity.length; i++) {
+      int rolls = _attacks[i] * _quantity[i];
+      hits += _sampling ? FleetElement.sampleHits(rolls, _offense[i], rnd)
+          : FleetElement.rollHits(rolls, _offense[i], rnd);
+    }
+    return hits;
+  }
+
+  /**
+   * Randomly assigns the hits to the combat units in the fleet in proportion to
+   * the number in each element, rolls defence for them and records the
+   * casualties. See {@link FleetContents#fireOnFleet(int, Random)}. Each hit is
+   * assigned to an element by a binary search of the running totals of the
+   * element quantities, so the cost of targetting is O(log e) per hit for a
+   * fleet of e elements. When sampling the hits on each element are drawn
+   * directly instead (see {@link #sampleTargets(int, int, Random)}).
+   * @param hits
+   * @param rnd
+   * @return kills
+   */
+  public int fireOnFleet(int hits, Random rnd) {
+    if(hits == 0) {
+      return 0;
+    }
+    int[] hitsPerElement = _hits;
+    int[] cumulative = _cumulativeQuantity;
+    int size = 0;
+    for(int i = 0; i < cumulative.length; i++) { //Noncoms add nothing to the total so are never targetted
+      if(_combat[i]) {
+        size += _quantity[i];
+      }
+      cumulative[i] = size;
+    }
+    if(_sampling) {
+      sampleTargets(hits, size, rnd);
+    } else {
+      for(int h = 0; h < hits; h++) {
+        hitsPerElement[Convert.getIndexOfCumulativeItem(cumulative, rnd.nextInt(size))]++;
+      }
+    }
+    int kills = 0;
+    for(int i = 0; i < hitsPerElement.length; i++) {
+      int hitsForElement = hitsPerElement[i];
+      if(hitsForElement > 0) {
+        hitsPerElement[i] = 0;
+        int killedByFire = _sampling
+            ? FleetElement.sampleDefence(hitsForElement, _quantity[i], _casualties[i], _defense[i], rnd)
+            : FleetElement.rollDefence(hitsForElement, _quantity[i], _casualties[i], _defense[i], rnd);
+        _casualties[i] += killedByFire;
+        _elements[i].setCasualties(_casualties[i]);
+        kills += killedByFire;
+      }
+    }
+    return kills;
+  }
+
+  /**
+   * Shares out the hits among the combat elements by drawing from the
+   * multinomial distribution as a chain of binomials (each element takes its
+   * share of the hits not yet assigned to the elements before it). This gives
+   * the same distribution as targetting each hit individually, but the cost is
+   * proportional to the number of elements rather than the number of hits.
+   * @param hits
+   * @param size
+   *          the number of combat units in the fleet
+   * @param rnd
+   */
+  private void sampleTargets(int hits, int size, Random rnd) {
+    int hitsLeft = hits;
+    int sizeLeft = size;
+    for(int i = 0; i < _hits.length && hitsLeft > 0; i++) {
+      if(_combat[i] && _quantity[i] > 0) {
+        int hitsForElement = _quantity[i] == sizeLeft ? hitsLeft
+            : RandomSampling.binomial(hitsLeft, (double) _quantity[i] / sizeLeft, rnd);
+        _hits[i] = hitsForElement;
+        hitsLeft -= hitsForElement;
+        sizeLeft -= _quantity[i];
+      }
+    }
+  }
+
+  /**
+   * Removes the casualties from the fleet and updates the view to match. If
+   * any were removed the caller must let the context know (see
+   * {@link RoundContext#quantitiesChanged()}) before xFactors are evaluated.
+   * @return deadUnitCount
+   */
+  public int clearCasualties() {
+    int totalRemoved = 0;
+    for(int i = 0; i < _quantity.length; i++) {
+      int casualties = _casualties[i];
+      if(casualties > _quantity[i]) {
+        throw new IllegalStateException("casualties (" + casualties + ") > quantity (" + _quantity[i] + ") for "
+            + _elements[i]);
+      }
+      if(casualties > 0) {
+        _quantity[i] -= casualties;
+        _casualties[i] = 0;
+        _elements[i].setQuantity(_quantity[i]);
+        addUnitQuantity(i, -casualties);
+        totalRemoved += casualties;
+      }
+    }
+    return totalRemoved;
+  }
+
+  /**
+   * Adds to the quantity of the unit of an element in the unit quantities
+   * table of the view. Units without an acronym cant be looked up so arent
+   * in the table.
+   * @param i
+   * @param quantity
+   */
+  private void addUnitQuantity(int i, int quantity) {
+    int unitIndex = _elements[i].getUnitIndex();
+    if(unitIndex != UnitIndex.NONE) {
+      _unitQuantities.add(unitIndex, _elements[i].getSource(), quantity);
+    }
+  }
+}
@@ -1,6 +1,8 @@
 package romeo.battle.impl;
 
+import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
@@ -13,32 +15,52 @@ import romeo.fleet.model.FleetContents;
 import romeo.fleet.model.FleetElement;
 import romeo.units.api.IUnit;
 import romeo.utils.BeanComparator;
-import romeo.utils.MutableDouble;
-import romeo.utils.MutableDoubleListWrapper;
+import romeo.utils.Convert;
 
 /**
  * Bean to hold and accumulate various metrics from the battle simulation such
- * as number of times each side wins etc...
+ * as number of times each side wins etc... The metrics are accumulated as
+ * running totals in primitive arrays: per round totals for each player, a
+ * histogram of battle lengths, and the surviving quantity of each unit type
+ * for each player. The memory used depends on the number of players, rounds
+ * and unit types but not on the number of battles.
  */
 class BattleMetricsImpl implements IBattleMetrics {
+  /**
+   * The number of standard errors either side of an estimate spanned by its 95%
+   * confidence interval
+   */
+  public static final double Z_95 = 1.959964;
+
   private int _numberOfBattles;
   private double _averageRounds;
   private long _time;
+  private long _seed;
   private String _notes;
   private String[] _players;
   private String _defenderName;
-  private MutableDoubleListWrapper _roundsAchievement;
-  private List<Integer> _battleLengths = new ArrayList<Integer>();
+  private int[] _roundAchievement = new int[16];
+  private int _roundAchievementSize;
+  private int[] _battleLengthCounts = new int[16];
+  private int _longestBattle = -1;
   private Map<String, FleetContents> _fleets = new HashMap<String, FleetContents>();
   private Map<String, FleetContents> _averageSurvivors = new HashMap<String, FleetContents>();
   private Map<String, FleetContents> _adjustedAverageSurvivors = new HashMap<String, FleetContents>();
+  private List<IUnit> _survivingUnits = new ArrayList<IUnit>(); //indexed by unit index
+  private Map<String, Integer> _unitIndices = new HashMap<String, Integer>(); //keyed by unit name
+  private double[][] _survivors; //total surviving quantity, indexed by player and unit index
   private PlayerIndexedValues _averageSurvivingFirepower;
   private PlayerIndexedValues _adjustedAverageSurvivingFirepower;
+  private PlayerIndexedValues _survivingFirepowerSquares;
+  private PlayerIndexedValues _winsHalfWidth;
+  private PlayerIndexedValues _survivingFirepowerHalfWidth;
+  private double _precision;
+  private boolean _complete = true;
   private PlayerIndexedValues _wins;
-  private PlayerIndexedListMap _firepower;
-  private PlayerIndexedListMap _adjustedFirepower;
-  private PlayerIndexedListMap _populationDamage;
-  private PlayerIndexedListMap _adjustedPopulationDamage;
+  private PlayerRoundTotals _firepower;
+  private PlayerRoundTotals _adjustedFirepower;
+  private PlayerRoundTotals _populationDamage;
+  private PlayerRoundTotals _adjustedPopulationDamage;
 
   /**
    * Constructor. The names of players are required to initialise the internal
@@ -49,16 +71,18 @@ class BattleMetricsImpl implements IBattleMetrics {
     _players = players;
     _defenderName = defenderName;
     _numberOfBattles = numberOfBattles;
-    _roundsAchievement = new MutableDoubleListWrapper();
-    _battleLengths = new ArrayList<Integer>(numberOfBattles);
     _averageSurvivingFirepower = new PlayerIndexedValues(players);
     _adjustedAverageSurvivingFirepower = new PlayerIndexedValues(players);
+    _survivingFirepowerSquares = new PlayerIndexedValues(players);
+    _winsHalfWidth = new PlayerIndexedValues(players);
+    _survivingFirepowerHalfWidth = new PlayerIndexedValues(players);
     _wins = new PlayerIndexedValues(players);
 
-    _firepower = new PlayerIndexedListMap(players);
-    _adjustedFirepower = new PlayerIndexedListMap(players);
-    _populationDamage = new PlayerIndexedListMap(players);
-    _adjustedPopulationDamage = new PlayerIndexedListMap(players);
+    _firepower = new PlayerRoundTotals(players);
+    _adjustedFirepower = new PlayerRoundTotals(players);
+    _populationDamage = new PlayerRoundTotals(players);
+    _adjustedPopulationDamage = new PlayerRoundTotals(players);
+    _survivors = new double[players.length][16];
 
     for(int p = players.length - 1; p >= 0; p--) {
       _averageSurvivors.put(players[p], new FleetContents());
@@ -67,6 +91,9 @@ class BattleMetricsImpl implements IBattleMetrics {
   }
 
   public void calculateAverages(int sumOfRounds) {
+    //The confidence intervals are worked out from the totals so must be done first
+    calculatePrecision();
+
     //convert fp and pd lists to averages
     //nb: we iterate from round 1 as already averaged stuff for pre-battle round zero
     setAverageRounds((double) sumOfRounds / (double) _numberOfBattles);
@@ -77,36 +104,41 @@ class BattleMetricsImpl implements IBattleMetrics {
       for(int roundIndex = 1; roundIndex < totalRoundsRecorded; roundIndex++) { //Loop over all the rounds in the fp and pd tables and convert to averages
         int battlesThatGotThisFar = getRoundAchievement(roundIndex);
 
-        double totalFirepower = getFirepower(player, false, roundIndex);
-        setFirepower(player, false, roundIndex, totalFirepower / _numberOfBattles);
-        setFirepower(player, true, roundIndex, totalFirepower / battlesThatGotThisFar);
+        double totalFirepower = _firepower.getValue(p, roundIndex);
+        _firepower.setValue(p, roundIndex, totalFirepower / _numberOfBattles);
+        _adjustedFirepower.setValue(p, roundIndex, totalFirepower / battlesThatGotThisFar);
 
-        double totalPd = getPopulationDamage(player, false, roundIndex);
-        setPopulationDamage(player, false, roundIndex, totalPd / _numberOfBattles);
-        setPopulationDamage(player, true, roundIndex, totalPd / battlesThatGotThisFar);
+        double totalPd = _populationDamage.getValue(p, roundIndex);
+        _populationDamage.setValue(p, roundIndex, totalPd / _numberOfBattles);
+        _adjustedPopulationDamage.setValue(p, roundIndex, totalPd / battlesThatGotThisFar);
       }
 
       double battlesWonByThisPlayer = getWinCount(player);
 
-      FleetContents avgSurvivors = getAverageSurvivors(player, false);
-      FleetContents adjustedAvgSurvivors = new FleetContents(avgSurvivors); //Create copy for adjusted figures
-      setAverageSurvivors(player, true, adjustedAvgSurvivors); //And store
-
-      //Divide each set of average suvivors by total number of battles to get the raw average
-      avgSurvivors.divideQuantity(_numberOfBattles);
-      avgSurvivors.normalise(true);
-      avgSurvivors.sort();
-
-      //For adjusted average number of survivors we divide by the number of battles player won
-      if(battlesWonByThisPlayer > 0) { //We cant divide if divisor is zero - in which case nothing to divide anyway
-        adjustedAvgSurvivors.divideQuantity(battlesWonByThisPlayer);
-      } else {
-        if(adjustedAvgSurvivors.getFirepower() > 0) { //Sanity check
-          throw new IllegalStateException("player won zero battles yet had surviving firepower");
+      //Divide the surviving quantity of each unit by total number of battles to get the raw average,
+      //and for the adjusted average by the number of battles the player won
+      FleetContents avgSurvivors = new FleetContents();
+      FleetContents adjustedAvgSurvivors = new FleetContents();
+      double[] survivors = _survivors[p];
+      for(int unit = 0; unit < _survivingUnits.size(); unit++) {
+        double quantity = survivors[unit];
+        if(quantity > 0) {
+          avgSurvivors.addElement(new FleetElement(_survivingUnits.get(unit), quantity / _numberOfBattles, 0));
+          if(battlesWonByThisPlayer > 0) { //We cant divide if divisor is zero - in which case nothing to divide anyway
+            adjustedAvgSurvivors.addElement(
+                new FleetElement(_survivingUnits.get(unit), quantity / battlesWonByThisPlayer, 0));
+          }
         }
       }
+      if(battlesWonByThisPlayer == 0 && _averageSurvivingFirepower.getValue(player) > 0) { //Sanity check
+        throw new IllegalStateException("player won zero battles yet had surviving firepower");
+      }
+      avgSurvivors.normalise(true);
+      avgSurvivors.sort();
       adjustedAvgSurvivors.normalise(true);
       adjustedAvgSurvivors.sort();
+      setAverageSurvivors(player, false, avgSurvivors);
+      setAverageSurvivors(player, true, adjustedAvgSurvivors);
 
       double totalSurvivingFp = getAverageSurvivingFirepower(player, false);
       setAverageSurvivingFirepower(player, false, totalSurvivingFp / (double) _numberOfBattles);
@@ -116,6 +148,109 @@ class BattleMetricsImpl implements IBattleMetrics {
     }
   }
 
+  /**
+   * Calculates the half widths of the 95% confidence intervals on the win
+   * percentage and average surviving firepower of each player, and the overall
+   * precision (see {@link #getPrecision()}), from the totals accumulated so
+   * far. This must be called before the averages are calculated. The win
+   * percentage uses the Wilson score interval, which doesnt collapse to nothing
+   * when a player wins every battle or none. The average surviving firepower
+   * uses the normal approximation with the sample variance of the surviving
+   * firepower of each battle (which is zero for battles the player didnt win).
+   */
+  public void calculatePrecision() {
+    double n = _numberOfBattles;
+    double z2 = Z_95 * Z_95;
+    _precision = 0;
+    for(int p = _players.length - 1; p >= 0; p--) {
+      String player = _players[p];
+
+      double wins = getWinCount(player) / n;
+      double winsHalfWidth = Z_95 * Math.sqrt(wins * (1 - wins) / n + z2 / (4 * n * n)) / (1 + z2 / n);
+      _winsHalfWidth.setValue(player, winsHalfWidth);
+
+      double fpHalfWidth = 0;
+      if(n > 1) {
+        double mean = _averageSurvivingFirepower.getValue(player) / n;
+        double variance = (_survivingFirepowerSquares.getValue(player) - n * mean * mean) / (n - 1);
+        fpHalfWidth = Z_95 * Math.sqrt(Math.max(variance, 0) / n);
+      }
+      _survivingFirepowerHalfWidth.setValue(player, fpHalfWidth);
+
+      _precision = Math.max(_precision, winsHalfWidth);
+      double initialFp = getFirepower(player, false, 0);
+      if(initialFp > 0) {
+        _precision = Math.max(_precision, fpHalfWidth / initialFp);
+      }
+    }
+  }
+
+  /**
+   * Adds the totals accumulated in another metrics object for the same players
+   * to this one. This is used to combine the partial metrics from each of the
+   * workers in a parallel simulation. Averages must not yet have been
+   * calculated in either object. Round zero values are not merged as they are
+   * set once before the battles start.
+   * @param partial
+   */
+  public void merge(BattleMetricsImpl partial) {
+    _firepower.add(partial._firepower, 1);
+    _populationDamage.add(partial._populationDamage, 1);
+    for(int p = _players.length - 1; p >= 0; p--) {
+      String player = _players[p];
+      double[] survivors = partial._survivors[p];
+      for(int unit = partial._survivingUnits.size() - 1; unit >= 0; unit--) {
+        if(survivors[unit] > 0) {
+          addSurvivingUnits(p, getUnitIndex(partial._survivingUnits.get(unit)), survivors[unit]);
+        }
+      }
+      _averageSurvivingFirepower.addValue(player, partial.getAverageSurvivingFirepower(player, false));
+      _survivingFirepowerSquares.addValue(player, partial._survivingFirepowerSquares.getValue(player));
+      _wins.addValue(player, partial.getWinCount(player));
+    }
+    for(int round = 1; round < partial._roundAchievementSize; round++) {
+      addRoundAchievement(round, partial._roundAchievement[round]);
+    }
+    for(int rounds = 0; rounds <= partial._longestBattle; rounds++) {
+      addBattleLength(rounds, partial._battleLengthCounts[rounds]);
+    }
+  }
+
+  /**
+   * Returns the total number of rounds fought in the battles recorded so far
+   * @return sumOfRounds
+   */
+  public int getSumOfRounds() {
+    int sumOfRounds = 0;
+    for(int rounds = 1; rounds <= _longestBattle; rounds++) {
+      sumOfRounds += rounds * _battleLengthCounts[rounds];
+    }
+    return sumOfRounds;
+  }
+
+  /**
+   * Returns a new metrics object for the same players with a copy of the round
+   * zero values, fleets and the totals accumulated so far, that will not be
+   * affected by further changes to this one. Averages must not yet have been
+   * calculated.
+   * @return copy
+   */
+  public BattleMetricsImpl copy() {
+    BattleMetricsImpl copy = new BattleMetricsImpl(_players, _defenderName, _numberOfBattles);
+    copy.merge(this);
+    for(int p = _players.length - 1; p >= 0; p--) {
+      String player = _players[p];
+      copy._firepower.setValue(p, 0, _firepower.getValue(p, 0));
+      copy._adjustedFirepower.setValue(p, 0, _adjustedFirepower.getValue(p, 0));
+      copy._populationDamage.setValue(p, 0, _populationDamage.getValue(p, 0));
+      copy._adjustedPopulationDamage.setValue(p, 0, _adjustedPopulationDamage.getValue(p, 0));
+      copy._fleets.put(player, _fleets.get(player));
+    }
+    copy._seed = _seed;
+    copy._notes = _notes;
+    return copy;
+  }
+
   /**
    * Create and return an instance of {@link PlayerSummary} for the specified
    * player.
@@ -198,7 +333,7 @@ class BattleMetricsImpl implements IBattleMetrics {
 
   @Override
   public int getRecordedRoundCount() {
-    return getFirepower(getDefendingPlayer(), false).size();
+    return _firepower.getRoundCount();
   }
 
   @Override
@@ -229,6 +364,13 @@ class BattleMetricsImpl implements IBattleMetrics {
     table.put(player, fleet);
   }
 
+  /**
+   * Returns the average survivors of a player. Until the averages have been
+   * calculated the fleets are empty.
+   * @param player
+   * @param adjusted
+   * @return averageSurvivors
+   */
   @Override
   public FleetContents getAverageSurvivors(String player, boolean adjusted) {
     Map<String, FleetContents> table = adjusted ? _adjustedAverageSurvivors : _averageSurvivors;
@@ -241,36 +383,89 @@ class BattleMetricsImpl implements IBattleMetrics {
   }
 
   /**
-   * Used in addSurvivors to keep track of how many survivor fleets have been
-   * observed. Some cleanup is performed every so often based on this.
+   * Returns the index under which survivors of a type of unit are accumulated,
+   * allocating one if this is the first time the unit has been seen. Units are
+   * identified by name.
+   * @param unit
+   * @return unitIndex
    */
-  private int _observationCounter = 0;
+  public int getUnitIndex(IUnit unit) {
+    Integer index = _unitIndices.get(unit.getName());
+    if(index == null) {
+      index = _survivingUnits.size();
+      _survivingUnits.add(unit);
+      _unitIndices.put(unit.getName(), index);
+      if(index >= _survivors[0].length) {
+        for(int p = 0; p < _survivors.length; p++) {
+          _survivors[p] = Arrays.copyOf(_survivors[p], _survivors[p].length * 2);
+        }
+      }
+    }
+    return index;
+  }
+
+  /**
+   * Returns the unit index of each element of a working fleet (see
+   * {@link #getUnitIndex(IUnit)}). The elements of a working fleet dont change
+   * so the simulator gets these once and passes them to
+   * {@link #addSurvivors(int, BattleFleet, int[], boolean)} for each battle.
+   * @param fleet
+   * @return unitIndices
+   */
+  public int[] getUnitIndices(BattleFleet fleet) {
+    int[] unitIndices = new int[fleet.getElementCount()];
+    for(int i = 0; i < unitIndices.length; i++) {
+      unitIndices[i] = getUnitIndex(fleet.getElement(i).getUnit());
+    }
+    return unitIndices;
+  }
 
   /**
-   * Adds a survivors fleet to their accumulated survivors and also adds the
-   * total surviving firepower to the average surviving firepower counter. Note
-   * that this method might not add to the adjusted averages, these are
-   * calculated based on the same totals later. Ie: until the calculateAverages
-   * method is called the values returned from the getters are not fully
-   * prepared.
+   * Adds the units remaining in a working fleet at the end of a battle to the
+   * accumulated survivors of the specified player (who need not be the owner
+   * of the fleet). The surviving firepower is not added, see
+   * {@link #addSurvivingFirepower(String, double)}.
    * @param player
-   * @param survivingFleet
+   *          index of the player
+   * @param fleet
+   * @param unitIndices
+   *          unit index of each element of the fleet, see
+   *          {@link #getUnitIndices(BattleFleet)}
+   * @param combatUnits
+   *          true to add all the units, false to add only the non-combat units
    */
-  public void addSurvivors(String player, FleetContents survivingFleet) {
-    FleetContents countFleet = (FleetContents) _averageSurvivors.get(player);
-    countFleet.addFleet(survivingFleet, true);
-    _averageSurvivingFirepower.addValue(player, survivingFleet.getFirepower());
-    _observationCounter++;
-    if(_observationCounter % 4096 == 0) { //Cleanup all the average survivor accumuator fleets every so often
-      for(int p = _players.length - 1; p >= 0; p--) { //Call normalise for each survivor accumulator fleet
-        ((FleetContents) _averageSurvivors.get(_players[p])).normalise(true);
+  public void addSurvivors(int player, BattleFleet fleet, int[] unitIndices, boolean combatUnits) {
+    double[] survivors = _survivors[player];
+    for(int i = fleet.getElementCount() - 1; i >= 0; i--) {
+      int quantity = fleet.getQuantity(i);
+      if(quantity > 0 && (combatUnits || !fleet.isCombatUnit(i))) {
+        survivors[unitIndices[i]] += quantity;
       }
-      //Encourage a garbage collection to deal with the many empty FleetElement that will
-      //result from the normalisations.
-      System.gc();
     }
   }
 
+  /**
+   * Adds to the total surviving firepower recorded for the player
+   * @param player
+   * @param firepower
+   */
+  public void addSurvivingFirepower(String player, double firepower) {
+    _averageSurvivingFirepower.addValue(player, firepower);
+    _survivingFirepowerSquares.addValue(player, firepower * firepower);
+  }
+
+  /**
+   * Adds a quantity of a unit to the accumulated survivors of a player
+   * @param player
+   *          index of the player
+   * @param unit
+   *          index of the unit
+   * @param quantity
+   */
+  protected void addSurvivingUnits(int player, int unit, double quantity) {
+    _survivors[player][unit] += quantity;
+  }
+
   /**
    * Returns the raw count of wins recorded for the specified player. To
    * determine the number of ties pass null for the player name (it will be
@@ -324,13 +519,13 @@ class BattleMetricsImpl implements IBattleMetrics {
    */
   @Override
   public List<? extends Number> getFirepower(String player, boolean adjusted) {
-    PlayerIndexedListMap firepower = adjusted ? _firepower : _adjustedFirepower;
-    return firepower.getData(player);
+    PlayerRoundTotals firepower = adjusted ? _adjustedFirepower : _firepower;
+    return firepower.getList(firepower.getPlayerIndex(player));
   }
 
   public double getFirepower(String player, boolean adjusted, int round) {
-    PlayerIndexedListMap firepower = adjusted ? _firepower : _adjustedFirepower;
-    return firepower.getValue(player, round);
+    PlayerRoundTotals firepower = adjusted ? _adjustedFirepower : _firepower;
+    return firepower.getValue(firepower.getPlayerIndex(player), round);
   }
 
   /**
@@ -345,46 +540,49 @@ class BattleMetricsImpl implements IBattleMetrics {
    *          the value to be set
    */
   public void setFirepower(String player, boolean adjusted, int round, double fp) {
-    PlayerIndexedListMap firepower = adjusted ? _firepower : _adjustedFirepower;
-    firepower.setValue(player, round, fp);
+    PlayerRoundTotals firepower = adjusted ? _adjustedFirepower : _firepower;
+    firepower.setValue(firepower.getPlayerIndex(player), round, fp);
   }
 
   /**
-   * Add the deltaFp to the value already in the firepower data for the
-   * specified round and player. If there is no data recorded for that round yet
-   * then will create necessary object to store the value specified.
+   * Add the deltaFp to the raw firepower total for the specified round and
+   * player
    * @param player
-   * @param adjusted
-   *          set the adjusted firepower (if false sets raw fp stat)
+   *          index of the player
    * @param round
    *          the index
    * @param deltaFp
    *          the amount to add to the existing fp value
    */
-  public void addFirepower(String player, boolean adjusted, int round, double deltaFp) {
-    PlayerIndexedListMap firepower = adjusted ? _firepower : _adjustedFirepower;
-    firepower.addValue(player, round, deltaFp);
+  public void addFirepower(int player, int round, double deltaFp) {
+    _firepower.addValue(player, round, deltaFp);
   }
 
   public double getPopulationDamage(String player, boolean adjusted, int round) {
-    PlayerIndexedListMap populationDamage = adjusted ? _populationDamage : _adjustedPopulationDamage;
-    return populationDamage.getValue(player, round);
+    PlayerRoundTotals populationDamage = adjusted ? _adjustedPopulationDamage : _populationDamage;
+    return populationDamage.getValue(populationDamage.getPlayerIndex(player), round);
   }
 
   @Override
   public List<? extends Number> getPopulationDamage(String player, boolean adjusted) {
-    PlayerIndexedListMap populationDamage = adjusted ? _populationDamage : _adjustedPopulationDamage;
-    return populationDamage.getData(player);
+    PlayerRoundTotals populationDamage = adjusted ? _adjustedPopulationDamage : _populationDamage;
+    return populationDamage.getList(populationDamage.getPlayerIndex(player));
   }
 
   public void setPopulationDamage(String player, boolean adjusted, int round, double pd) {
-    PlayerIndexedListMap populationDamage = adjusted ? _populationDamage : _adjustedPopulationDamage;
-    populationDamage.setValue(player, round, pd);
+    PlayerRoundTotals populationDamage = adjusted ? _adjustedPopulationDamage : _populationDamage;
+    populationDamage.setValue(populationDamage.getPlayerIndex(player), round, pd);
   }
 
-  public void addPopulationDamage(String player, boolean adjusted, int round, double deltaPd) {
-    PlayerIndexedListMap populationDamage = adjusted ? _populationDamage : _adjustedPopulationDamage;
-    populationDamage.addValue(player, round, deltaPd);
+  /**
+   * Add to the raw population damage total for the specified round and player
+   * @param player
+   *          index of the player
+   * @param round
+   * @param deltaPd
+   */
+  public void addPopulationDamage(int player, int round, double deltaPd) {
+    _populationDamage.addValue(player, round, deltaPd);
   }
 
   @Override
@@ -398,6 +596,21 @@ class BattleMetricsImpl implements IBattleMetrics {
     sfp.setValue(player, fp);
   }
 
+  @Override
+  public double getWinsHalfWidth(String player) {
+    return _winsHalfWidth.getValue(player);
+  }
+
+  @Override
+  public double getSurvivingFirepowerHalfWidth(String player) {
+    return _survivingFirepowerHalfWidth.getValue(player);
+  }
+
+  @Override
+  public double getPrecision() {
+    return _precision;
+  }
+
   /**
    * String representation of this object for use in debugging. Not suitable for
    * display to user.
@@ -417,6 +630,15 @@ class BattleMetricsImpl implements IBattleMetrics {
     _numberOfBattles = battleCount;
   }
 
+  @Override
+  public boolean isComplete() {
+    return _complete;
+  }
+
+  public void setComplete(boolean complete) {
+    _complete = complete;
+  }
+
   @Override
   public double getAverageRounds() {
     return _averageRounds;
@@ -426,6 +648,15 @@ class BattleMetricsImpl implements IBattleMetrics {
     _averageRounds = rounds;
   }
 
+  @Override
+  public long getSeed() {
+    return _seed;
+  }
+
+  public void setSeed(long seed) {
+    _seed = seed;
+  }
+
   @Override
   public long getTime() {
     return _time;
@@ -436,14 +667,31 @@ class BattleMetricsImpl implements IBattleMetrics {
   }
 
   /**
-   * Returns a sorted copy of the battle length observations
+   * Returns the battle length observations, sorted from shortest to longest.
+   * The list is a read only view of the histogram of battle lengths, so it
+   * doesnt take up memory for every battle.
    * @return battleLengths
    */
   @Override
   public List<? extends Number> getBattleLengths() {
-    ArrayList<Integer> list = new ArrayList<Integer>(_battleLengths);
-    Collections.sort(list);
-    return list;
+    final int[] cumulative = new int[_longestBattle + 1];
+    int total = 0;
+    for(int rounds = 0; rounds < cumulative.length; rounds++) {
+      total += _battleLengthCounts[rounds];
+      cumulative[rounds] = total;
+    }
+    final int size = total;
+    return new AbstractList<Integer>() {
+      @Override
+      public Integer get(int index) {
+        return Convert.getIndexOfCumulativeItem(cumulative, index);
+      }
+
+      @Override
+      public int size() {
+        return size;
+      }
+    };
   }
 
   /**
@@ -452,21 +700,48 @@ class BattleMetricsImpl implements IBattleMetrics {
    *          number of rounds in the battle
    */
   public void addBattleLength(int rounds) {
-    _battleLengths.add(new Integer(rounds));
+    addBattleLength(rounds, 1);
+  }
+
+  /**
+   * Adds a number of battles of the same length to the histogram
+   * @param rounds
+   * @param battles
+   */
+  private void addBattleLength(int rounds, int battles) {
+    if(rounds >= _battleLengthCounts.length) {
+      _battleLengthCounts = Arrays.copyOf(_battleLengthCounts, Math.max(rounds + 1, _battleLengthCounts.length * 2));
+    }
+    _battleLengthCounts[rounds] += battles;
+    if(battles > 0 && rounds > _longestBattle) {
+      _longestBattle = rounds;
+    }
   }
 
   /**
    * Returns a list containing the number of battles that achieved each round.
-   * Their is one element for each round, indexed by the round number. The
-   * element contains a {@link MutableDouble} holding the number of battles that
-   * achieved that round (including those that went on to have more rounds). The
-   * list returned is intended for read only use. Its size will be equal to the
-   * number of rounds in the longest battle.
+   * Their is one element for each round, indexed by the round number, holding
+   * the number of battles that achieved that round (including those that went
+   * on to have more rounds). The list returned is a read only view. Its size
+   * will be one more than the number of rounds in the longest battle.
    * @return roundAchievement
    */
   @Override
   public List<? extends Number> getRoundAchievement() {
-    return _roundsAchievement.getData();
+    return new AbstractList<Integer>() {
+      @Override
+      public Integer get(int round) {
+        if(round >= _roundAchievementSize) {
+          throw new IndexOutOfBoundsException("round " + round + " >= " + _roundAchievementSize);
+        }
+        return _roundAchievement[round];
+      }
+
+      @Override
+      public int size() {
+        return _roundAchievementSize;
+      }
+    };
   }
 
   /**
@@ -478,11 +753,7 @@ class BattleMetricsImpl implements IBattleMetrics {
    */
   @Override
   public int getRoundAchievement(int round) {
-    if(_roundsAchievement.getSize() > round) {
-      return (int) _roundsAchievement.getValue(round);
-    } else {
-      return 0;
-    }
+    return round < _roundAchievementSize ? _roundAchievement[round] : 0;
   }
 
   /**
@@ -491,7 +762,16 @@ class BattleMetricsImpl implements IBattleMetrics {
    * @param round
    */
   public void addRoundAchievement(int round) {
-    _roundsAchievement.addValue(round, 1);
+    addRoundAchievement(round, 1);
+  }
+
+  /**
+   * Add to the count of the number of battles that achieved the specified round
+   * @param round
+   * @param battles
+   */
+  private void addRoundAchievement(int round, int battles) {
+    setRoundAchievement(round, getRoundAchievement(round) + battles);
   }
 
   /**
@@ -502,7 +782,13 @@ class BattleMetricsImpl implements IBattleMetrics {
    * @param count
    */
   public void setRoundAchievement(int round, int count) {
-    _roundsAchievement.setValue(round, count);
+    if(round >= _roundAchievement.length) {
+      _roundAchievement = Arrays.copyOf(_roundAchievement, Math.max(round + 1, _roundAchievement.length * 2));
+    }
+    _roundAchievement[round] = count;
+    if(round >= _roundAchievementSize) {
+      _roundAchievementSize = round + 1;
+    }
   }
 
   @Override
@@ -0,0 +1,192 @@
+package romeo.battle.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EventObject;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import romeo.battle.IBattleMetrics;
+import romeo.fleet.model.FleetContents;
+import romeo.fleet.model.FleetElement;
+import romeo.model.api.IService;
+import romeo.model.api.IServiceListener;
+import romeo.units.api.IUnit;
+import romeo.xfactors.api.CompiledXFactor;
+import romeo.xfactors.api.IXFactorCompiler;
+import romeo.xfactors.api.XFactorId;
+
+/**
+ * Remembers the results of recent simulations so that running the same
+ * scenario again (for example after reopening it) shows the results without
+ * simulating it all over again. Results are keyed by a canonical description
+ * of everything that affects them: the normalised fleets with the stats of
+ * their units and the definitions of the xFactors those reference, the
+ * defender, the number of battles, the sampling and precision settings and the
+ * seed. Only simulations with a seed are cached, as one without a seed is
+ * expected to give fresh results each time it is run.
+ *
+ * The least recently used results are discarded once the capacity is reached,
+ * and all are discarded whenever the services it listens to report a change to
+ * the units or xFactors.
+ */
+public class BattleResultCache implements IServiceListener {
+  private final Map<String, IBattleMetrics> _results; //guarded by this
+
+  /**
+   * Constructor
+   * @param capacity
+   *          most results to keep
+   */
+  public BattleResultCache(final int capacity) {
+    if(capacity < 1) {
+      throw new IllegalArgumentException("capacity must be at least 1");
+    }
+    _results = new LinkedHashMap<String, IBattleMetrics>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, IBattleMetrics> eldest) {
+        return size() > capacity;
+      }
+    };
+  }
+
+  /**
+   * Constructor. The cache will be cleared when any of the services notify a
+   * change to their data.
+   * @param capacity
+   *          most results to keep
+   * @param services
+   *          the unit and xFactor services
+   */
+  public BattleResultCache(int capacity, List<IService> services) {
+    this(capacity);
+    for(IService service : services) {
+      service.addListener(this);
+    }
+  }
+
+  /**
+   * Returns the key for a scenario
+   * @param fleets
+   *          the normalised fleets of each player in the order they will fight
+   * @param defender
+   *          name of the defending player
+   * @param numberOfBattles
+   * @param seed
+   *          seed for the random numbers
+   * @param sampling
+   * @param targetPrecision
+   * @param minimumBattles
+   * @param compiler
+   *          used to look up the definitions of the xFactors
+   * @return key
+   */
+  public String createKey(Map<String, FleetContents> fleets,
+                          String defender,
+                          int numberOfBattles,
+                          long seed,
+                          boolean sampling,
+                          double targetPrecision,
+                          int minimumBattles,
+                          IXFactorCompiler compiler) {
+    StringBuilder key = new StringBuilder();
+    key.append("battles=").append(numberOfBattles);
+    key.append(";sampling=").append(sampling);
+    key.append(";precision=").append(targetPrecision);
+    key.append(";minimum=").append(minimumBattles);
+    key.append(";defender=").append(defender);
+    Map<XFactorId, String> xFactors = new LinkedHashMap<XFactorId, String>();
+    for(Map.Entry<String, FleetContents> entry : fleets.entrySet()) {
+      FleetContents fleet = entry.getValue();
+      key.append(";\nplayer=").append(entry.getKey()).append(" flags=");
+      List<String> flags = new ArrayList<String>();
+      for(Iterator<String> i = fleet.getFlags(); i.hasNext();) {
+        flags.add(i.next());
+      }
+      Collections.sort(flags);
+      key.append(flags);
+      for(FleetElement element : fleet) {
+        IUnit unit = element.getUnit();
+        key.append("\n ").append(element.getQuantity()).append('*').append(unit.getName());
+        key.append('@').append(element.getSource());
+        key.append(' ').append(unit.getAttacks()).append('/').append(unit.getOffense());
+        key.append('/').append(unit.getDefense()).append('/').append(unit.getPd());
+        key.append('/').append(unit.getCarry()).append('/').append(unit.isCombatUnit());
+        XFactorId xfId = unit.getXFactor();
+        if(xfId != null) {
+          key.append(" xf=").append(xfId);
+          if(!xFactors.containsKey(xfId)) {
+            xFactors.put(xfId, describeXFactor(compiler, xfId));
+          }
+        }
+      }
+    }
+    for(Map.Entry<XFactorId, String> entry : xFactors.entrySet()) {
+      key.append(";\nxf ").append(entry.getKey()).append('=').append(entry.getValue());
+    }
+    key.append(";\nseed=").append(seed);
+    return key.toString();
+  }
+
+  /**
+   * Returns the definition of an xFactor as compiled
+   * @param compiler
+   * @param xfId
+   * @return definition
+   */
+  private String describeXFactor(IXFactorCompiler compiler, XFactorId xfId) {
+    try {
+      CompiledXFactor compiled = compiler.getXFactor(xfId);
+      return String.valueOf(compiled);
+    } catch(RuntimeException e) { //the simulation will report the problem, we just need a different key
+      return "error " + e.getMessage();
+    }
+  }
+
+  /**
+   * Returns the cached results of a scenario
+   * @param key
+   *          as returned by createKey
+   * @return metrics or null if the results arent cached
+   */
+  public synchronized IBattleMetrics get(String key) {
+    return _results.get(key);
+  }
+
+  /**
+   * Caches the results of a scenario
+   * @param key
+   *          as returned by createKey
+   * @param metrics
+   */
+  public synchronized void put(String key, IBattleMetrics metrics) {
+    _results.put(key, metrics);
+  }
+
+  /**
+   * Returns the number of results cached
+   * @return size
+   */
+  public synchronized int size() {
+    return _results.size();
+  }
+
+  /**
+   * Discard all the cached results
+   */
+  public synchronized void clear() {
+    _results.clear();
+  }
+
+  /**
+   * Discards all the cached results, as the units or xFactors they were
+   * simulated with have changed
+   * @param event
+   */
+  @Override
+  public void dataChanged(EventObject event) {
+    clear();
+  }
+}
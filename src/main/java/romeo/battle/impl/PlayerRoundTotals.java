@@ -0,0 +1,157 @@
+package romeo.battle.impl;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Round by round totals for each player, held in primitive arrays. This does
+ * the same job as {@link PlayerIndexedListMap} for the battle metrics, but the
+ * players are addressed by their index in the array passed to the constructor
+ * so that the simulator can accumulate a value for each player every round
+ * without map lookups or boxing. The number of rounds grows as values are
+ * written and is the same for all the players. Rounds that havent been written
+ * read as zero.
+ */
+public class PlayerRoundTotals {
+  private final String[] _players;
+  private double[][] _values;
+  private int _roundCount;
+
+  /**
+   * Constructor. Requires a valid list of players.
+   * @param players
+   *          an array of player names
+   */
+  public PlayerRoundTotals(String[] players) {
+    _players = Objects.requireNonNull(players, "players may not be null");
+    if(players.length < 1) {
+      throw new IllegalArgumentException("No players specified");
+    }
+    _values = new double[players.length][16];
+  }
+
+  /**
+   * Returns the index of the named player
+   * @param player
+   * @return index
+   * @throws IllegalArgumentException
+   *           if the player is unknown
+   */
+  public int getPlayerIndex(String player) {
+    for(int p = 0; p < _players.length; p++) {
+      if(_players[p].equals(player)) {
+        return p;
+      }
+    }
+    throw new IllegalArgumentException("Unknown player " + player);
+  }
+
+  /**
+   * Returns the number of rounds for which values are held. This is one more
+   * than the highest round written.
+   * @return roundCount
+   */
+  public int getRoundCount() {
+    return _roundCount;
+  }
+
+  /**
+   * Returns the value for a player and round
+   * @param player
+   *          index of the player
+   * @param round
+   * @return value
+   */
+  public double getValue(int player, int round) {
+    return round < _roundCount ? _values[player][round] : 0;
+  }
+
+  /**
+   * Set the value for a player and round
+   * @param player
+   *          index of the player
+   * @param round
+   * @param value
+   */
+  public void setValue(int player, int round, double value) {
+    ensureRounds(round + 1);
+    _values[player][round] = value;
+  }
+
+  /**
+   * Add to the value for a player and round
+   * @param player
+   *          index of the player
+   * @param round
+   * @param delta
+   */
+  public void addValue(int player, int round, double delta) {
+    ensureRounds(round + 1);
+    _values[player][round] += delta;
+  }
+
+  /**
+   * Adds the values of another set of totals for the same players to these,
+   * from the specified round on.
+   * @param other
+   * @param firstRound
+   */
+  public void add(PlayerRoundTotals other, int firstRound) {
+    if(other._players.length != _players.length) {
+      throw new IllegalArgumentException("Totals are for different players");
+    }
+    if(other._roundCount > firstRound) {
+      ensureRounds(other._roundCount);
+    }
+    for(int p = 0; p < _players.length; p++) {
+      double[] values = _values[p];
+      double[] otherValues = other._values[p];
+      for(int round = firstRound; round < other._roundCount; round++) {
+        values[round] += otherValues[round];
+      }
+    }
+  }
+
+  /**
+   * Returns a read only view of the values for a player, with an element for
+   * each round
+   * @param player
+   *          index of the player
+   * @return values
+   */
+  public List<Double> getList(final int player) {
+    return new AbstractList<Double>() {
+      @Override
+      public Double get(int round) {
+        if(round >= _roundCount) {
+          throw new IndexOutOfBoundsException("round " + round + " >= " + _roundCount);
+        }
+        return _values[player][round];
+      }
+
+      @Override
+      public int size() {
+        return _roundCount;
+      }
+    };
+  }
+
+  /**
+   * Grows the arrays if needed so that there are values for the specified
+   * number of rounds
+   * @param rounds
+   */
+  private void ensureRounds(int rounds) {
+    if(rounds > _roundCount) {
+      if(rounds > _values[0].length) {
+        int capacity = Math.max(rounds, _values[0].length * 2);
+        for(int p = 0; p < _values.length; p++) {
+          _values[p] = Arrays.copyOf(_values[p], capacity);
+        }
+      }
+      _roundCount = rounds;
+    }
+  }
+}
@@ -1,11 +1,15 @@
 package romeo.battle.impl;
 
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Random;
 
 import romeo.fleet.model.FleetContents;
 import romeo.fleet.model.FleetElement;
+import romeo.utils.StreamRandom;
 import romeo.xfactors.api.IXFactorCompiler;
 
 /**
@@ -22,8 +26,10 @@ public class RoundContext {
   protected String _defendingPlayer;
   protected String _thisPlayer;
   protected int _round;
+  protected int _quantityVersion;
   protected FleetElement _fleetElement;
   protected IXFactorCompiler _compiler;
+  protected Random _random;
 
   protected StringBuffer _roundLog = new StringBuffer();
 
@@ -31,18 +37,44 @@ public class RoundContext {
   protected String[] _players;
   protected FleetContents[] _opposingFleets; //calculated in setDefendingPlayer
   protected String[] _opposingPlayers; //calculated in setDefendingPlayer
+  protected Map<String, FleetContents[]> _opposingFleetsCache = new HashMap<String, FleetContents[]>();
+  protected Map<String, String[]> _opposingPlayersCache = new HashMap<String, String[]>();
 
   /**
    * No-args constructor. Round number will be initialised to zero. Other
-   * properties require setting.
+   * properties require setting. The random number generator is initially an
+   * unseeded {@link StreamRandom}.
    */
   public RoundContext(String[] players) {
     setRound(0);
     _players = players;
+    _random = new StreamRandom();
+  }
+
+  /**
+   * Returns the source of random numbers that all the combat rolls and
+   * xFactor expressions in this context are to use. This is not thread safe
+   * and so each thread running battles needs its own context.
+   * @return random
+   */
+  public Random getRandom() {
+    return _random;
+  }
+
+  /**
+   * Set the source of random numbers for combat rolls and xFactor expressions.
+   * The battle calculator uses this to plug in a seeded generator so that
+   * battles may be reproduced.
+   * @param random
+   */
+  public void setRandom(Random random) {
+    _random = Objects.requireNonNull(random, "random may not be null");
   }
 
   public void setFleet(String player, FleetContents fleet) {
     _fleets.put(player, fleet);
+    _opposingFleetsCache.clear();
+    _opposingPlayersCache.clear();
   }
 
   public FleetContents getFleet(String player) {
@@ -152,6 +184,25 @@ public class RoundContext {
     _round = round;
   }
 
+  /**
+   * Returns a counter that changes whenever the quantities in the fleets of
+   * this context change, so that xFactors that depend on quantities can tell
+   * when they need evaluating again. See {@link #quantitiesChanged()}.
+   * @return quantityVersion
+   */
+  public int getQuantityVersion() {
+    return _quantityVersion;
+  }
+
+  /**
+   * Notes that the quantities in the fleets of this context have changed.
+   * Whatever changes the quantities must call this before xFactors are next
+   * evaluated.
+   */
+  public void quantitiesChanged() {
+    _quantityVersion++;
+  }
+
   /**
    * Returns the reference to the current units {@link FleetElement}
    * @return element
@@ -193,13 +244,21 @@ public class RoundContext {
 
   /**
    * Updates the array of opposing fleets. This is basically all the fleets that
-   * are not the current fleet.
+   * are not the current fleet. The arrays are cached for each player until the
+   * fleets are changed, as the battle calculator sets the same fleets into the
+   * context once and then switches between the players many times per round.
    */
   protected void updateOpposingFleets() {
     String thisPlayer = _thisPlayer;
     if(_fleets.size() < 1) {
       throw new IllegalStateException("Fleets have not been initialised");
     }
+    FleetContents[] cachedFleets = _opposingFleetsCache.get(thisPlayer);
+    if(cachedFleets != null) {
+      _opposingFleets = cachedFleets;
+      _opposingPlayers = _opposingPlayersCache.get(thisPlayer);
+      return;
+    }
     FleetContents[] opposingFleets = new FleetContents[_fleets.size() - 1];
     String[] opposingPlayers = new String[opposingFleets.length];
     Iterator<Map.Entry<String, FleetContents>> i = _fleets.entrySet().iterator();
@@ -215,6 +274,8 @@ public class RoundContext {
     }
     _opposingFleets = opposingFleets;
     _opposingPlayers = opposingPlayers;
+    _opposingFleetsCache.put(thisPlayer, opposingFleets);
+    _opposingPlayersCache.put(thisPlayer, opposingPlayers);
   }
 
   /**
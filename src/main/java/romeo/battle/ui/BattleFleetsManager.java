@@ -55,7 +55,7 @@ public class BattleFleetsManager implements ActionListener {
    * @param index
    * @return
    */
-  protected static String presetFleetName(int index) {
+  public static String presetFleetName(int index) {
     return (index >= FLEET_NAMES.length) ? "Player" + index : FLEET_NAMES[index];
   }
 
@@ -92,6 +92,8 @@ public class BattlePanel extends JPanel {
     int numberOfBattles = (int) _settingsService.getLong(ISettings.NUMBER_OF_BATTLES);
     IBattleCalculator bc = Romeo.CONTEXT.createBattleCalculator();
     bc.setNumberOfBattles(numberOfBattles);
+    bc.setSampling(_settingsService.isFlagSet(ISettings.SAMPLE_ROLLS));
+    bc.setTargetPrecision(_settingsService.getDouble(ISettings.TARGET_PRECISION) / 100d);
     _fleets.read(bc);
     BattleProgressorImpl progressor = new BattleProgressorImpl(Romeo.getMainFrame(), bc);
     progressor.setNavigator(_navigator);
@@ -5,20 +5,55 @@
 package romeo.battle.ui;
 
 import java.awt.Component;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.swing.ProgressMonitor;
 import javax.swing.SwingUtilities;
+import javax.swing.Timer;
 
 import romeo.battle.IBattleCalculator;
 import romeo.battle.IBattleMetrics;
 import romeo.ui.NavigatorPanel;
-import romeo.utils.GuiUtils;
+import romeo.utils.BackgroundThreadFactory;
 
 /**
  * Displays and updates the simulation progress using a Swing progress monitor
- * via callbacks from the battle calculator.
+ * via callbacks from the battle calculator. The calculator's callbacks just
+ * record the progress (they may come from several workers at once, so the
+ * highest total reported is kept), and a timer on the event dispatch thread copies it to
+ * the progress monitor a few times a second and notes whether cancel was
+ * clicked, so the simulation never has to wait for the ui. Every second or so
+ * it also fetches interim results from the calculator and shows them in the
+ * report, which is then updated in place until the final results arrive. (If
+ * the simulation is cancelled the last interim results are left showing.)
  */
 public class BattleProgressorImpl implements IBattleCalculator.IProgressor {
+  /**
+   * Executor on which simulations are run. Its thread has a reduced priority so
+   * that the ui is scheduled ahead of the simulation. Simulations started while
+   * another is in progress are queued.
+   */
+  private static final ExecutorService SIMULATOR = Executors
+      .newSingleThreadExecutor(new BackgroundThreadFactory("BattleSimulator"));
+  /**
+   * Interval in milliseconds at which the progress monitor is updated
+   */
+  protected static final int UPDATE_MILLIS = 40;
+  /**
+   * Interval in milliseconds at which interim results are shown
+   */
+  protected static final int SNAPSHOT_MILLIS = 1000;
+
+  private final AtomicInteger _progress = new AtomicInteger();
+  private volatile boolean _cancelled;
+  private Timer _timer; //only used on the event dispatch thread
+  private long _lastSnapshotTime; //ditto
+  private int _reportedBattles; //ditto
+  private Report _report; //ditto
   private ProgressMonitor _pm;
   private NavigatorPanel _navigator;
   private Component _parent;
@@ -34,8 +69,57 @@ public class BattleProgressorImpl implements IBattleCalculator.IProgressor {
     _pm = new ProgressMonitor(_parent, "Simulating Battles", "", 0, _calculator.getNumberOfBattles());
     _pm.setMillisToDecideToPopup(250);
     _pm.setMillisToPopup(500);
-    Thread t = new Thread(_calculator);
-    t.start();
+    _progress.set(0);
+    _cancelled = false;
+    _lastSnapshotTime = System.currentTimeMillis();
+    _reportedBattles = 0;
+    _report = null;
+    _timer = new Timer(UPDATE_MILLIS, new ActionListener() {
+      @Override
+      public void actionPerformed(ActionEvent e) {
+        updateProgressMonitor();
+      }
+    });
+    _timer.start();
+    SIMULATOR.execute(_calculator);
+  }
+
+  /**
+   * Called by the timer on the event dispatch thread to show the latest
+   * progress and check for cancellation
+   */
+  protected void updateProgressMonitor() {
+    int progress = _progress.get();
+    _pm.setProgress(progress);
+    _pm.setNote("" + progress);
+    if(_pm.isCanceled()) {
+      _cancelled = true;
+    }
+    long now = System.currentTimeMillis();
+    if(now - _lastSnapshotTime >= SNAPSHOT_MILLIS && !_cancelled) {
+      _lastSnapshotTime = now;
+      IBattleMetrics snapshot = _calculator.getSnapshot();
+      if(snapshot != null && snapshot.getNumberOfBattles() > _reportedBattles) {
+        _reportedBattles = snapshot.getNumberOfBattles();
+        showReport(snapshot);
+      }
+    }
+  }
+
+  /**
+   * Shows the results in the navigator, updating the report if one is already
+   * showing
+   * @param metrics
+   */
+  protected void showReport(IBattleMetrics metrics) {
+    if(_report == null) {
+      _report = new Report(metrics);
+      if(_navigator != null) {
+        _navigator.display(_report);
+      }
+    } else {
+      _report.update(metrics);
+    }
   }
 
   @Override
@@ -44,19 +128,24 @@ public class BattleProgressorImpl implements IBattleCalculator.IProgressor {
     {
       @Override
       public void run() {
+        if(_timer != null) {
+          _timer.stop();
+        }
         _pm.close();
-        if(_navigator != null && metrics != null) {
-          Report report = new Report(metrics);
-          _navigator.display(report);
+        if(metrics != null) {
+          showReport(metrics);
         }
       }
     });
-    System.gc();
   }
 
   @Override
   public boolean setCurrentBattle(int progress) {
-    return GuiUtils.updateProgressMonitor(_pm, progress, "" + progress);
+    int current = _progress.get();
+    while(progress > current && !_progress.compareAndSet(current, progress)) {
+      current = _progress.get();
+    }
+    return _cancelled;
   }
 
   public void setNavigator(NavigatorPanel panel) {
@@ -22,25 +22,34 @@ import romeo.utils.INamed;
  * {@link ReportSummaryPanel}, {@link ReportUnitsPanel},
  * {@link ReportRoundsPanel}, {@link ReportFirepowerPanel}, and
  * {@link ReportPdPanel}. This class also exposes some static utility methods
- * used by code in these panels.
+ * used by code in these panels. While a simulation is running the report may
+ * be shown with interim results and then updated with later ones, in which
+ * case the panels update their charts and tables in place.
  */
 public class Report extends JPanel implements INamed {
+  private ReportNotesPanel _notesPanel;
+  private ReportSummaryPanel _summaryPanel;
+  private ReportUnitsPanel _survivorsPanel;
+  private ReportRoundsPanel _roundsPanel;
+  private ReportFirepowerPanel _firepowerPanel;
+  private ReportPdPanel _pdPanel;
+
   public Report(IBattleMetrics metrics) {
     List<PlayerSummary> summary = metrics.createSummary();
 
-    JPanel notesPanel = new ReportNotesPanel(metrics.getNotes());
-    JPanel summaryPanel = new ReportSummaryPanel(metrics, summary);
-    JPanel survivorsPanel = new ReportUnitsPanel(metrics, summary);
-    JPanel roundsPanel = new ReportRoundsPanel(metrics);
-    JPanel firepowerPanel = new ReportFirepowerPanel(metrics);
-    JPanel pdPanel = new ReportPdPanel(metrics);
+    _notesPanel = new ReportNotesPanel(metrics.getNotes());
+    _summaryPanel = new ReportSummaryPanel(metrics, summary);
+    _survivorsPanel = new ReportUnitsPanel(metrics, summary);
+    _roundsPanel = new ReportRoundsPanel(metrics);
+    _firepowerPanel = new ReportFirepowerPanel(metrics);
+    _pdPanel = new ReportPdPanel(metrics);
 
-    JScrollPane notesScroll = new JScrollPane(notesPanel);
-    JScrollPane summaryScroll = new JScrollPane(summaryPanel);
-    JScrollPane survivorsScroll = new JScrollPane(survivorsPanel);
-    JScrollPane roundsScroll = new JScrollPane(roundsPanel);
-    JScrollPane firepowerScroll = new JScrollPane(firepowerPanel);
-    JScrollPane pdScroll = new JScrollPane(pdPanel);
+    JScrollPane notesScroll = new JScrollPane(_notesPanel);
+    JScrollPane summaryScroll = new JScrollPane(_summaryPanel);
+    JScrollPane survivorsScroll = new JScrollPane(_survivorsPanel);
+    JScrollPane roundsScroll = new JScrollPane(_roundsPanel);
+    JScrollPane firepowerScroll = new JScrollPane(_firepowerPanel);
+    JScrollPane pdScroll = new JScrollPane(_pdPanel);
 
     JTabbedPane tabPane = new JTabbedPane();
     tabPane.setMaximumSize(new Dimension(256, 256));
@@ -65,6 +74,21 @@ public class Report extends JPanel implements INamed {
     this.revalidate(); //?
   }
 
+  /**
+   * Updates the report to show the specified results, which should be for the
+   * same players. Must be called on the event dispatch thread.
+   * @param metrics
+   */
+  public void update(IBattleMetrics metrics) {
+    List<PlayerSummary> summary = metrics.createSummary();
+    _notesPanel.update(metrics.getNotes());
+    _summaryPanel.update(metrics, summary);
+    _survivorsPanel.update(metrics, summary);
+    _roundsPanel.update(metrics);
+    _firepowerPanel.update(metrics);
+    _pdPanel.update(metrics);
+  }
+
   @Override
   public String getName() { //nb: we are conflict with a getName in JComponent here
     return "Battle Simulation Report";
@@ -22,12 +22,12 @@ import romeo.battle.IBattleMetrics;
 import romeo.utils.GuiUtils;
 
 public class ReportFirepowerPanel extends JPanel {
+  private DefaultTableXYDataset _xyDsAdj;
+  private XYPlot _adjFpPlot;
+
   public ReportFirepowerPanel(IBattleMetrics metrics) {
     String[] players = metrics.getPlayers();
-    List<? extends Number> battleLengths = metrics.getBattleLengths();
-    Number median = (Number) battleLengths.get(battleLengths.size() / 2);
     Dimension chartSize = Report.getChartSize(players.length);
-    double raTick = Report.getRaTick(metrics);
 
     //Charts - firepower
     //System.out.println("Prepare average firepower chart");
@@ -59,26 +59,13 @@ public class ReportFirepowerPanel extends JPanel {
     //    fpChartPanel.setInitialDelay(0);
 
     //System.out.println("Prepare adjusted average firepower chart");
-    DefaultTableXYDataset xyDsAdj = new DefaultTableXYDataset();
-    for(int p = 0; p < players.length; p++) {
-      String player = players[p];
-      XYSeries series = new XYSeries(player, false, false);
-      List<? extends Number> data = metrics.getFirepower(player, true);
-      for(int i = 0; i < data.size(); i++) { //Copy data into series
-        series.add((double) i, ((Number) data.get(i)).doubleValue());
-      }
-      xyDsAdj.addSeries(series);
-    }
+    _xyDsAdj = new DefaultTableXYDataset();
     JFreeChart fpChartAdj = ChartFactory.createXYStepChart("Adjusted average post round firepower", "Round",
-        "Firepower", xyDsAdj, PlotOrientation.VERTICAL, true, true, false);
-    XYPlot adjFpPlot = (XYPlot) fpChartAdj.getPlot();
+        "Firepower", _xyDsAdj, PlotOrientation.VERTICAL, true, true, false);
+    _adjFpPlot = (XYPlot) fpChartAdj.getPlot();
     NumberAxis xAxis = new NumberAxis("Round");
-    xAxis.setTickUnit(new NumberTickUnit(raTick));
-    adjFpPlot.setDomainAxis(xAxis); //replaces defaul DateAxis of the STepCHart
-
-    ValueMarker medianRoundsFp = new ValueMarker(median.doubleValue());
-    medianRoundsFp.setLabel("M");
-    adjFpPlot.addDomainMarker(medianRoundsFp);
+    _adjFpPlot.setDomainAxis(xAxis); //replaces defaul DateAxis of the STepCHart
+    update(metrics);
 
     ChartPanel fpChartPanelAdj = new ChartPanel(fpChartAdj);
     fpChartPanelAdj.setPreferredSize(chartSize);
@@ -100,4 +87,32 @@ public class ReportFirepowerPanel extends JPanel {
     add(new JLabel(""), gbc);
     revalidate(); //?
   }
+
+  /**
+   * Replaces the data in the chart with that from the specified metrics
+   * @param metrics
+   */
+  public void update(IBattleMetrics metrics) {
+    String[] players = metrics.getPlayers();
+    List<? extends Number> battleLengths = metrics.getBattleLengths();
+    Number median = (Number) battleLengths.get(battleLengths.size() / 2);
+    double raTick = Report.getRaTick(metrics);
+
+    _xyDsAdj.removeAllSeries();
+    for(int p = 0; p < players.length; p++) {
+      String player = players[p];
+      XYSeries series = new XYSeries(player, false, false);
+      List<? extends Number> data = metrics.getFirepower(player, true);
+      for(int i = 0; i < data.size(); i++) { //Copy data into series
+        series.add((double) i, ((Number) data.get(i)).doubleValue());
+      }
+      _xyDsAdj.addSeries(series);
+    }
+    ((NumberAxis) _adjFpPlot.getDomainAxis()).setTickUnit(new NumberTickUnit(raTick));
+
+    ValueMarker medianRoundsFp = new ValueMarker(median.doubleValue());
+    medianRoundsFp.setLabel("M");
+    _adjFpPlot.clearDomainMarkers();
+    _adjFpPlot.addDomainMarker(medianRoundsFp);
+  }
 }
@@ -9,16 +9,17 @@ import romeo.utils.Convert;
 import romeo.utils.GuiUtils;
 
 public class ReportNotesPanel extends JPanel {
+  private JLabel _notesLabel;
+
   public ReportNotesPanel(String notes) {
-    String notesHtml = "<html>" + notes + "</html>";
-    notesHtml = Convert.replace(notesHtml, "\n", "<br>");
-    JLabel notesLabel = new JLabel(notesHtml);
-    notesLabel.setVerticalTextPosition(JLabel.TOP);
+    _notesLabel = new JLabel();
+    _notesLabel.setVerticalTextPosition(JLabel.TOP);
+    update(notes);
 
     GridBagConstraints gbc = GuiUtils.prepGridBag(this);
     gbc.insets = Report.getDefaultInsets();
     gbc.weightx = 2;
-    add(notesLabel, gbc);
+    add(_notesLabel, gbc);
     gbc.weightx = 1;
     gbc.weighty = 1;
     gbc.fill = GridBagConstraints.BOTH;
@@ -26,4 +27,10 @@ public class ReportNotesPanel extends JPanel {
     //gbc.gridx = 1;
     add(new JLabel(), gbc); //Filler
   }
+
+  public void update(String notes) {
+    String notesHtml = "<html>" + notes + "</html>";
+    notesHtml = Convert.replace(notesHtml, "\n", "<br>");
+    _notesLabel.setText(notesHtml);
+  }
 }
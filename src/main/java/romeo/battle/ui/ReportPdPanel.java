@@ -25,61 +25,25 @@ import romeo.battle.impl.PlayerIndexedValues;
 import romeo.utils.GuiUtils;
 
 public class ReportPdPanel extends JPanel {
+  private DefaultTableXYDataset _cumulativePdDs;
+  private XYPlot _cPdPlot;
+  private DefaultTableXYDataset _xyDsAdjPd;
+  private XYPlot _adjPdPlot;
+
   public ReportPdPanel(IBattleMetrics metrics) {
     String[] players = metrics.getPlayers();
-    List<? extends Number> battleLengths = metrics.getBattleLengths();
-    Number median = (Number) battleLengths.get(battleLengths.size() / 2);
-    Number shortest = (Number) battleLengths.get(0);
-    double average = metrics.getAverageRounds();
     Dimension chartSize = Report.getChartSize(players.length);
-    double raTick = Report.getRaTick(metrics);
 
     //Charts - PD
     //Cumulative PD
-    DefaultTableXYDataset cumulativePdDs = new DefaultTableXYDataset();
-    PlayerIndexedValues cumulativePd = new PlayerIndexedValues(players);
-    Map<String, XYSeries> cpdSeries = new HashMap<String, XYSeries>();
-    int n = metrics.getRecordedRoundCount();
-    for(int r = 0; r < n; r++) {
-      for(int p = 0; p < players.length; p++) {
-        String player = players[p];
-        List<? extends Number> data = metrics.getPopulationDamage(player, true);
-        XYSeries series = null;
-        if(r == 0) { //Create the series before first use
-          series = new XYSeries(player, false, false);
-          cpdSeries.put(player, series);
-          //nb: we cant add series to tableDS yet or we wont be able to add additonal
-          //    values for other players for round 0
-        }
-        series = (series == null) ? (XYSeries) cpdSeries.get(player) : series;
-        cumulativePd.addValue(player, ((Number) data.get(r)).doubleValue());
-        series.add((double) r, cumulativePd.getValue(player));
-      }
-    }
-    for(int p = 0; p < players.length; p++) { //Now add the series to table.
-      XYSeries series = (XYSeries) cpdSeries.get(players[p]);
-      cumulativePdDs.addSeries(series);
-    }
+    _cumulativePdDs = new DefaultTableXYDataset();
 
     //todo: I should quite like to add a second Y axis to show total pop killed
     JFreeChart cumulativePdChart = ChartFactory.createXYStepChart("Cumulative PD (Adjusted)", "Round", "Pop Damage",
-        cumulativePdDs, PlotOrientation.VERTICAL, true, true, false);
+        _cumulativePdDs, PlotOrientation.VERTICAL, true, true, false);
     NumberAxis cPdNa = new NumberAxis("Round");
-    cPdNa.setTickUnit(new NumberTickUnit(raTick));
-    XYPlot cPdPlot = (XYPlot) cumulativePdChart.getPlot();
-    cPdPlot.setDomainAxis(cPdNa);
-
-    ValueMarker medianRounds = new ValueMarker(median.doubleValue());
-    medianRounds.setLabel("M");
-    cPdPlot.addDomainMarker(medianRounds);
-
-    ValueMarker shortestRounds = new ValueMarker(shortest.doubleValue());
-    shortestRounds.setLabel("S");
-    cPdPlot.addDomainMarker(shortestRounds);
-
-    ValueMarker averageRounds = new ValueMarker(average);
-    averageRounds.setLabel("A");
-    cPdPlot.addDomainMarker(averageRounds);
+    _cPdPlot = (XYPlot) cumulativePdChart.getPlot();
+    _cPdPlot.setDomainAxis(cPdNa);
 
     ChartPanel cumulativePdChartPanel = new ChartPanel(cumulativePdChart);
     cumulativePdChartPanel.setPreferredSize(chartSize);
@@ -114,22 +78,13 @@ public class ReportPdPanel extends JPanel {
     //    pdChartPanel.setInitialDelay(0);
 
     //Adjusted PD chart
-    DefaultTableXYDataset xyDsAdjPd = new DefaultTableXYDataset();
-    for(int p = 0; p < players.length; p++) {
-      String player = players[p];
-      XYSeries series = new XYSeries(player, false, false);
-      List<? extends Number> data = metrics.getPopulationDamage(player, false);
-      for(int i = 0; i < data.size(); i++) {
-        series.add((double) i, ((Number) data.get(i)).doubleValue());
-      }
-      xyDsAdjPd.addSeries(series);
-    }
-    JFreeChart pdChartAdj = ChartFactory.createXYStepChart("Adjusted average PD", "Round", "Pop Damage", xyDsAdjPd,
+    _xyDsAdjPd = new DefaultTableXYDataset();
+    JFreeChart pdChartAdj = ChartFactory.createXYStepChart("Adjusted average PD", "Round", "Pop Damage", _xyDsAdjPd,
         PlotOrientation.VERTICAL, true, true, false);
-    XYPlot adjPdPlot = (XYPlot) pdChartAdj.getPlot();
+    _adjPdPlot = (XYPlot) pdChartAdj.getPlot();
     NumberAxis xAxisPd = new NumberAxis("Round");
-    xAxisPd.setTickUnit(new NumberTickUnit(raTick));
-    adjPdPlot.setDomainAxis(xAxisPd); //replaces defaul DateAxis of the STepCHart
+    _adjPdPlot.setDomainAxis(xAxisPd); //replaces defaul DateAxis of the STepCHart
+    update(metrics);
     ChartPanel pdChartPanelAdj = new ChartPanel(pdChartAdj);
     pdChartPanelAdj.setPreferredSize(chartSize);
     pdChartPanelAdj.setPopupMenu(null);
@@ -155,4 +110,68 @@ public class ReportPdPanel extends JPanel {
     revalidate(); //?
 
   }
+
+  /**
+   * Replaces the data in the charts with that from the specified metrics
+   * @param metrics
+   */
+  public void update(IBattleMetrics metrics) {
+    String[] players = metrics.getPlayers();
+    List<? extends Number> battleLengths = metrics.getBattleLengths();
+    Number median = (Number) battleLengths.get(battleLengths.size() / 2);
+    Number shortest = (Number) battleLengths.get(0);
+    double average = metrics.getAverageRounds();
+    double raTick = Report.getRaTick(metrics);
+
+    PlayerIndexedValues cumulativePd = new PlayerIndexedValues(players);
+    Map<String, XYSeries> cpdSeries = new HashMap<String, XYSeries>();
+    int n = metrics.getRecordedRoundCount();
+    for(int r = 0; r < n; r++) {
+      for(int p = 0; p < players.length; p++) {
+        String player = players[p];
+        List<? extends Number> data = metrics.getPopulationDamage(player, true);
+        XYSeries series = null;
+        if(r == 0) { //Create the series before first use
+          series = new XYSeries(player, false, false);
+          cpdSeries.put(player, series);
+          //nb: we cant add series to tableDS yet or we wont be able to add additonal
+          //    values for other players for round 0
+        }
+        series = (series == null) ? (XYSeries) cpdSeries.get(player) : series;
+        cumulativePd.addValue(player, ((Number) data.get(r)).doubleValue());
+        series.add((double) r, cumulativePd.getValue(player));
+      }
+    }
+    _cumulativePdDs.removeAllSeries();
+    for(int p = 0; p < players.length; p++) { //Now add the series to table.
+      XYSeries series = (XYSeries) cpdSeries.get(players[p]);
+      _cumulativePdDs.addSeries(series);
+    }
+    ((NumberAxis) _cPdPlot.getDomainAxis()).setTickUnit(new NumberTickUnit(raTick));
+
+    _cPdPlot.clearDomainMarkers();
+    ValueMarker medianRounds = new ValueMarker(median.doubleValue());
+    medianRounds.setLabel("M");
+    _cPdPlot.addDomainMarker(medianRounds);
+
+    ValueMarker shortestRounds = new ValueMarker(shortest.doubleValue());
+    shortestRounds.setLabel("S");
+    _cPdPlot.addDomainMarker(shortestRounds);
+
+    ValueMarker averageRounds = new ValueMarker(average);
+    averageRounds.setLabel("A");
+    _cPdPlot.addDomainMarker(averageRounds);
+
+    _xyDsAdjPd.removeAllSeries();
+    for(int p = 0; p < players.length; p++) {
+      String player = players[p];
+      XYSeries series = new XYSeries(player, false, false);
+      List<? extends Number> data = metrics.getPopulationDamage(player, false);
+      for(int i = 0; i < data.size(); i++) {
+        series.add((double) i, ((Number) data.get(i)).doubleValue());
+      }
+      _xyDsAdjPd.addSeries(series);
+    }
+    ((NumberAxis) _adjPdPlot.getDomainAxis()).setTickUnit(new NumberTickUnit(raTick));
+  }
 }
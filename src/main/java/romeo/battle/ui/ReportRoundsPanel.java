@@ -30,41 +30,27 @@ import romeo.utils.Convert;
 import romeo.utils.GuiUtils;
 
 public class ReportRoundsPanel extends JPanel {
+  private JLabel _roundsLabel;
+  private DefaultCategoryDataset _dcd;
+  private CategoryPlot _roundPlot;
+  private XYSeries _raSeries;
+  private XYPlot _raPlot;
+
   public ReportRoundsPanel(IBattleMetrics metrics) {
     Dimension chartSize = Report.getChartSize(metrics.getPlayers().length);
-
-    List<? extends Number> battleLengths = metrics.getBattleLengths();
-    Number median = (Number) battleLengths.get(battleLengths.size() / 2);
-    Number shortest = (Number) battleLengths.get(0);
-    Number longest = (Number) battleLengths.get(battleLengths.size() - 1);
-
-    double numberOfBattles = metrics.getNumberOfBattles();
-    NumberTickUnit battlesTickUnit = new NumberTickUnit(Math.ceil((double) numberOfBattles / 10d));
-
-    double average = metrics.getAverageRounds();
-    JLabel roundsLabel = new JLabel("<html>Median rounds per battle was " + median + " , average "
-        + Convert.toStr(average, 2) + "<br>The shortest battle was " + shortest + " rounds."
-        + "<br>The longest battle was " + longest + " rounds." + "</html>");
+    _roundsLabel = new JLabel();
 
     //Charts - Rounds
-    int maxRound = Charts.getLastInt(battleLengths);
-    int roundCatSize = maxRound < 100 ? 5 : 10;
     //int roundChartHeight = maxRound <= 40 ? 415 : 600;
     int roundChartHeight = 415;
-    int maxCat = 200;
-    if(maxRound <= 40) {
-      roundCatSize = 1;
-      maxCat = 41;
-    }
     Dimension roundChartSize = new Dimension(chartSize.width, roundChartHeight);
-    KeyedValues keyedValues2 = Charts.getFrequencies(battleLengths, roundCatSize, maxCat);
-    DefaultCategoryDataset dcd = Charts.addColumns(null, keyedValues2, "");
-    JFreeChart roundChart = ChartFactory.createBarChart(null, "Rounds", "Battles", dcd, PlotOrientation.HORIZONTAL,
+    _dcd = new DefaultCategoryDataset();
+    JFreeChart roundChart = ChartFactory.createBarChart(null, "Rounds", "Battles", _dcd, PlotOrientation.HORIZONTAL,
         false, true, false);
-    ((NumberAxis) ((CategoryPlot) roundChart.getPlot()).getRangeAxis()).setTickUnit(battlesTickUnit);
+    _roundPlot = (CategoryPlot) roundChart.getPlot();
     StandardCategoryToolTipGenerator cctg = new StandardCategoryToolTipGenerator("{2} battles had {1} rounds",
         new DecimalFormat("0"));
-    ((CategoryPlot) roundChart.getPlot()).getRenderer().setBaseToolTipGenerator(cctg);
+    _roundPlot.getRenderer().setBaseToolTipGenerator(cctg);
     ChartPanel colPanel = new ChartPanel(roundChart);
     colPanel.setPreferredSize(roundChartSize);
     colPanel.setPopupMenu(null);
@@ -72,26 +58,16 @@ public class ReportRoundsPanel extends JPanel {
 
     //Battles reaching round chart
     DefaultTableXYDataset raDs = new DefaultTableXYDataset();
-    XYSeries raSeries = new XYSeries("", false, false);
-    List<? extends Number> raList = metrics.getRoundAchievement();
-    for(int i = 0; i < raList.size(); i++) {
-      raSeries.add((double) i, ((Number) raList.get(i)).doubleValue());
-    }
-    raDs.addSeries(raSeries);
+    _raSeries = new XYSeries("", false, false);
+    raDs.addSeries(_raSeries);
     JFreeChart raChart = ChartFactory.createXYLineChart("Battles reaching round", "Round", "Battles", raDs,
         PlotOrientation.VERTICAL, false, true, false);
-    double raTick = maxRound < 16 ? 1 : Math.ceil(maxRound / 16d);
-    XYPlot raPlot = (XYPlot) raChart.getPlot();
-    ((NumberAxis) (raPlot).getDomainAxis()).setTickUnit(new NumberTickUnit(raTick));
-    ((NumberAxis) (raPlot).getRangeAxis()).setTickUnit(battlesTickUnit);
+    _raPlot = (XYPlot) raChart.getPlot();
 
     StandardXYToolTipGenerator raTtg = new StandardXYToolTipGenerator("{2} battles had {1} or more rounds",
         new DecimalFormat("0"), new DecimalFormat("0"));
-    raPlot.getRenderer().setBaseToolTipGenerator(raTtg);
-
-    ValueMarker medianRoundsRa = new ValueMarker(median.doubleValue());
-    medianRoundsRa.setLabel("M");
-    raPlot.addDomainMarker(medianRoundsRa);
+    _raPlot.getRenderer().setBaseToolTipGenerator(raTtg);
+    update(metrics);
 
     ChartPanel raChartPanel = new ChartPanel(raChart);
     raChartPanel.setPreferredSize(chartSize);
@@ -101,7 +77,7 @@ public class ReportRoundsPanel extends JPanel {
     GridBagConstraints gbc = GuiUtils.prepGridBag(this);
     gbc.insets = Report.getDefaultInsets();
 
-    add(roundsLabel, gbc);
+    add(_roundsLabel, gbc);
     gbc.gridy++;
     add(colPanel, gbc);
     gbc.gridy++;
@@ -116,4 +92,52 @@ public class ReportRoundsPanel extends JPanel {
     add(new JLabel(""), gbc);
     revalidate(); //?
   }
+
+  /**
+   * Replaces the data in the label and charts with that from the specified
+   * metrics
+   * @param metrics
+   */
+  public void update(IBattleMetrics metrics) {
+    List<? extends Number> battleLengths = metrics.getBattleLengths();
+    Number median = (Number) battleLengths.get(battleLengths.size() / 2);
+    Number shortest = (Number) battleLengths.get(0);
+    Number longest = (Number) battleLengths.get(battleLengths.size() - 1);
+
+    double numberOfBattles = metrics.getNumberOfBattles();
+    NumberTickUnit battlesTickUnit = new NumberTickUnit(Math.ceil((double) numberOfBattles / 10d));
+
+    double average = metrics.getAverageRounds();
+    _roundsLabel.setText("<html>Median rounds per battle was " + median + " , average "
+        + Convert.toStr(average, 2) + "<br>The shortest battle was " + shortest + " rounds."
+        + "<br>The longest battle was " + longest + " rounds." + "</html>");
+
+    int maxRound = Charts.getLastInt(battleLengths);
+    int roundCatSize = maxRound < 100 ? 5 : 10;
+    int maxCat = 200;
+    if(maxRound <= 40) {
+      roundCatSize = 1;
+      maxCat = 41;
+    }
+    KeyedValues keyedValues2 = Charts.getFrequencies(battleLengths, roundCatSize, maxCat);
+    _dcd.clear();
+    Charts.addColumns(_dcd, keyedValues2, "");
+    ((NumberAxis) _roundPlot.getRangeAxis()).setTickUnit(battlesTickUnit);
+
+    List<? extends Number> raList = metrics.getRoundAchievement();
+    _raSeries.setNotify(false);
+    _raSeries.clear();
+    for(int i = 0; i < raList.size(); i++) {
+      _raSeries.add((double) i, ((Number) raList.get(i)).doubleValue());
+    }
+    _raSeries.setNotify(true); //fires a single change event for all of the above
+    double raTick = maxRound < 16 ? 1 : Math.ceil(maxRound / 16d);
+    ((NumberAxis) (_raPlot).getDomainAxis()).setTickUnit(new NumberTickUnit(raTick));
+    ((NumberAxis) (_raPlot).getRangeAxis()).setTickUnit(battlesTickUnit);
+
+    _raPlot.clearDomainMarkers();
+    ValueMarker medianRoundsRa = new ValueMarker(median.doubleValue());
+    medianRoundsRa.setLabel("M");
+    _raPlot.addDomainMarker(medianRoundsRa);
+  }
 }
@@ -20,7 +20,6 @@ import org.jfree.chart.JFreeChart;
 import org.jfree.chart.labels.PieSectionLabelGenerator;
 import org.jfree.chart.labels.PieToolTipGenerator;
 import org.jfree.chart.plot.PiePlot;
-import org.jfree.data.DefaultKeyedValues;
 import org.jfree.data.general.DatasetUtilities;
 import org.jfree.data.general.DefaultPieDataset;
 import org.jfree.data.general.PieDataset;
@@ -35,73 +34,46 @@ import romeo.utils.Convert;
 import romeo.utils.GuiUtils;
 
 public class ReportSummaryPanel extends JPanel {
+  /**
+   * Key of the pie section for tied battles
+   */
+  private static final String TIED = "TIED";
+
+  private JLabel _tiesLabel;
+  private BeanTableModel _summaryModel;
+  private DefaultPieDataset _winDs;
+
   public ReportSummaryPanel(IBattleMetrics metrics, List<PlayerSummary> summary) {
     String[] players = metrics.getPlayers();
 
     Dimension chartSize = Report.getChartSize(players.length);
 
-    List<? extends Number> battleLengths = metrics.getBattleLengths();
-    Number median = (Number) battleLengths.get(battleLengths.size() / 2);
-
-    double tiedPercentage = metrics.getWinsPercentage(null) * 100d;
-    JLabel tiesLabel = new JLabel("<html>" + metrics.getNumberOfBattles() + " simulated battles were fought in "
-        + metrics.getTime() + " milliseconds" + "<br>Median rounds per battle was " + median + " , average "
-        + Convert.toStr(metrics.getAverageRounds(), 2) + "<br>The proportion of tied battles was "
-        + Convert.toStr(tiedPercentage, 2) + "% (" + metrics.getWinCount(null) + ")" + "</html>");
-
-    //Number shortest = (Number)battleLengths.get(0);
-    Number longest = (Number) battleLengths.get(battleLengths.size() - 1);
-
-    if(longest.intValue() + 1 != metrics.getRecordedRoundCount()) {
-      throw new IllegalStateException(
-          "logic error in length: longest=" + longest + " recorded=" + metrics.getRecordedRoundCount());
-    }
+    _tiesLabel = new JLabel();
 
     String winsPercentLabel = "Win %";
-    List<PlayerSummary> copyOfSummary = new ArrayList<PlayerSummary>(summary); //Shallow copy allowing independent sorting
-    BeanTableModel summaryModel = new BeanTableModel(
+    _summaryModel = new BeanTableModel(
         new BeanTableModel.ColumnDef[] { new BeanTableModel.ColumnDef("name", "Player"),
             //new BeanTableModel.ColumnDef("averageSurvivingFirepower","Avg FP"),
             new BeanTableModel.ColumnDef("adjustedAverageSurvivingFirepower", "Adj Avg FP"),
             new BeanTableModel.ColumnDef("winCount", "Victories"),
             new BeanTableModel.ColumnDef("winPercent", winsPercentLabel), },
-        copyOfSummary);
-    JTable summaryTable = new JTable(summaryModel);
+        new ArrayList<PlayerSummary>());
+    JTable summaryTable = new JTable(_summaryModel);
     summaryTable.setDefaultRenderer(Double.class, new NumericCellRenderer(2));
 
     JScrollPane summaryScroll = new JScrollPane(summaryTable);
-    int wpcol = summaryModel.findColumn(winsPercentLabel);
-    summaryModel.setSortColumn(wpcol);
-    summaryModel.setSortDescending(true);
+    int wpcol = _summaryModel.findColumn(winsPercentLabel);
+    _summaryModel.setSortColumn(wpcol);
+    _summaryModel.setSortDescending(true);
     GuiUtils.setColumnWidths(summaryTable, new int[] { 100 });
 
-    //20080213 - Quick hack to dump the survivors to the console
-    //           to provide all digits of the stats as requested by JoelHalpern
-    Log log = LogFactory.getLog(this.getClass());
-    String[] playerNames = metrics.getPlayers();
-    if(log.isInfoEnabled()) {
-      for(int p = playerNames.length - 1; p >= 0; p--) {
-        String player = playerNames[p];
-        FleetContents averageSurvivors = metrics.getAverageSurvivors(player, false);
-        for(FleetElement element : averageSurvivors) {
-          log.info(player + ": Avg surviving " + element.getUnit().getName() + " = " + element.getQuantity());
-        }
-      }
-    }
-
     //Charts
     //Summary
     //System.out.println("Prepare wins chart");
-    DefaultKeyedValues winKv = new DefaultKeyedValues();
-    for(int p = 0; p < players.length; p++) {
-      String player = players[p];
-      double percent = metrics.getWinsPercentage(player);
-      int winCount = metrics.getWinCount(player);
-      winKv.addValue(player + " " + Convert.toStr(percent * 100d, 2) + "%", winCount);
-    }
-    winKv.addValue("TIED " + Convert.toStr(metrics.getWinsPercentage(null) * 100d, 2) + "%", metrics.getWinCount(null));
-    DefaultPieDataset winDs = new DefaultPieDataset(winKv);
-    JFreeChart winChart = ChartFactory.createPieChart("", winDs, true, true, false);
+    //The sections are keyed by player (so they keep their colours as the results are updated)
+    //and the labels add the percentage of the battles they won
+    _winDs = new DefaultPieDataset();
+    JFreeChart winChart = ChartFactory.createPieChart("", _winDs, true, true, false);
     ((PiePlot) winChart.getPlot()).setLabelGenerator(new PieSectionLabelGenerator() {
 
       @Override
@@ -114,10 +86,22 @@ public class ReportSummaryPanel extends JPanel {
       @SuppressWarnings("rawtypes")
       public String generateSectionLabel(PieDataset dataset, Comparable key) {
         //TODO - change this so it shows label if its one of the top 3 or 4 results in the pie
-        double value = ((Number) dataset.getValue(key)).doubleValue();
-        double total = DatasetUtilities.calculatePieDatasetTotal(dataset);
-        double percent = value / total;
-        return percent >= 0.05 ? key.toString() : null;
+        return getPercent(dataset, key) >= 0.05 ? getLabel(dataset, key) : null;
+      }
+
+    });
+    ((PiePlot) winChart.getPlot()).setLegendLabelGenerator(new PieSectionLabelGenerator() {
+
+      @Override
+      @SuppressWarnings("rawtypes")
+      public AttributedString generateAttributedSectionLabel(PieDataset dataset, Comparable key) {
+        return null;
+      }
+
+      @Override
+      @SuppressWarnings("rawtypes")
+      public String generateSectionLabel(PieDataset dataset, Comparable key) {
+        return getLabel(dataset, key);
       }
 
     });
@@ -127,13 +111,14 @@ public class ReportSummaryPanel extends JPanel {
       @Override
       @SuppressWarnings("rawtypes")
       public String generateToolTip(PieDataset dataset, Comparable key) {
-        return key + " (" + dataset.getValue(key).intValue() + ")";
+        return getLabel(dataset, key) + " (" + dataset.getValue(key).intValue() + ")";
       }
 
     });
     ((PiePlot) winChart.getPlot()).setShadowXOffset(0);
     ((PiePlot) winChart.getPlot()).setShadowYOffset(0);
     ((PiePlot) winChart.getPlot()).setShadowPaint(Color.BLACK);
+    update(metrics, summary);
 
     ChartPanel winChartPanel = new ChartPanel(winChart);
     winChartPanel.setPreferredSize(chartSize);
@@ -143,7 +128,7 @@ public class ReportSummaryPanel extends JPanel {
     GridBagConstraints gbc = GuiUtils.prepGridBag(this);
     gbc.insets = Report.getDefaultInsets();
     gbc.gridwidth = 2;
-    add(tiesLabel, gbc);
+    add(_tiesLabel, gbc);
 
     gbc.gridy++;
     summaryScroll.setPreferredSize(new Dimension(chartSize.width, 100));
@@ -165,4 +150,85 @@ public class ReportSummaryPanel extends JPanel {
     //end of laying out
     revalidate(); //?
   }
+
+  /**
+   * Replaces the data in the label, table and chart with that from the
+   * specified metrics
+   * @param metrics
+   * @param summary
+   */
+  public void update(IBattleMetrics metrics, List<PlayerSummary> summary) {
+    String[] players = metrics.getPlayers();
+
+    List<? extends Number> battleLengths = metrics.getBattleLengths();
+    Number median = (Number) battleLengths.get(battleLengths.size() / 2);
+
+    double tiedPercentage = metrics.getWinsPercentage(null) * 100d;
+    String interim = metrics.isComplete() ? ""
+        : "<b>These are interim results from the battles simulated so far</b><br>";
+    _tiesLabel.setText("<html>" + interim + metrics.getNumberOfBattles() + " simulated battles were fought in "
+        + metrics.getTime() + " milliseconds" + "<br>Median rounds per battle was " + median + " , average "
+        + Convert.toStr(metrics.getAverageRounds(), 2) + "<br>The proportion of tied battles was "
+        + Convert.toStr(tiedPercentage, 2) + "% (" + metrics.getWinCount(null) + ")"
+        + "<br>The results are within " + Convert.toStr(metrics.getPrecision() * 100d, 2)
+        + "% at 95% confidence" + "<br>The random seed was "
+        + metrics.getSeed() + "</html>");
+
+    //Number shortest = (Number)battleLengths.get(0);
+    Number longest = (Number) battleLengths.get(battleLengths.size() - 1);
+
+    if(longest.intValue() + 1 != metrics.getRecordedRoundCount()) {
+      throw new IllegalStateException(
+          "logic error in length: longest=" + longest + " recorded=" + metrics.getRecordedRoundCount());
+    }
+
+    List<PlayerSummary> copyOfSummary = new ArrayList<PlayerSummary>(summary); //Shallow copy allowing independent sorting
+    _summaryModel.setData(copyOfSummary);
+    _summaryModel.setSortColumn(_summaryModel.getSortColumn()); //sort the new data
+
+    //20080213 - Quick hack to dump the survivors to the console
+    //           to provide all digits of the stats as requested by JoelHalpern
+    Log log = LogFactory.getLog(this.getClass());
+    String[] playerNames = metrics.getPlayers();
+    if(metrics.isComplete() && log.isInfoEnabled()) {
+      for(int p = playerNames.length - 1; p >= 0; p--) {
+        String player = playerNames[p];
+        FleetContents averageSurvivors = metrics.getAverageSurvivors(player, false);
+        for(FleetElement element : averageSurvivors) {
+          log.info(player + ": Avg surviving " + element.getUnit().getName() + " = " + element.getQuantity());
+        }
+      }
+    }
+
+    for(int p = 0; p < players.length; p++) {
+      String player = players[p];
+      _winDs.setValue(player, metrics.getWinCount(player));
+    }
+    _winDs.setValue(TIED, metrics.getWinCount(null));
+  }
+
+  /**
+   * Returns the fraction of the battles represented by a section of the pie
+   * @param dataset
+   * @param key
+   * @return percent
+   */
+  @SuppressWarnings("rawtypes")
+  private static double getPercent(PieDataset dataset, Comparable key) {
+    double value = ((Number) dataset.getValue(key)).doubleValue();
+    double total = DatasetUtilities.calculatePieDatasetTotal(dataset);
+    return total == 0 ? 0 : value / total;
+  }
+
+  /**
+   * Returns the label for a section of the pie, which is the player (or TIED)
+   * and the percentage of the battles
+   * @param dataset
+   * @param key
+   * @return label
+   */
+  @SuppressWarnings("rawtypes")
+  private static String getLabel(PieDataset dataset, Comparable key) {
+    return key + " " + Convert.toStr(getPercent(dataset, key) * 100d, 2) + "%";
+  }
 }
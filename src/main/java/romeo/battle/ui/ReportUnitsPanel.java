@@ -25,6 +25,16 @@ import romeo.utils.GuiUtils;
  */
 public class ReportUnitsPanel extends JPanel {
   public ReportUnitsPanel(IBattleMetrics metrics, List<PlayerSummary> summary) {
+    update(metrics, summary);
+  }
+
+  /**
+   * Replaces the tables of survivors with ones for the specified metrics
+   * @param metrics
+   * @param summary
+   */
+  public void update(IBattleMetrics metrics, List<PlayerSummary> summary) {
+    removeAll();
     Dimension tblSize = new Dimension(Report.getChartSize(1).width, 135); //width is ignored anyhow
 
     GridBagConstraints gbc = GuiUtils.prepGridBag(this);
@@ -100,5 +110,6 @@ public class ReportUnitsPanel extends JPanel {
     add(new JLabel(""), gbc);
     //end of laying out
     revalidate(); //?
+    repaint();
   }
 }
@@ -17,7 +17,7 @@ import java.util.Set;
 
 import romeo.battle.impl.RoundContext;
 import romeo.units.api.IUnit;
-import romeo.utils.Accumulator;
+import romeo.utils.Convert;
 import romeo.xfactors.api.IXFactorCompiler;
 import romeo.xfactors.api.NoSuchXFactorException;
 
@@ -29,9 +29,9 @@ import romeo.xfactors.api.NoSuchXFactorException;
  * to have multiple fleet elements of the same unit type and source.
  */
 public class FleetContents implements Cloneable, Iterable<FleetElement> {
-  protected static Random _rnd = new Random();
   protected List<FleetElement> _elements = new LinkedList<FleetElement>();
   protected Set<String> _flags = new HashSet<String>(); //Set of String
+  protected UnitQuantities _unitQuantities; //Maintained by the owner if set, not copied
 
   //.................................................................
 
@@ -365,12 +365,14 @@ public class FleetContents implements Cloneable, Iterable<FleetElement> {
    * fleets in a battle is simultaneous yet we only calculate it one at a time.
    * (Well actually we can and might calc it in advance because still got the
    * def rolls to go but doing it like this adds some flexibility to impls.)
+   * @param rnd
+   *          the random number generator to roll with
    * @return hits Number of successful attack rolls
    */
-  public int rollHits() {
+  public int rollHits(Random rnd) {
     int hits = 0;
     for(FleetElement element : this) {
-      hits += element.rollHits();
+      hits += element.rollHits(rnd);
     }
     return hits;
   }
@@ -383,53 +385,61 @@ public class FleetContents implements Cloneable, Iterable<FleetElement> {
    * into account.
    * @param hits
    *          Number of incoming hits to fire on fleet
+   * @param rnd
+   *          the random number generator to roll with
    * @return Number of kills as a result of the barrage
    */
-  public int fireOnFleet(int hits) {
+  public int fireOnFleet(int hits, Random rnd) {
     int kills = 0;
     //We first allocate our hits across the elements in the fleet
     //This involves rolling hitsDsize to choose the index of a unit
     //in an element. This is used to determine the targetted element
-    //and we register that hit against the element in an accumulator map
-    //(The FleetElement is used as the key)
-    int size = getSize(true);
-    Accumulator hitsPerElement = new Accumulator();
-    synchronized(_rnd) //_rnd is shared between instances so sync in case of threading TODO: wtf? why even thread then? give each its own!
-    {
-      for(int i = 0; i < hits; i++) { //For each incomming hit select an index in the conceptual
-                                        //array of individual units in the fleet.
-        int unitIndex = _rnd.nextInt(size);
-        //By doing rnd(size) rather than rnd(unitCount) we assure that we
-        //are firing against elements in proportion to how many units are in them.
-        //Now we determine which element we targetted based on the rolled index
-        FleetElement targetElement = getElementContaining(unitIndex, true);
-        //And register a hit against that element
-        hitsPerElement.addToValue(targetElement, 1);
-        //You will note that we discard the rolled index and so we still dont
-        //know which particular individual unit in the element was the target.
-        //That will come later.       
+    //and we register that hit against the elements position in a tally.
+    //(We tally by position rather than in a map keyed by element so that the
+    //defense rolls below are always made in the same order, which is needed
+    //for a seeded simulation to be reproducible)
+    //(Rather than walking the elements for every hit we build the running totals
+    //of the combat units in the elements and binary search those)
+    int[] cumulative = new int[_elements.size()];
+    int size = 0;
+    int position = 0;
+    for(FleetElement element : this) {
+      if(element.getUnit().isCombatUnit()) {
+        size += (int) element.getQuantity(); //this cast will trash fractions
       }
+      cumulative[position++] = size;
+    }
+    int[] hitsPerElement = new int[cumulative.length];
+    for(int i = 0; i < hits; i++) { //For each incomming hit select an index in the conceptual
+                                      //array of individual units in the fleet.
+      int unitIndex = rnd.nextInt(size);
+      //By doing rnd(size) rather than rnd(unitCount) we assure that we
+      //are firing against elements in proportion to how many units are in them.
+      //Now we determine which element we targetted based on the rolled index
+      //and register a hit against it
+      hitsPerElement[Convert.getIndexOfCumulativeItem(cumulative, unitIndex)]++;
+      //You will note that we discard the rolled index and so we still dont
+      //know which particular individual unit in the element was the target.
+      //That will come later.       
     }
     //Now that we have allocated each of the incoming hits against a
     //particular unit we can go and do the defense rolls and start
-    //marking casualties. First we get a list of elements that ended up
-    //getting one or more hits accumulated against them. (Technically
-    //we could also our full elements list and still get the correct
-    //result).
-    Object[] hitElements = hitsPerElement.getKeys();
-    for(int i = 0; i < hitElements.length; i++) { //For each element that has hits registered against it
-      FleetElement hitElement = (FleetElement) hitElements[i];
+    //marking casualties.
+    position = 0;
+    for(FleetElement hitElement : this) { //For each element that has hits registered against it
       //we take those hits
-      int hitsForElement = hitsPerElement.getValue(hitElement);
-      //and do defense rolls against them to get the number of hits
-      //that result in a kill
-      int killedByFire = hitElement.rollDefence(hitsForElement);
-      //which we then record against the element
-      int alreadyDead = hitElement.getCasualties();
-      //Round 2 biobombs for example
-      hitElement.setCasualties(alreadyDead + killedByFire);
-      //and add to our total number of kills
-      kills += killedByFire;
+      int hitsForElement = hitsPerElement[position++];
+      if(hitsForElement > 0) {
+        //and do defense rolls against them to get the number of hits
+        //that result in a kill
+        int killedByFire = hitElement.rollDefence(hitsForElement, rnd);
+        //which we then record against the element
+        int alreadyDead = hitElement.getCasualties();
+        //Round 2 biobombs for example
+        hitElement.setCasualties(alreadyDead + killedByFire);
+        //and add to our total number of kills
+        kills += killedByFire;
+      }
     }
     return kills;
   }
@@ -525,4 +535,58 @@ public class FleetContents implements Cloneable, Iterable<FleetElement> {
   public List<FleetElement> getElements() {
     return _elements;
   }
+
+  /**
+   * Returns the total quantity of the unit with the specified
+   * {@link UnitIndex} in the fleet, optionally only counting the elements from
+   * one source fleet. Casualties are not taken into account. If a
+   * {@link UnitQuantities} table has been set the quantity is read from it,
+   * otherwise the elements are searched.
+   * @param unitIndex
+   * @param sourceId
+   *          may be null, in which case elements from any source are counted
+   * @return quantity
+   */
+  public double getQuantity(int unitIndex, Integer sourceId) {
+    if(_unitQuantities != null) {
+      return _unitQuantities.getQuantity(unitIndex, sourceId);
+    }
+    double quantity = 0;
+    for(FleetElement element : _elements) {
+      if(element.getUnitIndex() == unitIndex && (sourceId == null || element.getSource() == sourceId.intValue())) {
+        quantity += element.getQuantity();
+      }
+    }
+    return quantity;
+  }
+
+  /**
+   * Returns true if the fleet contains live units with the specified
+   * {@link UnitIndex}
+   * @param unitIndex
+   * @return present
+   */
+  public boolean isUnitPresent(int unitIndex) {
+    if(_unitQuantities != null) {
+      return _unitQuantities.isPresent(unitIndex);
+    }
+    for(FleetElement element : _elements) {
+      if(element.getUnitIndex() == unitIndex && element.getQuantity() > 0) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Sets a table of unit quantities to be used by
+   * {@link #getQuantity(int, Integer)} and {@link #isUnitPresent(int)} instead
+   * of searching the elements. The caller is responsible for keeping it in step
+   * with the quantities of the elements. The table isnt copied into clones.
+   * @param unitQuantities
+   *          may be null to go back to searching the elements
+   */
+  public void setUnitQuantities(UnitQuantities unitQuantities) {
+    _unitQuantities = unitQuantities;
+  }
 }
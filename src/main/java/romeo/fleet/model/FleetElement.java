@@ -5,6 +5,7 @@ import java.util.Random;
 import romeo.battle.impl.RoundContext;
 import romeo.units.api.IUnit;
 import romeo.units.impl.UnitImpl;
+import romeo.utils.RandomSampling;
 import romeo.xfactors.api.CompiledXFactor;
 import romeo.xfactors.api.IExpression;
 import romeo.xfactors.api.IXFactorCompiler;
@@ -18,9 +19,14 @@ import romeo.xfactors.expressions.Logic;
  * been applied.
  */
 public class FleetElement implements Cloneable, Comparable<FleetElement> {
-  private Random _rnd = new Random();
+  /**
+   * When sampling kills, if the variance of the number of kills is at least
+   * this large the normal approximation is used
+   */
+  private static final double NORMAL_KILLS_VARIANCE = 100;
 
   private IUnit _unit;
+  private int _unitIndex = UnitIndex.NONE;
   private double _quantity;
   private int _casualties;
   private int _source;
@@ -63,6 +69,14 @@ public class FleetElement implements Cloneable, Comparable<FleetElement> {
     }
   }
 
+  /**
+   * Returns the compiled xfactor of the elements unit
+   * @return xFactor or null if the unit has none or it hasnt been compiled
+   */
+  public CompiledXFactor getCompiledXFactor() {
+    return _xFactor;
+  }
+
   /**
    * Evaluate the (already compiled) xfactor using the supplied round context
    * and update the computed properties for unit stats. If the xfactor is not
@@ -265,6 +279,16 @@ public class FleetElement implements Cloneable, Comparable<FleetElement> {
    */
   public void setUnit(IUnit unit) {
     _unit = unit;
+    _unitIndex = UnitIndex.indexOf(unit == null ? null : unit.getAcronym());
+  }
+
+  /**
+   * Returns the {@link UnitIndex} of the acronym of the unit, or
+   * {@link UnitIndex#NONE} if it doesnt have one
+   * @return unitIndex
+   */
+  public int getUnitIndex() {
+    return _unitIndex;
   }
 
   /**
@@ -357,15 +381,29 @@ public class FleetElement implements Cloneable, Comparable<FleetElement> {
    * accumulated kills against this fleet, so we may have some dead men walking
    * who were getting off their shot even as the bullets were hitting them...
    * They will be removed at the end of the combat round)
+   * @param rnd
+   *          the random number generator to roll with
    * @return hits
    */
-  public int rollHits() {
+  public int rollHits(Random rnd) {
     //System.out.println("roll hits for " + _unit.getAcronym());
+    return rollHits(getAttacks() * (int) getQuantity(), getOffense(), rnd);
+  }
+
+  /**
+   * Rolls the specified number of attack rolls against the offense stat and
+   * returns the number that hit. See {@link #rollHits(Random)}.
+   * @param rolls
+   *          number of attack rolls (attacks multiplied by quantity)
+   * @param offense
+   * @param rnd
+   *          the random number generator to roll with
+   * @return hits
+   */
+  public static int rollHits(int rolls, int offense, Random rnd) {
     int hits = 0;
-    int rolls = getAttacks() * (int) getQuantity();
-    int offense = getOffense();
     for(int i = 0; i < rolls; i++) {
-      int roll = _rnd.nextInt(100) + 1; //roll 1..100 inclusive
+      int roll = rnd.nextInt(100) + 1; //roll 1..100 inclusive
       if(roll <= offense) {
         hits++;
       }
@@ -373,6 +411,24 @@ public class FleetElement implements Cloneable, Comparable<FleetElement> {
     return hits;
   }
 
+  /**
+   * Draws the number of hits from the specified number of attack rolls
+   * directly from the binomial distribution instead of rolling each one. This
+   * is statistically equivalent to {@link #rollHits(int, int, Random)} but its
+   * cost doesnt depend on the number of rolls.
+   * @param rolls
+   *          number of attack rolls (attacks multiplied by quantity)
+   * @param offense
+   * @param rnd
+   * @return hits
+   */
+  public static int sampleHits(int rolls, int offense, Random rnd) {
+    if(rolls <= 0 || offense <= 0) {
+      return 0;
+    }
+    return RandomSampling.binomial(rolls, offense >= 100 ? 1d : offense / 100d, rnd);
+  }
+
   /**
    * Rolls defence rolls against the incoming hits for units in the element. The
    * number of casuaties from the fire is returned. Note that this method does
@@ -389,16 +445,32 @@ public class FleetElement implements Cloneable, Comparable<FleetElement> {
    * any statistical effect on the outcome, but saves us from keeping a kill
    * table. NOTE: this method doesnt make sense for fractional quantities.
    * @param hits
+   * @param rnd
+   *          the random number generator to roll with
    * @return number of kills from this burst of fire
    */
-  public int rollDefence(int hits) {
+  public int rollDefence(int hits, Random rnd) {
+    return rollDefence(hits, (int) getQuantity(), getCasualties(), getDefense(), rnd);
+  }
+
+  /**
+   * Rolls defence for the specified number of hits against a group of units of
+   * which some may already be dead. See {@link #rollDefence(int, Random)}.
+   * @param hits
+   * @param quantity
+   *          number of units in the group (including the dead)
+   * @param dead
+   *          number of units already killed
+   * @param defense
+   * @param rnd
+   *          the random number generator to roll with
+   * @return number of kills from this burst of fire
+   */
+  public static int rollDefence(int hits, int quantity, int dead, int defense, Random rnd) {
     if(hits < 0) {
       throw new IllegalArgumentException("hits may not be negative");
     }
     int kills = 0;
-    int dead = getCasualties(); //Keep track of proportion of dead units
-    int quantity = (int) getQuantity();
-    int defense = getDefense();
     //for(int i = 0; i < hits; i++) {
     for(int i = 0; i < hits && (dead < quantity); i++) {
       //First we must work out which unit within the element it was that was
@@ -408,11 +480,11 @@ public class FleetElement implements Cloneable, Comparable<FleetElement> {
       //it in and reusing it after subtracting the index of first unit in this
       //element. That just creates more work and doesnt change the outcome. Doing
       //a second roll to narrow down the specific unit is much simpler).
-      int target = _rnd.nextInt(quantity) + 1; //nb: the first target is numbered 1 (not 0)
+      int target = rnd.nextInt(quantity) + 1; //nb: the first target is numbered 1 (not 0)
       if(target > dead) { //Accumulate deadites at the 'start' of our mental concept of the element
                           //If the roll isnt in that bunch then its one of the live ones so we can
                           //do its defense roll
-        int roll = _rnd.nextInt(100) + 1; //roll 1..100 inclusive
+        int roll = rnd.nextInt(100) + 1; //roll 1..100 inclusive
         if(roll > defense) { //Fresh victims for the ever growing army of the undead!
           dead++; //Kaboom!
           kills++; //Arrgh!
@@ -431,6 +503,65 @@ public class FleetElement implements Cloneable, Comparable<FleetElement> {
     return kills; //bring out yer dead!
   }
 
+  /**
+   * Samples the number of kills from a burst of fire rather than rolling for
+   * each hit. This is statistically equivalent to
+   * {@link #rollDefence(int, int, int, int, Random)}. Each hit in that process
+   * kills if its defence roll fails and it lands on a unit that is still
+   * alive. The defence rolls dont depend on the target so the number of hits
+   * whose defence roll fails is drawn from the binomial distribution first.
+   * With k units killed so far each of those hits lands on a live unit with
+   * probability (quantity-dead-k)/quantity, so the number of them it takes to
+   * make the next kill is geometrically distributed and we draw that for each
+   * kill in turn. The cost of that is proportional to the number of kills, so
+   * for large stacks, where the number of kills has a variance of at least
+   * 100, it is drawn instead from a normal distribution with the exact mean and
+   * variance of the number of distinct live units hit. At that size the
+   * difference between the two is far below what can be detected in the
+   * results of a simulation.
+   * @param hits
+   * @param quantity
+   *          number of units in the group (including the dead)
+   * @param dead
+   *          number of units already killed
+   * @param defense
+   * @param rnd
+   *          the random number generator to roll with
+   * @return number of kills from this burst of fire
+   */
+  public static int sampleDefence(int hits, int quantity, int dead, int defense, Random rnd) {
+    if(hits < 0) {
+      throw new IllegalArgumentException("hits may not be negative");
+    }
+    int live = quantity - dead;
+    if(hits == 0 || live <= 0 || defense >= 100) {
+      return 0;
+    }
+    int lethalHits = RandomSampling.binomial(hits, defense <= 0 ? 1d : (100 - defense) / 100d, rnd);
+    if(lethalHits == 0) {
+      return 0;
+    }
+    //Probability that a particular unit, and that a particular pair of units, escape all the lethal hits
+    double missOne = Math.exp(lethalHits * Math.log1p(-1d / quantity));
+    double missTwo = quantity == 1 ? 0 : Math.exp(lethalHits * Math.log1p(-2d / quantity));
+    double mean = live * (1 - missOne);
+    double variance = (double) live * (live - 1) * missTwo + live * missOne - (double) live * live * missOne * missOne;
+    if(variance >= NORMAL_KILLS_VARIANCE) {
+      long kills = Math.round(mean + Math.sqrt(variance) * rnd.nextGaussian());
+      return (int) Math.max(0, Math.min(Math.min(live, lethalHits), kills));
+    }
+    int kills = 0;
+    while(lethalHits > 0 && kills < live) {
+      int needed = RandomSampling.geometric((double) (live - kills) / quantity, rnd);
+      if(needed > lethalHits) { //the rest of the lethal hits are wasted on the dead
+        break;
+      }
+      lethalHits -= needed;
+      kills++;
+    }
+    return kills;
+  }
+
   /**
    * Returns the link back to the parent fleet.
    * @return fleet
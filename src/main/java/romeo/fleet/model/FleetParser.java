@@ -0,0 +1,134 @@
+package romeo.fleet.model;
+
+import java.util.Locale;
+import java.util.Objects;
+
+import romeo.units.api.IUnit;
+import romeo.units.api.IUnitService;
+import romeo.utils.Convert;
+
+/**
+ * Parses the text used to describe a fleet in the battle simulator and saved
+ * scenarios. This is a comma separated list of tokens, each of which is either
+ * a quantity and unit acronym with an optional source prefix (eg: "2:50 * VIP")
+ * or a flag (eg: "-A").
+ */
+public class FleetParser {
+  /**
+   * Symbol used to prefix a flag in the fleet text
+   */
+  public static final String FLAG_SYMBOL = "-";
+
+  private IUnitService _unitService;
+
+  /**
+   * Constructor
+   * @param unitService
+   *          used to look up units by acronym
+   */
+  public FleetParser(IUnitService unitService) {
+    _unitService = Objects.requireNonNull(unitService, "unitService may not be null");
+  }
+
+  /**
+   * Parses the fleet text into a new FleetContents
+   * @param fleetText
+   * @return fleet
+   * @throws IllegalArgumentException
+   *           if any of the tokens are invalid
+   */
+  public FleetContents parseFleet(String fleetText) {
+    FleetContents fleet = new FleetContents();
+    for(String token : fleetText.split(",")) {
+      token = cleanToken(token);
+      if(token.length() == 0) {
+        continue;
+      }
+      if(isFlag(token)) {
+        fleet.setFlag(parseFlag(token), true);
+      } else {
+        FleetElement element = parseElement(token);
+        if(element.getQuantity() > 0) {
+          fleet.addElement(element);
+        }
+      }
+    }
+    return fleet;
+  }
+
+  /**
+   * Returns the token trimmed and with any line breaks removed
+   * @param token
+   * @return token
+   */
+  public static String cleanToken(String token) {
+    return Convert.replace(token.trim(), "\n", "");
+  }
+
+  /**
+   * Returns true if the (cleaned) token is a flag
+   * @param token
+   * @return isFlag
+   */
+  public static boolean isFlag(String token) {
+    return token.startsWith(FLAG_SYMBOL);
+  }
+
+  /**
+   * Returns the flag named by a flag token, in upper case
+   * @param token
+   * @return flag
+   * @throws IllegalArgumentException
+   *           if no flag is named
+   */
+  public static String parseFlag(String token) {
+    if(token.length() == 1) {
+      throw new IllegalArgumentException("Flag text not specified");
+    }
+    return token.substring(1).toUpperCase(Locale.US);
+  }
+
+  /**
+   * Parses a quantity and acronym token, with optional source prefix, into a
+   * fleet element
+   * @param token
+   * @return element
+   * @throws IllegalArgumentException
+   *           if the token is invalid or the acronym unknown
+   */
+  public FleetElement parseElement(String token) {
+    int star = token.indexOf('*');
+    if(star == -1) {
+      throw new IllegalArgumentException("Missing '*' in token:" + token);
+    }
+    String acronym = token.substring(star + 1).trim(); // on the right
+    IUnit unit = _unitService.getByAcronym(acronym);
+    if(unit == null) {
+      throw new IllegalArgumentException("Bad acronym:" + acronym);
+    }
+    String qtyStr = token.substring(0, star).trim(); //on the left
+
+    int sourceId = 0;
+    int colonIndex = qtyStr.indexOf(':');
+    if(colonIndex != -1) {
+      String sourceStr = qtyStr.substring(0, colonIndex);
+      if(qtyStr.length() - 1 == colonIndex) {
+        throw new IllegalArgumentException("Missing quantity in " + token);
+      }
+      qtyStr = qtyStr.substring(colonIndex + 1, qtyStr.length());
+      try {
+        sourceId = Integer.parseInt(sourceStr);
+      } catch(Exception e) {
+        throw new NumberFormatException("Bad sourceId:" + sourceStr);
+      }
+    }
+
+    int qtyInt = 0;
+    try {
+      qtyInt = Integer.parseInt(qtyStr);
+    } catch(Exception e) {
+      throw new NumberFormatException("Cannot convert quantity to int:" + qtyStr);
+    }
+    return new FleetElement(unit, qtyInt, sourceId);
+  }
+}
@@ -0,0 +1,63 @@
+package romeo.fleet.model;
+
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Registry that interns unit acronyms as dense int indexes, so that the
+ * QUANTITY and PRESENT xFactor expressions can look units up in a fleet by
+ * index rather than by comparing strings. Acronyms are case insensitive. The
+ * first acronym interned gets index 0, the next 1, and so on. Indexes are never
+ * reused or removed for the life of the application, so they may be cached
+ * (for example in compiled expressions and fleet elements). This class is
+ * thread safe.
+ */
+public final class UnitIndex {
+  /**
+   * Index of a null acronym. This never matches any interned acronym.
+   */
+  public static final int NONE = -1;
+
+  private static final ConcurrentMap<String, Integer> INDEXES = new ConcurrentHashMap<String, Integer>();
+
+  private UnitIndex() {
+  }
+
+  /**
+   * Returns the index of the specified acronym, interning it if it hasnt been
+   * seen before
+   * @param acronym
+   *          may be null, in which case NONE is returned
+   * @return index
+   */
+  public static int indexOf(String acronym) {
+    if(acronym == null) {
+      return NONE;
+    }
+    String key = acronym.toUpperCase(Locale.US);
+    Integer index = INDEXES.get(key);
+    if(index == null) {
+      index = intern(key);
+    }
+    return index.intValue();
+  }
+
+  private static synchronized Integer intern(String key) {
+    Integer index = INDEXES.get(key);
+    if(index == null) {
+      index = INDEXES.size();
+      INDEXES.put(key, index);
+    }
+    return index;
+  }
+
+  /**
+   * Returns the number of acronyms interned so far. All the indexes returned
+   * before this call are less than this.
+   * @return size
+   */
+  public static int size() {
+    return INDEXES.size();
+  }
+}
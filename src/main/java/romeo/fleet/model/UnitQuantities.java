@@ -0,0 +1,109 @@
+package romeo.fleet.model;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Table of the quantity of each unit (by its {@link UnitIndex}) in a fleet, in
+ * total and for each source fleet. A fleet whose quantities are maintained by
+ * its owner (such as the view of a battle fleet) can have one of these set
+ * into it so that the QUANTITY and PRESENT expressions read an array entry
+ * rather than searching the elements (see
+ * {@link FleetContents#setUnitQuantities(UnitQuantities)}). The table doesnt
+ * track the fleet itself, whoever updates the quantities of the elements must
+ * update it to match. Quantities are expected not to be negative.
+ */
+public class UnitQuantities {
+  private final int[] _sources;
+  private final double[] _total;
+  private final double[][] _bySource;
+
+  /**
+   * Constructor. The table is initially empty.
+   * @param units
+   *          number of unit indexes to hold, this should be at least one more
+   *          than the highest index of the units in the fleet. Units with a
+   *          higher index are taken to have a quantity of zero.
+   * @param sources
+   *          the source fleets of the elements
+   */
+  public UnitQuantities(int units, int[] sources) {
+    Objects.requireNonNull(sources, "sources may not be null");
+    _sources = sources.clone();
+    _total = new double[units];
+    _bySource = new double[sources.length][units];
+  }
+
+  /**
+   * Sets all the quantities to zero
+   */
+  public void clear() {
+    Arrays.fill(_total, 0);
+    for(int s = 0; s < _bySource.length; s++) {
+      Arrays.fill(_bySource[s], 0);
+    }
+  }
+
+  /**
+   * Adds to the quantity of a unit
+   * @param unitIndex
+   * @param source
+   *          source fleet of the element, this must be one of the sources the
+   *          table was created with
+   * @param quantity
+   *          quantity to add, this is negative to remove units
+   * @throws IllegalArgumentException
+   *           if the source or unit isnt in the table
+   */
+  public void add(int unitIndex, int source, double quantity) {
+    int s = indexOfSource(source);
+    if(s == -1 || unitIndex < 0 || unitIndex >= _total.length) {
+      throw new IllegalArgumentException("unit " + unitIndex + " source " + source + " not in table");
+    }
+    _total[unitIndex] += quantity;
+    _bySource[s][unitIndex] += quantity;
+  }
+
+  /**
+   * Returns the quantity of the specified unit. See
+   * {@link FleetContents#getQuantity(int, Integer)}.
+   * @param unitIndex
+   * @param sourceId
+   *          may be null, in which case all sources are counted
+   * @return quantity
+   */
+  public double getQuantity(int unitIndex, Integer sourceId) {
+    if(unitIndex < 0 || unitIndex >= _total.length) {
+      return 0;
+    }
+    if(sourceId == null) {
+      return _total[unitIndex];
+    }
+    int s = indexOfSource(sourceId.intValue());
+    return s == -1 ? 0 : _bySource[s][unitIndex];
+  }
+
+  /**
+   * Returns true if there are any of the specified unit in the fleet
+   * @param unitIndex
+   * @return present
+   */
+  public boolean isPresent(int unitIndex) {
+    return unitIndex >= 0 && unitIndex < _total.length && _total[unitIndex] > 0;
+  }
+
+  /**
+   * Returns the row of the specified source. There are usually only one or two
+   * sources so they are searched linearly.
+   * @param source
+   * @return row or -1 if not found
+   */
+  private int indexOfSource(int source) {
+    for(int s = 0; s < _sources.length; s++) {
+      if(_sources[s] == source) {
+        return s;
+      }
+    }
+    return -1;
+  }
+}
@@ -4,7 +4,6 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
-import java.util.Locale;
 
 import javax.swing.SwingUtilities;
 import javax.swing.table.TableModel;
@@ -19,11 +18,11 @@ import romeo.battle.impl.RoundContext;
 import romeo.battle.ui.BattleFleetsManager;
 import romeo.fleet.model.FleetContents;
 import romeo.fleet.model.FleetElement;
+import romeo.fleet.model.FleetParser;
 import romeo.ui.BeanTableModel;
 import romeo.ui.forms.IFieldChangeListener;
 import romeo.units.api.IUnit;
 import romeo.units.api.IUnitService;
-import romeo.utils.Convert;
 import romeo.xfactors.api.IXFactorCompiler;
 
 /**
@@ -33,7 +32,7 @@ public class FleetFieldModel {
   /**
    * Symbol used to prefix a flag in the fleet text
    */
-  protected static final String FLAG_SYMBOL = "-";
+  protected static final String FLAG_SYMBOL = FleetParser.FLAG_SYMBOL;
 
   public class FleetModelElement {
     private int _start;
@@ -151,6 +150,7 @@ public class FleetFieldModel {
   private FleetDocument _document;
   private List<IFieldChangeListener> _fieldChangeListeners;
   private IUnitService _unitService;
+  private FleetParser _parser;
   private List<FleetFieldModel.FleetModelElement> _elements;
   private BeanTableModel _tableModel;
   private FleetContents _fleetContents = new FleetContents();
@@ -169,6 +169,7 @@ public class FleetFieldModel {
     _field = field;
     _compiler = compiler;
     _unitService = unitService;
+    _parser = new FleetParser(unitService);
     _fieldChangeListeners = new ArrayList<IFieldChangeListener>(1);
     _document = new FleetDocument();
     BeanTableModel.IColumnProcessor statsProc = new BeanTableModel.IColumnProcessor() {
@@ -385,54 +386,17 @@ public class FleetFieldModel {
       FleetModelElement element = new FleetModelElement();
       element.setStart(index);
       element.setLength(token.length());
-      token = token.trim();
-      token = Convert.replace(token, "\n", "");
+      token = FleetParser.cleanToken(token);
 
       try {
-        if(token.startsWith(FLAG_SYMBOL)) { //Flag token
-          if(token.length() == 1)
-            throw new IllegalArgumentException("Flag text not specified");
-          String flag = token.substring(1).toUpperCase(Locale.US);
-          element.setFlag(flag);
+        if(FleetParser.isFlag(token)) { //Flag token
+          element.setFlag(FleetParser.parseFlag(token));
           element.setValid(true);
         } else { //Normal qty * acronym token
-
-          //if(token.length()==0) break; //skip ,,
-          int star = token.indexOf('*');
-          if(star == -1)
-            throw new IllegalArgumentException("Missing '*' in token:" + token);
-          String acronym = token.substring(star + 1).trim(); // on the right
-          IUnit unit = _unitService.getByAcronym(acronym);
-          if(unit == null)
-            throw new IllegalArgumentException("Bad acronym:" + acronym);
-          String qtyStr = token.substring(0, star).trim(); //on the left
-
-          //Here to parse sourceId
-          int sourceId = 0;
-          String sourceStr = null;
-          int colonIndex = qtyStr.indexOf(':');
-          if(colonIndex != -1) {
-            sourceStr = qtyStr.substring(0, colonIndex);
-            if(qtyStr.length() - 1 == colonIndex) {
-              throw new RuntimeException("Missing quantity in " + token);
-            }
-            qtyStr = qtyStr.substring(colonIndex + 1, qtyStr.length());
-            try {
-              sourceId = Integer.parseInt(sourceStr);
-            } catch(Exception e) {
-              throw new NumberFormatException("Bad sourceId:" + sourceStr);
-            }
-          }
-
-          int qtyInt = 0;
-          try {
-            qtyInt = Integer.parseInt(qtyStr);
-          } catch(Exception e) {
-            throw new NumberFormatException("Cannot convert quantity to int:" + qtyStr);
-          }
-          element.setUnit(unit);
-          element.setQuantity(qtyInt);
-          element.setSourceId(sourceId);
+          FleetElement parsed = _parser.parseElement(token);
+          element.setUnit(parsed.getUnit());
+          element.setQuantity((int) parsed.getQuantity());
+          element.setSourceId(parsed.getSource());
           element.setValid(true);
         }
       } catch(Exception e) { //Mark the element as invalid. We dont try to report the message.
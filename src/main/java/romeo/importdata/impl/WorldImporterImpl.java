@@ -126,18 +126,8 @@ public class WorldImporterImpl implements IWorldImporter {
       //Save imported players
       _playerService.savePlayers(importPlayers);
 
-      //Save the new or changed worlds
-      List<WorldId> worldIds = _worldService.saveWorlds(worlds);
-
-      //Link worlds to histories
-      List<IHistory> toSave = new ArrayList<IHistory>(histories.size());
-      for(int idIndex=0; idIndex < worldIds.size(); idIndex++) {
-        WorldId id = worldIds.get(idIndex);
-        IHistory history = histories.get(idIndex);
-        history = new HistoryImpl(id, history);
-        toSave.add(history);
-      }
-      _worldService.saveHistories(toSave);
+      //Save the new or changed worlds and link their histories to them, all in one transaction
+      _worldService.saveWorldsWithHistories(worlds, histories);
       _log.info("Changes saved");
     } catch(Exception e) {
       Exception ex = new RuntimeException("Import Failure:" + e.getMessage(), e);
@@ -0,0 +1,88 @@
+package romeo.model.api;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EventObject;
+import java.util.LinkedHashSet;
+import java.util.Objects;
+import java.util.Set;
+
+import romeo.persistence.AbstractRecordId;
+
+/**
+ * Event sent by a service to its listeners when it knows which records were
+ * changed (saved or deleted), so that listeners caching data derived from those
+ * records can update just the affected entries rather than flushing everything.
+ * A plain {@link EventObject} is still sent where a service doesn't know what
+ * changed, and listeners should then assume everything may have.
+ */
+public class RecordsChangedEvent extends EventObject {
+  private final Set<AbstractRecordId> _ids;
+  private final Set<Integer> _turns;
+
+  /**
+   * Constructor
+   * @param source
+   *          the service sending the event
+   * @param ids
+   *          ids of the changed records
+   */
+  public RecordsChangedEvent(IService source, Collection<? extends AbstractRecordId> ids) {
+    this(source, ids, Collections.<Integer> emptySet());
+  }
+
+  /**
+   * Constructor for changes to records that are also keyed by turn, such as
+   * world history
+   * @param source
+   *          the service sending the event
+   * @param ids
+   *          ids of the changed records
+   * @param turns
+   *          turns in which the records were changed
+   */
+  public RecordsChangedEvent(IService source, Collection<? extends AbstractRecordId> ids, Collection<Integer> turns) {
+    super(source);
+    Objects.requireNonNull(ids, "ids may not be null");
+    Objects.requireNonNull(turns, "turns may not be null");
+    _ids = Collections.unmodifiableSet(new LinkedHashSet<AbstractRecordId>(ids));
+    _turns = Collections.unmodifiableSet(new LinkedHashSet<Integer>(turns));
+  }
+
+  /**
+   * Returns the ids of the changed records
+   * @return ids
+   */
+  public Set<AbstractRecordId> getIds() {
+    return _ids;
+  }
+
+  /**
+   * Returns the ids of the changed records that are of the specified type
+   * @param type
+   * @return ids
+   */
+  public <T extends AbstractRecordId> Set<T> getIds(Class<T> type) {
+    Set<T> ids = new LinkedHashSet<T>();
+    for(AbstractRecordId id : _ids) {
+      if(type.isInstance(id)) {
+        ids.add(type.cast(id));
+      }
+    }
+    return ids;
+  }
+
+  /**
+   * Returns the turns in which the records were changed. This will be empty
+   * for records that aren't keyed by turn.
+   * @return turns
+   */
+  public Set<Integer> getTurns() {
+    return _turns;
+  }
+
+  @Override
+  public String toString() {
+    return getClass().getName() + "[source=" + source + ",ids=" + _ids + ",turns=" + _turns + "]";
+  }
+}
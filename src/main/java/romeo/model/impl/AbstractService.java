@@ -1,6 +1,7 @@
 package romeo.model.impl;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.EventObject;
 import java.util.Iterator;
 import java.util.List;
@@ -11,7 +12,9 @@ import org.apache.commons.logging.LogFactory;
 
 import romeo.model.api.IService;
 import romeo.model.api.IServiceListener;
+import romeo.model.api.RecordsChangedEvent;
 import romeo.persistence.AbstractPersistenceService;
+import romeo.persistence.AbstractRecordId;
 
 /**
  * Provides an implementation for adding and notifying listeners.
@@ -76,6 +79,16 @@ public class AbstractService implements IService {
     protected void notifyDataChanged() {
       notifyDataChanged( new EventObject(this) );
     }
+
+    /**
+     * Notify all service listeners with a {@link RecordsChangedEvent} giving the
+     * ids of the records that changed. If the ids are not known (null) then a
+     * plain event is sent so listeners will assume anything may have changed.
+     * @param ids
+     */
+    protected void notifyRecordsChanged(Collection<? extends AbstractRecordId> ids) {
+      notifyDataChanged( ids == null ? new EventObject(this) : new RecordsChangedEvent(this, ids) );
+    }
   }
 
 
@@ -0,0 +1,562 @@
+package romeo.persistence;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * A {@link QndDataSource} that keeps a small pool of connections open for
+ * reuse, rather than opening a new one for every request, and caches the
+ * prepared statements of each connection. The connections it returns are
+ * wrappers whose close() returns the real connection to the pool. Similarly,
+ * the statements returned by prepareStatement(String) are wrappers whose
+ * close() leaves the real statement open in the connections cache, ready for
+ * the next time the same SQL is prepared.
+ *
+ * The pool is bounded: when all the connections are in use a request waits
+ * for one to be returned, and fails if none is within maxWait. Idle
+ * connections are validated before they are handed out, and those idle for
+ * longer than idleTimeout are closed (apart from the most recently used, which
+ * is kept to save reopening the database).
+ *
+ * A cached statement is reused only once the caller has closed both it and any
+ * ResultSet it returned, as executing it again would close that ResultSet. If
+ * the same SQL is prepared while its cached statement is still in use, an
+ * uncached statement is returned instead.
+ */
+public class PooledDataSource extends QndDataSource {
+  private int _maxConnections = 8;
+  private long _maxWait = 10000;
+  private long _idleTimeout = 60000;
+  private int _validationTimeout = 2;
+  private int _statementCacheSize = 32;
+  private String _validationQuery;
+
+  private final Deque<PooledConnection> _idle = new ArrayDeque<PooledConnection>(); //guarded by this, most recent first
+  private int _active; //guarded by this
+  private boolean _closed; //guarded by this
+  private int _connectionsOpened; //guarded by this
+  private int _statementsPrepared; //guarded by this
+
+  /**
+   * Returns a connection from the pool, opening a new one if there are none
+   * idle and the pool isnt full, or otherwise waiting for one to be returned.
+   * The connection must be closed to return it to the pool.
+   * @param userName
+   * @param password
+   * @return connection
+   * @throws SQLException
+   *           if no connection was returned within maxWait
+   */
+  @Override
+  public Connection getConnection(String userName, String password) throws SQLException {
+    PooledConnection pooled = null;
+    synchronized(this) {
+      long deadline = System.currentTimeMillis() + _maxWait;
+      while(pooled == null) {
+        if(_closed) {
+          throw new SQLException("The connection pool has been closed");
+        }
+        evictIdle();
+        if(!_idle.isEmpty()) {
+          pooled = _idle.removeFirst();
+          if(!pooled.matches(userName, password) || !isValid(pooled)) {
+            closeQuietly(pooled);
+            pooled = null;
+            continue;
+          }
+        } else if(_active < _maxConnections) {
+          break; //open a new one, below
+        } else {
+          long wait = deadline - System.currentTimeMillis();
+          if(wait <= 0) {
+            throw new SQLException("Timed out waiting for one of " + _maxConnections + " connections to be returned");
+          }
+          try {
+            wait(wait);
+          } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted waiting for a connection", e);
+          }
+          continue;
+        }
+      }
+      _active++;
+    }
+    if(pooled == null) { //nb: opened outside the lock as opening the database can take a while
+      try {
+        pooled = new PooledConnection(super.getConnection(userName, password), userName, password);
+      } catch(SQLException | RuntimeException e) {
+        release(null);
+        throw e;
+      }
+      synchronized(this) {
+        _connectionsOpened++;
+      }
+    }
+    return pooled.open();
+  }
+
+  /**
+   * Closes the idle connections. Connections still in use are closed when they
+   * are returned. The pool cannot be used after this.
+   */
+  public synchronized void close() {
+    _closed = true;
+    while(!_idle.isEmpty()) {
+      closeQuietly(_idle.removeFirst());
+    }
+    notifyAll();
+  }
+
+  /**
+   * Returns a connection to the pool. Called when the wrapper is closed.
+   * @param pooled
+   *          the connection, or null if opening it failed
+   */
+  private synchronized void release(PooledConnection pooled) {
+    _active--;
+    if(pooled != null) {
+      if(_closed || !pooled.reset()) {
+        closeQuietly(pooled);
+      } else {
+        pooled._lastUsed = System.currentTimeMillis();
+        _idle.addFirst(pooled);
+      }
+    }
+    notifyAll();
+  }
+
+  /**
+   * Closes connections that have been idle too long, but keeps the most
+   * recently used one
+   */
+  private void evictIdle() {
+    long oldest = System.currentTimeMillis() - _idleTimeout;
+    while(_idle.size() > 1 && _idle.getLast()._lastUsed < oldest) {
+      closeQuietly(_idle.removeLast());
+    }
+  }
+
+  /**
+   * Checks that a connection still works, using the validation query if
+   * there is one. (HSQLDB connections still claim to be valid after the
+   * database has been shut down).
+   * @param pooled
+   * @return valid
+   */
+  private boolean isValid(PooledConnection pooled) {
+    try {
+      if(pooled._connection.isClosed()) {
+        return false;
+      }
+      if(_validationQuery == null) {
+        return pooled._connection.isValid(_validationTimeout);
+      }
+      try(Statement statement = pooled._connection.createStatement()) {
+        statement.execute(_validationQuery);
+      }
+      return true;
+    } catch(SQLException e) {
+      return false;
+    }
+  }
+
+  private void closeQuietly(PooledConnection pooled) {
+    try {
+      pooled._connection.close();
+    } catch(SQLException e) {
+      LogFactory.getLog(this.getClass()).warn("Error closing pooled connection", e);
+    }
+  }
+
+  /**
+   * Returns the number of real connections opened so far
+   * @return connectionsOpened
+   */
+  public synchronized int getConnectionsOpened() {
+    return _connectionsOpened;
+  }
+
+  /**
+   * Returns the number of real statements prepared so far (cached or not)
+   * @return statementsPrepared
+   */
+  public synchronized int getStatementsPrepared() {
+    return _statementsPrepared;
+  }
+
+  /**
+   * Returns the number of connections in use
+   * @return active
+   */
+  public synchronized int getActiveConnections() {
+    return _active;
+  }
+
+  /**
+   * Returns the number of connections in the pool waiting to be used
+   * @return idle
+   */
+  public synchronized int getIdleConnections() {
+    return _idle.size();
+  }
+
+  public synchronized int getMaxConnections() {
+    return _maxConnections;
+  }
+
+  /**
+   * Set the most connections that may be open (in use or idle) at once
+   * @param maxConnections
+   */
+  public synchronized void setMaxConnections(int maxConnections) {
+    if(maxConnections < 1) {
+      throw new IllegalArgumentException("maxConnections must be at least 1");
+    }
+    _maxConnections = maxConnections;
+  }
+
+  public synchronized long getMaxWait() {
+    return _maxWait;
+  }
+
+  /**
+   * Set how long in milliseconds to wait for a connection when all are in use
+   * @param maxWait
+   */
+  public synchronized void setMaxWait(long maxWait) {
+    _maxWait = maxWait;
+  }
+
+  public synchronized long getIdleTimeout() {
+    return _idleTimeout;
+  }
+
+  /**
+   * Set how long in milliseconds a connection may be idle before it is closed
+   * @param idleTimeout
+   */
+  public synchronized void setIdleTimeout(long idleTimeout) {
+    _idleTimeout = idleTimeout;
+  }
+
+  public synchronized String getValidationQuery() {
+    return _validationQuery;
+  }
+
+  /**
+   * Set a query used to check that an idle connection still works before it
+   * is handed out (eg: "VALUES(1)" for HSQLDB). If null the drivers isValid()
+   * is relied on instead.
+   * @param query
+   */
+  public synchronized void setValidationQuery(String query) {
+    _validationQuery = query;
+  }
+
+  public synchronized int getStatementCacheSize() {
+    return _statementCacheSize;
+  }
+
+  /**
+   * Set the number of prepared statements cached for each connection. Zero
+   * disables the cache. Applies to connections opened after it is set.
+   * @param size
+   */
+  public synchronized void setStatementCacheSize(int size) {
+    if(size < 0) {
+      throw new IllegalArgumentException("size may not be negative");
+    }
+    _statementCacheSize = size;
+  }
+
+  /**
+   * Unwraps a proxy argument back to the real object so that it can be passed
+   * to the real connection or statement
+   * @param args
+   * @return args
+   */
+  private static Object[] unwrapArgs(Object[] args) {
+    if(args != null) {
+      for(int i = 0; i < args.length; i++) {
+        if(args[i] != null && Proxy.isProxyClass(args[i].getClass())) {
+          InvocationHandler handler = Proxy.getInvocationHandler(args[i]);
+          if(handler instanceof CachedStatement) {
+            args[i] = ((CachedStatement) handler)._statement;
+          }
+        }
+      }
+    }
+    return args;
+  }
+
+  private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+    try {
+      return method.invoke(target, unwrapArgs(args));
+    } catch(InvocationTargetException e) {
+      throw e.getCause();
+    }
+  }
+
+  /////////////////////////////////////////////////////////////////////////////
+
+  /**
+   * A real connection held by the pool, with its cache of statements
+   */
+  private class PooledConnection {
+    private final Connection _connection;
+    private final String _userName;
+    private final String _password;
+    private final Map<String, CachedStatement> _statements;
+    private final int _cacheSize;
+    private long _lastUsed;
+    private ConnectionHandle _handle;
+
+    private PooledConnection(Connection connection, String userName, String password) {
+      _connection = connection;
+      _userName = userName;
+      _password = password;
+      _cacheSize = getStatementCacheSize();
+      _statements = new LinkedHashMap<String, CachedStatement>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CachedStatement> eldest) {
+          if(size() > _cacheSize) {
+            eldest.getValue().discard();
+            return true;
+          }
+          return false;
+        }
+      };
+    }
+
+    private boolean matches(String userName, String password) {
+      return _userName.equals(userName) && _password.equals(password);
+    }
+
+    /**
+     * Returns a new wrapper for the connection to give to a caller
+     * @return connection
+     */
+    private Connection open() {
+      _handle = new ConnectionHandle(this);
+      return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[] { Connection.class },
+          _handle);
+    }
+
+    /**
+     * Returns the prepared statement for the SQL from the cache, preparing it
+     * if need be
+     * @param sql
+     * @return statement
+     * @throws SQLException
+     */
+    private PreparedStatement prepare(String sql) throws SQLException {
+      CachedStatement cached = _statements.get(sql);
+      if(cached != null && cached.isInUse()) { //cant share it, so the caller gets one of their own
+        return prepareUncached(sql);
+      }
+      if(cached == null) {
+        if(_cacheSize == 0) {
+          return prepareUncached(sql);
+        }
+        cached = new CachedStatement(prepareUncached(sql));
+        _statements.put(sql, cached);
+      } else { //nb: a previous caller may have abandoned a batch before executing it
+        cached._statement.clearParameters();
+        cached._statement.clearBatch();
+        cached._statement.clearWarnings();
+      }
+      return cached.open();
+    }
+
+    private PreparedStatement prepareUncached(String sql) throws SQLException {
+      synchronized(PooledDataSource.this) {
+        _statementsPrepared++;
+      }
+      return _connection.prepareStatement(sql);
+    }
+
+    /**
+     * Gets the connection ready to go back in the pool
+     * @return false if the connection is unusable
+     */
+    private boolean reset() {
+      try {
+        for(CachedStatement cached : _statements.values()) { //nb: anything left open was leaked, we tidy up after it
+          cached._proxy = null;
+          cached._resultSetOwner = null;
+        }
+        if(!_connection.getAutoCommit()) {
+          _connection.rollback();
+          _connection.setAutoCommit(true);
+        }
+        return !_connection.isClosed();
+      } catch(SQLException e) {
+        return false;
+      }
+    }
+  }
+
+  /**
+   * The handler behind the connection wrapper given to callers. This is only
+   * valid until it is closed, after which the real connection may be in use by
+   * someone else.
+   */
+  private class ConnectionHandle implements InvocationHandler {
+    private PooledConnection _pooled;
+
+    private ConnectionHandle(PooledConnection pooled) {
+      _pooled = pooled;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+      String name = method.getName();
+      if("close".equals(name)) {
+        if(_pooled != null) {
+          PooledConnection pooled = _pooled;
+          _pooled = null;
+          release(pooled);
+        }
+        return null;
+      } else if("isClosed".equals(name)) {
+        return _pooled == null || _pooled._connection.isClosed();
+      } else if("equals".equals(name)) {
+        return proxy == args[0];
+      } else if("hashCode".equals(name)) {
+        return System.identityHashCode(proxy);
+      } else if("toString".equals(name)) {
+        return "Pooled connection " + (_pooled == null ? "(closed)" : _pooled._connection.toString());
+      }
+      if(_pooled == null) {
+        throw new SQLException("Connection has been closed");
+      }
+      if("prepareStatement".equals(name) && args.length == 1) {
+        return _pooled.prepare((String) args[0]);
+      }
+      return PooledDataSource.invoke(_pooled._connection, method, args);
+    }
+  }
+
+  /**
+   * The handler behind the wrappers given to callers for a cached statement,
+   * and those of the ResultSets it returns (so that closing them is tracked and
+   * getStatement() returns the wrapper).
+   */
+  private static class CachedStatement implements InvocationHandler {
+    private final PreparedStatement _statement;
+    private PreparedStatement _proxy; //the wrapper in use, or null once closed
+    private PreparedStatement _resultSetOwner; //the wrapper whose ResultSet is open, if any
+
+    private CachedStatement(PreparedStatement statement) {
+      _statement = statement;
+    }
+
+    private boolean isInUse() {
+      return _proxy != null || _resultSetOwner != null;
+    }
+
+    private PreparedStatement open() {
+      _proxy = (PreparedStatement) Proxy.newProxyInstance(PreparedStatement.class.getClassLoader(),
+          new Class<?>[] { PreparedStatement.class }, this);
+      return _proxy;
+    }
+
+    private void discard() {
+      try {
+        _statement.close();
+      } catch(SQLException e) {
+        LogFactory.getLog(PooledDataSource.class).warn("Error closing cached statement", e);
+      }
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+      String name = method.getName();
+      if("equals".equals(name)) {
+        return proxy == args[0];
+      } else if("hashCode".equals(name)) {
+        return System.identityHashCode(proxy);
+      } else if("toString".equals(name)) {
+        return "Cached " + _statement.toString();
+      } else if("close".equals(name)) {
+        if(proxy == _proxy) {
+          _proxy = null;
+        }
+        return null;
+      } else if("isClosed".equals(name)) {
+        return proxy != _proxy;
+      }
+      if(proxy != _proxy) { //a wrapper from an earlier use
+        throw new SQLException("Statement has been closed");
+      }
+      Object result = PooledDataSource.invoke(_statement, method, args);
+      if(result instanceof ResultSet) { //from executeQuery or getResultSet
+        _resultSetOwner = _proxy;
+        return Proxy.newProxyInstance(ResultSet.class.getClassLoader(), new Class<?>[] { ResultSet.class },
+            new ResultSetHandle(this, (ResultSet) result, _proxy));
+      }
+      return result;
+    }
+
+    /**
+     * Called when a ResultSet of the statement is closed
+     * @param owner
+     *          the wrapper the ResultSet came from
+     */
+    private void resultSetClosed(PreparedStatement owner) {
+      if(_resultSetOwner == owner) {
+        _resultSetOwner = null;
+      }
+    }
+  }
+
+  /**
+   * The handler behind the wrapper of a ResultSet from a cached statement
+   */
+  private static class ResultSetHandle implements InvocationHandler {
+    private final CachedStatement _cached;
+    private final ResultSet _resultSet;
+    private final PreparedStatement _statementProxy;
+    private boolean _closed;
+
+    private ResultSetHandle(CachedStatement cached, ResultSet resultSet, PreparedStatement statementProxy) {
+      _cached = cached;
+      _resultSet = resultSet;
+      _statementProxy = statementProxy;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+      String name = method.getName();
+      if("close".equals(name)) {
+        if(!_closed) {
+          _closed = true;
+          _cached.resultSetClosed(_statementProxy);
+          _resultSet.close();
+        }
+        return null;
+      } else if("getStatement".equals(name)) {
+        return _statementProxy;
+      } else if("equals".equals(name)) {
+        return proxy == args[0];
+      } else if("hashCode".equals(name)) {
+        return System.identityHashCode(proxy);
+      }
+      return PooledDataSource.invoke(_resultSet, method, args);
+    }
+  }
+}
@@ -24,6 +24,8 @@ import romeo.ApplicationException;
  * (We don't bother using a proper connection pool in Romeo because it is a trivial
  * application and we want to keep the library count down to avoid bloating the 
  * distro even more!)
+ * Romeo itself now uses the {@link PooledDataSource} subclass, which adds a
+ * simple pool of connections without needing another library.
  */
 public class QndDataSource implements DataSource {
   private String _driver = null;
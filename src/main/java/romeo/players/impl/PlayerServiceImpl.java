@@ -30,13 +30,13 @@ import romeo.utils.IKeyGen;
 /**
  * Manages the persistence and retrieval of player information. The
  * {@link IPlayer} interface defines getters for properties that represent the
- * information about a player.
+ * information about a player. The cached players are held in an immutable
+ * {@link PlayerCache} that is replaced when they change, so reading them
+ * doesn't lock the service.
  */
 public class PlayerServiceImpl extends AbstractPersistenceService implements IPlayerService {
   
-  private List<IPlayer> _playersCache;
-  private Map<PlayerId, IPlayer> _playersById; 
-  private Map<String, IPlayer> _playersByName;
+  private volatile PlayerCache _cache; //null when flushed, only replaced while holding the lock on the service
 
   /**
    * Constructor
@@ -55,11 +55,8 @@ public class PlayerServiceImpl extends AbstractPersistenceService implements IPl
    * @return players
    */
   @Override
-  public synchronized List<IPlayer> getPlayers() {
-    if(!cacheInitialised()) {
-      initCache();
-    }
-    return Collections.unmodifiableList(_playersCache);
+  public List<IPlayer> getPlayers() {
+    return getCache()._players;
   }
 
   /**
@@ -72,7 +69,7 @@ public class PlayerServiceImpl extends AbstractPersistenceService implements IPl
    * @return summary
    */
   @Override
-  public synchronized List<Map<String, Object>> getPlayersSummary(int turn) {
+  public List<Map<String, Object>> getPlayersSummary(int turn) {
     if(turn<1) {
       throw new InvalidTurnException(turn);
     }
@@ -126,14 +123,11 @@ public class PlayerServiceImpl extends AbstractPersistenceService implements IPl
    * @return player
    */
   @Override
-  public synchronized IPlayer loadPlayer(PlayerId id) {
+  public IPlayer loadPlayer(PlayerId id) {
     Objects.requireNonNull(id, "id may not be null");
     //nb: as of 0.6.3 we don't hit the db for individual player records anymore but rather fetch them
     //from the cache, initialising it if necessary
-    if(!cacheInitialised()) {
-      initCache();
-    }
-    return _playersById.get(id);
+    return getCache()._playersById.get(id);
   }
 
   /**
@@ -143,7 +137,7 @@ public class PlayerServiceImpl extends AbstractPersistenceService implements IPl
    * @return player
    */
   @Override
-  public synchronized IPlayer loadPlayerByName(String name) {
+  public IPlayer loadPlayerByName(String name) {
     Objects.requireNonNull(name, "name may not be null");
     if(name.isEmpty()) {
       throw new IllegalArgumentException("name may not be empty");
@@ -151,10 +145,7 @@ public class PlayerServiceImpl extends AbstractPersistenceService implements IPl
     name = name.trim().toUpperCase(Locale.US);
     //nb: as of 0.6.3 we don't hit the db for individual player records anymore but rather fetch them
     //from the cache, initialising it if necessary
-    if(!cacheInitialised()) {
-      initCache();
-    }
-    return _playersByName.get(name);
+    return getCache()._playersByName.get(name);
   }
 
   /**
@@ -172,7 +163,7 @@ public class PlayerServiceImpl extends AbstractPersistenceService implements IPl
       throw new RuntimeException("Error deleting player " + id, e);
     } finally {
       flushCache();
-      notifyDataChanged();
+      notifyRecordsChanged(Collections.singletonList(id));
     }
   }
 
@@ -196,31 +187,40 @@ public class PlayerServiceImpl extends AbstractPersistenceService implements IPl
         }
       }
       
+      List<PlayerId> ids = new ArrayList<>(players.size());
       for(IPlayer player : players) {
         checkDuplicate(player);
-        savePlayerInternal(player, false);
+        ids.add( savePlayerInternal(player, false) );
       }
-      notifyDataChanged();
+      notifyRecordsChanged(ids);
     }
   }
 
-  private boolean cacheInitialised() {
-    return _playersCache != null;
+  /**
+   * Returns the cached players, loading them if the cache is flushed
+   * @return cache
+   */
+  private PlayerCache getCache() {
+    PlayerCache cache = _cache;
+    return (cache == null) ? initCache() : cache;
   }
   
   /**
    * Clear all the cached information
    */
   private synchronized void flushCache() {
-    _playersCache = null;
-    _playersById = null;
-    _playersByName = null;
+    _cache = null;
   }
 
   /**
-   * Initialise the cache from the database.
+   * Initialise the cache from the database, unless another thread did so while
+   * this one was waiting for the lock.
+   * @return cache
    */
-  private synchronized void initCache() {
+  private synchronized PlayerCache initCache() {
+    if(_cache != null) {
+      return _cache;
+    }
     List<IPlayer> results = new ArrayList<>();
     try(Connection connection = _dataSource.getConnection()) {
       String sql = "SELECT id,name,status,notes,color,team" + " FROM PLAYERS ORDER BY UCASE(name) ASC";
@@ -231,20 +231,9 @@ public class PlayerServiceImpl extends AbstractPersistenceService implements IPl
     } catch(Exception e) {
       throw new RuntimeException("Error loading players ", e);
     }    
-    _playersCache = Collections.unmodifiableList(results);
-    _playersById = new HashMap<PlayerId, IPlayer>();
-    _playersByName = new HashMap<String, IPlayer>();
-    for(IPlayer player : _playersCache) {
-      _playersById.put(player.getId(), player);
-      String name = player.getName();
-      if(name != null && !name.isEmpty()) { 
-        name = name.toUpperCase(Locale.US);
-        //nb: we only store the first one with that name, so if users duplicate them its a problem
-        if(!_playersByName.containsKey(name)) {
-          _playersByName.put(name, player);
-        }
-      }
-    }
+    PlayerCache cache = new PlayerCache(results);
+    _cache = cache;
+    return cache;
   }
   
   /**
@@ -262,7 +251,7 @@ public class PlayerServiceImpl extends AbstractPersistenceService implements IPl
     }
     String sql = null;
     Object[] parameters = null;
-    PlayerId id;
+    PlayerId id = null;
     try(Connection connection = _dataSource.getConnection()) {
       if(player.isNew()) {
         id = new PlayerId(_keyGen.createIdKey() );
@@ -282,7 +271,7 @@ public class PlayerServiceImpl extends AbstractPersistenceService implements IPl
     } finally {
       flushCache();
       if(notify) {
-        notifyDataChanged();
+        notifyRecordsChanged(id == null ? null : Collections.singletonList(id));
       }
     }
   }
@@ -318,4 +307,28 @@ public class PlayerServiceImpl extends AbstractPersistenceService implements IPl
     }
   }
 
+  /**
+   * Immutable snapshot of the players and their lookup maps
+   */
+  private static class PlayerCache {
+    private final List<IPlayer> _players;
+    private final Map<PlayerId, IPlayer> _playersById = new HashMap<PlayerId, IPlayer>();
+    private final Map<String, IPlayer> _playersByName = new HashMap<String, IPlayer>();
+
+    private PlayerCache(List<IPlayer> players) {
+      _players = Collections.unmodifiableList(players);
+      for(IPlayer player : players) {
+        _playersById.put(player.getId(), player);
+        String name = player.getName();
+        if(name != null && !name.isEmpty()) { 
+          name = name.toUpperCase(Locale.US);
+          //nb: we only store the first one with that name, so if users duplicate them its a problem
+          if(!_playersByName.containsKey(name)) {
+            _playersByName.put(name, player);
+          }
+        }
+      }
+    }
+  }
+
 }
@@ -22,30 +22,28 @@ import romeo.utils.Convert;
 import romeo.utils.DbUtils;
 import romeo.utils.IKeyGen;
 
+/**
+ * Manages the persistence of saved battle scenarios. The cached scenarios are
+ * held in an immutable {@link ScenarioCache} that is replaced when they change,
+ * so reading them doesn't lock the service.
+ */
 public class ScenarioServiceImpl extends AbstractPersistenceService implements IScenarioService {
 
-  private List<IScenario> _scenariosCache;
-  private Map<ScenarioId, IScenario> _scenariosById;
+  private volatile ScenarioCache _cache; //null when flushed, only replaced while holding the lock on the service
 
   public ScenarioServiceImpl(DataSource dataSource, IKeyGen keyGen) {
     super(dataSource, keyGen);
   }
 
   @Override
-  public synchronized List<IScenario> getScenarios() {
-    if(!cacheInitialised()) {
-      initCache();
-    }
-    return _scenariosCache;
+  public List<IScenario> getScenarios() {
+    return getCache()._scenarios;
   }
 
   @Override
-  public synchronized IScenario loadScenario(ScenarioId id) {
+  public IScenario loadScenario(ScenarioId id) {
     Objects.requireNonNull(id, "id may not be null");
-    if(!cacheInitialised()) {
-      initCache();
-    }
-    return _scenariosById.get(id);
+    return getCache()._scenariosById.get(id);
   }
 
   @Override
@@ -97,17 +95,25 @@ public class ScenarioServiceImpl extends AbstractPersistenceService implements I
     }
   }
   
-  private boolean cacheInitialised() {
-    return _scenariosCache != null;
+  private ScenarioCache getCache() {
+    ScenarioCache cache = _cache;
+    return (cache == null) ? initCache() : cache;
   }
   
-  private void flushCache() {
+  private synchronized void flushCache() {
     LogFactory.getLog(this.getClass()).debug("Flushing scenarios cache");
-    _scenariosCache = null;
-    _scenariosById = null;
+    _cache = null;
   }
 
-  private void initCache() {
+  /**
+   * Load the scenarios from the database into a new cache, unless another
+   * thread did so while this one was waiting for the lock
+   * @return cache
+   */
+  private synchronized ScenarioCache initCache() {
+    if(_cache != null) {
+      return _cache;
+    }
     LogFactory.getLog(this.getClass()).debug("Initialising scenarios cache");
     List<IScenario> results = new ArrayList<>();
     try(Connection connection = _dataSource.getConnection()) {
@@ -120,11 +126,9 @@ public class ScenarioServiceImpl extends AbstractPersistenceService implements I
       flushCache();
       throw new RuntimeException("Error loading all scenarios ", e);
     } 
-    _scenariosCache = Collections.unmodifiableList(results);
-    _scenariosById = new HashMap<ScenarioId, IScenario>();
-    for(IScenario scenario : _scenariosCache) {
-      _scenariosById.put(scenario.getId(), scenario);
-    }
+    ScenarioCache cache = new ScenarioCache(results);
+    _cache = cache;
+    return cache;
   }
 
   /**
@@ -141,4 +145,19 @@ public class ScenarioServiceImpl extends AbstractPersistenceService implements I
     return scenario;
   }
 
+  /**
+   * Immutable snapshot of the scenarios and their lookup map
+   */
+  private static class ScenarioCache {
+    private final List<IScenario> _scenarios;
+    private final Map<ScenarioId, IScenario> _scenariosById = new HashMap<ScenarioId, IScenario>();
+
+    private ScenarioCache(List<IScenario> scenarios) {
+      _scenarios = Collections.unmodifiableList(scenarios);
+      for(IScenario scenario : scenarios) {
+        _scenariosById.put(scenario.getId(), scenario);
+      }
+    }
+  }
+
 }
@@ -14,6 +14,12 @@ public interface ISettings {
   
   public static final String NUMBER_OF_BATTLES = "romeo.simulator.numberOfBattles";
   public static final String SHOW_RAW_FP = "romeo.simulator.showRawFp";
+  public static final String SAMPLE_ROLLS = "romeo.simulator.sampleRolls";
+  /**
+   * Percentage precision at which the simulator may stop before running all the
+   * battles, or zero to always run them all
+   */
+  public static final String TARGET_PRECISION = "romeo.simulator.targetPrecision";
   public static final String F_CLASS_WORLD = "romeo.worlds.sizes.fClass";
   public static final String E_CLASS_WORLD = "romeo.worlds.sizes.eClass";
   public static final String D_CLASS_WORLD = "romeo.worlds.sizes.dClass";
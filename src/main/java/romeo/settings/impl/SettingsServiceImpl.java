@@ -2,9 +2,9 @@ package romeo.settings.impl;
 
 import java.sql.Connection;
 import java.sql.ResultSet;
-import java.util.Map;
 import java.util.Objects;
-import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import javax.sql.DataSource;
 
@@ -14,6 +14,12 @@ import romeo.settings.api.SettingNotFoundException;
 import romeo.utils.DbUtils;
 import romeo.utils.IKeyGen;
 
+/**
+ * Persists settings of various types by name. Values are cached in concurrent
+ * maps when first read or when set, so reading a setting doesn't lock the
+ * service. Only setting a value, which writes to the database, is
+ * synchronized.
+ */
 public class SettingsServiceImpl extends AbstractPersistenceService implements ISettingsService {
   
   private static final String TABLE_LONG = "SETTINGS_LONG";
@@ -44,10 +50,10 @@ public class SettingsServiceImpl extends AbstractPersistenceService implements I
 
   /////////////////////////////////////////////////////////////////////////////
 
-  private Map<String, Long> _longCache;
-  private Map<String, String> _stringCache;
-  private Map<String, Double> _doubleCache;
-  private Map<String, Boolean> _flagCache;
+  private final ConcurrentMap<String, Long> _longCache = new ConcurrentHashMap<String, Long>();
+  private final ConcurrentMap<String, String> _stringCache = new ConcurrentHashMap<String, String>();
+  private final ConcurrentMap<String, Double> _doubleCache = new ConcurrentHashMap<String, Double>();
+  private final ConcurrentMap<String, Boolean> _flagCache = new ConcurrentHashMap<String, Boolean>();
 
   public SettingsServiceImpl(DataSource dotaSource, IKeyGen keyGen) {
     super(dotaSource, keyGen);
@@ -60,7 +66,7 @@ public class SettingsServiceImpl extends AbstractPersistenceService implements I
   }
 
   @Override
-  public synchronized long getLong(String name) {
+  public long getLong(String name) {
     Long l = (Long) getSetting(name, SettingType.LONG);
     if(l == null) {
       throw new SettingNotFoundException(name, SettingType.LONG);
@@ -74,7 +80,7 @@ public class SettingsServiceImpl extends AbstractPersistenceService implements I
   }
 
   @Override
-  public synchronized String getString(String name) {
+  public String getString(String name) {
     String s = (String) getSetting(name, SettingType.STRING);
     if(s == null) {
       throw new SettingNotFoundException(name, SettingType.STRING);
@@ -88,7 +94,7 @@ public class SettingsServiceImpl extends AbstractPersistenceService implements I
   }
 
   @Override
-  public synchronized double getDouble(String name) {
+  public double getDouble(String name) {
     Double d = (Double) getSetting(name, SettingType.DOUBLE);
     if(d == null) {
       throw new SettingNotFoundException(name, SettingType.DOUBLE);
@@ -102,7 +108,7 @@ public class SettingsServiceImpl extends AbstractPersistenceService implements I
   }
 
   @Override
-  public synchronized boolean isFlagSet(String name) {
+  public boolean isFlagSet(String name) {
     Boolean b = (Boolean) getSetting(name, SettingType.FLAG);
     if(b == null) {
       throw new SettingNotFoundException(name, SettingType.FLAG);
@@ -133,7 +139,7 @@ public class SettingsServiceImpl extends AbstractPersistenceService implements I
   }
 
   @Override
-  public synchronized Object getSetting(String name, SettingType type) {
+  public Object getSetting(String name, SettingType type) {
     Objects.requireNonNull(name, "name must not be null");
     Objects.requireNonNull(type, "type must not be null");
     if(name.isEmpty()) {
@@ -148,7 +154,10 @@ public class SettingsServiceImpl extends AbstractPersistenceService implements I
       ResultSet rs = DbUtils.readQuery(sql, new Object[] { name }, connection);
       if(rs.next()) {
         value = rs.getObject(1);
-        putCache(name, type, value);
+        if(value != null) {
+          //A value set by another thread since we read this one takes precedence
+          value = putCacheIfAbsent(name, type, value);
+        }
         return value;
       } else {
         return null;
@@ -159,7 +168,7 @@ public class SettingsServiceImpl extends AbstractPersistenceService implements I
   }
 
   @Override
-  public synchronized boolean settingDefined(String name, SettingType type) {
+  public boolean settingDefined(String name, SettingType type) {
     Objects.requireNonNull(name, "name must not be null");
     Objects.requireNonNull(type, "type must not be null");
     if(name.isEmpty()) {
@@ -202,6 +211,38 @@ public class SettingsServiceImpl extends AbstractPersistenceService implements I
     }
   }
 
+  /**
+   * Caches the value unless there is already one cached for the setting, and
+   * returns the cached value
+   * @param name
+   * @param type
+   * @param value
+   * @return cachedValue
+   */
+  private Object putCacheIfAbsent(String name, SettingType type, Object value) {
+    Object cached = getCache(name, type);
+    if(cached != null) {
+      return cached;
+    }
+    switch (type){
+      case LONG:
+        cached = _longCache.putIfAbsent(name, (Long) value);
+        break;
+      case STRING:
+        cached = _stringCache.putIfAbsent(name, (String) value);
+        break;
+      case DOUBLE:
+        cached = _doubleCache.putIfAbsent(name, (Double) value);
+        break;
+      case FLAG:
+        cached = _flagCache.putIfAbsent(name, (Boolean) value);
+        break;
+      default:
+        throw new UnsupportedOperationException("Unsupported type " + type);
+    }
+    return (cached == null) ? value : cached;
+  }
+
   private Object getCache(String name, SettingType type) {
     Object value = null;
     switch (type){
@@ -224,10 +265,10 @@ public class SettingsServiceImpl extends AbstractPersistenceService implements I
   }
   
   private void flushCache() {
-    _longCache = new TreeMap<String, Long>();
-    _stringCache = new TreeMap<String, String>();
-    _doubleCache = new TreeMap<String, Double>();
-    _flagCache = new TreeMap<String, Boolean>();
+    _longCache.clear();
+    _stringCache.clear();
+    _doubleCache.clear();
+    _flagCache.clear();
   }
 
 }
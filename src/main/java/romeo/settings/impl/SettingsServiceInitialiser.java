@@ -73,6 +73,8 @@ public class SettingsServiceInitialiser implements IServiceInitialiser {
     initSetting(connection, ISettings.CURRENT_TURN, SettingType.LONG, 1, false);
     initSetting(connection, ISettings.NUMBER_OF_BATTLES, SettingType.LONG, 1000, false);
     initSetting(connection, ISettings.SHOW_RAW_FP, SettingType.FLAG, false, false);
+    initSetting(connection, ISettings.SAMPLE_ROLLS, SettingType.FLAG, false, false);
+    initSetting(connection, ISettings.TARGET_PRECISION, SettingType.DOUBLE, 0d, false);
     
     initSetting(connection, ISettings.IMPORT_FOLDER, SettingType.STRING, __initialImportFolderPath, false);
 
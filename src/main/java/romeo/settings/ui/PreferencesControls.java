@@ -29,6 +29,7 @@ import romeo.settings.api.ISettingsService;
 import romeo.settings.impl.SettingChangedEvent;
 import romeo.ui.NamedPanel;
 import romeo.ui.forms.IValidatingField;
+import romeo.ui.forms.NumericFieldConstraint;
 import romeo.ui.forms.RNumericField;
 import romeo.utils.Convert;
 import romeo.utils.GuiUtils;
@@ -39,6 +40,8 @@ public class PreferencesControls implements IServiceListener, DocumentListener,
 
   protected RNumericField _numberOfBattlesField;
   protected JCheckBox _showRawFpField;
+  protected JCheckBox _sampleRollsField;
+  protected RNumericField _targetPrecisionField;
 
   protected RNumericField _fClassWorldField;
   protected RNumericField _eClassWorldField;
@@ -82,6 +85,19 @@ public class PreferencesControls implements IServiceListener, DocumentListener,
     _showRawFpField = new JCheckBox("Show raw firepower");
     _showRawFpField.addActionListener(this);
 
+    _sampleRollsField = new JCheckBox("Sample rolls (faster for large stacks)");
+    _sampleRollsField.addActionListener(this);
+
+    _targetPrecisionField = new RNumericField();
+    NumericFieldConstraint precisionConstraint = new NumericFieldConstraint();
+    precisionConstraint.setNegativeAllowed(false);
+    precisionConstraint.setAllowDecimal(true);
+    _targetPrecisionField.setConstraint(precisionConstraint);
+    _targetPrecisionField
+        .setToolTipText("Stop once the results are known to within this many percent (0 to run all the battles)");
+    _targetPrecisionField.getDocument().addDocumentListener(this);
+    _fields.add(_targetPrecisionField);
+
     JButton deleteAllScenariosButton = new JButton("Clear all scenarios");
     deleteAllScenariosButton.setIcon(GuiUtils.getImageIcon("/images/deleteScenario.gif"));
     deleteAllScenariosButton.addActionListener(new ActionListener() {
@@ -101,10 +117,20 @@ public class PreferencesControls implements IServiceListener, DocumentListener,
     gbc.gridx++;
     simulatorPrefs.add(_numberOfBattlesField, gbc);
 
+    gbc.gridy++;
+    gbc.gridx = 0;
+    simulatorPrefs.add(new JLabel("Stop at precision (%):"), gbc);
+    gbc.gridx++;
+    simulatorPrefs.add(_targetPrecisionField, gbc);
+
     gbc.gridy++;
     gbc.gridx = 1;
     simulatorPrefs.add(_showRawFpField, gbc);
 
+    gbc.gridy++;
+    gbc.gridx = 1;
+    simulatorPrefs.add(_sampleRollsField, gbc);
+
     gbc.gridy++;
     gbc.gridx = 1;
     simulatorPrefs.add(deleteAllScenariosButton, gbc);
@@ -369,6 +395,14 @@ public class PreferencesControls implements IServiceListener, DocumentListener,
       _showRawFpField.setSelected(_settingsService.isFlagSet(ISettings.SHOW_RAW_FP));
     }
 
+    if(setting == null || ISettings.TARGET_PRECISION.equals(setting)) {
+      _targetPrecisionField.setText(_settingsService.getDouble(ISettings.TARGET_PRECISION), 2);
+    }
+
+    if(setting == null || ISettings.SAMPLE_ROLLS.equals(setting)) {
+      _sampleRollsField.setSelected(_settingsService.isFlagSet(ISettings.SAMPLE_ROLLS));
+    }
+
     if(setting == null || ISettings.F_CLASS_WORLD.equals(setting)) {
       long value = _settingsService.getLong(ISettings.F_CLASS_WORLD);
       _fClassWorldField.setText(value, 0);
@@ -439,6 +473,8 @@ public class PreferencesControls implements IServiceListener, DocumentListener,
     }
     saveIfChanged(ISettings.NUMBER_OF_BATTLES, Convert.toInt(_numberOfBattlesField.getText()));
     saveIfChanged(ISettings.SHOW_RAW_FP, _showRawFpField.isSelected());
+    saveIfChanged(ISettings.SAMPLE_ROLLS, _sampleRollsField.isSelected());
+    saveIfChanged(ISettings.TARGET_PRECISION, Convert.toDouble(_targetPrecisionField.getText()));
 
     saveIfChanged(ISettings.F_CLASS_WORLD, Convert.toInt(_fClassWorldField.getText()));
     saveIfChanged(ISettings.E_CLASS_WORLD, Convert.toInt(_eClassWorldField.getText()));
@@ -523,6 +559,20 @@ public class PreferencesControls implements IServiceListener, DocumentListener,
     }
   }
 
+  /**
+   * Checks to see if value is different to what is recorded for the specified
+   * DOUBLE setting, and if it is, saves new value to the setting.
+   * @param setting
+   * @param value
+   */
+  protected void saveIfChanged(String setting, double value) {
+    Objects.requireNonNull(setting, "setting must not be null");
+    double current = _settingsService.getDouble(setting);
+    if(current != value) {
+      _settingsService.setDouble(setting, value);
+    }
+  }
+
   protected void saveIfChanged(String setting, boolean value) {
     //TODO - consider making this the normal behaviour of the setting service itself
     Objects.requireNonNull(setting, "setting must not be null");
@@ -5,18 +5,24 @@ import java.awt.BorderLayout;
 import java.awt.Color;
 import java.awt.Dimension;
 import java.awt.Font;
+import java.awt.FontMetrics;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
+import java.awt.Insets;
 import java.awt.Point;
 import java.awt.Rectangle;
+import java.awt.RenderingHints;
 import java.awt.Robot;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseMotionAdapter;
 import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
 import java.util.ArrayList;
 import java.util.EventObject;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 
@@ -33,7 +39,6 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
 import romeo.model.api.MapInfo;
-import romeo.utils.Convert;
 import romeo.utils.events.IEventHub;
 import romeo.utils.events.IEventListener;
 import romeo.utils.events.ShutdownEvent;
@@ -65,8 +70,34 @@ public class GenericMap implements IEventListener {
     public String getDescription(Object object);
   }
 
+  /**
+   * Draws objects on the map. What render() draws is cached in tiles so it must
+   * not depend on which object is highlighted (or it will be stale as the mouse
+   * moves). Anything specific to the origin or highlighted object should be
+   * drawn by renderOverlay() instead, which is called on every repaint for just
+   * those objects, on top of the cached tiles. As the tiles are rendered
+   * separately, getBounds() must report all of what render() may draw so that
+   * objects near a tile are drawn into it as well.
+   */
   public static interface IObjectRenderer {
     public void render(Graphics2D g, GenericMap map, Object object, int x, int y, double zoom);
+
+    public void renderOverlay(Graphics2D g, GenericMap map, Object object, int x, int y, double zoom);
+
+    /**
+     * Returns the screen area that render() would draw the object into,
+     * including any labels.
+     * @param g
+     *          graphics with the font that render() would be called with, for
+     *          measuring text
+     * @param map
+     * @param object
+     * @param x
+     * @param y
+     * @param zoom
+     * @return bounds
+     */
+    public Rectangle getBounds(Graphics2D g, GenericMap map, Object object, int x, int y, double zoom);
   }
 
   public static class PositionStruct {
@@ -77,6 +108,43 @@ public class GenericMap implements IEventListener {
   protected static final int SCROLL_INCREMENT = 25;
   protected static final int SLIDER_RATIO = 100;
   private static final int EDGE_PAD = 64;
+  /**
+   * Width and height in pixels of the cached tiles of the rendered map
+   */
+  protected static final int TILE_SIZE = 256;
+  /**
+   * Maximum number of cached tiles to keep (across all zoom levels)
+   */
+  protected static final int MAX_TILES = 64;
+
+  /**
+   * Key for a cached tile
+   */
+  private static final class TileKey {
+    private final double _zoom;
+    private final int _column;
+    private final int _row;
+
+    private TileKey(double zoom, int column, int row) {
+      _zoom = zoom;
+      _column = column;
+      _row = row;
+    }
+
+    @Override
+    public boolean equals(Object object) {
+      if(!(object instanceof TileKey)) {
+        return false;
+      }
+      TileKey key = (TileKey) object;
+      return Double.compare(_zoom, key._zoom) == 0 && _column == key._column && _row == key._row;
+    }
+
+    @Override
+    public int hashCode() {
+      return (Double.valueOf(_zoom).hashCode() * 31 + _column) * 31 + _row;
+    }
+  }
 
   /////////////////////////////////////////////////////////////////////////////
 
@@ -92,6 +160,12 @@ public class GenericMap implements IEventListener {
   private Color _backgroundColor = Color.BLACK;
   private Font _font = null;
   private List<IRecordSelectionListener> _selectionListeners = new ArrayList<IRecordSelectionListener>(1);
+  private MapIndex _index;
+  private Set<? extends Object> _indexedData;
+  private volatile Map<TileKey, BufferedImage> _tiles = createTileCache();
+  private Insets _tileMargins;
+  private MapIndex _tileMarginsIndex;
+  private double _tileMarginsZoom;
 
 //  /**
 //   * Convenience constructor that takes a single
@@ -152,7 +226,10 @@ public class GenericMap implements IEventListener {
           }
         } else {
           if(e.getButton() == MouseEvent.BUTTON1 && _highlightedObject != null) { //left click changes origin thing
-            _originObject = _highlightedObject;
+            if(_originObject != _highlightedObject) { //objects may show their distance from the origin
+              _originObject = _highlightedObject;
+              flushTiles();
+            }
             _map.repaint();
             if(e.getClickCount() == 2) { //double-click will inform listeners it  was selected
               if(_highlightedObject != null) {
@@ -199,18 +276,14 @@ public class GenericMap implements IEventListener {
       public void mouseMoved(MouseEvent e) {
         int wx = toWorldX(e.getX());
         int wy = toWorldY(e.getY());
-        Set<? extends Object> data = _logic.getData();
-        Object closest = null;
-        int minDist = Integer.MAX_VALUE;
-        for(Object object : data) {
-          int distance = Convert.toDistance(_logic.getObjectX(object), _logic.getObjectY(object), wx, wy);
-          if(distance < minDist) {
-            closest = object;
-            minDist = distance;
-          }
+        MapIndex index = getIndex();
+        Object closest = index == null ? null : index.findClosest(wx, wy);
+        if(closest != _highlightedObject) { //only the overlays around the old and new highlight need redrawing
+          Object previous = _highlightedObject;
+          _highlightedObject = closest;
+          repaintOverlay(previous);
+          repaintOverlay(closest);
         }
-        _highlightedObject = closest;
-        _map.repaint();
       }
     });
 
@@ -350,6 +423,8 @@ public class GenericMap implements IEventListener {
 
   public void refresh() {
     _highlightedObject = null;
+    _index = null; //the logic may have changed the contents of the same set
+    flushTiles();
     if(_originObject != null) {
       _originObject = findObject(_originObject);
     }
@@ -412,16 +487,15 @@ public class GenericMap implements IEventListener {
 
   protected void paintMap(Graphics2D g) {
     //LogFactory.getLog(this.getClass()).trace("paintMap called");
-    g.setColor(_backgroundColor);
-    g.fillRect(0, 0, _map.getWidth(), _map.getHeight());
-    if(_font != null) {
-      g.setFont(_font);
-    }
-
     Set<? extends Object> data = _logic.getData();
     int size = data == null ? 0 : data.size();
 
     if(size == 0) { //No data to display
+      g.setColor(_backgroundColor);
+      g.fillRect(0, 0, _map.getWidth(), _map.getHeight());
+      if(_font != null) {
+        g.setFont(_font);
+      }
       Point vis = getVisibleMapCentre();
       int x = toScreenX(vis.x);
       int y = toScreenY(vis.y);
@@ -434,56 +508,208 @@ public class GenericMap implements IEventListener {
       return;
     }
 
-    //following radius only used if no renderer supplied
-    int radius = (int) (4 * _zoom);
-    if(radius < 2) { //Minimum visual size for our worlds
-      radius = 2;
+    //Copy the cached tiles covering the area being painted, rendering any that are missing
+    Rectangle bounds = g.getClipBounds();
+    if(bounds == null) {
+      bounds = new Rectangle(0, 0, _map.getWidth(), _map.getHeight());
+    }
+    Map<TileKey, BufferedImage> tiles = _tiles;
+    MapIndex index = getIndex();
+    int firstColumn = Math.max(0, bounds.x) / TILE_SIZE;
+    int lastColumn = Math.max(0, bounds.x + bounds.width - 1) / TILE_SIZE;
+    int firstRow = Math.max(0, bounds.y) / TILE_SIZE;
+    int lastRow = Math.max(0, bounds.y + bounds.height - 1) / TILE_SIZE;
+    for(int row = firstRow; row <= lastRow; row++) {
+      for(int column = firstColumn; column <= lastColumn; column++) {
+        TileKey key = new TileKey(_zoom, column, row);
+        BufferedImage tile = tiles.get(key);
+        if(tile == null) {
+          tile = renderTile(column, row, index, g.getRenderingHints());
+          tiles.put(key, tile);
+        }
+        g.drawImage(tile, column * TILE_SIZE, row * TILE_SIZE, null);
+      }
     }
-    //....
-
-    MapInfo mapInfo = _logic.getMapInfo();
-    int mapLeft = toScreenX(mapInfo.getLeftBorder());
-    int mapRight = toScreenX(mapInfo.getRightBorder());
-    int mapTop = toScreenY(mapInfo.getTopBorder());
-    int mapBottom = toScreenY(mapInfo.getBottomBorder());
 
-    g.setColor(Color.GRAY);
-    g.drawLine(mapLeft, mapTop, mapRight, mapTop);
-    g.drawLine(mapRight, mapTop, mapRight, mapBottom);
-    g.drawLine(mapRight, mapBottom, mapLeft, mapBottom);
-    g.drawLine(mapLeft, mapBottom, mapLeft, mapTop);
+    //Then draw the overlays for the origin and highlighted objects on top
+    if(_font != null) {
+      g.setFont(_font);
+    }
+    Object origin = _originObject;
+    Object highlighted = _highlightedObject;
+    if(origin != null) {
+      paintOverlay(g, origin);
+    }
+    if(highlighted != null && highlighted != origin) {
+      paintOverlay(g, highlighted);
+    }
+  }
 
-    Rectangle clip = getScreenClipRectangle();
+  /**
+   * Renders the background and all the objects within (or close enough to
+   * overlap) the specified tile
+   * @param column
+   * @param row
+   * @param index
+   * @param hints
+   *          rendering hints of the component's graphics
+   * @return tile
+   */
+  protected BufferedImage renderTile(int column, int row, MapIndex index, RenderingHints hints) {
+    int left = column * TILE_SIZE;
+    int top = row * TILE_SIZE;
+    BufferedImage tile = new BufferedImage(TILE_SIZE, TILE_SIZE, BufferedImage.TYPE_INT_RGB);
+    Graphics2D g = tile.createGraphics();
+    try {
+      g.setRenderingHints(hints);
+      g.translate(-left, -top);
+      g.setClip(left, top, TILE_SIZE, TILE_SIZE);
+      g.setColor(_backgroundColor);
+      g.fillRect(left, top, TILE_SIZE, TILE_SIZE);
+      g.setFont(_font != null ? _font : _map.getFont());
+
+      MapInfo mapInfo = _logic.getMapInfo();
+      int mapLeft = toScreenX(mapInfo.getLeftBorder());
+      int mapRight = toScreenX(mapInfo.getRightBorder());
+      int mapTop = toScreenY(mapInfo.getTopBorder());
+      int mapBottom = toScreenY(mapInfo.getBottomBorder());
+
+      g.setColor(Color.GRAY);
+      g.drawLine(mapLeft, mapTop, mapRight, mapTop);
+      g.drawLine(mapRight, mapTop, mapRight, mapBottom);
+      g.drawLine(mapRight, mapBottom, mapLeft, mapBottom);
+      g.drawLine(mapLeft, mapBottom, mapLeft, mapTop);
+
+      //following radius only used if no renderer supplied
+      int radius = getDefaultRadius();
+      //An object to the left of the tile is drawn into it if it extends far enough right of its position, etc
+      Insets margins = getTileMargins(g, index);
+      List<Object> objects = index.findWithin(toWorldX(left - margins.right) - 1, toWorldY(top - margins.bottom) - 1,
+          toWorldX(left + TILE_SIZE + margins.left) + 1, toWorldY(top + TILE_SIZE + margins.top) + 1);
+      for(Object object : objects) {
+        int x = toScreenX(_logic.getObjectX(object));
+        int y = toScreenY(_logic.getObjectY(object));
+        IObjectRenderer renderer = _logic.getRenderer(object);
+        if(renderer != null) {
+          renderer.render(g, this, object, x, y, _zoom);
+        } else { //Default rendering
+          g.setColor(Color.WHITE);
+          g.drawOval(x - radius, y - radius, radius * 2, radius * 2);
+          g.drawString(_logic.getDescription(object), x + radius, y + radius + 12);
+        }
+      }
+    } finally {
+      g.dispose();
+    }
+    return tile;
+  }
 
-    nextObject: for(Object object : data) {
-      int x = toScreenX(_logic.getObjectX(object));
-      int y = toScreenY(_logic.getObjectY(object));
-      if(clip != null && clip.contains(x, y) == false) {
-        continue nextObject;
+  /**
+   * Returns how far in pixels the objects extend from their positions when
+   * rendered, the furthest of any object in each direction. Objects this far
+   * outside a tile are drawn into it as well. This is worked out from the
+   * renderers' bounds and kept until the tiles are flushed or the zoom or
+   * index changes.
+   * @param g
+   *          graphics with the font the tiles are rendered with
+   * @param index
+   * @return margins
+   */
+  protected Insets getTileMargins(Graphics2D g, MapIndex index) {
+    Insets margins = _tileMargins;
+    if(margins == null || index != _tileMarginsIndex || _zoom != _tileMarginsZoom) {
+      margins = new Insets(0, 0, 0, 0);
+      int radius = getDefaultRadius();
+      for(Object object : _indexedData) {
+        int x = toScreenX(_logic.getObjectX(object));
+        int y = toScreenY(_logic.getObjectY(object));
+        IObjectRenderer renderer = _logic.getRenderer(object);
+        Rectangle bounds;
+        if(renderer != null) {
+          bounds = renderer.getBounds(g, this, object, x, y, _zoom);
+        } else { //Default rendering
+          bounds = new Rectangle(x - radius - 1, y - radius - 1, radius * 2 + 2, radius * 2 + 2);
+          FontMetrics metrics = g.getFontMetrics();
+          bounds.add(new Rectangle(x + radius, y + radius + 12 - metrics.getMaxAscent(),
+              metrics.stringWidth(_logic.getDescription(object)) + 1, metrics.getMaxAscent() + metrics.getMaxDescent()));
+        }
+        margins.left = Math.max(margins.left, x - bounds.x);
+        margins.top = Math.max(margins.top, y - bounds.y);
+        margins.right = Math.max(margins.right, bounds.x + bounds.width - x);
+        margins.bottom = Math.max(margins.bottom, bounds.y + bounds.height - y);
       }
+      _tileMargins = margins;
+      _tileMarginsIndex = index;
+      _tileMarginsZoom = _zoom;
+    }
+    return margins;
+  }
 
-      IObjectRenderer renderer = _logic.getRenderer(object);
-      if(renderer != null) {
-        renderer.render(g, this, object, x, y, _zoom);
-      } else { //Default rendering
+  /**
+   * Draws the origin or highlight marks for the object over the tiles
+   * @param g
+   * @param object
+   */
+  protected void paintOverlay(Graphics2D g, Object object) {
+    int x = toScreenX(_logic.getObjectX(object));
+    int y = toScreenY(_logic.getObjectY(object));
+    IObjectRenderer renderer = _logic.getRenderer(object);
+    if(renderer != null) {
+      renderer.renderOverlay(g, this, object, x, y, _zoom);
+    } else { //Default rendering
+      int radius = getDefaultRadius();
+      if(object == _originObject) { //highlight the origin. Should pick up color from renderer if any
         g.setColor(Color.WHITE);
-        g.drawOval(x - radius, y - radius, radius * 2, radius * 2);
-        g.drawString(_logic.getDescription(object), x + radius, y + radius + 12);
+        g.drawLine(x - radius, y - radius, x + radius, y + radius);
+        g.drawLine(x - radius, y + radius, x + radius, y - radius);
+      }
 
-        if(object == _originObject) { //highlight the origin. Should pick up color from renderer if any
-          g.drawLine(x - radius, y - radius, x + radius, y + radius);
-          g.drawLine(x - radius, y + radius, x + radius, y - radius);
-        }
+      if(object == getHighlighted()) {
+        g.setColor(Color.GRAY);
+        g.drawRoundRect(x - (radius * 2), y - (radius * 2), radius * 4, radius * 4, 8, 8);
+        _map.setToolTipText(_logic.getDescription(object));
+      }
+    }
+  }
 
-        if(object == getHighlighted()) {
-          g.setColor(Color.GRAY);
-          g.drawRoundRect(x - (radius * 2), y - (radius * 2), radius * 4, radius * 4, 8, 8);
-          _map.setToolTipText(_logic.getDescription(object));
-        }
+  /**
+   * Requests a repaint of the area around the object that its overlay may
+   * cover. Does nothing if object is null.
+   * @param object
+   */
+  protected void repaintOverlay(Object object) {
+    if(object != null) {
+      int x = toScreenX(_logic.getObjectX(object));
+      int y = toScreenY(_logic.getObjectY(object));
+      int pad = Math.max(16, (int) (EDGE_PAD * _zoom));
+      _map.repaint(x - pad, y - pad, pad * 2, pad * 2);
+    }
+  }
+
+  /**
+   * Discards the cached tiles so that they will be rendered again when next
+   * painted. This needs to be done whenever something they show changes.
+   */
+  protected void flushTiles() {
+    _tiles = createTileCache();
+    _tileMargins = null;
+  }
 
+  private static Map<TileKey, BufferedImage> createTileCache() {
+    return new LinkedHashMap<TileKey, BufferedImage>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<TileKey, BufferedImage> eldest) {
+        return size() > MAX_TILES;
       }
+    };
+  }
 
+  private int getDefaultRadius() {
+    int radius = (int) (4 * _zoom);
+    if(radius < 2) { //Minimum visual size for our worlds
+      radius = 2;
     }
+    return radius;
   }
 
   /**
@@ -527,6 +753,16 @@ public class GenericMap implements IEventListener {
   }
 
   protected Object findObject(Object object) {
+    MapIndex index = getIndex();
+    if(index != null) { //try objects at the same location first
+      int x = _logic.getObjectX(object);
+      int y = _logic.getObjectY(object);
+      for(Object candidate : index.findWithin(x, y, x, y)) {
+        if(_logic.isSameObject(object, candidate)) {
+          return candidate;
+        }
+      }
+    }
     Set<? extends Object> data = _logic.getData();
     for(Object candidate : data) {
       if(_logic.isSameObject(object,candidate)) {
@@ -536,6 +772,26 @@ public class GenericMap implements IEventListener {
     return null;
   }
 
+  /**
+   * Returns the spatial index of the logic's current data, (re)building it if
+   * the logic has supplied a different set since it was last built. Returns
+   * null if there is no data.
+   * @return index
+   */
+  protected MapIndex getIndex() {
+    Set<? extends Object> data = _logic.getData();
+    if(data == null) {
+      return null;
+    }
+    MapIndex index = _index;
+    if(index == null || data != _indexedData || data.size() != index.size()) {
+      index = new MapIndex(data, _logic);
+      _index = index;
+      _indexedData = data;
+    }
+    return index;
+  }
+
   public IMapLogic getLogic() {
     return _logic;
   }
@@ -553,6 +809,7 @@ public class GenericMap implements IEventListener {
 
   public void setBackgroundColor(Color color) {
     _backgroundColor = Objects.requireNonNull(color, "color may not be null");
+    flushTiles();
   }
 
   public Color getBackgroundColor() {
@@ -572,6 +829,7 @@ public class GenericMap implements IEventListener {
    */
   public void setFont(Font font) {
     _font = font;
+    flushTiles();
   }
 
 }
@@ -0,0 +1,202 @@
+package romeo.ui;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+
+import romeo.ui.GenericMap.IMapLogic;
+
+/**
+ * Spatial index of the objects shown on a {@link GenericMap}, so that finding
+ * the object closest to the mouse and the objects within the visible part of
+ * the map doesn't require checking every object. The objects are bucketed into
+ * a uniform grid of square cells over their bounding box, sized to hold a few
+ * objects each. The index is immutable and should be rebuilt when the data of
+ * the map changes.
+ */
+public class MapIndex {
+  /**
+   * Average number of objects the cells are sized to hold
+   */
+  protected static final int OBJECTS_PER_CELL = 4;
+
+  private final Object[] _objects;
+  private final int[] _x;
+  private final int[] _y;
+  private final int _left;
+  private final int _top;
+  private final int _cellSize;
+  private final int _columns;
+  private final int _rows;
+  private final int[] _cellStart; //index into _cellObjects of the first object in each cell, plus an end marker
+  private final int[] _cellObjects; //indexes of the objects sorted by cell
+
+  /**
+   * Constructor. Reads the coordinates of each object from the logic.
+   * @param objects
+   * @param logic
+   */
+  public MapIndex(Collection<? extends Object> objects, IMapLogic logic) {
+    Objects.requireNonNull(objects, "objects may not be null");
+    Objects.requireNonNull(logic, "logic may not be null");
+    int size = objects.size();
+    _objects = objects.toArray(new Object[size]);
+    _x = new int[size];
+    _y = new int[size];
+    int left = Integer.MAX_VALUE;
+    int top = Integer.MAX_VALUE;
+    int right = Integer.MIN_VALUE;
+    int bottom = Integer.MIN_VALUE;
+    for(int i = 0; i < size; i++) {
+      _x[i] = logic.getObjectX(_objects[i]);
+      _y[i] = logic.getObjectY(_objects[i]);
+      left = Math.min(left, _x[i]);
+      top = Math.min(top, _y[i]);
+      right = Math.max(right, _x[i]);
+      bottom = Math.max(bottom, _y[i]);
+    }
+    if(size == 0) {
+      left = top = right = bottom = 0;
+    }
+    long width = (long) right - left + 1;
+    long height = (long) bottom - top + 1;
+    double cellArea = (double) width * height * OBJECTS_PER_CELL / Math.max(size, 1);
+    _cellSize = (int) Math.max(1, Math.min(Integer.MAX_VALUE / 2, Math.ceil(Math.sqrt(cellArea))));
+    _left = left;
+    _top = top;
+    _columns = (int) ((width + _cellSize - 1) / _cellSize);
+    _rows = (int) ((height + _cellSize - 1) / _cellSize);
+
+    //Counting sort of the objects by cell
+    _cellStart = new int[_columns * _rows + 1];
+    int[] cells = new int[size];
+    for(int i = 0; i < size; i++) {
+      cells[i] = getCell(_x[i], _y[i]);
+      _cellStart[cells[i] + 1]++;
+    }
+    for(int c = 0; c < _columns * _rows; c++) {
+      _cellStart[c + 1] += _cellStart[c];
+    }
+    _cellObjects = new int[size];
+    int[] next = Arrays.copyOf(_cellStart, _cellStart.length - 1);
+    for(int i = 0; i < size; i++) {
+      _cellObjects[next[cells[i]]++] = i;
+    }
+  }
+
+  /**
+   * Returns the number of objects in the index
+   * @return size
+   */
+  public int size() {
+    return _objects.length;
+  }
+
+  /**
+   * Returns the object closest to the specified map coordinates, or null if
+   * there are no objects. Where several are equally close any of them may be
+   * returned.
+   * @param x
+   * @param y
+   * @return closest
+   */
+  public Object findClosest(int x, int y) {
+    if(_objects.length == 0) {
+      return null;
+    }
+    int column = clamp(floorDiv((long) x - _left), _columns);
+    int row = clamp(floorDiv((long) y - _top), _rows);
+    int closest = -1;
+    long minDistance = Long.MAX_VALUE;
+    int maxRing = Math.max(_columns, _rows);
+    for(int ring = 0; ring <= maxRing; ring++) {
+      //Cells in this ring are at least ring-1 whole cells away from the point along one axis (the point is in, or
+      //beyond the edge of, the centre cell), so if something closer has already been found we can stop
+      long reach = (long) (ring - 1) * _cellSize;
+      if(closest != -1 && ring > 0 && minDistance <= reach * reach) {
+        break;
+      }
+      for(int c = column - ring; c <= column + ring; c++) {
+        if(c < 0 || c >= _columns) {
+          continue;
+        }
+        boolean edge = (c == column - ring || c == column + ring);
+        int step = edge ? 1 : Math.max(1, 2 * ring); //interior columns only have cells in the top and bottom rows
+        for(int r = row - ring; r <= row + ring; r += step) {
+          if(r < 0 || r >= _rows) {
+            continue;
+          }
+          int cell = r * _columns + c;
+          for(int j = _cellStart[cell]; j < _cellStart[cell + 1]; j++) {
+            int i = _cellObjects[j];
+            long dx = (long) _x[i] - x;
+            long dy = (long) _y[i] - y;
+            long distance = dx * dx + dy * dy;
+            if(distance < minDistance) {
+              closest = i;
+              minDistance = distance;
+            }
+          }
+        }
+      }
+    }
+    return _objects[closest];
+  }
+
+  /**
+   * Returns the objects whose coordinates are within the specified bounds
+   * (inclusive), in the order they were in the collection the index was
+   * created from.
+   * @param left
+   * @param top
+   * @param right
+   * @param bottom
+   * @return objects
+   */
+  public List<Object> findWithin(int left, int top, int right, int bottom) {
+    List<Object> found = new ArrayList<Object>();
+    if(_objects.length == 0 || right < left || bottom < top) {
+      return found;
+    }
+    int fromColumn = clamp(floorDiv((long) left - _left), _columns);
+    int toColumn = clamp(floorDiv((long) right - _left), _columns);
+    int fromRow = clamp(floorDiv((long) top - _top), _rows);
+    int toRow = clamp(floorDiv((long) bottom - _top), _rows);
+    int[] indexes = new int[_objects.length];
+    int count = 0;
+    for(int r = fromRow; r <= toRow; r++) {
+      for(int c = fromColumn; c <= toColumn; c++) {
+        int cell = r * _columns + c;
+        for(int j = _cellStart[cell]; j < _cellStart[cell + 1]; j++) {
+          int i = _cellObjects[j];
+          if(_x[i] >= left && _x[i] <= right && _y[i] >= top && _y[i] <= bottom) {
+            indexes[count++] = i;
+          }
+        }
+      }
+    }
+    Arrays.sort(indexes, 0, count); //preserve the original order (which is the order they are drawn in)
+    for(int k = 0; k < count; k++) {
+      found.add(_objects[indexes[k]]);
+    }
+    return found;
+  }
+
+  private int getCell(int x, int y) {
+    return (int) ((((long) y - _top) / _cellSize) * _columns + ((long) x - _left) / _cellSize);
+  }
+
+  private int floorDiv(long offset) {
+    long cell = offset / _cellSize;
+    if(offset < 0 && cell * _cellSize != offset) {
+      cell--;
+    }
+    return (int) Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, cell));
+  }
+
+  private static int clamp(int index, int count) {
+    return Math.max(0, Math.min(count - 1, index));
+  }
+}
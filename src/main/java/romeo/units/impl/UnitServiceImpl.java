@@ -15,8 +15,8 @@ import java.util.Locale;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
-import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.sql.DataSource;
 
@@ -38,15 +38,14 @@ import romeo.xfactors.api.XFactorId;
 /**
  * Provides the underlying logic for persisting unit definitions. Other classes
  * should access this via the IUnitService interface which is its public API.
+ * The cached units are held in an immutable {@link UnitCache} that is replaced
+ * when they change, so only the methods that write to the database need to
+ * lock the service and reads (such as the battle calculator's lookups by
+ * acronym) are never blocked by a save.
  */
 public class UnitServiceImpl extends AbstractPersistenceService implements IUnitService {
   
-  private List<IUnit> _unitsCache;
-  private Map<UnitId, IUnit> _unitsById;
-  private Map<String, IUnit> _unitsByName;
-  private Map<String, IUnit> _unitsByAcronym;
-  private int[] _speeds;
-  private Map<String, double[]> _ranges; //no, not scanner, but min max of stats
+  private volatile UnitCache _cache; //null when flushed, only replaced while holding the lock on the service
 
   public UnitServiceImpl(DataSource dataSource, IKeyGen keyGen) {
     super(dataSource, keyGen);
@@ -59,36 +58,33 @@ public class UnitServiceImpl extends AbstractPersistenceService implements IUnit
    * @return range index 0 is min, and 1 the max
    */
   @Override
-  public synchronized double[] getRange(String property) {
+  public double[] getRange(String property) {
     Objects.requireNonNull(property, "property may not be null");
     if(property.isEmpty()) {
       throw new IllegalArgumentException("property may not be empty");
     }
-    if(!rangeCacheInitialised()) {
-      _ranges = new TreeMap<String, double[]>();
-    }
-
-    double[] ranges = (double[]) _ranges.get(property);
+    UnitCache cache = getCache();
+    double[] ranges = (double[]) cache._ranges.get(property);
     if(ranges != null) {
       return ranges;
     }
 
     if("multipliedOffense".equals(property)) {
-      Collection<IUnit> units = getUnits();
+      Collection<IUnit> units = cache._units;
       ranges = UnitUtils.getMultipliedOffenseRange(units);
-      _ranges.put("multipliedOffense", ranges);
+      cache._ranges.put("multipliedOffense", ranges);
       return ranges;
     }
 
     if("logisticsFactor".equals(property)) {
-      Collection<IUnit> units = getUnits();
+      Collection<IUnit> units = cache._units;
       ranges = UnitUtils.getLogisticsFactorRange(units);
-      _ranges.put("logisticsFactor", ranges);
+      cache._ranges.put("logisticsFactor", ranges);
       return ranges;
     }
 
     //not in cache so work it out and cache it before returning
-    Iterator<IUnit> i = getUnits().iterator();
+    Iterator<IUnit> i = cache._units.iterator();
     ranges = new double[2];
     if(i.hasNext()) {
       try {
@@ -105,12 +101,13 @@ public class UnitServiceImpl extends AbstractPersistenceService implements IUnit
             ranges[1] = value;
           }
         }
+        cache._ranges.put(property, ranges);
         return ranges;
       } catch(Exception e) {
         throw new RuntimeException("Exception getting ranges for unit property:" + property, e);
       }
     }
-    _ranges.put(property, ranges);
+    cache._ranges.put(property, ranges);
     return ranges;
   }
 
@@ -120,11 +117,8 @@ public class UnitServiceImpl extends AbstractPersistenceService implements IUnit
    * @return units
    */
   @Override
-  public synchronized List<IUnit> getUnits() {
-    if(!unitCacheInitialised()) {
-      initUnitCache();
-    }
-    return Collections.unmodifiableList(_unitsCache);
+  public List<IUnit> getUnits() {
+    return getCache()._units;
   }
 
   /**
@@ -143,7 +137,7 @@ public class UnitServiceImpl extends AbstractPersistenceService implements IUnit
       throw new RuntimeException("Error saving unit " + unit, e);
     } finally {
       flushAllCaches();
-      notifyDataChanged();
+      notifyRecordsChanged(id == null ? null : Collections.singletonList(id));
     }
     return id;
   }
@@ -209,7 +203,7 @@ public class UnitServiceImpl extends AbstractPersistenceService implements IUnit
         throw new RuntimeException("Error saving units", e);
       } finally {
         flushAllCaches();
-        notifyDataChanged();
+        notifyRecordsChanged(ids);
       }
     }
     return ids;
@@ -221,14 +215,11 @@ public class UnitServiceImpl extends AbstractPersistenceService implements IUnit
    * @return unit
    */
   @Override
-  public synchronized IUnit loadUnit(UnitId id) {
+  public IUnit loadUnit(UnitId id) {
     Objects.requireNonNull(id, "id may not be null");
     //We no longer load individual units from the db when the cache is uninitialised. Now we just 
     //return them from the cache, and initialise first is necessary.
-    if(!unitCacheInitialised()) {
-      getUnits();
-    }
-    return _unitsById.get(id);
+    return getCache()._unitsById.get(id);
   }
 
   /**
@@ -247,7 +238,7 @@ public class UnitServiceImpl extends AbstractPersistenceService implements IUnit
       throw new RuntimeException("Error deleting unit " + id, e);
     } finally {
       flushAllCaches();
-      notifyDataChanged();
+      notifyRecordsChanged(Collections.singletonList(id));
     }
   }
 
@@ -257,11 +248,9 @@ public class UnitServiceImpl extends AbstractPersistenceService implements IUnit
    * @return speeds
    */
   @Override
-  public synchronized int[] getSpeeds() {
-    if(!speedCacheInitialised()) {
-      initSpeedCache();
-    }    
-    return Arrays.copyOf(_speeds, _speeds.length);
+  public int[] getSpeeds() {
+    int[] speeds = getCache()._speeds;
+    return Arrays.copyOf(speeds, speeds.length);
   } 
 
   /**
@@ -270,17 +259,14 @@ public class UnitServiceImpl extends AbstractPersistenceService implements IUnit
    * @return unit
    */
   @Override
-  public synchronized IUnit getByAcronym(String acronym) {
+  public IUnit getByAcronym(String acronym) {
     acronym = Objects.requireNonNull(acronym, "acronym may not be null").toUpperCase(Locale.US);
     if(acronym.isEmpty()) {
       throw new IllegalArgumentException("acronym may not be empty");
     }
     //nb : we no longer pull individual units from db, but rather just refer to the cache
     //initialising it if rqd (0.6.3)
-    if(!unitCacheInitialised()) {
-      initUnitCache();
-    }
-    return _unitsByAcronym.get(acronym);
+    return getCache()._unitsByAcronym.get(acronym);
   }
 
   /**
@@ -291,7 +277,7 @@ public class UnitServiceImpl extends AbstractPersistenceService implements IUnit
    * @return unit
    */
   @Override
-  public synchronized IUnit getByName(String name) {
+  public IUnit getByName(String name) {
     name = Objects.requireNonNull(name, "name may not be null").toUpperCase(Locale.US);
     name = name.trim();
     if(name.isEmpty()) {
@@ -299,10 +285,7 @@ public class UnitServiceImpl extends AbstractPersistenceService implements IUnit
     }
     //nb : we no longer pull individual units from db, but rather just refer to the cache
     //initialising it if rqd (0.6.3)
-    if(!unitCacheInitialised()) {
-      initUnitCache();
-    }
-    return _unitsByName.get(name);
+    return getCache()._unitsByName.get(name);
 //    try(Connection connection = _dataSource.getConnection()) {
 //      String sql = "SELECT * FROM UNITS WHERE UCASE(name)=?;";
 //      ResultSet rs = DbUtils.readQuery(sql, new Object[] { name.toUpperCase() }, connection);
@@ -322,7 +305,7 @@ public class UnitServiceImpl extends AbstractPersistenceService implements IUnit
    * @return scanners
    */
   @Override
-  public synchronized List<IUnit> getScanners() {
+  public List<IUnit> getScanners() {
     List<IUnit> data = getUnits();
     List<IUnit> records = new LinkedList<IUnit>();
     for(IUnit unit : data) { //Iterate all the units and add to the list any that have a scanner range
@@ -412,40 +395,31 @@ public class UnitServiceImpl extends AbstractPersistenceService implements IUnit
   
   
   /**
-   * Returns true if cached unit data is loaded, but does not check the cached
-   * ranges calculations 
-   * @return
+   * Returns the cached units, loading them if the cache is flushed
+   * @return cache
    */
-  private boolean unitCacheInitialised() {
-    return _unitsCache != null;
-  }
-  
-  private boolean rangeCacheInitialised() {
-    return _ranges != null;
-  }
-  
-  private boolean speedCacheInitialised() {
-    return _speeds != null;
+  private UnitCache getCache() {
+    UnitCache cache = _cache;
+    return (cache == null) ? initUnitCache() : cache;
   }
   
   /**
    * Clears all the cached data
    */
-  private void flushAllCaches() {
-    _unitsCache = null;
-    _unitsById = null;
-    _unitsByName = null;
-    _unitsByAcronym = null;
-    _speeds = null;    
-    _ranges = null;
+  private synchronized void flushAllCaches() {
+    _cache = null;
   }
   
   /**
-   * Read all the units from the database and initialise the unit cache and its lookup map
-   * (This also flushes the other derived caches- ie speeds and ranges)
+   * Read all the units from the database and publish a new cache of them and
+   * their lookup maps, unless another thread did so while this one was waiting
+   * for the lock.
+   * @return cache
    */
-  private void initUnitCache() {
-    flushAllCaches();
+  private synchronized UnitCache initUnitCache() {
+    if(_cache != null) {
+      return _cache;
+    }
     List<IUnit> units = new ArrayList<>();
     try(Connection connection = _dataSource.getConnection()) {
       String sql = "SELECT * FROM UNITS  ORDER BY name ASC;";
@@ -454,43 +428,14 @@ public class UnitServiceImpl extends AbstractPersistenceService implements IUnit
         units.add(readUnit(rs));
       }
       rs.getStatement().close();
-      units = Collections.unmodifiableList(units);
     } catch(Exception e) {
       throw new RuntimeException("Error loading all units ", e);
     }
-    _unitsCache = units;
-    _unitsById = new HashMap<UnitId, IUnit>();
-    _unitsByName = new HashMap<String, IUnit>();
-    _unitsByAcronym = new HashMap<String, IUnit>();
-    for(IUnit unit : units) {
-      _unitsById.put(unit.getId(), unit);
-      String name = unit.getName();
-      if(name!=null && !name.isEmpty()) {
-        _unitsByName.put(name.toUpperCase(Locale.US), unit);
-      }
-      String acronym = unit.getAcronym();
-      if(acronym!=null && !acronym.isEmpty()) {
-        _unitsByAcronym.put(acronym.toUpperCase(Locale.US), unit);
-      }
-    }
+    UnitCache cache = new UnitCache(units);
+    _cache = cache;
+    return cache;
   }
 
-  /**
-   * Initialise the cached array of units speed.
-   * The array will always contain the 0 speed, even if there are no units having it.
-   * (Since 0.6.3 we do this from the cached unit data rather than hitting the db)
-   */
-  private void initSpeedCache() {
-    Set<Integer> speeds = new TreeSet<>();
-    for(IUnit unit : getUnits() ) {
-      speeds.add( unit.getSpeed() );
-    }
-    if(!speeds.contains(0)) {
-      speeds.add(0);
-    }
-    _speeds = Convert.toPrimitiveIntArray(speeds);
-  }
-  
   /**
    * Check the name and acronym against the cache for to ensure it is not duplicating that
    * of same other unit
@@ -513,4 +458,38 @@ public class UnitServiceImpl extends AbstractPersistenceService implements IUnit
       } 
     }
   }
+  
+  /**
+   * Immutable snapshot of the units along with the lookup maps and speeds
+   * derived from them. The ranges of unit properties are worked out when first
+   * asked for and added to the snapshot's own map, which is safe for concurrent
+   * use.
+   */
+  private static class UnitCache {
+    private final List<IUnit> _units;
+    private final Map<UnitId, IUnit> _unitsById = new HashMap<>();
+    private final Map<String, IUnit> _unitsByName = new HashMap<>();
+    private final Map<String, IUnit> _unitsByAcronym = new HashMap<>();
+    private final int[] _speeds; //always contains 0 even if no unit has that speed
+    private final Map<String, double[]> _ranges = new ConcurrentHashMap<>(); //no, not scanner, but min max of stats
+
+    private UnitCache(List<IUnit> units) {
+      _units = Collections.unmodifiableList(units);
+      Set<Integer> speeds = new TreeSet<>();
+      speeds.add(0);
+      for(IUnit unit : units) {
+        _unitsById.put(unit.getId(), unit);
+        String name = unit.getName();
+        if(name!=null && !name.isEmpty()) {
+          _unitsByName.put(name.toUpperCase(Locale.US), unit);
+        }
+        String acronym = unit.getAcronym();
+        if(acronym!=null && !acronym.isEmpty()) {
+          _unitsByAcronym.put(acronym.toUpperCase(Locale.US), unit);
+        }
+        speeds.add(unit.getSpeed());
+      }
+      _speeds = Convert.toPrimitiveIntArray(speeds);
+    }
+  }
 }
@@ -0,0 +1,52 @@
+package romeo.utils;
+
+import java.util.Objects;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * ThreadFactory for executors that do long running work in the background,
+ * such as the battle simulator. The threads are daemon threads so they wont
+ * keep the application alive, and they run at a reduced priority so that the
+ * event dispatch thread is scheduled ahead of them and the ui stays responsive.
+ */
+public class BackgroundThreadFactory implements ThreadFactory {
+  /**
+   * The priority given to background threads
+   */
+  public static final int BACKGROUND_PRIORITY = Thread.NORM_PRIORITY - 2;
+
+  protected String _name;
+  protected int _priority;
+  private int _count = 0;
+
+  /**
+   * Constructor for threads at the default background priority
+   * @param name
+   *          prefix for the thread names, to which a sequence number is appended
+   */
+  public BackgroundThreadFactory(String name) {
+    this(name, BACKGROUND_PRIORITY);
+  }
+
+  /**
+   * Constructor
+   * @param name
+   *          prefix for the thread names, to which a sequence number is appended
+   * @param priority
+   */
+  public BackgroundThreadFactory(String name, int priority) {
+    _name = Objects.requireNonNull(name, "name may not be null");
+    if(priority < Thread.MIN_PRIORITY || priority > Thread.MAX_PRIORITY) {
+      throw new IllegalArgumentException("Invalid thread priority:" + priority);
+    }
+    _priority = priority;
+  }
+
+  @Override
+  public synchronized Thread newThread(Runnable r) {
+    Thread thread = new Thread(r, _name + "-" + _count++);
+    thread.setDaemon(true);
+    thread.setPriority(_priority);
+    return thread;
+  }
+}
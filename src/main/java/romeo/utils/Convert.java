@@ -111,6 +111,36 @@ public class Convert {
     throw new IndexOutOfBoundsException("Out of range item index:" + item);
   }
 
+  /**
+   * Like {@link #getIndexOfItem(int[], int)} but takes the running totals of
+   * the container sizes and finds the container using a binary search. For
+   * example if sizes = [5,5,5] then cumulativeSizes = [5,10,15] and an item of
+   * 11 will return 2. Containers with a size of zero are never returned. (Romeo
+   * uses this to allocate hits to the elements of large fleets)
+   * @param cumulativeSizes
+   *          running totals of the container sizes, in ascending order
+   * @param item
+   *          index in the range 0..cumulativeSizes[length-1]-1
+   * @return index
+   */
+  public static int getIndexOfCumulativeItem(int[] cumulativeSizes, int item) {
+    Objects.requireNonNull(cumulativeSizes, "cumulativeSizes may not be null");
+    int high = cumulativeSizes.length - 1;
+    if(item < 0 || high < 0 || item >= cumulativeSizes[high]) {
+      throw new IndexOutOfBoundsException("Out of range item index:" + item);
+    }
+    int low = 0;
+    while(low < high) { //find the first container whose running total exceeds the item
+      int mid = (low + high) >>> 1;
+      if(cumulativeSizes[mid] > item) {
+        high = mid;
+      } else {
+        low = mid + 1;
+      }
+    }
+    return low;
+  }
+
   /**
    * Split a string containing specified delimiters into an array of String
    * using a StringTokenizer.
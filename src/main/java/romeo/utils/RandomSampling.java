@@ -0,0 +1,210 @@
+package romeo.utils;
+
+import java.util.Objects;
+import java.util.Random;
+
+/**
+ * Static methods for drawing samples from discrete probability distributions.
+ * These let the battle simulator draw the outcome of a large number of dice
+ * rolls in one go rather than rolling each die.
+ */
+public class RandomSampling {
+  /**
+   * Values of the Stirling series correction for log(k!) for k=0..9. Beyond
+   * that the series is used. See {@link #stirlingCorrection(int)}.
+   */
+  private static final double[] STIRLING_CORRECTION = new double[] { 0.08106146679532726, 0.04134069595540929,
+      0.02767792568499834, 0.02079067210376509, 0.01664469118982119, 0.01387612882307075, 0.01189670994589177,
+      0.01041126526197209, 0.009255462182712733, 0.008330563433362871 };
+
+  /**
+   * Below this mean binomial samples are drawn by inversion, above it by
+   * rejection
+   */
+  private static final double INVERSION_MEAN = 10;
+
+  private RandomSampling() {
+    ;
+  }
+
+  /**
+   * Returns a sample from the binomial distribution, that is the number of
+   * successes in n independent trials each having a probability p of success.
+   * The expected cost is constant regardless of n. (For a mean below 10 the
+   * sample is drawn by inversion, otherwise the BTRD rejection algorithm of
+   * Hormann (1993) is used)
+   * @param n
+   *          number of trials
+   * @param p
+   *          probability of success of each trial
+   * @param rnd
+   * @return successes
+   */
+  public static int binomial(int n, double p, Random rnd) {
+    Objects.requireNonNull(rnd, "rnd may not be null");
+    if(n < 0) {
+      throw new IllegalArgumentException("n may not be negative:" + n);
+    }
+    if(!(p >= 0 && p <= 1)) {
+      throw new IllegalArgumentException("p must be in the range 0..1:" + p);
+    }
+    if(n == 0 || p == 0) {
+      return 0;
+    }
+    if(p == 1) {
+      return n;
+    }
+    if(p > 0.5) { //The algorithms need p <= 0.5 so count the failures instead
+      return n - binomial(n, 1 - p, rnd);
+    }
+    return n * p < INVERSION_MEAN ? binomialInversion(n, p, rnd) : binomialRejection(n, p, rnd);
+  }
+
+  /**
+   * Draws a binomial sample by walking the cumulative distribution from zero
+   * until it passes a uniform random number. Expected cost is proportional to
+   * the mean.
+   * @param n
+   * @param p
+   * @param rnd
+   * @return successes
+   */
+  private static int binomialInversion(int n, double p, Random rnd) {
+    double q = 1 - p;
+    double s = p / q;
+    double a = (n + 1) * s;
+    double r0 = Math.pow(q, n);
+    while(true) {
+      double u = rnd.nextDouble();
+      double r = r0;
+      int x = 0;
+      while(u > r && x < n) {
+        u -= r;
+        x++;
+        r *= a / x - s; //P(x) from P(x-1)
+      }
+      if(u <= r) {
+        return x;
+      }
+      //else rounding left u beyond the end of the distribution so try again
+    }
+  }
+
+  /**
+   * Draws a binomial sample using the BTRD algorithm (transformed rejection
+   * with decomposition) from W. Hormann, "The generation of binomial random
+   * variates", Journal of Statistical Computation and Simulation 46 (1993).
+   * Requires p <= 0.5 and n*p >= 10.
+   * @param n
+   * @param p
+   * @param rnd
+   * @return successes
+   */
+  private static int binomialRejection(int n, double p, Random rnd) {
+    double q = 1 - p;
+    int m = (int) Math.floor((n + 1) * p); //the mode
+    double r = p / q;
+    double nr = (n + 1) * r;
+    double npq = n * p * q;
+    double spq = Math.sqrt(npq);
+    double b = 1.15 + 2.53 * spq;
+    double a = -0.0873 + 0.0248 * b + 0.01 * p;
+    double c = n * p + 0.5;
+    double alpha = (2.83 + 5.1 / b) * spq;
+    double vr = 0.92 - 4.2 / b;
+    double urvr = 0.86 * vr;
+    while(true) {
+      double v = rnd.nextDouble();
+      double u;
+      if(v <= urvr) { //Inside the box where the hat is accepted without further checks
+        u = v / vr - 0.43;
+        return (int) Math.floor((2 * a / (0.5 - Math.abs(u)) + b) * u + c);
+      }
+      if(v >= vr) {
+        u = rnd.nextDouble() - 0.5;
+      } else {
+        u = v / vr - 0.93;
+        u = Math.signum(u) * 0.5 - u;
+        v = rnd.nextDouble() * vr;
+      }
+      double us = 0.5 - Math.abs(u);
+      double kd = Math.floor((2 * a / us + b) * u + c);
+      if(kd < 0 || kd > n) {
+        continue;
+      }
+      int k = (int) kd;
+      v = v * alpha / (a / (us * us) + b);
+      int km = Math.abs(k - m);
+      if(km <= 15) { //Close to the mode so evaluate the ratio f(k)/f(m) recursively
+        double f = 1;
+        if(m < k) {
+          for(int i = m + 1; i <= k; i++) {
+            f *= nr / i - r;
+          }
+        } else if(m > k) {
+          for(int i = k + 1; i <= m; i++) {
+            v *= nr / i - r;
+          }
+        }
+        if(v <= f) {
+          return k;
+        }
+        continue;
+      }
+      //Otherwise try the squeeze before the (expensive) final acceptance test
+      v = Math.log(v);
+      double rho = (km / npq) * (((km / 3d + 0.625) * km + 1d / 6d) / npq + 0.5);
+      double t = -((double) km * km) / (2 * npq);
+      if(v < t - rho) {
+        return k;
+      }
+      if(v > t + rho) {
+        continue;
+      }
+      int nm = n - m + 1;
+      double h = (m + 0.5) * Math.log((m + 1) / (r * nm)) + stirlingCorrection(m) + stirlingCorrection(n - m);
+      int nk = n - k + 1;
+      if(v <= h + (n + 1) * Math.log((double) nm / nk) + (k + 0.5) * Math.log(nk * r / (k + 1))
+          - stirlingCorrection(k) - stirlingCorrection(n - k)) {
+        return k;
+      }
+    }
+  }
+
+  /**
+   * Returns the difference between log(k!) and its Stirling approximation
+   * @param k
+   * @return correction
+   */
+  private static double stirlingCorrection(int k) {
+    if(k < STIRLING_CORRECTION.length) {
+      return STIRLING_CORRECTION[k];
+    }
+    double k1 = k + 1d;
+    double k1sq = k1 * k1;
+    return (1d / 12d - (1d / 360d - 1d / 1260d / k1sq) / k1sq) / k1;
+  }
+
+  /**
+   * Returns a sample from the geometric distribution, that is the number of
+   * independent trials each having a probability p of success up to and
+   * including the first success.
+   * @param p
+   *          probability of success of each trial (0 < p <= 1)
+   * @param rnd
+   * @return trials (at least 1, values too big for an int are returned as
+   *         Integer.MAX_VALUE)
+   */
+  public static int geometric(double p, Random rnd) {
+    Objects.requireNonNull(rnd, "rnd may not be null");
+    if(!(p > 0 && p <= 1)) {
+      throw new IllegalArgumentException("p must be in the range (0..1]:" + p);
+    }
+    if(p == 1) {
+      return 1;
+    }
+    double u = 1 - rnd.nextDouble(); //in (0..1] so the log is finite
+    double trials = Math.ceil(Math.log(u) / Math.log1p(-p));
+    return trials < 1 ? 1 : trials >= Integer.MAX_VALUE ? Integer.MAX_VALUE : (int) trials;
+  }
+}
@@ -0,0 +1,125 @@
+package romeo.utils;
+
+import java.util.Random;
+
+/**
+ * A fast, seedable and splittable random number generator based on the
+ * SplitMix64 algorithm (the same one behind java.util.SplittableRandom). It
+ * extends {@link Random} so it can be used anywhere a Random is expected, but
+ * unlike Random it keeps its state in a plain field and so it does no locking.
+ * Instances must therefore not be shared between threads.
+ *
+ * The generator can be switched to an independent stream identified by a seed
+ * and a stream number (see {@link #setStream(long, long)}). The battle
+ * simulator uses the battle index as the stream number, so that a battle can be
+ * replayed exactly given the seed of the simulation, regardless of which worker
+ * thread ran it.
+ */
+public class StreamRandom extends Random {
+  private static final long serialVersionUID = 1L;
+
+  /**
+   * The increment applied to the state for each value generated (the odd
+   * integer closest to 2^64 divided by the golden ratio)
+   */
+  private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+  //nb: no initialiser here as the superclass constructor calls setSeed() before it would run
+  private long _state;
+
+  /**
+   * Constructor. The generator is seeded from the system clock.
+   */
+  public StreamRandom() {
+    this(System.nanoTime() ^ System.currentTimeMillis());
+  }
+
+  /**
+   * Constructor. Two generators created with the same seed will produce the
+   * same sequence of values.
+   * @param seed
+   */
+  public StreamRandom(long seed) {
+    super(seed);
+    _state = seed;
+  }
+
+  /**
+   * Constructor for a generator positioned at the start of the specified stream
+   * @param seed
+   * @param stream
+   */
+  public StreamRandom(long seed, long stream) {
+    this(seed);
+    setStream(seed, stream);
+  }
+
+  /**
+   * Resets the generator to the start of the specified stream. Different stream
+   * numbers give statistically independent sequences for the same seed.
+   * @param seed
+   * @param stream
+   */
+  public void setStream(long seed, long stream) {
+    _state = mix64(seed + mix64((stream + 1) * GOLDEN_GAMMA));
+  }
+
+  /**
+   * Returns a new generator whose sequence is independent of this one. The
+   * state of this generator is advanced.
+   * @return split
+   */
+  public StreamRandom split() {
+    return new StreamRandom(mix64(nextLong()) ^ nextLong());
+  }
+
+  /**
+   * Resets the generator as if it had been created with the specified seed
+   * @param seed
+   */
+  @Override
+  public void setSeed(long seed) {
+    _state = seed;
+  }
+
+  @Override
+  public long nextLong() {
+    _state += GOLDEN_GAMMA;
+    return mix64(_state);
+  }
+
+  @Override
+  public int nextInt() {
+    return (int) (nextLong() >>> 32);
+  }
+
+  @Override
+  protected int next(int bits) {
+    return (int) (nextLong() >>> (64 - bits));
+  }
+
+  /**
+   * Returns a normally distributed value with mean 0 and standard deviation 1,
+   * using the Box-Muller transform. Unlike Random this doesnt cache the second
+   * value the transform produces, as it would be carried over into the next
+   * stream when the stream is changed and so a battle wouldnt replay the same.
+   * @return gaussian
+   */
+  @Override
+  public double nextGaussian() {
+    double u1 = 1d - (nextLong() >>> 11) * 0x1.0p-53; //in (0, 1] so the log is finite
+    double u2 = (nextLong() >>> 11) * 0x1.0p-53;
+    return Math.sqrt(-2d * Math.log(u1)) * Math.cos(2d * Math.PI * u2);
+  }
+
+  /**
+   * The SplitMix64 finaliser. Scrambles the bits of the input.
+   * @param z
+   * @return mixed
+   */
+  private static long mix64(long z) {
+    z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+    z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+    return z ^ (z >>> 31);
+  }
+}
@@ -77,6 +77,18 @@ public interface IWorldService extends IService {
    */
   public void saveHistories(Collection<IHistory> histories);
 
+  /**
+   * Save changes to all the worlds in the list along with a history for each,
+   * the history at each index being saved against the id of the world at the
+   * same index. Everything is saved in a single transaction so if any row fails
+   * to save none are. Returns the ids of the saved worlds in the same order as
+   * the worlds passed in.
+   * @param worlds
+   * @param histories
+   * @return ids
+   */
+  public List<WorldId> saveWorldsWithHistories(List<IWorld> worlds, List<IHistory> histories);
+
   /**
    * Load a world from the database given its id.
    * @param id
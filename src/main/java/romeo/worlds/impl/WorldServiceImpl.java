@@ -2,6 +2,7 @@ package romeo.worlds.impl;
 
 import java.awt.Color;
 import java.sql.Connection;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
@@ -16,6 +17,11 @@ import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.sql.DataSource;
 
@@ -26,6 +32,7 @@ import romeo.ApplicationException;
 import romeo.model.api.IServiceListener;
 import romeo.model.api.InvalidTurnException;
 import romeo.model.api.MapInfo;
+import romeo.model.api.RecordsChangedEvent;
 import romeo.persistence.AbstractPersistenceService;
 import romeo.persistence.DuplicateRecordException;
 import romeo.players.api.IPlayer;
@@ -36,6 +43,7 @@ import romeo.settings.api.ISettingsService;
 import romeo.settings.impl.SettingChangedEvent;
 import romeo.units.api.IUnitService;
 import romeo.units.api.UnitId;
+import romeo.utils.BackgroundThreadFactory;
 import romeo.utils.Convert;
 import romeo.utils.DbUtils;
 import romeo.utils.IKeyGen;
@@ -47,17 +55,53 @@ import romeo.worlds.api.WorldAndHistory;
 import romeo.worlds.api.WorldId;
 
 /**
- * Manages Worlds and World History information
+ * Manages Worlds and World History information. The cached worlds and history
+ * are held in an immutable {@link WorldCache} that is replaced whenever they
+ * change, so the methods that read the cache don't take the lock on the service
+ * and aren't held up by a long save. Only the methods that write to the
+ * database or replace the cache are synchronized.
  */
 public class WorldServiceImpl extends AbstractPersistenceService implements IWorldService, IServiceListener {
 
+  private static final String WORLD_INSERT_SQL = "INSERT INTO WORLDS (id,name,worldX,worldY,scannerId,notes,worldEi,worldRer)"
+      + " VALUES (?,?,?,?,?,?,?,?);";
+  private static final String WORLD_UPDATE_SQL = "UPDATE WORLDS SET " + "name=?," + "worldX=?," + "worldY=?," + "scannerId=?," + "notes=?,"
+      + "worldEi=?," + "worldRer=?" + " WHERE id=?;";
+  private static final String HISTORY_MERGE_SQL = "MERGE INTO WORLDS_HISTORY H USING (VALUES ?,?,?,?,?,?)"
+      + "  V (worldId,turn,owner,firepower,labour,capital)" + " ON (H.worldId=V.worldId AND H.turn=V.turn)"
+      + " WHEN MATCHED THEN UPDATE SET H.worldId=V.worldId, H.turn=V.turn, H.owner=V.owner,"
+      + "H.firepower=V.firepower, H.labour=V.labour, H.capital=V.capital"
+      + " WHEN NOT MATCHED THEN INSERT (worldId,turn,owner,firepower,labour,capital)"
+      + "  VALUES (V.worldId,V.turn,V.owner,V.firepower,V.labour,V.capital);";
+  /**
+   * Select the worlds and the range of their scanners
+   */
+  private static final String WORLDS_SELECT_SQL = "SELECT" + " W.id,W.name,W.worldX,W.worldY,W.scannerId,W.notes,W.worldEi,W.worldRER,"
+      + "U.scanner" + " FROM WORLDS W LEFT JOIN UNITS U" + " ON W.scannerId=U.id";
+  /**
+   * Select world history and the owning player's color and team
+   */
+  private static final String HISTORY_SELECT_SQL = "SELECT" + " H.worldId,H.turn,H.owner,H.firepower,H.labour,H.capital,"
+      + " P.color,P.team" + " FROM WORLDS_HISTORY H LEFT JOIN PLAYERS P" + " ON UCASE(H.owner)=UCASE(P.name)";
+  /**
+   * Default number of turns of history to keep in the cache
+   */
+  public static final int DEFAULT_TURN_CACHE_SIZE = 8;
+  /**
+   * The most worlds whose cached data will be re-read individually after they were saved. If more than
+   * this were changed then the cache is flushed and reloaded in one query on the next demand instead.
+   */
+  protected static final int REFRESH_LIMIT = 64;
+
   protected ISettingsService _settingsService;
+  protected volatile int _turnCacheSize = DEFAULT_TURN_CACHE_SIZE;
 
   //Implementation will cache the following until notified that something has changed
-  protected MapInfo _mapInfo; //records bounds of the map
-  protected List<Map<WorldId, WorldAndHistory>> _data = null; //turn indexed cache of worlds by id
-  protected Map<WorldId, IWorld> _worldsById = null; //lookup table of worlds keyed by worldId  
-  protected Map<String, IWorld> _worldsByName = null; //lookup worlds by uppercase name
+  protected volatile WorldCache _cache; //null when flushed, only replaced while holding the lock on the service
+  private final Map<Integer, Long> _turnLastUsed = new ConcurrentHashMap<>(); //when each cached turn was last read
+  private final AtomicLong _turnClock = new AtomicLong();
+  private long _generation; //incremented when cached data changes so stale prefetched turns are discarded
+  private ExecutorService _prefetchExecutor;
 
   /**
    * Constructor. It is necessary to provide a reference to the player service,
@@ -93,7 +137,7 @@ public class WorldServiceImpl extends AbstractPersistenceService implements IWor
    * @turn
    */
   @Override
-  public synchronized HistorySummary getSummary(String owner, int turn) {
+  public HistorySummary getSummary(String owner, int turn) {
     Objects.requireNonNull(owner);
     //TODO - is owner allowed to be empty?
     if(turn < 1) {
@@ -129,11 +173,8 @@ public class WorldServiceImpl extends AbstractPersistenceService implements IWor
    * @return worlds
    */
   @Override
-  public synchronized List<IWorld> getWorlds() {
-    if(_data == null) { //Load all the data into memory if the cache is not yet initialised
-      initCache();
-    }
-    List<IWorld> worlds = Collections.unmodifiableList( new ArrayList<IWorld>(_worldsByName.values()) );
+  public List<IWorld> getWorlds() {
+    List<IWorld> worlds = Collections.unmodifiableList( new ArrayList<IWorld>(getCache()._worldsByName.values()) );
     return worlds;
   }
 
@@ -167,24 +208,68 @@ public class WorldServiceImpl extends AbstractPersistenceService implements IWor
       names.add(name);
     }
     
-    try(Connection connection = _dataSource.getConnection()) {
-      List<WorldId> ids = new ArrayList<>(worlds.size());
-      for(IWorld world : worlds) {
-        checkDuplicate(world);
-        WorldId id = saveWorldInternal(connection, world);
-        ids.add(id);
-      }
+    for(IWorld world : worlds) {
+      checkDuplicate(world);
+    }
+    
+    List<WorldId> ids = null;
+    try {
       //We return a list of ids assigned or existing for the worlds in the same indexes as the input world.
       //(If we were to move to using a Set (which would be better really) then probably the best solution would be
       // to return a new Set of IWorld objects that have the id property set appropriately)
+      ids = saveBatch(worlds, Collections.<IHistory> emptyList(), false);
       return Collections.unmodifiableList(ids);
     } catch(ApplicationException ae) {
       throw ae;
     } catch(Exception e) {
       throw new RuntimeException("Error saving worlds", e);
     } finally {
-      flushCache();
-      notifyDataChanged();
+      worldsChanged(ids, Collections.<Integer> emptySet());
+    }
+  }
+
+  /**
+   * Bulk-save worlds along with a history record for each of them, such as when
+   * importing a turn of map data. The history at each index of the histories list
+   * is saved against the id of the world at the same index (its own worldId is
+   * ignored). All the rows are written in one transaction using a single batched
+   * statement per table, so if any of them fail none are saved. Listeners are
+   * notified once after saving.
+   * @param worlds
+   * @param histories
+   * @return ids
+   */
+  @Override
+  public synchronized List<WorldId> saveWorldsWithHistories(List<IWorld> worlds, List<IHistory> histories) {
+    Objects.requireNonNull(worlds, "worlds must not be null");
+    Objects.requireNonNull(histories, "histories must not be null");
+    if(worlds.size() != histories.size()) {
+      throw new IllegalArgumentException("Expected a history for each of the " + worlds.size() + " worlds but found " + histories.size());
+    }
+    if(worlds.isEmpty()) {
+      return Collections.emptyList();
+    }
+    
+    Set<String> names = new HashSet<>();
+    for(IWorld world : worlds) {
+      Objects.requireNonNull(world.getName(), "world.name may not be null");
+      String name = world.getName().trim().toUpperCase();
+      if(!names.add(name)) {
+        throw new DuplicateRecordException("Duplicated world name in the save list: " + name);
+      }
+      checkDuplicate(world);
+    }
+    
+    List<WorldId> ids = null;
+    try {
+      ids = saveBatch(worlds, histories, true);
+      return Collections.unmodifiableList(ids);
+    } catch(ApplicationException ae) {
+      throw ae;
+    } catch(Exception e) {
+      throw new RuntimeException("Error saving worlds with histories", e);
+    } finally {
+      worldsChanged(ids, getTurns(histories));
     }
   }
 
@@ -198,16 +283,16 @@ public class WorldServiceImpl extends AbstractPersistenceService implements IWor
   public synchronized WorldId saveWorld(IWorld world) {
     Objects.requireNonNull(world, "world may not be null");
     checkDuplicate(world);
+    WorldId id = null;
     try (Connection connection = _dataSource.getConnection()) {
-        WorldId id = saveWorldInternal(connection, world);
+        id = saveWorldInternal(connection, world);
         return id;
     } catch(ApplicationException ae) {
       throw ae;
     } catch(Exception e) {
       throw new RuntimeException("Error saving world " + world, e);
     } finally {
-      flushCache();
-      notifyDataChanged();
+      worldsChanged(id == null ? null : Collections.singletonList(id), Collections.<Integer> emptySet());
     }
   }
 
@@ -219,8 +304,7 @@ public class WorldServiceImpl extends AbstractPersistenceService implements IWor
     } catch(Exception e) {
       throw new RuntimeException("Error saving history " + history, e);
     } finally {
-      flushCache();
-      notifyDataChanged();
+      worldsChanged(getWorldIds(Collections.singleton(history)), Collections.singleton(history.getTurn()));
     }
   }
   
@@ -232,8 +316,9 @@ public class WorldServiceImpl extends AbstractPersistenceService implements IWor
       throw new IllegalArgumentException("history does not belong to the world");
     }
     checkDuplicate(world);
+    WorldId worldId = null;
     try(Connection connection = _dataSource.getConnection()) {
-      WorldId worldId = saveWorldInternal(connection, world);
+      worldId = saveWorldInternal(connection, world);
       history = new HistoryImpl(worldId, history);
       saveHistoryInternal(connection, history);
       return worldId;
@@ -242,8 +327,7 @@ public class WorldServiceImpl extends AbstractPersistenceService implements IWor
     } catch(Exception e) {
       throw new RuntimeException("Error saving world " + world + " with history " + history, e);
     } finally {
-      flushCache();
-      notifyDataChanged();
+      worldsChanged(worldId == null ? null : Collections.singletonList(worldId), Collections.singleton(history.getTurn()));
     }
   }
 
@@ -253,12 +337,9 @@ public class WorldServiceImpl extends AbstractPersistenceService implements IWor
    * @return world
    */
   @Override
-  public synchronized IWorld loadWorld(WorldId id) {
+  public IWorld loadWorld(WorldId id) {
     Objects.requireNonNull(id, "id may not be null");
-    if(!cacheInitialised()) {
-      initCache();
-    }
-    return _worldsById.get(id);
+    return getCache()._worldsById.get(id);
   }
 
   /**
@@ -266,11 +347,8 @@ public class WorldServiceImpl extends AbstractPersistenceService implements IWor
    * @return mapInfo
    */
   @Override
-  public synchronized MapInfo getMapInfo() {
-    if(!cacheInitialised()) {
-      initCache();
-    }
-    return _mapInfo;
+  public MapInfo getMapInfo() {
+    return getCache()._mapInfo;
   }
 
   /**
@@ -287,8 +365,7 @@ public class WorldServiceImpl extends AbstractPersistenceService implements IWor
     } catch(Exception e) {
       throw new RuntimeException("Error deleting world " + id, e);
     } finally {
-      flushCache();
-      notifyDataChanged();
+      worldsChanged(Collections.singletonList(id), Collections.<Integer> emptySet());
     }
   }
 
@@ -301,37 +378,42 @@ public class WorldServiceImpl extends AbstractPersistenceService implements IWor
    * @return history
    */
   @Override
-  public synchronized IHistory loadHistory(WorldId worldId, int turn) {
+  public IHistory loadHistory(WorldId worldId, int turn) {
     Objects.requireNonNull(worldId, "worldId may not be null");
     if(turn < 1) {
       throw new InvalidTurnException(turn);
     }
-    if(!cacheInitialised()) {
-      initCache();
-    }
-    if(turn >= _data.size()) {
+    if(turn > getCache()._mapInfo.getMaxTurn()) {
       throw new InvalidTurnException(turn);
     }
-    WorldAndHistory wh = _data.get(turn).get(worldId);
+    WorldAndHistory wh = getTurn(turn).get(worldId);
     return (wh == null) ? null : wh.getHistory();
   }
 
   /**
-   * Load history for a specific world
+   * Load history for a specific world. This is read from the database rather
+   * than the cache, which only holds the recently used turns.
    */
   @Override
-  public synchronized List<IHistory> loadHistory(WorldId worldId) {
+  public List<IHistory> loadHistory(WorldId worldId) {
     Objects.requireNonNull(worldId, "worldId May not be null");
-    if(!cacheInitialised()) {
-      initCache();
+    WorldCache cache = getCache();
+    int maxTurn = cache._mapInfo.getMaxTurn();
+    List<IHistory> list = new ArrayList<IHistory>(maxTurn + 1);
+    for(int turn = 0; turn <= maxTurn; turn++) {
+      list.add(null); //There is no turn 0 and we want turn to be the index
     }
-    int maxTurn = getMapInfo().getMaxTurn();
-    List<IHistory> list = new ArrayList<IHistory>(maxTurn);
-    list.add(null); //There is no turn 0 and we want turn to be the index
-    for(int turn = 1; turn <= maxTurn; turn++) {
-      WorldAndHistory wh = _data.get(turn).get(worldId);
-      IHistory history = (wh == null) ? null : wh.getHistory();
-      list.add(history);
+    if(cache._worldsById.containsKey(worldId)) {
+      try(Connection connection = _dataSource.getConnection()) {
+        for(HistoryRow row : readHistoryRows(connection, "H.worldId=?", new Object[] { worldId })) {
+          int turn = row._history.getTurn();
+          if(turn >= 1 && turn <= maxTurn) {
+            list.set(turn, row._history);
+          }
+        }
+      } catch(Exception e) {
+        throw new RuntimeException("Error loading history for world " + worldId, e);
+      }
     }
     return list;
   }
@@ -343,30 +425,24 @@ public class WorldServiceImpl extends AbstractPersistenceService implements IWor
       return;
     }
 
-    try(Connection connection = _dataSource.getConnection()) {
-      for(IHistory h : histories) {
-        saveHistoryInternal(connection, h);
-      }
+    try {
+      saveBatch(Collections.<IWorld> emptyList(), histories, false);
     } catch(Exception e) {
       throw new RuntimeException("Error saving histories", e);
     } finally {
-      flushCache();
-      notifyDataChanged();
+      worldsChanged(getWorldIds(histories), getTurns(histories));
     }
   }
   
   @Override
-  public synchronized Set<WorldAndHistory> getWorldHistory(int turn) {
+  public Set<WorldAndHistory> getWorldHistory(int turn) {
     if(turn < 1) {
       throw new InvalidTurnException(turn);
     }
-    if(!cacheInitialised()) {
-      initCache();
-    }
-    if(turn >= _data.size()) {
+    if(turn > getCache()._mapInfo.getMaxTurn()) {
       throw new InvalidTurnException(turn);
     }
-    Set<WorldAndHistory> results = new HashSet<>(_data.get(turn).values());
+    Set<WorldAndHistory> results = new HashSet<>(getTurn(turn).values());
     return Collections.unmodifiableSet(results);
   }
 
@@ -377,33 +453,40 @@ public class WorldServiceImpl extends AbstractPersistenceService implements IWor
    * the result is undefined as to which will be returned. 
    */
   @Override
-  public synchronized IWorld loadWorldByName(String name) {
+  public IWorld loadWorldByName(String name) {
     Objects.requireNonNull(name, "name may not be null");
-    if(_data == null) {
-      initCache();
-    }
-    return _worldsByName.get(name.toUpperCase(Locale.US).trim());
+    return getCache()._worldsByName.get(name.toUpperCase(Locale.US).trim());
   }
 
   @Override
   public synchronized void dataChanged(EventObject event) {
     if(event instanceof SettingChangedEvent) {
       SettingChangedEvent sce = (SettingChangedEvent) event;      
-      //If the default scanner range was changed we need to invalidate the cache as it was initialised
-      //using that range for worlds without another range recorded
+      //If the default scanner range was changed we need to update the worlds that were given that range
+      //because they have no scanner recorded or the scanner unit has no range
       if(ISettings.DEFAULT_SCANNER.equals(sce.getName())) { 
-        flushCache();
+        refreshScanners(null);
+      } else if(ISettings.CURRENT_TURN.equals(sce.getName())) {
+        //Load the turns either side of the new one in the background, so they are ready for when the user
+        //steps to them, and for showing changes since the previous turn
+        int turn = (int) sce.getLongValue();
+        prefetchTurn(turn - 1);
+        prefetchTurn(turn + 1);
       }
+    } else if(event.getSource() instanceof IPlayerService) {
+      //A player's colour or team (or name) changed. The players table is small so we just re-read it
+      //and patch the colour and team of the cached history, rather than reloading all the history.
+      refreshPlayers();
+    } else if(event.getSource() instanceof IUnitService) {
+      //A unit change may affect the scanner range of the worlds using it as a scanner. If the unit
+      //service told us which units changed then we only need to update the worlds using those.
+      Set<UnitId> unitIds = (event instanceof RecordsChangedEvent) 
+          ? ((RecordsChangedEvent) event).getIds(UnitId.class)
+          : null;
+      refreshScanners(unitIds);
     } else {
-      //A unit or world data was changed. These service notifications aren't granular as to details so
-      //we anyhow just flush the entire cache of world data so it will get reloaded on next demand.
-      //A high-performance application would really want this to be granular so we could just reload
-      //or invalidate affected worlds, but for the single user desktop environment of romeo the
-      //additional overhead won't even be noticed by the user.
+      //We don't know what changed so flush the entire cache of world data so it will get reloaded on next demand.
       flushCache();
-      //What might have made the above comment useful was if it stated why we need to flush on a change of units...
-      //(assuming its because the scanner range of worlds could change and we put the default range into
-      // worlds we have read? - but do we still do that?)
     }
   }
 
@@ -426,7 +509,7 @@ public class WorldServiceImpl extends AbstractPersistenceService implements IWor
   }
   
   @Override
-  public synchronized List<Map<String, Object>> getWorldsSummary(int turn) {
+  public List<Map<String, Object>> getWorldsSummary(int turn) {
     if(turn<1) {
       throw new InvalidTurnException(turn);
     }
@@ -458,134 +541,537 @@ public class WorldServiceImpl extends AbstractPersistenceService implements IWor
   //.................
   
   /**
-   * Returns true if the cache is not in the flushed and empty state
-   * @return cache ready
+   * Set the number of turns of history to keep in the cache. The least recently
+   * used turn is dropped from the cache when another is loaded.
+   * @param turnCacheSize
    */
-  private boolean cacheInitialised() {
-    return _data != null;
+  public synchronized void setTurnCacheSize(int turnCacheSize) {
+    if(turnCacheSize < 1) {
+      throw new IllegalArgumentException("turnCacheSize must be at least 1");
+    }
+    _turnCacheSize = turnCacheSize;
+    flushCache();
+  }
+
+  public int getTurnCacheSize() {
+    return _turnCacheSize;
+  }
+
+  /**
+   * Returns the cached data, loading it if the cache is flushed
+   * @return cache
+   */
+  protected WorldCache getCache() {
+    WorldCache cache = _cache;
+    return (cache == null) ? initCache() : cache;
   }
 
   /**
    * Clear cached information
    */
-  protected void flushCache() {
-    _mapInfo = null;
-    _data = null; //A null reference here indicates the cache is unloaded
-    _worldsById = null;
-    _worldsByName = null;
+  protected synchronized void flushCache() {
+    _cache = null;
+    _turnLastUsed.clear();
+    _generation++;
   }
-  
+
   /**
-   * Loads _all_ the world and history data from the database into memory. This
-   * will be called by service methods that need the data and find the _data
-   * reference to be null. (Any existing cache is implicitly flushed by this
-   * method)
-   */
-  protected void initCache() {
-    /*
-     * The data is cached in a List of Maps. Each Map holds data for a specific
-     * turn and is keyed by the worlds id. The values in the map are instances
-     * of WorldHistoryStruct, which simply duct tapes together a World,History,
-     * and Color under the one reference.
-     */
+   * Loads the worlds (but not their history) from the database into memory.
+   * This will be called by service methods that need the data and find the
+   * cache unloaded. The history for a turn is loaded into the cache when it is
+   * first needed by {@link #getTurn(int)}, so the cost of loading scales with the
+   * turns viewed rather than the length of the game. If another thread loaded
+   * the cache while this one was waiting for the lock its cache is returned.
+   * @return cache
+   */
+  protected synchronized WorldCache initCache() {
+    if(_cache != null) {
+      return _cache;
+    }
     Log log = LogFactory.getLog(this.getClass());
     if(log.isDebugEnabled()) {
       log.trace("Loading world data into cache");
     }
     long startTime = System.currentTimeMillis();
     int defaultScannerRange = (int) _settingsService.getLong(ISettings.DEFAULT_SCANNER);
+    flushCache();
+    WorldCache cache;
     try(Connection connection = _dataSource.getConnection()) {
-      if(_mapInfo == null) {
-        _mapInfo = getMapInfo(connection);
+      MapInfo mapInfo = getMapInfo(connection);
+      Map<WorldId, IWorld> worldsById = new HashMap<WorldId, IWorld>();
+      Map<String, IWorld> worldsByName = new TreeMap<String, IWorld>(); //TreeMap to preserve alphabetical ordering
+      Map<WorldId, Integer> scannerRanges = new HashMap<WorldId, Integer>();
+      ResultSet rs = DbUtils.readQuery(WORLDS_SELECT_SQL + " ORDER BY W.name ASC;", null, connection);
+      readWorldRows(rs, defaultScannerRange, worldsById, worldsByName, scannerRanges);
+      rs.close();
+      cache = new WorldCache(mapInfo, worldsById, worldsByName, scannerRanges,
+          Collections.<Integer, Map<WorldId, WorldAndHistory>> emptyMap());
+    } catch(Exception e) {
+      flushCache();
+      throw new RuntimeException("Error loading world data", e);
+    }
+    _cache = cache;
+    long endTime = System.currentTimeMillis();
+    log.debug("initialised world service cache in " + (endTime-startTime) + " milliseconds");
+    return cache;
+  }
+
+  /**
+   * Returns the world and history data for a turn keyed by world id, loading
+   * it into the cache if it isn't already there.
+   * @param turn
+   * @return turnData
+   */
+  protected Map<WorldId, WorldAndHistory> getTurn(int turn) {
+    Map<WorldId, WorldAndHistory> turnData = getCache()._turns.get(turn);
+    if(turnData == null) {
+      turnData = loadTurn(turn);
+    }
+    _turnLastUsed.put(turn, _turnClock.incrementAndGet());
+    return turnData;
+  }
+
+  /**
+   * Reads the history for a turn from the database and adds it to the cache,
+   * unless another thread added it while this one was waiting for the lock.
+   * @param turn
+   * @return turnData
+   */
+  private synchronized Map<WorldId, WorldAndHistory> loadTurn(int turn) {
+    WorldCache cache = getCache();
+    Map<WorldId, WorldAndHistory> turnData = cache._turns.get(turn);
+    if(turnData == null) {
+      Log log = LogFactory.getLog(this.getClass());
+      long startTime = System.currentTimeMillis();
+      try(Connection connection = _dataSource.getConnection()) {
+        turnData = toTurnData(cache, readHistoryRows(connection, "H.turn=?", new Object[] { turn }));
+      } catch(Exception e) {
+        throw new RuntimeException("Error loading history for turn " + turn, e);
       }
-      int historySize = _mapInfo.getMaxTurn() + 1;
-      _data = new ArrayList<Map<WorldId, WorldAndHistory>>(historySize);
-      _worldsById = new HashMap<WorldId, IWorld>();
-      _worldsByName = new TreeMap<String, IWorld>(); //TreeMap to preserve alphabetical ordering
-      for(int i = 0; i < historySize; i++) {
-        _data.add(new HashMap<WorldId, WorldAndHistory>());
+      putTurn(cache, turn, turnData);
+      if(log.isDebugEnabled()) {
+        log.debug("loaded turn " + turn + " into world service cache in " + (System.currentTimeMillis()-startTime) + " milliseconds");
       }
+    }
+    return turnData;
+  }
 
-      /*
-       * We want a table that returns all the world and history and player color
-       * data for all worlds and all turns. This needs to be ordered so as to
-       * group together worlds as we expect to find all data related to a
-       * specific world together before we move onto the next world when we are
-       * reading the data into our in memory data structures.
-       */
-      final String sql = "SELECT" + " W.id,W.name,W.worldX,W.worldY,W.scannerId,W.notes,W.worldEi,W.worldRER,"
-          + " H.worldId,H.turn,H.owner,H.firepower,H.labour,H.capital," + " P.color,P.team," + "U.scanner"
-          + " FROM WORLDS W LEFT JOIN WORLDS_HISTORY H" + " ON W.id=H.worldID" + " LEFT JOIN PLAYERS P"
-          + " ON UCASE(H.owner)=UCASE(P.name)" + " LEFT JOIN UNITS U" + " ON W.scannerId=U.id"
-          + " ORDER BY W.name ASC, H.turn ASC;";
-      ResultSet rs = DbUtils.readQuery(sql, null, connection);
-      IWorld currentWorld = null;
-      while(rs.next()) {
-        WorldId worldId = new WorldId( rs.getString("id") );
-        if(currentWorld == null || !currentWorld.getId().equals(worldId)) { 
-          //We have reached a new world in the results so we instantiate a new object to hold the values
-          String name = rs.getString("name");
-          int worldX = rs.getInt("worldX");
-          int worldY = rs.getInt("worldY");
-          String scanner = rs.getString("scannerId");
-          UnitId scannerId = (scanner==null||scanner.isEmpty()) ? null : new UnitId(scanner);
-          String notes = rs.getString("notes");
-          int worldEi = rs.getInt("worldEi");
-          int worldRer = rs.getInt("worldRer");
-          IWorld world = new WorldImpl(worldId, name, worldX, worldY, scannerId, notes, worldEi, worldRer);
-          currentWorld = world;
-          _worldsById.put(worldId, world);
-          _worldsByName.put(name.toUpperCase(Locale.US), world); //doesn't actually bother with using nameLookup
-          if(log.isTraceEnabled()) {
-            log.trace("Loaded world:" + world);
+  /**
+   * Replaces the cache with a copy of it that includes the turn, dropping the
+   * least recently used turns if there are then more than the turn cache size.
+   * Must be called while holding the lock on the service.
+   * @param cache
+   * @param turn
+   * @param turnData
+   */
+  private void putTurn(WorldCache cache, int turn, Map<WorldId, WorldAndHistory> turnData) {
+    _turnLastUsed.put(turn, _turnClock.incrementAndGet());
+    Map<Integer, Map<WorldId, WorldAndHistory>> turns = new HashMap<>(cache._turns);
+    turns.put(turn, turnData);
+    while(turns.size() > _turnCacheSize) {
+      Integer eldest = null;
+      long eldestUse = Long.MAX_VALUE;
+      for(Integer cached : turns.keySet()) {
+        Long lastUsed = _turnLastUsed.get(cached);
+        long use = (lastUsed == null) ? 0 : lastUsed;
+        if(cached != turn && use < eldestUse) {
+          eldest = cached;
+          eldestUse = use;
+        }
+      }
+      turns.remove(eldest);
+      _turnLastUsed.remove(eldest);
+    }
+    _cache = cache.withTurns(turns);
+  }
+
+  /**
+   * Loads the history for a turn into the cache in a background thread, if the
+   * cache is initialised and the turn isn't already in it. The rows are read
+   * without holding the lock on the service and discarded if the cache changed
+   * in the meantime.
+   * @param turn
+   */
+  protected void prefetchTurn(final int turn) {
+    WorldCache cache = _cache;
+    if(cache == null || turn < 1 || turn > cache._mapInfo.getMaxTurn() || cache._turns.containsKey(turn)) {
+      return;
+    }
+    final long generation = _generation;
+    if(_prefetchExecutor == null) {
+      _prefetchExecutor = Executors.newSingleThreadExecutor(new BackgroundThreadFactory("WorldPrefetch"));
+    }
+    _prefetchExecutor.execute(new Runnable() {
+      @Override
+      public void run() {
+        try(Connection connection = _dataSource.getConnection()) {
+          List<HistoryRow> rows = readHistoryRows(connection, "H.turn=?", new Object[] { turn });
+          synchronized(WorldServiceImpl.this) {
+            WorldCache current = _cache;
+            if(generation == _generation && current != null && !current._turns.containsKey(turn)) {
+              putTurn(current, turn, toTurnData(current, rows));
+            }
           }
-        } else { //This row refers to the same world as the previous one so refer to the same object
-          ; // currentWorld remains unchanged from the previous row
+        } catch(Exception e) {
+          LogFactory.getLog(WorldServiceImpl.class).warn("Failed to prefetch turn " + turn, e);
         }
-        int turn = rs.getInt("turn");
-        //Read the world's history data for the turn to which this row relates
-        //nb: due to the join there may be null columns here when there is no history for the turn 
-        String owner = rs.getString("owner");
-        double firepower = rs.getDouble("firepower");
-        int labour = rs.getInt("labour");
-        int capital = rs.getInt("capital");
-        IHistory history = new HistoryImpl(
-            worldId, 
-            turn, 
-            (owner==null) ? "" : owner,
-            firepower, 
-            labour, 
-            capital);
-        Color color = Convert.toColor(rs.getString("color"));
-        if(color == null) {
-          color = IPlayer.NOBODY.equals(history.getOwner()) 
-              ? PlayerUtils.NOBODY_COLOR
-              : PlayerUtils.SOMEBODY_COLOR;
+      }
+    });
+  }
+
+  /**
+   * Called after worlds or their history were saved or deleted to update the
+   * cache and notify listeners of the affected worlds and turns. If the ids
+   * are not known (because the save failed part way) the whole cache is
+   * flushed instead.
+   * @param ids
+   *          ids of the affected worlds, or null if unknown
+   * @param turns
+   *          turns for which history was saved
+   */
+  protected void worldsChanged(Collection<WorldId> ids, Collection<Integer> turns) {
+    if(ids == null) {
+      flushCache();
+      notifyDataChanged();
+    } else {
+      try {
+        refreshWorlds(ids);
+      } finally {
+        notifyDataChanged(new RecordsChangedEvent(this, ids, turns));
+      }
+    }
+  }
+
+  /**
+   * Re-reads the cached data for the specified worlds from the database,
+   * replacing the cache with a copy in which only those worlds are changed. Only
+   * the turns already in the cache are updated. Worlds that no longer exist are
+   * removed from the cache. Does nothing if the cache is not loaded.
+   * @param ids
+   */
+  protected synchronized void refreshWorlds(Collection<WorldId> ids) {
+    WorldCache cache = _cache;
+    if(cache == null) {
+      return;
+    }
+    if(ids.size() > REFRESH_LIMIT) {
+      flushCache();
+      return;
+    }
+    _generation++;
+    int defaultScannerRange = (int) _settingsService.getLong(ISettings.DEFAULT_SCANNER);
+    try(Connection connection = _dataSource.getConnection()) {
+      MapInfo mapInfo = getMapInfo(connection);
+      Map<WorldId, IWorld> worldsById = new HashMap<>(cache._worldsById);
+      Map<String, IWorld> worldsByName = new TreeMap<>(cache._worldsByName);
+      Map<WorldId, Integer> scannerRanges = new HashMap<>(cache._scannerRanges);
+      Map<Integer, Map<WorldId, WorldAndHistory>> turns = new HashMap<>();
+      Set<Integer> turnRange = getTurnRange(mapInfo.getMaxTurn()); //Turns may have been removed along with a world
+      for(Map.Entry<Integer, Map<WorldId, WorldAndHistory>> entry : cache._turns.entrySet()) {
+        if(turnRange.contains(entry.getKey())) {
+          turns.put(entry.getKey(), new HashMap<>(entry.getValue()));
         }
-        String team = rs.getString("team");
-        if(team==null) { team = ""; }
-        //TODO - we need to revise how we deal with the no-scanner situation.
-        //We can envisage changes to the game that allow for suppressing a scanner range to zero while the
-        //visual range remains 25 for example. For now this isnt the case however.
-        int scannerRange = rs.getInt("scanner");
-        if(scannerRange == 0) {
-          scannerRange = defaultScannerRange;
+      }
+      for(WorldId id : ids) {
+        IWorld world = worldsById.remove(id);
+        if(world != null) {
+          String name = world.getName().toUpperCase(Locale.US);
+          if(worldsByName.get(name) == world) {
+            worldsByName.remove(name);
+          }
+        }
+        scannerRanges.remove(id);
+        for(Map<WorldId, WorldAndHistory> turnData : turns.values()) {
+          turnData.remove(id);
+        }
+      }
+      if(!ids.isEmpty()) {
+        StringBuilder in = new StringBuilder(" IN (");
+        for(int i = 0; i < ids.size(); i++) {
+          in.append(i == 0 ? "?" : ",?");
         }
+        in.append(")");
+        ResultSet rs = DbUtils.readQuery(WORLDS_SELECT_SQL + " WHERE W.id" + in + ";", ids.toArray(), connection);
+        readWorldRows(rs, defaultScannerRange, worldsById, worldsByName, scannerRanges);
+        rs.close();
+        if(!turns.isEmpty()) {
+          for(HistoryRow row : readHistoryRows(connection, "H.worldId" + in, ids.toArray())) {
+            Map<WorldId, WorldAndHistory> turnData = turns.get(row._history.getTurn());
+            WorldAndHistory wh = (turnData == null) ? null : toWorldAndHistory(worldsById, scannerRanges, row);
+            if(wh != null) {
+              turnData.put(row._history.getWorldId(), wh);
+            }
+          }
+        }
+      }
+      _turnLastUsed.keySet().retainAll(turns.keySet());
+      _cache = new WorldCache(mapInfo, worldsById, worldsByName, scannerRanges, turns);
+    } catch(Exception e) {
+      flushCache();
+      throw new RuntimeException("Error refreshing world data for " + ids, e);
+    }
+  }
 
-        //Store the initialised WorldHistoryStruct in our cache
-        WorldAndHistory worldAndHistory = new WorldAndHistory(currentWorld, history, color, scannerRange, team);
-        _data.get(turn).put(worldId, worldAndHistory);
-        if(log.isTraceEnabled()) {
-          log.trace("Loaded history:" + history);
+  /**
+   * Updates the player colour and team of the cached history from the players
+   * table after a change to players. Does nothing if the cache is not loaded.
+   */
+  protected synchronized void refreshPlayers() {
+    WorldCache cache = _cache;
+    if(cache == null) {
+      return;
+    }
+    _generation++;
+    Map<String, Color> colors = new HashMap<>();
+    Map<String, String> teams = new HashMap<>();
+    try(Connection connection = _dataSource.getConnection()) {
+      ResultSet rs = DbUtils.readQuery("SELECT name,color,team FROM PLAYERS", null, connection);
+      while(rs.next()) {
+        String name = rs.getString("name").toUpperCase(Locale.US);
+        if(!colors.containsKey(name)) {
+          colors.put(name, Convert.toColor(rs.getString("color")));
+          String team = rs.getString("team");
+          teams.put(name, (team == null) ? "" : team);
         }
       }
+      rs.close();
     } catch(Exception e) {
-      throw new RuntimeException("Error loading world and history data", e);
+      flushCache();
+      throw new RuntimeException("Error refreshing player data", e);
     }
-    long endTime = System.currentTimeMillis();
-    log.debug("initialised world service cache in " + (endTime-startTime) + " milliseconds");
+    Map<Integer, Map<WorldId, WorldAndHistory>> turns = new HashMap<>();
+    for(Map.Entry<Integer, Map<WorldId, WorldAndHistory>> turn : cache._turns.entrySet()) {
+      Map<WorldId, WorldAndHistory> turnData = new HashMap<>(turn.getValue());
+      for(Map.Entry<WorldId, WorldAndHistory> entry : turnData.entrySet()) {
+        WorldAndHistory wh = entry.getValue();
+        String owner = wh.getHistory().getOwner().toUpperCase(Locale.US);
+        Color color = colors.get(owner);
+        if(color == null) {
+          color = getDefaultColor(wh.getHistory());
+        }
+        String team = teams.containsKey(owner) ? teams.get(owner) : "";
+        if(!color.equals(wh.getColor()) || !team.equals(wh.getTeam())) {
+          entry.setValue(new WorldAndHistory(wh.getWorld(), wh.getHistory(), color, wh.getScannerRange(), team));
+        }
+      }
+      turns.put(turn.getKey(), turnData);
+    }
+    _cache = cache.withTurns(turns);
   }
-  
+
+  /**
+   * Updates the scanner range of the cached worlds from the units table after
+   * a change to units or to the default scanner range. Does nothing if the
+   * cache is not loaded.
+   * @param unitIds
+   *          only worlds using these units as scanners are updated, or all if
+   *          null
+   */
+  protected synchronized void refreshScanners(Set<UnitId> unitIds) {
+    WorldCache cache = _cache;
+    if(cache == null || (unitIds != null && unitIds.isEmpty())) {
+      return;
+    }
+    _generation++;
+    int defaultScannerRange = (int) _settingsService.getLong(ISettings.DEFAULT_SCANNER);
+    Map<UnitId, Integer> scanners = new HashMap<>();
+    try(Connection connection = _dataSource.getConnection()) {
+      ResultSet rs = DbUtils.readQuery("SELECT id,scanner FROM UNITS", null, connection);
+      while(rs.next()) {
+        scanners.put(new UnitId(rs.getString("id")), rs.getInt("scanner"));
+      }
+      rs.close();
+    } catch(Exception e) {
+      flushCache();
+      throw new RuntimeException("Error refreshing scanner data", e);
+    }
+    Map<WorldId, Integer> scannerRanges = new HashMap<>(cache._scannerRanges);
+    for(IWorld world : cache._worldsById.values()) {
+      UnitId scannerId = world.getScannerId();
+      if(unitIds == null || (scannerId != null && unitIds.contains(scannerId))) {
+        Integer scanner = (scannerId == null) ? null : scanners.get(scannerId);
+        scannerRanges.put(world.getId(), (scanner == null || scanner == 0) ? defaultScannerRange : scanner);
+      }
+    }
+    Map<Integer, Map<WorldId, WorldAndHistory>> turns = new HashMap<>();
+    for(Map.Entry<Integer, Map<WorldId, WorldAndHistory>> turn : cache._turns.entrySet()) {
+      Map<WorldId, WorldAndHistory> turnData = new HashMap<>(turn.getValue());
+      for(Map.Entry<WorldId, WorldAndHistory> entry : turnData.entrySet()) {
+        WorldAndHistory wh = entry.getValue();
+        int scannerRange = scannerRanges.get(entry.getKey());
+        if(scannerRange != wh.getScannerRange()) {
+          entry.setValue(new WorldAndHistory(wh.getWorld(), wh.getHistory(), wh.getColor(), scannerRange, wh.getTeam()));
+        }
+      }
+      turns.put(turn.getKey(), turnData);
+    }
+    _cache = new WorldCache(cache._mapInfo, cache._worldsById, cache._worldsByName, scannerRanges, turns);
+  }
+
+  /**
+   * Returns the ids of the worlds the histories belong to
+   * @param histories
+   * @return worldIds
+   */
+  private static Set<WorldId> getWorldIds(Collection<IHistory> histories) {
+    Set<WorldId> ids = new HashSet<>();
+    for(IHistory history : histories) {
+      if(history != null && history.getWorldId() != null) {
+        ids.add(history.getWorldId());
+      }
+    }
+    return ids;
+  }
+
+  /**
+   * Returns the turns of the histories
+   * @param histories
+   * @return turns
+   */
+  private static Set<Integer> getTurns(Collection<IHistory> histories) {
+    Set<Integer> turns = new TreeSet<>();
+    for(IHistory history : histories) {
+      if(history != null) {
+        turns.add(history.getTurn());
+      }
+    }
+    return turns;
+  }
+
+  /**
+   * Returns the turns from 1 to maxTurn
+   * @param maxTurn
+   * @return turns
+   */
+  private static Set<Integer> getTurnRange(int maxTurn) {
+    Set<Integer> turns = new HashSet<>();
+    for(int turn = 1; turn <= maxTurn; turn++) {
+      turns.add(turn);
+    }
+    return turns;
+  }
+
+  /**
+   * Returns the colour to show for history whose owner has no player record
+   * @param history
+   * @return color
+   */
+  private static Color getDefaultColor(IHistory history) {
+    return IPlayer.NOBODY.equals(history.getOwner())
+        ? PlayerUtils.NOBODY_COLOR
+        : PlayerUtils.SOMEBODY_COLOR;
+  }
+
+  /**
+   * Reads the rows returned by the {@link #WORLDS_SELECT_SQL} query into the
+   * maps of worlds being built for the cache
+   * @param rs
+   * @param defaultScannerRange
+   * @param worldsById
+   * @param worldsByName
+   * @param scannerRanges
+   * @throws SQLException
+   */
+  private void readWorldRows(ResultSet rs, int defaultScannerRange, Map<WorldId, IWorld> worldsById,
+      Map<String, IWorld> worldsByName, Map<WorldId, Integer> scannerRanges) throws SQLException {
+    Log log = LogFactory.getLog(this.getClass());
+    while(rs.next()) {
+      WorldId worldId = new WorldId( rs.getString("id") );
+      String name = rs.getString("name");
+      int worldX = rs.getInt("worldX");
+      int worldY = rs.getInt("worldY");
+      String scanner = rs.getString("scannerId");
+      UnitId scannerId = (scanner==null||scanner.isEmpty()) ? null : new UnitId(scanner);
+      String notes = rs.getString("notes");
+      int worldEi = rs.getInt("worldEi");
+      int worldRer = rs.getInt("worldRer");
+      IWorld world = new WorldImpl(worldId, name, worldX, worldY, scannerId, notes, worldEi, worldRer);
+      worldsById.put(worldId, world);
+      worldsByName.put(name.toUpperCase(Locale.US), world); //doesn't actually bother with using nameLookup
+      //TODO - we need to revise how we deal with the no-scanner situation.
+      //We can envisage changes to the game that allow for suppressing a scanner range to zero while the
+      //visual range remains 25 for example. For now this isnt the case however.
+      int scannerRange = rs.getInt("scanner");
+      if(scannerRange == 0) {
+        scannerRange = defaultScannerRange;
+      }
+      scannerRanges.put(worldId, scannerRange);
+      if(log.isTraceEnabled()) {
+        log.trace("Loaded world:" + world);
+      }
+    }
+  }
+
+  /**
+   * Reads history rows along with the colour and team of the owning player.
+   * This doesn't use any of the cached data so may be called without holding the
+   * lock on the service.
+   * @param connection
+   * @param where
+   *          condition selecting the rows
+   * @param parameters
+   * @return rows
+   * @throws SQLException
+   */
+  private List<HistoryRow> readHistoryRows(Connection connection, String where, Object[] parameters) throws SQLException {
+    List<HistoryRow> rows = new ArrayList<>();
+    ResultSet rs = DbUtils.readQuery(HISTORY_SELECT_SQL + " WHERE " + where + ";", parameters, connection);
+    while(rs.next()) {
+      String owner = rs.getString("owner");
+      IHistory history = new HistoryImpl(
+          new WorldId( rs.getString("worldId") ),
+          rs.getInt("turn"),
+          (owner==null) ? "" : owner,
+          rs.getDouble("firepower"),
+          rs.getInt("labour"),
+          rs.getInt("capital"));
+      Color color = Convert.toColor(rs.getString("color"));
+      if(color == null) {
+        color = getDefaultColor(history);
+      }
+      String team = rs.getString("team");
+      rows.add(new HistoryRow(history, color, (team==null) ? "" : team));
+    }
+    rs.close();
+    return rows;
+  }
+
+  /**
+   * Returns the world and history data for the rows of a turn keyed by world id
+   * @param cache
+   *          the cache holding the worlds
+   * @param rows
+   * @return turnData
+   */
+  private static Map<WorldId, WorldAndHistory> toTurnData(WorldCache cache, List<HistoryRow> rows) {
+    Map<WorldId, WorldAndHistory> turnData = new HashMap<>(rows.size() * 2);
+    for(HistoryRow row : rows) {
+      WorldAndHistory wh = toWorldAndHistory(cache._worldsById, cache._scannerRanges, row);
+      if(wh != null) {
+        turnData.put(row._history.getWorldId(), wh);
+      }
+    }
+    return turnData;
+  }
+
+  /**
+   * Returns the world and history data for a history row, or null if the
+   * history is for a world that isn't cached
+   * @param worldsById
+   * @param scannerRanges
+   * @param row
+   * @return worldAndHistory
+   */
+  private static WorldAndHistory toWorldAndHistory(Map<WorldId, IWorld> worldsById,
+      Map<WorldId, Integer> scannerRanges, HistoryRow row) {
+    WorldId worldId = row._history.getWorldId();
+    IWorld world = worldsById.get(worldId);
+    if(world == null) {
+      return null;
+    }
+    return new WorldAndHistory(world, row._history, row._color, scannerRanges.get(worldId), row._team);
+  }
+
   private void saveHistoryInternal(Connection connection, IHistory history) {
     Objects.requireNonNull(connection, "connection may not be null");
     Objects.requireNonNull(history, "history may not be null");
@@ -593,16 +1079,8 @@ public class WorldServiceImpl extends AbstractPersistenceService implements IWor
     if(history.getWorldId() == null) {
       throw new NullPointerException("worldId may not be null in history object");
     }
-    final String sql = "MERGE INTO WORLDS_HISTORY H USING (VALUES ?,?,?,?,?,?)"
-        + "  V (worldId,turn,owner,firepower,labour,capital)" + " ON (H.worldId=V.worldId AND H.turn=V.turn)"
-        + " WHEN MATCHED THEN UPDATE SET H.worldId=V.worldId, H.turn=V.turn, H.owner=V.owner,"
-        + "H.firepower=V.firepower, H.labour=V.labour, H.capital=V.capital"
-        + " WHEN NOT MATCHED THEN INSERT (worldId,turn,owner,firepower,labour,capital)"
-        + "  VALUES (V.worldId,V.turn,V.owner,V.firepower,V.labour,V.capital);";
-    final Object[] parameters = new Object[] { history.getWorldId(), history.getTurn(), history.getOwner(),
-        history.getFirepower(), history.getLabour(), history.getCapital() };
     try {
-      DbUtils.writeQuery(sql, parameters, connection);
+      DbUtils.writeQuery(HISTORY_MERGE_SQL, historyParameters(history), connection);
     } catch(Exception e) {
       throw new RuntimeException("Failed to save History " + history, e);
     }
@@ -626,22 +1104,106 @@ public class WorldServiceImpl extends AbstractPersistenceService implements IWor
     }
     if(world.isNew()) {
       final WorldId id = new WorldId( _keyGen.createIdKey() );
-      final String sql = "INSERT INTO WORLDS (id,name,worldX,worldY,scannerId,notes,worldEi,worldRer)"
-          + " VALUES (?,?,?,?,?,?,?,?);";
-      final Object[] parameters_insert = new Object[] { id, world.getName(), world.getWorldX(), world.getWorldY(),
-          world.getScannerId(), world.getNotes(), world.getWorldEi(), world.getWorldRer() };
-      DbUtils.writeQuery(sql, parameters_insert, connection);
+      DbUtils.writeQuery(WORLD_INSERT_SQL, worldInsertParameters(id, world), connection);
       return id;
     } else {
-      final Object[] parameters_update = new Object[] { world.getName(), world.getWorldX(), world.getWorldY(),
-          world.getScannerId(), world.getNotes(), world.getWorldEi(), world.getWorldRer(), world.getId(), };
-      final String sql = "UPDATE WORLDS SET " + "name=?," + "worldX=?," + "worldY=?," + "scannerId=?," + "notes=?,"
-          + "worldEi=?," + "worldRer=?" + " WHERE id=?;";
-      DbUtils.writeQuery(sql, parameters_update, connection);
+      DbUtils.writeQuery(WORLD_UPDATE_SQL, worldUpdateParameters(world), connection);
       return world.getId();
     }
   }
   
+  /**
+   * Saves the worlds and then the histories in a single transaction, adding the
+   * rows for each statement to a batch that is executed once rather than
+   * executing a statement per row. If anything fails the transaction is rolled
+   * back. If link is true the histories list must be the same size as the worlds
+   * and each history is saved against the id of the world at the same index.
+   * Does not check for duplicates or flush the cache - that is the caller's
+   * responsibility.
+   * @param worlds
+   * @param histories
+   * @param link
+   * @return worldIds
+   * @throws Exception
+   */
+  private List<WorldId> saveBatch(List<IWorld> worlds, Collection<IHistory> histories, boolean link) throws Exception {
+    try(Connection connection = _dataSource.getConnection()) {
+      boolean autoCommit = connection.getAutoCommit();
+      connection.setAutoCommit(false);
+      try {
+        List<WorldId> ids = new ArrayList<>(worlds.size());
+        if(!worlds.isEmpty()) {
+          try(PreparedStatement insert = connection.prepareStatement(WORLD_INSERT_SQL);
+              PreparedStatement update = connection.prepareStatement(WORLD_UPDATE_SQL)) {
+            int inserts = 0;
+            int updates = 0;
+            for(IWorld world : worlds) {
+              Objects.requireNonNull(world, "world may not be null");
+              if(world.getName().isEmpty()){
+                throw new IllegalArgumentException("world.name may not be empty");
+              }
+              if(world.isNew()) {
+                WorldId id = new WorldId( _keyGen.createIdKey() );
+                DbUtils.setParameters(insert, worldInsertParameters(id, world));
+                insert.addBatch();
+                inserts++;
+                ids.add(id);
+              } else {
+                DbUtils.setParameters(update, worldUpdateParameters(world));
+                update.addBatch();
+                updates++;
+                ids.add(world.getId());
+              }
+            }
+            if(inserts > 0) {
+              insert.executeBatch();
+            }
+            if(updates > 0) {
+              update.executeBatch();
+            }
+          }
+        }
+        if(!histories.isEmpty()) {
+          try(PreparedStatement merge = connection.prepareStatement(HISTORY_MERGE_SQL)) {
+            int index = 0;
+            for(IHistory history : histories) {
+              Objects.requireNonNull(history, "history may not be null");
+              if(link) {
+                history = new HistoryImpl(ids.get(index++), history);
+              }
+              Objects.requireNonNull(history.getWorldId(),"history.worldId may not be null here");
+              DbUtils.setParameters(merge, historyParameters(history));
+              merge.addBatch();
+            }
+            merge.executeBatch();
+          }
+        }
+        connection.commit();
+        return ids;
+      } catch(Exception e) {
+        connection.rollback();
+        throw e;
+      } finally {
+        connection.setAutoCommit(autoCommit);
+      }
+    }
+  }
+  
+  private static Object[] worldInsertParameters(WorldId id, IWorld world) {
+    return new Object[] { id, world.getName(), world.getWorldX(), world.getWorldY(),
+        world.getScannerId(), world.getNotes(), world.getWorldEi(), world.getWorldRer() };
+  }
+  
+  private static Object[] worldUpdateParameters(IWorld world) {
+    return new Object[] { world.getName(), world.getWorldX(), world.getWorldY(),
+        world.getScannerId(), world.getNotes(), world.getWorldEi(), world.getWorldRer(), world.getId(), };
+  }
+  
+  private static Object[] historyParameters(IHistory history) {
+    return new Object[] { history.getWorldId(), history.getTurn(), history.getOwner(),
+        history.getFirepower(), history.getLabour(), history.getCapital() };
+  }
+  
   /**
    * Check the cache and the list of additionalNames to ensure that the name is
    * unique. If it isn't throw a {@link DuplicateRecordException} to allow for a
@@ -692,4 +1254,57 @@ public class WorldServiceImpl extends AbstractPersistenceService implements IWor
     return mapInfo;
   }
 
+  /**
+   * Snapshot of the cached worlds and the recently used turns of their history.
+   * It is replaced rather than modified when the data changes, so neither it nor
+   * the maps it holds may be modified once it is published.
+   */
+  protected static class WorldCache {
+    protected final MapInfo _mapInfo; //records bounds of the map
+    protected final Map<WorldId, IWorld> _worldsById; //lookup table of worlds keyed by worldId
+    protected final Map<String, IWorld> _worldsByName; //lookup worlds by uppercase name
+    protected final Map<WorldId, Integer> _scannerRanges; //scanner range of each world
+    protected final Map<Integer, Map<WorldId, WorldAndHistory>> _turns; //recently used turns of worlds by id
+
+    /**
+     * Constructor. The caller must not modify the maps afterwards.
+     */
+    protected WorldCache(MapInfo mapInfo,
+                         Map<WorldId, IWorld> worldsById,
+                         Map<String, IWorld> worldsByName,
+                         Map<WorldId, Integer> scannerRanges,
+                         Map<Integer, Map<WorldId, WorldAndHistory>> turns) {
+      _mapInfo = mapInfo;
+      _worldsById = worldsById;
+      _worldsByName = worldsByName;
+      _scannerRanges = scannerRanges;
+      _turns = turns;
+    }
+
+    /**
+     * Returns a copy of this cache holding the specified turns instead
+     * @param turns
+     * @return cache
+     */
+    protected WorldCache withTurns(Map<Integer, Map<WorldId, WorldAndHistory>> turns) {
+      return new WorldCache(_mapInfo, _worldsById, _worldsByName, _scannerRanges, turns);
+    }
+  }
+
+  /**
+   * A row of history read from the database along with the colour and team of
+   * its owner
+   */
+  private static class HistoryRow {
+    private final IHistory _history;
+    private final Color _color;
+    private final String _team;
+
+    private HistoryRow(IHistory history, Color color, String team) {
+      _history = history;
+      _color = color;
+      _team = team;
+    }
+  }
+
 }
@@ -2,15 +2,19 @@ package romeo.worlds.ui;
 
 import java.awt.BasicStroke;
 import java.awt.Color;
+import java.awt.FontMetrics;
 import java.awt.Graphics2D;
 import java.awt.GridBagConstraints;
 import java.awt.Insets;
 import java.awt.Point;
+import java.awt.Rectangle;
 import java.awt.Stroke;
 import java.awt.event.ItemEvent;
 import java.awt.event.ItemListener;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.EventObject;
+import java.util.List;
 import java.util.Objects;
 import java.util.Set;
 
@@ -38,8 +42,6 @@ import romeo.ui.GenericMap.PositionStruct;
 import romeo.units.api.IUnitService;
 import romeo.utils.Convert;
 import romeo.utils.GuiUtils;
-import romeo.worlds.api.IHistory;
-import romeo.worlds.api.IWorld;
 import romeo.worlds.api.IWorldService;
 import romeo.worlds.api.WorldAndHistory;
 import romeo.worlds.api.WorldId;
@@ -52,6 +54,14 @@ public class WorldMapLogic extends AbstractMapLogic implements GenericMap.IObjec
   protected static final Stroke DEFCON3_STROKE = new BasicStroke(2.0f);
   protected static final Stroke DEFCON2_STROKE = new BasicStroke(3.0f);
   protected static final Stroke DEFCON1_STROKE = new BasicStroke(4.0f);
+  /**
+   * Width of the widest stroke used to draw a world, in pixels
+   */
+  protected static final int MAX_STROKE_WIDTH = 4;
+  /**
+   * Distance in pixels between the baselines of the lines of a world's label
+   */
+  protected static final int LINE_HEIGHT = 12;
 
   protected IWorldService _worldService;
   protected IUnitService _unitService;
@@ -59,6 +69,7 @@ public class WorldMapLogic extends AbstractMapLogic implements GenericMap.IObjec
   //protected List<WorldAndHistory> _worldData; //Current turns world data
   protected Set<WorldAndHistory> _worldData; //Current turns world data
   protected MapInfo _mapInfo; //map dimensions in time and space
+  protected WorldMapSnapshot _snapshot; //render data for _worldData, built when first painted
 
   protected JComboBox<Integer> _fleetSpeedField;
   protected JCheckBox _showOwner;
@@ -245,6 +256,7 @@ public class WorldMapLogic extends AbstractMapLogic implements GenericMap.IObjec
         log.trace("getData() called, and invoking worldService to load history for turn " + _currentTurn);
       }
       _worldData = _worldService.getWorldHistory(_currentTurn);
+      _snapshot = null;
     } else {
       if(log.isTraceEnabled()) {
         log.trace("getData() called, and returning cached history for turn " + _currentTurn);
@@ -297,54 +309,36 @@ public class WorldMapLogic extends AbstractMapLogic implements GenericMap.IObjec
   }
 
   /**
-   * Returns the history object for the specified world for the previous turn if
-   * it is available or null if it is not.
-   * @param world
-   *          may not be null
-   * @return history
+   * Returns the render data for the current turn, building it if the data has
+   * been reloaded since it was last built. The previous turn is loaded in one
+   * call to the world service only if deltas are being shown, so that painting
+   * the map doesn't have to call the service for every world.
+   * @return snapshot
    */
-  protected IHistory getPreviousTurn(IWorld world) {
-    WorldId worldId = Objects.requireNonNull(world, "world must not be null").getId();
-    int prevTurn = _currentTurn - 1;
-    if(prevTurn < 1 || prevTurn > _mapInfo.getMaxTurn()) {
-      return null;
-    }
-    IHistory history = _worldService.loadHistory(worldId, _currentTurn - 1);
-    return history;
+  protected WorldMapSnapshot getSnapshot() {
+    Set<WorldAndHistory> data = getData();
+    boolean needPreviousTurn = _showDeltas != null && _showDeltas.isSelected();
+    WorldMapSnapshot snapshot = _snapshot;
+    if(snapshot == null || snapshot.getData() != data || (needPreviousTurn && !snapshot.isPreviousTurnLoaded())) {
+      Set<WorldAndHistory> previousData = null;
+      int prevTurn = _currentTurn - 1;
+      if(needPreviousTurn && prevTurn >= 1 && prevTurn <= getMapInfo().getMaxTurn()) {
+        previousData = _worldService.getWorldHistory(prevTurn);
+      }
+      snapshot = new WorldMapSnapshot(data, previousData, needPreviousTurn);
+      _snapshot = snapshot;
+    }
+    return snapshot;
   }
 
   @Override
   public void render(Graphics2D g, GenericMap map, Object object, int x, int y, double zoom) {
     WorldAndHistory wh = (WorldAndHistory)object;
-    WorldAndHistory origin = (WorldAndHistory) map.getOrigin();
-    WorldAndHistory highlighted = (WorldAndHistory)map.getHighlighted();
+    WorldMapSnapshot snapshot = getSnapshot();
+    int index = snapshot.indexOf(wh);
+    boolean showDeltas = _showDeltas.isSelected() && index != -1 && snapshot.getPreviousHistory(index) != null;
 
-    boolean needPreviousTurn = _showDeltas.isSelected();
-    IHistory previousTurn = needPreviousTurn ? getPreviousTurn(wh.getWorld()) : null;
-
-    int labour = wh.getHistory().getLabour();
-    double multiplier;
-    if(labour < _fClass) {
-      multiplier = 2d;
-    } else if(labour < _eClass) {
-      multiplier = 4d;
-    } else if(labour < _dClass) {
-      multiplier = 6d;
-    } else if(labour < _cClass) {
-      multiplier = 8d;
-    } else if(labour < _bClass) {
-      multiplier = 10d;
-    } else if(labour < _aClass) {
-      multiplier = 12d;
-    } else {
-      multiplier = 14d;
-    } //S-Class
-    double radius_dbl = (multiplier + 1) * zoom;
-    if(radius_dbl < 3)
-      radius_dbl = 3;
-    int radius = (int) Math.ceil(radius_dbl);
-    int line = 1;
-    int lineHeight = 12;
+    int radius = getRadius(wh, zoom);
 
     double firepower =wh.getHistory().getFirepower();
     if(firepower < _defcon5) {
@@ -363,11 +357,7 @@ public class WorldMapLogic extends AbstractMapLogic implements GenericMap.IObjec
     g.setColor(wh.getColor());
     g.drawOval(x - radius, y - radius, radius * 2, radius * 2);
 
-    String owner = wh.getHistory().getOwner();
-    String previousOwner = (previousTurn == null) ? null : previousTurn.getOwner();
-    boolean changedOwner = (previousOwner != null) & !owner.equalsIgnoreCase(previousOwner);
-
-    if(changedOwner) {
+    if(showDeltas && snapshot.isChangedOwner(index)) {
       //TODO - would be nice to use the previous owners color for the highlight
       //       but we only have the history handy
       //g.drawArc(x-radius-1, y, 1+radius*2, (radius/2), 0, -190);
@@ -375,14 +365,38 @@ public class WorldMapLogic extends AbstractMapLogic implements GenericMap.IObjec
       g.drawLine(x - radius - 1, y + (radius / 2), x + radius + 1, y - (radius / 2));
     }
 
+    int line = 1;
+    for(String label : getLabels(map, wh)) {
+      g.drawString(label, x + radius, y + radius + (line * LINE_HEIGHT));
+      line++;
+    }
+  }
+
+  /**
+   * Returns the lines of text that {@link #render} draws beside the world,
+   * according to which of the display options are selected
+   * @param map
+   * @param wh
+   * @return labels, top line first
+   */
+  protected List<String> getLabels(GenericMap map, WorldAndHistory wh) {
+    WorldAndHistory origin = (WorldAndHistory) map.getOrigin();
+    WorldMapSnapshot snapshot = getSnapshot();
+    int index = snapshot.indexOf(wh);
+    boolean showDeltas = _showDeltas.isSelected() && index != -1 && snapshot.getPreviousHistory(index) != null;
+    double firepower = wh.getHistory().getFirepower();
+    int labour = wh.getHistory().getLabour();
+    String owner = wh.getHistory().getOwner();
+    List<String> labels = new ArrayList<String>(4);
+
     String nameToShow = null;
     if(_showName.isSelected()) {
       nameToShow = wh.getWorld().getName();
     }
     if(_showFirepower.isSelected()) {
       String fpStr = "[" + Convert.toStr(firepower, 2);
-      if(previousTurn != null && _showDeltas.isSelected()) {
-        double fpDelta = firepower - previousTurn.getFirepower();
+      if(showDeltas) {
+        double fpDelta = snapshot.getFirepowerDelta(index);
         if(fpDelta != 0) {
           fpStr += " " + (fpDelta > 0 ? "+" : "") + Convert.toStr(fpDelta, 2);
         }
@@ -392,15 +406,14 @@ public class WorldMapLogic extends AbstractMapLogic implements GenericMap.IObjec
     }
 
     if(nameToShow != null) {
-      g.drawString(nameToShow, x + radius, y + radius + (line * lineHeight));
-      line++;
+      labels.add(nameToShow);
     }
 
     String labCap = "";
     if(_showLabour.isSelected()) {
       labCap += labour + "\u03c1"; //rho (looks like a p)
-      if(previousTurn != null && _showDeltas.isSelected()) {
-        int labourDelta = labour - previousTurn.getLabour();
+      if(showDeltas) {
+        int labourDelta = snapshot.getLabourDelta(index);
         if(labourDelta != 0) {
           labCap += " " + (labourDelta > 0 ? "+" : "") + labourDelta;
         }
@@ -412,26 +425,32 @@ public class WorldMapLogic extends AbstractMapLogic implements GenericMap.IObjec
       }
       int capital = wh.getHistory().getCapital();
       labCap += capital + "\u03c5"; //upsilon (looks like a u)
-      if(previousTurn != null && _showDeltas.isSelected()) {
-        int capitalDelta = capital - previousTurn.getCapital();
+      if(showDeltas) {
+        int capitalDelta = snapshot.getCapitalDelta(index);
         if(capitalDelta != 0) {
           labCap += " " + (capitalDelta > 0 ? "+" : "") + capitalDelta;
         }
       }
     }
     if(!labCap.isEmpty()) {
-      g.drawString(labCap, x + radius, y + radius + (line * lineHeight));
-      line++;
+      labels.add(labCap);
     }
 
-    String rangeInfo = "";
-    int distance = (origin == null) ? 0
+    //Distances and visibility times come from a table for the whole turn that is cached until the origin or speed
+    //changes. If the origin isn't in this turn's data they are calculated directly.
+    boolean needOriginTable = origin != null && (_showRange.isSelected() || _showScanner.isSelected());
+    WorldMapSnapshot.OriginTable originTable = needOriginTable ? snapshot.getOriginTable(origin, _fleetSpeed) : null;
+    boolean useTable = originTable != null && index != -1;
+    int distance = (origin == null) ? 0 : useTable ? originTable.getDistance(index)
         : Convert.toDistance(origin.getWorld().getWorldX(), origin.getWorld().getWorldY(), wh.getWorld().getWorldX(),
             wh.getWorld().getWorldY());
+
+    String rangeInfo = "";
     if(origin != null && _showRange.isSelected()) {
       rangeInfo += distance;
       if(_fleetSpeed > 0) {
-        int eta = distance / _fleetSpeed + (distance % _fleetSpeed > 0 ? 1 : 0);
+        int eta = useTable ? originTable.getEta(index)
+            : distance / _fleetSpeed + (distance % _fleetSpeed > 0 ? 1 : 0);
         rangeInfo += " (" + eta + ")";
       }
     }
@@ -443,8 +462,10 @@ public class WorldMapLogic extends AbstractMapLogic implements GenericMap.IObjec
           scannerInfo += " ";
         }
         if(_fleetSpeed > 0) {
-          int visToTarget = calcVisibility(distance, _fleetSpeed, wh.getScannerRange());
-          int visToOrigin = calcVisibility(distance, _fleetSpeed, origin.getScannerRange());
+          int visToTarget = useTable ? originTable.getVisibilityToTarget(index)
+              : calcVisibility(distance, _fleetSpeed, wh.getScannerRange());
+          int visToOrigin = useTable ? originTable.getVisibilityToOrigin(index)
+              : calcVisibility(distance, _fleetSpeed, origin.getScannerRange());
           scannerInfo += " <" + visToTarget + "/" + wh.getScannerRange() + "/" + visToOrigin + ">";
         } else { //No speed to calculate visible times for
           scannerInfo += " /" + wh.getScannerRange() + "/";
@@ -455,8 +476,7 @@ public class WorldMapLogic extends AbstractMapLogic implements GenericMap.IObjec
     }
 
     if(_showRange.isSelected() || _showScanner.isSelected()) {
-      g.drawString(rangeInfo + scannerInfo, x + radius, y + radius + (lineHeight * line));
-      line++;
+      labels.add(rangeInfo + scannerInfo);
     }
 
     if(_showOwner.isSelected()) {
@@ -465,18 +485,50 @@ public class WorldMapLogic extends AbstractMapLogic implements GenericMap.IObjec
         ownerDisplay += " (" + wh.getTeam() + ")";
       }
       if(!"".equals(ownerDisplay) && !IPlayer.NOBODY.equals(owner)) {
-        g.drawString(ownerDisplay, x + radius, y + radius + (line * lineHeight));
-        line++;
+        labels.add(ownerDisplay);
       }
     }
+    return labels;
+  }
+
+  /**
+   * Returns the area covered by the world circle, with room for the widest
+   * stroke, and by the labels as measured in the graphics font
+   */
+  @Override
+  public Rectangle getBounds(Graphics2D g, GenericMap map, Object object, int x, int y, double zoom) {
+    WorldAndHistory wh = (WorldAndHistory) object;
+    int radius = getRadius(wh, zoom);
+    int extent = radius + MAX_STROKE_WIDTH;
+    Rectangle bounds = new Rectangle(x - extent, y - extent, extent * 2, extent * 2);
+    FontMetrics metrics = g.getFontMetrics();
+    int line = 1;
+    for(String label : getLabels(map, wh)) {
+      int baseline = y + radius + (line * LINE_HEIGHT);
+      bounds.add(new Rectangle(x + radius, baseline - metrics.getMaxAscent(), metrics.stringWidth(label) + 1,
+          metrics.getMaxAscent() + metrics.getMaxDescent()));
+      line++;
+    }
+    return bounds;
+  }
 
-    if(object == origin) { //highlight the origin. Should pick up color from renderer if any
+  /**
+   * Draws the cross through the origin world and the box around the
+   * highlighted one
+   */
+  @Override
+  public void renderOverlay(Graphics2D g, GenericMap map, Object object, int x, int y, double zoom) {
+    WorldAndHistory wh = (WorldAndHistory)object;
+    int radius = getRadius(wh, zoom);
+
+    if(object == map.getOrigin()) { //highlight the origin in the world's color
+      g.setColor(wh.getColor());
       g.setStroke(SIMPLE_LINE_STROKE);
       g.drawLine(x - radius, y - radius, x + radius, y + radius);
       g.drawLine(x - radius, y + radius, x + radius, y - radius);
     }
 
-    if(object == highlighted) {
+    if(object == map.getHighlighted()) {
       g.setColor(Color.GRAY);
       g.setStroke(SIMPLE_LINE_STROKE);
       g.drawRoundRect(x - (radius * 2), y - (radius * 2), radius * 4, radius * 4, 8, 8);
@@ -484,6 +536,37 @@ public class WorldMapLogic extends AbstractMapLogic implements GenericMap.IObjec
     }
   }
 
+  /**
+   * Returns the radius in pixels of the circle drawn for the world, which
+   * depends on its labour and the zoom level
+   * @param wh
+   * @param zoom
+   * @return radius
+   */
+  protected int getRadius(WorldAndHistory wh, double zoom) {
+    int labour = wh.getHistory().getLabour();
+    double multiplier;
+    if(labour < _fClass) {
+      multiplier = 2d;
+    } else if(labour < _eClass) {
+      multiplier = 4d;
+    } else if(labour < _dClass) {
+      multiplier = 6d;
+    } else if(labour < _cClass) {
+      multiplier = 8d;
+    } else if(labour < _bClass) {
+      multiplier = 10d;
+    } else if(labour < _aClass) {
+      multiplier = 12d;
+    } else {
+      multiplier = 14d;
+    } //S-Class
+    double radius_dbl = (multiplier + 1) * zoom;
+    if(radius_dbl < 3)
+      radius_dbl = 3;
+    return (int) Math.ceil(radius_dbl);
+  }
+
   @Override
   public void dataChanged(EventObject event) {
     if(event.getSource() instanceof IWorldService || event.getSource() instanceof IPlayerService) { //Reload the map data to fetch changes
@@ -0,0 +1,284 @@
+package romeo.worlds.ui;
+
+import java.awt.Color;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+import romeo.utils.Convert;
+import romeo.worlds.api.IHistory;
+import romeo.worlds.api.WorldAndHistory;
+import romeo.worlds.api.WorldId;
+
+/**
+ * Snapshot of the data the {@link WorldMapLogic} needs to render one turn of
+ * the world map, so that painting doesn't have to call the world service. The
+ * worlds are held in arrays along with their coordinates, colour, scanner range
+ * and their history for the current and (if it was loaded) previous turn, and
+ * the deltas between the two. The distances and visibility times relative to
+ * an origin world are calculated for the whole turn the first time they are
+ * asked for and cached until a different origin or speed is asked for. Apart
+ * from that cache the snapshot is immutable, and it should be rebuilt when the
+ * turn or the data changes.
+ */
+public class WorldMapSnapshot {
+  /**
+   * Distances and visibility times of every world in the snapshot relative to
+   * one origin world at one fleet speed
+   */
+  public static class OriginTable {
+    private final WorldId _originId;
+    private final int _speed;
+    private final int[] _distance;
+    private final int[] _eta;
+    private final int[] _visToTarget;
+    private final int[] _visToOrigin;
+
+    private OriginTable(WorldMapSnapshot snapshot, int origin, int speed) {
+      int size = snapshot.size();
+      _originId = snapshot._worlds[origin].getWorld().getId();
+      _speed = speed;
+      _distance = new int[size];
+      _eta = new int[size];
+      _visToTarget = new int[size];
+      _visToOrigin = new int[size];
+      int originScanner = snapshot._scannerRange[origin];
+      for(int i = 0; i < size; i++) {
+        int distance = Convert.toDistance(snapshot._x[origin], snapshot._y[origin], snapshot._x[i], snapshot._y[i]);
+        _distance[i] = distance;
+        if(speed > 0) {
+          _eta[i] = distance / speed + (distance % speed > 0 ? 1 : 0);
+          _visToTarget[i] = WorldMapLogic.calcVisibility(distance, speed, snapshot._scannerRange[i]);
+          _visToOrigin[i] = WorldMapLogic.calcVisibility(distance, speed, originScanner);
+        }
+      }
+    }
+
+    /**
+     * Returns the distance of the world at the specified index from the origin
+     * @param index
+     * @return distance
+     */
+    public int getDistance(int index) {
+      return _distance[index];
+    }
+
+    /**
+     * Returns the number of turns a fleet would take to reach the world at the
+     * specified index from the origin (0 if the speed is 0)
+     * @param index
+     * @return eta
+     */
+    public int getEta(int index) {
+      return _eta[index];
+    }
+
+    /**
+     * Returns the number of turns a fleet from the origin would be visible to
+     * the scanner of the world at the specified index (0 if the speed is 0)
+     * @param index
+     * @return turns
+     */
+    public int getVisibilityToTarget(int index) {
+      return _visToTarget[index];
+    }
+
+    /**
+     * Returns the number of turns a fleet from the world at the specified
+     * index would be visible to the scanner of the origin (0 if the speed is 0)
+     * @param index
+     * @return turns
+     */
+    public int getVisibilityToOrigin(int index) {
+      return _visToOrigin[index];
+    }
+  }
+
+  private final Set<WorldAndHistory> _data;
+  private final boolean _previousTurnLoaded;
+  private final WorldAndHistory[] _worlds;
+  private final Map<WorldId, Integer> _indexes;
+  private final int[] _x;
+  private final int[] _y;
+  private final Color[] _color;
+  private final int[] _scannerRange;
+  private final IHistory[] _history;
+  private final IHistory[] _previous;
+  private final double[] _firepowerDelta;
+  private final int[] _labourDelta;
+  private final int[] _capitalDelta;
+  private final boolean[] _changedOwner;
+  private OriginTable _originTable; //only used on the event dispatch thread
+
+  /**
+   * Constructor
+   * @param data
+   *          the worlds and their history for the turn
+   * @param previousData
+   *          the worlds and their history for the previous turn, or null if it
+   *          isn't available or wasn't loaded
+   * @param previousTurnLoaded
+   *          true if the previous turn was asked for (even if there was no data
+   *          for it), so that the snapshot needn't be rebuilt to show deltas
+   */
+  public WorldMapSnapshot(Set<WorldAndHistory> data, Set<WorldAndHistory> previousData, boolean previousTurnLoaded) {
+    _data = Objects.requireNonNull(data, "data may not be null");
+    _previousTurnLoaded = previousTurnLoaded;
+    int size = data.size();
+    _worlds = data.toArray(new WorldAndHistory[size]);
+    _indexes = new HashMap<WorldId, Integer>(size * 2);
+    _x = new int[size];
+    _y = new int[size];
+    _color = new Color[size];
+    _scannerRange = new int[size];
+    _history = new IHistory[size];
+    _previous = new IHistory[size];
+    _firepowerDelta = new double[size];
+    _labourDelta = new int[size];
+    _capitalDelta = new int[size];
+    _changedOwner = new boolean[size];
+
+    Map<WorldId, IHistory> previousHistory = new HashMap<WorldId, IHistory>();
+    if(previousData != null) {
+      for(WorldAndHistory wh : previousData) {
+        previousHistory.put(wh.getWorld().getId(), wh.getHistory());
+      }
+    }
+
+    for(int i = 0; i < size; i++) {
+      WorldAndHistory wh = _worlds[i];
+      _indexes.put(wh.getWorld().getId(), i);
+      _x[i] = wh.getWorld().getWorldX();
+      _y[i] = wh.getWorld().getWorldY();
+      _color[i] = wh.getColor();
+      _scannerRange[i] = wh.getScannerRange();
+      _history[i] = wh.getHistory();
+      IHistory previous = previousHistory.get(wh.getWorld().getId());
+      _previous[i] = previous;
+      if(previous != null) {
+        _firepowerDelta[i] = _history[i].getFirepower() - previous.getFirepower();
+        _labourDelta[i] = _history[i].getLabour() - previous.getLabour();
+        _capitalDelta[i] = _history[i].getCapital() - previous.getCapital();
+        String previousOwner = previous.getOwner();
+        _changedOwner[i] = (previousOwner != null) && !_history[i].getOwner().equalsIgnoreCase(previousOwner);
+      }
+    }
+  }
+
+  /**
+   * Returns the data the snapshot was built from. The logic compares this by
+   * identity with its current data to tell if the snapshot is out of date.
+   * @return data
+   */
+  public Set<WorldAndHistory> getData() {
+    return _data;
+  }
+
+  /**
+   * Returns true if the previous turn was asked for when building the snapshot
+   * @return previousTurnLoaded
+   */
+  public boolean isPreviousTurnLoaded() {
+    return _previousTurnLoaded;
+  }
+
+  /**
+   * Returns the number of worlds in the snapshot
+   * @return size
+   */
+  public int size() {
+    return _worlds.length;
+  }
+
+  /**
+   * Returns the index of the specified world in the snapshot or -1 if it isn't
+   * in it
+   * @param wh
+   * @return index
+   */
+  public int indexOf(WorldAndHistory wh) {
+    Integer index = _indexes.get(wh.getWorld().getId());
+    return index == null ? -1 : index.intValue();
+  }
+
+  public WorldAndHistory getWorld(int index) {
+    return _worlds[index];
+  }
+
+  public int getX(int index) {
+    return _x[index];
+  }
+
+  public int getY(int index) {
+    return _y[index];
+  }
+
+  public Color getColor(int index) {
+    return _color[index];
+  }
+
+  public int getScannerRange(int index) {
+    return _scannerRange[index];
+  }
+
+  public IHistory getHistory(int index) {
+    return _history[index];
+  }
+
+  /**
+   * Returns the history of the world at the specified index for the previous
+   * turn, or null if it wasn't loaded or there is none
+   * @param index
+   * @return history
+   */
+  public IHistory getPreviousHistory(int index) {
+    return _previous[index];
+  }
+
+  public double getFirepowerDelta(int index) {
+    return _firepowerDelta[index];
+  }
+
+  public int getLabourDelta(int index) {
+    return _labourDelta[index];
+  }
+
+  public int getCapitalDelta(int index) {
+    return _capitalDelta[index];
+  }
+
+  /**
+   * Returns true if the owner of the world at the specified index is different
+   * from its owner in the previous turn
+   * @param index
+   * @return changedOwner
+   */
+  public boolean isChangedOwner(int index) {
+    return _changedOwner[index];
+  }
+
+  /**
+   * Returns the distances and visibility times relative to the specified
+   * origin world at the specified speed, or null if the origin isn't in the
+   * snapshot. The table is cached until called with a different origin or
+   * speed.
+   * @param origin
+   * @param speed
+   * @return table
+   */
+  public OriginTable getOriginTable(WorldAndHistory origin, int speed) {
+    OriginTable table = _originTable;
+    WorldId originId = Objects.requireNonNull(origin, "origin may not be null").getWorld().getId();
+    if(table != null && table._speed == speed && table._originId.equals(originId)) {
+      return table;
+    }
+    int index = indexOf(origin);
+    if(index == -1) {
+      return null;
+    }
+    table = new OriginTable(this, index, speed);
+    _originTable = table;
+    return table;
+  }
+}
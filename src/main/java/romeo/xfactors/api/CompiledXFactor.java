@@ -9,6 +9,10 @@ package romeo.xfactors.api;
  * different stats of a unit that an xactor may modify. An expression is stored
  * for each of the unit stats that may be affected by an xfactor in Romeo, plus
  * a trigger expression that defines when the xfactor is operational.
+ *
+ * When the expressions have been compiled to {@link ITypedExpression}s the
+ * combined dependencies of the xfactor tell the battle simulator how often it
+ * needs evaluating (see {@link #getDependencies()}).
  */
 public class CompiledXFactor {
   protected IExpression _trigger;
@@ -59,6 +63,27 @@ public class CompiledXFactor {
         + _xfDefense + "\npd=" + _xfPd + "\nremove=" + _xfRemove;
   }
 
+  /**
+   * Returns the combined dependencies of the expressions. (See
+   * {@link ITypedExpression#getDependencies()}). Expressions that havent been
+   * compiled are assumed to depend on everything.
+   * @return dependencies
+   */
+  public int getDependencies() {
+    return getDependencies(_trigger) | getDependencies(_xfAttacks) | getDependencies(_xfOffense)
+        | getDependencies(_xfDefense) | getDependencies(_xfPd) | getDependencies(_xfRemove);
+  }
+
+  private static int getDependencies(IExpression expression) {
+    if(expression == null) {
+      return 0;
+    } else if(expression instanceof ITypedExpression) {
+      return ((ITypedExpression) expression).getDependencies();
+    } else {
+      return ITypedExpression.ALL_DEPENDENCIES;
+    }
+  }
+
   /**
    * Returns the expression used to evaluate if the xfactors are operational
    * @return trigger
@@ -0,0 +1,115 @@
+package romeo.xfactors.api;
+
+import romeo.battle.impl.RoundContext;
+
+/**
+ * An {@link IExpression} that can also be evaluated straight to a primitive
+ * value. The xFactor compiler turns the expression trees created by the parser
+ * into trees of these (see romeo.xfactors.compiled.ExpressionCompiler) so
+ * that evaluating xFactors in the battle simulator doesnt box every
+ * intermediate result only to unbox it again in the parent expression.
+ *
+ * The typed methods always give the same result as converting the value
+ * returned by evaluate() (in the way that ARITHMETIC and LOGIC convert the
+ * values of their parameters), including any random numbers consumed and
+ * exceptions raised along the way.
+ *
+ * Each expression also reports what its value depends on, so that the compiler
+ * can fold constant expressions and the battle simulator can tell when an
+ * xFactor needs evaluating again.
+ */
+public interface ITypedExpression extends IExpression {
+  /**
+   * Result type of an expression whose value is always a non-null Number
+   */
+  public static final int NUMBER = 0;
+
+  /**
+   * Result type of an expression whose value is always a non-null Boolean
+   */
+  public static final int BOOLEAN = 1;
+
+  /**
+   * Result type of an expression whose value may be a String, null, or differ
+   * in type from one evaluation to the next
+   */
+  public static final int OTHER = 2;
+
+  /**
+   * Dependency on the round number
+   */
+  public static final int DEPENDS_ON_ROUND = 1;
+
+  /**
+   * Dependency on the element being evaluated (its unit stats, its source, and
+   * whether its player is the attacker or defender). These dont change during a
+   * battle.
+   */
+  public static final int DEPENDS_ON_ELEMENT = 2;
+
+  /**
+   * Dependency on the quantities of units in the fleets
+   */
+  public static final int DEPENDS_ON_QUANTITIES = 4;
+
+  /**
+   * Dependency on the flags of the fleets
+   */
+  public static final int DEPENDS_ON_FLAGS = 8;
+
+  /**
+   * The expression draws random numbers, so its value may differ every time
+   */
+  public static final int USES_RANDOM = 16;
+
+  /**
+   * The expression may FAIL, or its dependencies are unknown
+   */
+  public static final int MAY_FAIL = 32;
+
+  /**
+   * All of the above
+   */
+  public static final int ALL_DEPENDENCIES = 63;
+
+  /**
+   * Returns the type of the values returned by evaluate(). One of
+   * {@link #NUMBER}, {@link #BOOLEAN} or {@link #OTHER}.
+   * @return resultType
+   */
+  public int getResultType();
+
+  /**
+   * Returns what the value of the expression depends on, as a combination of
+   * the DEPENDS_ON_ flags, {@link #USES_RANDOM} and {@link #MAY_FAIL}. An
+   * expression with no dependencies always has the same value.
+   * @return dependencies
+   */
+  public int getDependencies();
+
+  /**
+   * Evaluate the expression and return the result as a double. (Booleans are 1
+   * or 0, null is 0 and strings are parsed, with 0 for those that arent
+   * numbers).
+   * @param context
+   * @return result
+   */
+  public double evalDouble(RoundContext context);
+
+  /**
+   * Evaluate the expression and return the result as a boolean. (Numbers are
+   * true if they arent zero, null is false and strings are true if they say
+   * so).
+   * @param context
+   * @return result
+   */
+  public boolean evalBoolean(RoundContext context);
+
+  /**
+   * Evaluate the expression and return the result rounded down to an int, as is
+   * done for the xFactor expressions that provide the stats of a unit.
+   * @param context
+   * @return result
+   */
+  public int evalInt(RoundContext context);
+}
@@ -0,0 +1,62 @@
+package romeo.xfactors.compiled;
+
+import romeo.battle.impl.RoundContext;
+import romeo.xfactors.api.IExpression;
+import romeo.xfactors.api.ITypedExpression;
+
+/**
+ * Stands in for an IF or LOGIC expression that the compiler has found always
+ * has the same value as one of its operands, which it evaluates instead. It
+ * keeps the XFEL of the original expression and wraps any exception raised in
+ * the same way.
+ */
+class AliasExpression extends TypedExpression {
+  private final ITypedExpression _target;
+
+  /**
+   * Constructor
+   * @param source
+   *          the expression being replaced
+   * @param target
+   *          the compiled operand to evaluate in its place
+   */
+  AliasExpression(IExpression source, ITypedExpression target) {
+    super(source, target.getResultType(), target.getDependencies());
+    _target = target;
+  }
+
+  /**
+   * Returns the operand evaluated in place of the original expression
+   * @return target
+   */
+  ITypedExpression getTarget() {
+    return _target;
+  }
+
+  @Override
+  public Object evaluate(RoundContext context) {
+    try {
+      return _target.evaluate(context);
+    } catch(Exception e) {
+      throw new RuntimeException("Error evaluating " + toString(), e);
+    }
+  }
+
+  @Override
+  public double evalDouble(RoundContext context) {
+    try {
+      return _target.evalDouble(context);
+    } catch(Exception e) {
+      throw new RuntimeException("Error evaluating " + toString(), e);
+    }
+  }
+
+  @Override
+  public boolean evalBoolean(RoundContext context) {
+    try {
+      return _target.evalBoolean(context);
+    } catch(Exception e) {
+      throw new RuntimeException("Error evaluating " + toString(), e);
+    }
+  }
+}
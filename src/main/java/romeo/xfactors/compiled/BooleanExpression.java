@@ -0,0 +1,25 @@
+package romeo.xfactors.compiled;
+
+import romeo.battle.impl.RoundContext;
+import romeo.xfactors.api.IExpression;
+import romeo.xfactors.api.ITypedExpression;
+
+/**
+ * Base class for compiled expressions whose value is always a boolean. As a
+ * number the value is 1 for true and 0 for false.
+ */
+abstract class BooleanExpression extends TypedExpression {
+  /**
+   * Constructor
+   * @param source
+   * @param dependencies
+   */
+  protected BooleanExpression(IExpression source, int dependencies) {
+    super(source, ITypedExpression.BOOLEAN, dependencies);
+  }
+
+  @Override
+  public double evalDouble(RoundContext context) {
+    return evalBoolean(context) ? 1d : 0d;
+  }
+}
@@ -0,0 +1,62 @@
+package romeo.xfactors.compiled;
+
+import romeo.battle.impl.RoundContext;
+import romeo.utils.Convert;
+import romeo.xfactors.api.IExpression;
+import romeo.xfactors.api.ITypedExpression;
+import romeo.xfactors.expressions.Logic;
+
+/**
+ * Compiled form of a VALUE, or of any other expression that has no
+ * dependencies and so was evaluated when it was compiled. The value is
+ * converted to a double and to a boolean up front.
+ */
+class ConstantExpression extends TypedExpression {
+  private final Object _value;
+  private final double _doubleValue;
+  private final boolean _booleanValue;
+
+  /**
+   * Constructor
+   * @param source
+   *          the expression this constant replaces
+   * @param value
+   *          the value of that expression
+   */
+  ConstantExpression(IExpression source, Object value) {
+    super(source, resultType(value), 0);
+    _value = value;
+    _doubleValue = Convert.toDouble(value);
+    _booleanValue = Logic.toBoolean(value);
+  }
+
+  private static int resultType(Object value) {
+    if(value instanceof Number) {
+      return ITypedExpression.NUMBER;
+    } else if(value instanceof Boolean) {
+      return ITypedExpression.BOOLEAN;
+    } else {
+      return ITypedExpression.OTHER;
+    }
+  }
+
+  /**
+   * Returns the value
+   * @param context
+   * @return value
+   */
+  @Override
+  public Object evaluate(RoundContext context) {
+    return _value;
+  }
+
+  @Override
+  public double evalDouble(RoundContext context) {
+    return _doubleValue;
+  }
+
+  @Override
+  public boolean evalBoolean(RoundContext context) {
+    return _booleanValue;
+  }
+}
@@ -0,0 +1,195 @@
+package romeo.xfactors.compiled;
+
+import romeo.battle.impl.RoundContext;
+import romeo.xfactors.api.IExpression;
+import romeo.xfactors.api.ITypedExpression;
+import romeo.xfactors.expressions.Adjust;
+import romeo.xfactors.expressions.Arithmetic;
+import romeo.xfactors.expressions.Comparison;
+import romeo.xfactors.expressions.Context;
+import romeo.xfactors.expressions.Fail;
+import romeo.xfactors.expressions.Flag;
+import romeo.xfactors.expressions.If;
+import romeo.xfactors.expressions.Logic;
+import romeo.xfactors.expressions.Present;
+import romeo.xfactors.expressions.Quantity;
+import romeo.xfactors.expressions.Rnd;
+import romeo.xfactors.expressions.Value;
+
+/**
+ * Compiles the expression trees created by the expression parser into trees of
+ * {@link ITypedExpression}. The compiled nodes evaluate straight to primitive
+ * doubles and booleans, so evaluating the xFactors of a fleet each round doesnt
+ * allocate. The results (including random numbers drawn and exceptions raised)
+ * are the same as those of the interpreted expressions, which the compiled
+ * nodes still use for evaluate() and toString().
+ *
+ * While compiling, any subexpression that has no dependencies is evaluated and
+ * replaced with its value, and an IF or LOGIC with a constant operand is
+ * replaced by its other operand (or by its value) where that gives the same
+ * result.
+ */
+public class ExpressionCompiler {
+  /**
+   * Context used to evaluate expressions that dont depend on it
+   */
+  private final RoundContext _constantContext = new RoundContext(new String[0]);
+
+  /**
+   * Returns the compiled form of an expression. Expressions that are already
+   * compiled are returned as they are.
+   * @param expression
+   *          the expression to compile, may be null
+   * @return compiled expression, or null if expression was null
+   */
+  public ITypedExpression compile(IExpression expression) {
+    if(expression == null) {
+      return null;
+    }
+    if(expression instanceof ITypedExpression) {
+      return (ITypedExpression) expression;
+    }
+    if(expression instanceof Value) {
+      return new ConstantExpression(expression, ((Value) expression).getValue());
+    } else if(expression instanceof Arithmetic) {
+      Arithmetic arithmetic = (Arithmetic) expression;
+      return fold(new TypedArithmetic(arithmetic, compile(arithmetic.getLeft()), compile(arithmetic.getRight())));
+    } else if(expression instanceof Adjust) {
+      Adjust adjust = (Adjust) expression;
+      return fold(new TypedAdjust(adjust, compile(adjust.getValue())));
+    } else if(expression instanceof Comparison) {
+      Comparison comparison = (Comparison) expression;
+      return fold(new TypedComparison(comparison, compile(comparison.getLeft()), compile(comparison.getRight())));
+    } else if(expression instanceof Logic) {
+      return compileLogic((Logic) expression);
+    } else if(expression instanceof If) {
+      return compileIf((If) expression);
+    } else if(expression instanceof Context) {
+      return new TypedContext((Context) expression);
+    } else if(expression instanceof Quantity) {
+      return new TypedQuantity((Quantity) expression);
+    } else if(expression instanceof Present) {
+      return new TypedPresent((Present) expression);
+    } else if(expression instanceof Flag) {
+      Flag flag = (Flag) expression;
+      return new TypedFlag(flag, compile(flag.getFlag()));
+    } else if(expression instanceof Rnd) {
+      return new TypedRnd((Rnd) expression);
+    } else if(expression instanceof Fail) {
+      ITypedExpression value = compile(((Fail) expression).getExpression());
+      return new InterpretedExpression(expression, ITypedExpression.MAY_FAIL | value.getDependencies());
+    } else { //Anything else is left to the interpreter
+      return new InterpretedExpression(expression, ITypedExpression.ALL_DEPENDENCIES);
+    }
+  }
+
+  /**
+   * If the expression has no dependencies then returns its value as a
+   * constant, otherwise returns the expression
+   * @param expression
+   * @return expression
+   */
+  private ITypedExpression fold(TypedExpression expression) {
+    if(expression.getDependencies() != 0) {
+      return expression;
+    }
+    try {
+      return new ConstantExpression(expression.getSource(), expression.evaluate(_constantContext));
+    } catch(Exception e) { //Leave the error to be raised when it is evaluated
+      return expression;
+    }
+  }
+
+  /**
+   * Compiles an IF. If the condition is constant the IF is replaced by the
+   * result it selects.
+   * @param ifExpression
+   * @return compiled
+   */
+  private ITypedExpression compileIf(If ifExpression) {
+    ITypedExpression condition = compile(ifExpression.getCondition());
+    ITypedExpression trueResult = compile(ifExpression.getTrueResult());
+    ITypedExpression falseResult = compile(ifExpression.getFalseResult());
+    ITypedExpression compiled = fold(new TypedIf(ifExpression, condition, trueResult, falseResult));
+    if(compiled instanceof ConstantExpression || !(condition instanceof ConstantExpression)) {
+      return compiled;
+    }
+    boolean selector = condition.evalBoolean(_constantContext);
+    return fold(new AliasExpression(ifExpression, selector ? trueResult : falseResult));
+  }
+
+  /**
+   * Compiles a LOGIC. If one operand is constant the LOGIC may be replaced by
+   * its value, which requires that the other operand neither draws random
+   * numbers nor fails (as LOGIC always evaluates both operands), or by the
+   * other operand, which requires that the other operand is a boolean.
+   * @param logic
+   * @return compiled
+   */
+  private ITypedExpression compileLogic(Logic logic) {
+    ITypedExpression left = compile(logic.getLeft());
+    ITypedExpression right = compile(logic.getRight());
+    ITypedExpression compiled = fold(new TypedLogic(logic, left, right));
+    if(compiled instanceof ConstantExpression) {
+      return compiled;
+    } else if(left instanceof ConstantExpression) {
+      return shortCircuit(logic, left.evalBoolean(_constantContext), right, compiled);
+    } else if(right instanceof ConstantExpression) {
+      return shortCircuit(logic, right.evalBoolean(_constantContext), left, compiled);
+    } else {
+      return compiled;
+    }
+  }
+
+  /**
+   * Returns the simplest expression equivalent to a LOGIC, one of whose
+   * operands is constant
+   * @param logic
+   *          the LOGIC being compiled
+   * @param constant
+   *          the value of its constant operand
+   * @param other
+   *          its other operand, compiled
+   * @param compiled
+   *          the LOGIC, compiled, for use if it cant be simplified
+   * @return compiled
+   */
+  private ITypedExpression shortCircuit(Logic logic,
+                                        boolean constant,
+                                        ITypedExpression other,
+                                        ITypedExpression compiled) {
+    boolean otherIsPure = (other.getDependencies() & (ITypedExpression.USES_RANDOM | ITypedExpression.MAY_FAIL)) == 0;
+    boolean otherIsBoolean = other.getResultType() == ITypedExpression.BOOLEAN;
+    boolean isOther; //true if the LOGIC has the value of the other operand
+    switch (logic.getOperand()){
+      case Logic.AND:
+        if(!constant && otherIsPure) {
+          return new ConstantExpression(logic, Boolean.FALSE);
+        }
+        isOther = constant;
+        break;
+      case Logic.OR:
+        if(constant && otherIsPure) {
+          return new ConstantExpression(logic, Boolean.TRUE);
+        }
+        isOther = !constant;
+        break;
+      case Logic.NOR:
+        if(constant && otherIsPure) {
+          return new ConstantExpression(logic, Boolean.FALSE);
+        }
+        isOther = false;
+        break;
+      case Logic.XOR:
+      case Logic.NOT:
+        isOther = !constant;
+        break;
+      case Logic.EQUAL:
+        isOther = constant;
+        break;
+      default:
+        isOther = false;
+    }
+    return isOther && otherIsBoolean ? new AliasExpression(logic, other) : compiled;
+  }
+}
@@ -0,0 +1,33 @@
+package romeo.xfactors.compiled;
+
+import romeo.battle.impl.RoundContext;
+import romeo.utils.Convert;
+import romeo.xfactors.api.IExpression;
+import romeo.xfactors.api.ITypedExpression;
+import romeo.xfactors.expressions.Logic;
+
+/**
+ * Wraps an expression that isnt compiled (such as FAIL) so that it can still be
+ * part of a compiled tree. The value returned by the interpreted expression is
+ * converted as required.
+ */
+class InterpretedExpression extends TypedExpression {
+  /**
+   * Constructor
+   * @param source
+   * @param dependencies
+   */
+  InterpretedExpression(IExpression source, int dependencies) {
+    super(source, ITypedExpression.OTHER, dependencies);
+  }
+
+  @Override
+  public double evalDouble(RoundContext context) {
+    return Convert.toDouble(_source.evaluate(context));
+  }
+
+  @Override
+  public boolean evalBoolean(RoundContext context) {
+    return Logic.toBoolean(_source.evaluate(context));
+  }
+}
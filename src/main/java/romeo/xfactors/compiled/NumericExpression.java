@@ -0,0 +1,25 @@
+package romeo.xfactors.compiled;
+
+import romeo.battle.impl.RoundContext;
+import romeo.xfactors.api.IExpression;
+import romeo.xfactors.api.ITypedExpression;
+
+/**
+ * Base class for compiled expressions whose value is always a number. As for
+ * any other number, the value is true as a boolean if it isnt zero.
+ */
+abstract class NumericExpression extends TypedExpression {
+  /**
+   * Constructor
+   * @param source
+   * @param dependencies
+   */
+  protected NumericExpression(IExpression source, int dependencies) {
+    super(source, ITypedExpression.NUMBER, dependencies);
+  }
+
+  @Override
+  public boolean evalBoolean(RoundContext context) {
+    return evalDouble(context) != 0;
+  }
+}
@@ -0,0 +1,44 @@
+package romeo.xfactors.compiled;
+
+import romeo.battle.impl.RoundContext;
+import romeo.xfactors.api.ITypedExpression;
+import romeo.xfactors.expressions.Adjust;
+
+/**
+ * Compiled ADJUST expression
+ */
+class TypedAdjust extends NumericExpression {
+  private final ITypedExpression _value;
+  private final int _operand;
+
+  /**
+   * Constructor
+   * @param source
+   * @param value
+   *          the compiled value to adjust
+   */
+  TypedAdjust(Adjust source, ITypedExpression value) {
+    super(source, value.getDependencies());
+    _value = value;
+    _operand = source.getOperand();
+  }
+
+  @Override
+  public double evalDouble(RoundContext context) {
+    try {
+      double value = _value.evalDouble(context);
+      switch (_operand){
+        case Adjust.ROUND:
+          return Math.round(value);
+        case Adjust.FLOOR:
+          return Math.floor(value);
+        case Adjust.CEILING:
+          return Math.ceil(value);
+        default:
+          throw new IllegalArgumentException("Illegal operand:" + _operand);
+      }
+    } catch(Exception e) {
+      throw new RuntimeException("Error evaluating " + toString(), e);
+    }
+  }
+}
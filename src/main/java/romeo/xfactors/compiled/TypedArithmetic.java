@@ -0,0 +1,64 @@
+package romeo.xfactors.compiled;
+
+import romeo.battle.impl.RoundContext;
+import romeo.xfactors.api.ITypedExpression;
+import romeo.xfactors.expressions.Arithmetic;
+
+/**
+ * Compiled ARITHMETIC expression
+ */
+class TypedArithmetic extends NumericExpression {
+  private final ITypedExpression _left;
+  private final ITypedExpression _right;
+  private final int _operand;
+
+  /**
+   * Constructor
+   * @param source
+   * @param left
+   *          the compiled left operand
+   * @param right
+   *          the compiled right operand
+   */
+  TypedArithmetic(Arithmetic source, ITypedExpression left, ITypedExpression right) {
+    super(source, left.getDependencies() | right.getDependencies());
+    _left = left;
+    _right = right;
+    _operand = source.getOperand();
+  }
+
+  @Override
+  public double evalDouble(RoundContext context) {
+    try {
+      double left = _left.evalDouble(context);
+      double right = _right.evalDouble(context);
+      switch (_operand){
+        case Arithmetic.ADD:
+          return left + right;
+        case Arithmetic.SUBTRACT:
+          return left - right;
+        case Arithmetic.MULTIPLY:
+          return left * right;
+        case Arithmetic.DIVIDE:
+          return left / right;
+        case Arithmetic.MIN:
+          return left < right ? left : right;
+        case Arithmetic.MAX:
+          return left > right ? left : right;
+        case Arithmetic.ROOT:
+          if(right != 2d) {
+            throw new UnsupportedOperationException("Only square root supported currently");
+          }
+          return Math.sqrt(left);
+        case Arithmetic.POWER:
+          return Math.pow(left, right);
+        default:
+          throw new IllegalStateException("Illegal operand:" + _operand);
+      }
+    } catch(UnsupportedOperationException unsup) {
+      throw unsup;
+    } catch(Exception e) {
+      throw new RuntimeException("Error evaluating " + toString(), e);
+    }
+  }
+}
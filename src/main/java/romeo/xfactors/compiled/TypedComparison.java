@@ -0,0 +1,93 @@
+package romeo.xfactors.compiled;
+
+import romeo.battle.impl.RoundContext;
+import romeo.utils.BeanComparator;
+import romeo.xfactors.api.ITypedExpression;
+import romeo.xfactors.expressions.Comparison;
+import romeo.xfactors.expressions.Value;
+
+/**
+ * Compiled COMPARISON expression. When both operands are numbers (or both
+ * booleans) they are compared as primitives, in the same way as BeanComparator
+ * compares them. Otherwise the values of the operands are compared using
+ * BeanComparator as the interpreter does.
+ */
+class TypedComparison extends BooleanExpression {
+  private final ITypedExpression _left;
+  private final ITypedExpression _right;
+  private final int _operand;
+  private final int _compareType;
+
+  /**
+   * Constructor
+   * @param source
+   * @param left
+   *          the compiled left operand
+   * @param right
+   *          the compiled right operand
+   */
+  TypedComparison(Comparison source, ITypedExpression left, ITypedExpression right) {
+    super(source, left.getDependencies() | right.getDependencies());
+    _left = left;
+    _right = right;
+    _operand = source.getOperand();
+    _compareType = compareType(source, left, right);
+  }
+
+  /**
+   * Returns the type the operands can be compared as, or OTHER if their values
+   * must be compared. (BeanComparator considers the same object to be equal to
+   * itself, even NaN, so two VALUEs that share a value object are compared as
+   * values).
+   * @param source
+   * @param left
+   * @param right
+   * @return compareType
+   */
+  private static int compareType(Comparison source, ITypedExpression left, ITypedExpression right) {
+    if(left.getResultType() != right.getResultType()) {
+      return ITypedExpression.OTHER;
+    }
+    if(source.getLeft() instanceof Value && source.getRight() instanceof Value
+        && ((Value) source.getLeft()).getValue() == ((Value) source.getRight()).getValue()) {
+      return ITypedExpression.OTHER;
+    }
+    return left.getResultType();
+  }
+
+  @Override
+  public boolean evalBoolean(RoundContext context) {
+    try {
+      int c;
+      if(_compareType == ITypedExpression.NUMBER) {
+        double left = _left.evalDouble(context);
+        double right = _right.evalDouble(context);
+        c = left == right ? 0 : (left > right ? 1 : -1);
+      } else if(_compareType == ITypedExpression.BOOLEAN) {
+        boolean left = _left.evalBoolean(context);
+        boolean right = _right.evalBoolean(context);
+        c = left == right ? 0 : (left ? 1 : -1);
+      } else {
+        c = BeanComparator.compareValues(_left.evaluate(context), _right.evaluate(context));
+      }
+      switch (_operand){
+        case Comparison.NOT_EQUAL:
+          return c != 0;
+        case Comparison.EQUAL:
+          return c == 0;
+        case Comparison.GREATER_THAN:
+          return c > 0;
+        case Comparison.GREATER_OR_EQUAL:
+          return c >= 0;
+        case Comparison.LESS_THAN:
+          return c < 0;
+        case Comparison.LESS_OR_EQUAL:
+          return c <= 0;
+        default:
+          throw new IllegalStateException("Illegal operand:" + _operand);
+      }
+    } catch(Exception e) {
+      throw new RuntimeException("Error evaluating " + toString(), e);
+    }
+  }
+}
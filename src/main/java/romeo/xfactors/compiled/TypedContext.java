@@ -0,0 +1,85 @@
+package romeo.xfactors.compiled;
+
+import romeo.battle.impl.RoundContext;
+import romeo.xfactors.api.ITypedExpression;
+import romeo.xfactors.expressions.Context;
+
+/**
+ * Compiled CONTEXT expression. The IS_ operands are booleans and the rest are
+ * numbers.
+ */
+class TypedContext extends TypedExpression {
+  private final int _operand;
+
+  /**
+   * Constructor
+   * @param source
+   */
+  TypedContext(Context source) {
+    super(source, resultType(source.getOperand()), source.getOperand() == Context.ROUND
+        ? ITypedExpression.DEPENDS_ON_ROUND : ITypedExpression.DEPENDS_ON_ELEMENT);
+    _operand = source.getOperand();
+  }
+
+  private static int resultType(int operand) {
+    switch (operand){
+      case Context.IS_ATTACKER:
+      case Context.IS_DEFENDER:
+      case Context.IS_BASE:
+      case Context.IS_NOT_BASE:
+        return ITypedExpression.BOOLEAN;
+      default:
+        return ITypedExpression.NUMBER;
+    }
+  }
+
+  @Override
+  public double evalDouble(RoundContext context) {
+    if(_resultType == ITypedExpression.BOOLEAN) {
+      return evalBoolean(context) ? 1d : 0d;
+    }
+    try {
+      switch (_operand){
+        case Context.ROUND:
+          return context.getRound();
+        case Context.SOURCE:
+          return context.getFleetElement().getSource();
+        case Context.ATTACKS:
+          return context.getFleetElement().getUnit().getAttacks();
+        case Context.OFFENSE:
+          return context.getFleetElement().getUnit().getOffense();
+        case Context.DEFENSE:
+          return context.getFleetElement().getUnit().getDefense();
+        case Context.PD:
+          return context.getFleetElement().getUnit().getPd();
+        default:
+          throw new IllegalArgumentException("Illegal operand:" + _operand);
+      }
+    } catch(Exception e) {
+      throw new RuntimeException("Error evaluating " + toString(), e);
+    }
+  }
+
+  @Override
+  public boolean evalBoolean(RoundContext context) {
+    if(_resultType == ITypedExpression.NUMBER) {
+      return evalDouble(context) != 0;
+    }
+    try {
+      switch (_operand){
+        case Context.IS_ATTACKER:
+          return context.isAttacker();
+        case Context.IS_DEFENDER:
+          return context.isDefender();
+        case Context.IS_BASE:
+          return context.isDefender() && context.getFleetElement().getSource() == 0;
+        case Context.IS_NOT_BASE:
+          return !(context.isDefender() && context.getFleetElement().getSource() == 0);
+        default:
+          throw new IllegalArgumentException("Illegal operand:" + _operand);
+      }
+    } catch(Exception e) {
+      throw new RuntimeException("Error evaluating " + toString(), e);
+    }
+  }
+}
@@ -0,0 +1,74 @@
+package romeo.xfactors.compiled;
+
+import java.util.Objects;
+
+import romeo.battle.impl.RoundContext;
+import romeo.xfactors.api.IExpression;
+import romeo.xfactors.api.ITypedExpression;
+
+/**
+ * Base class for the nodes of a compiled expression tree. Each node keeps the
+ * interpreted expression that it was compiled from. That is what evaluate() and
+ * toString() delegate to, so the boxed results and the XFEL of a compiled
+ * expression are exactly those of the original.
+ */
+abstract class TypedExpression implements ITypedExpression {
+  protected final IExpression _source;
+  protected final int _resultType;
+  protected final int _dependencies;
+
+  /**
+   * Constructor
+   * @param source
+   *          the interpreted expression this node was compiled from
+   * @param resultType
+   * @param dependencies
+   */
+  protected TypedExpression(IExpression source, int resultType, int dependencies) {
+    _source = Objects.requireNonNull(source, "source may not be null");
+    _resultType = resultType;
+    _dependencies = dependencies;
+  }
+
+  /**
+   * Returns the interpreted expression this node was compiled from
+   * @return source
+   */
+  public IExpression getSource() {
+    return _source;
+  }
+
+  @Override
+  public int getResultType() {
+    return _resultType;
+  }
+
+  @Override
+  public int getDependencies() {
+    return _dependencies;
+  }
+
+  /**
+   * Evaluates the interpreted expression this node was compiled from
+   * @param context
+   * @return value
+   */
+  @Override
+  public Object evaluate(RoundContext context) {
+    return _source.evaluate(context);
+  }
+
+  @Override
+  public int evalInt(RoundContext context) {
+    return (int) Math.floor(evalDouble(context));
+  }
+
+  /**
+   * Returns the XFEL of the interpreted expression
+   * @return string
+   */
+  @Override
+  public String toString() {
+    return _source.toString();
+  }
+}
@@ -0,0 +1,79 @@
+package romeo.xfactors.compiled;
+
+import romeo.battle.impl.RoundContext;
+import romeo.fleet.model.FleetContents;
+import romeo.xfactors.api.IExpression;
+import romeo.xfactors.api.ITypedExpression;
+import romeo.xfactors.expressions.Flag;
+
+/**
+ * Compiled FLAG expression. The flag is usually a constant, in which case its
+ * text is worked out up front.
+ */
+class TypedFlag extends BooleanExpression {
+  private final IExpression _flag;
+  private final String _constantFlag;
+  private final boolean _isConstant;
+  private final int _operand;
+
+  /**
+   * Constructor
+   * @param source
+   * @param flag
+   *          the compiled flag expression
+   */
+  TypedFlag(Flag source, ITypedExpression flag) {
+    super(source, ITypedExpression.DEPENDS_ON_FLAGS | flag.getDependencies());
+    _flag = flag;
+    _operand = source.getOperand();
+    _isConstant = flag instanceof ConstantExpression;
+    if(_isConstant) {
+      Object flagObject = flag.evaluate(null);
+      _constantFlag = flagObject == null ? null : flagObject.toString().toUpperCase();
+    } else {
+      _constantFlag = null;
+    }
+  }
+
+  @Override
+  public boolean evalBoolean(RoundContext context) {
+    String flag;
+    if(_isConstant) {
+      flag = _constantFlag;
+    } else {
+      Object flagObject = _flag.evaluate(context);
+      flag = flagObject == null ? null : flagObject.toString().toUpperCase();
+    }
+    if(flag == null) {
+      return false;
+    }
+    try {
+      switch (_operand){
+        case Flag.ANY_PLAYER: {
+          FleetContents[] fleets = context.getOpposingFleets();
+          for(int i = 0; i < fleets.length; i++) { //Check each enemy fleet for the flag
+            if(fleets[i].hasFlag(flag)) {
+              return true;
+            }
+          }
+          return context.getThisFleet().hasFlag(flag);
+        }
+        case Flag.THIS_PLAYER:
+          return context.getThisFleet().hasFlag(flag);
+        case Flag.OPPOSING_PLAYERS: {
+          FleetContents[] fleets = context.getOpposingFleets();
+          for(int i = 0; i < fleets.length; i++) { //Check each enemy fleet for the flag
+            if(fleets[i].hasFlag(flag)) {
+              return true;
+            }
+          }
+          return false;
+        }
+        default:
+          throw new IllegalArgumentException("Illegal player:" + _operand);
+      }
+    } catch(Exception e) {
+      throw new RuntimeException("Error evaluating " + toString(), e);
+    }
+  }
+}
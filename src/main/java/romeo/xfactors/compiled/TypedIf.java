@@ -0,0 +1,54 @@
+package romeo.xfactors.compiled;
+
+import romeo.battle.impl.RoundContext;
+import romeo.xfactors.api.ITypedExpression;
+import romeo.xfactors.expressions.If;
+import romeo.xfactors.expressions.Logic;
+
+/**
+ * Compiled IF expression. Its result type is that of its results if they agree.
+ */
+class TypedIf extends TypedExpression {
+  private final ITypedExpression _condition;
+  private final ITypedExpression _trueResult;
+  private final ITypedExpression _falseResult;
+
+  /**
+   * Constructor
+   * @param source
+   * @param condition
+   *          the compiled condition
+   * @param trueResult
+   *          the compiled result if the condition is true
+   * @param falseResult
+   *          the compiled result if the condition is false
+   */
+  TypedIf(If source, ITypedExpression condition, ITypedExpression trueResult, ITypedExpression falseResult) {
+    super(source, trueResult.getResultType() == falseResult.getResultType() ? trueResult.getResultType()
+        : ITypedExpression.OTHER,
+        condition.getDependencies() | trueResult.getDependencies() | falseResult.getDependencies());
+    _condition = condition;
+    _trueResult = trueResult;
+    _falseResult = falseResult;
+  }
+
+  @Override
+  public double evalDouble(RoundContext context) {
+    try {
+      boolean condition = Logic.evalBool(_condition, context);
+      return condition ? _trueResult.evalDouble(context) : _falseResult.evalDouble(context);
+    } catch(Exception e) {
+      throw new RuntimeException("Error evaluating " + toString(), e);
+    }
+  }
+
+  @Override
+  public boolean evalBoolean(RoundContext context) {
+    try {
+      boolean condition = Logic.evalBool(_condition, context);
+      return condition ? _trueResult.evalBoolean(context) : _falseResult.evalBoolean(context);
+    } catch(Exception e) {
+      throw new RuntimeException("Error evaluating " + toString(), e);
+    }
+  }
+}
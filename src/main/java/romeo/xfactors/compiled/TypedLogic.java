@@ -0,0 +1,57 @@
+package romeo.xfactors.compiled;
+
+import romeo.battle.impl.RoundContext;
+import romeo.xfactors.api.IExpression;
+import romeo.xfactors.api.ITypedExpression;
+import romeo.xfactors.expressions.Logic;
+
+/**
+ * Compiled LOGIC expression. Like the interpreter it always evaluates both
+ * operands, as either might draw random numbers.
+ */
+class TypedLogic extends BooleanExpression {
+  private final IExpression _left;
+  private final IExpression _right;
+  private final int _operand;
+
+  /**
+   * Constructor
+   * @param source
+   * @param left
+   *          the compiled left operand
+   * @param right
+   *          the compiled right operand
+   */
+  TypedLogic(Logic source, ITypedExpression left, ITypedExpression right) {
+    super(source, left.getDependencies() | right.getDependencies());
+    _left = left;
+    _right = right;
+    _operand = source.getOperand();
+  }
+
+  @Override
+  public boolean evalBoolean(RoundContext context) {
+    try {
+      boolean leftValue = Logic.evalBool(_left, context);
+      boolean rightValue = Logic.evalBool(_right, context);
+      switch (_operand){
+        case Logic.AND:
+          return leftValue && rightValue;
+        case Logic.OR:
+          return leftValue || rightValue;
+        case Logic.XOR:
+          return !(leftValue && rightValue) && (leftValue || rightValue);
+        case Logic.NOR:
+          return (leftValue == false) && (rightValue == false);
+        case Logic.NOT:
+          return leftValue != rightValue;
+        case Logic.EQUAL:
+          return leftValue == rightValue;
+        default:
+          throw new IllegalStateException("Illegal operand:" + _operand);
+      }
+    } catch(Exception e) {
+      throw new RuntimeException("Error evaluating " + toString(), e);
+    }
+  }
+}
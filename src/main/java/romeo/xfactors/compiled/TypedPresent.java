@@ -0,0 +1,34 @@
+package romeo.xfactors.compiled;
+
+import romeo.battle.impl.RoundContext;
+import romeo.fleet.model.UnitIndex;
+import romeo.xfactors.api.ITypedExpression;
+import romeo.xfactors.expressions.Present;
+
+/**
+ * Compiled PRESENT expression. The acronym is resolved to its
+ * {@link UnitIndex} up front rather than compared on every search.
+ */
+class TypedPresent extends BooleanExpression {
+  private final String _acronym;
+  private final int _unitIndex;
+
+  /**
+   * Constructor
+   * @param source
+   */
+  TypedPresent(Present source) {
+    super(source, ITypedExpression.DEPENDS_ON_QUANTITIES);
+    _acronym = source.getAcronym();
+    _unitIndex = UnitIndex.indexOf(_acronym);
+  }
+
+  @Override
+  public boolean evalBoolean(RoundContext context) {
+    try {
+      return context.getThisFleet().isUnitPresent(_unitIndex);
+    } catch(Exception e) {
+      throw new RuntimeException("Error evaluating unit presence for " + _acronym, e);
+    }
+  }
+}
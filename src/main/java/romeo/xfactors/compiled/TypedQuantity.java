@@ -0,0 +1,61 @@
+package romeo.xfactors.compiled;
+
+import romeo.battle.impl.RoundContext;
+import romeo.fleet.model.FleetContents;
+import romeo.fleet.model.UnitIndex;
+import romeo.xfactors.api.ITypedExpression;
+import romeo.xfactors.expressions.Quantity;
+
+/**
+ * Compiled QUANTITY expression. The acronym is resolved to its
+ * {@link UnitIndex} up front, so counting doesnt involve any string work (and
+ * for battle fleets is just an array read per fleet, see
+ * {@link FleetContents#getQuantity(int, Integer)}).
+ */
+class TypedQuantity extends NumericExpression {
+  private final int _operand;
+  private final int _unitIndex;
+  private final Integer _sourceId;
+
+  /**
+   * Constructor
+   * @param source
+   */
+  TypedQuantity(Quantity source) {
+    super(source, ITypedExpression.DEPENDS_ON_QUANTITIES);
+    _operand = source.getOperand();
+    _unitIndex = UnitIndex.indexOf(source.getAcronym());
+    _sourceId = source.getSourceId();
+  }
+
+  @Override
+  public double evalDouble(RoundContext context) {
+    try {
+      switch (_operand){
+        case Quantity.ANY_PLAYER: {
+          FleetContents[] fleets = context.getOpposingFleets();
+          double quantity = 0;
+          for(int i = 0; i < fleets.length; i++) {
+            quantity += fleets[i].getQuantity(_unitIndex, _sourceId);
+          }
+          quantity += context.getThisFleet().getQuantity(_unitIndex, _sourceId);
+          return quantity;
+        }
+        case Quantity.THIS_PLAYER:
+          return context.getThisFleet().getQuantity(_unitIndex, _sourceId);
+        case Quantity.OPPOSING_PLAYERS: {
+          FleetContents[] fleets = context.getOpposingFleets();
+          double quantity = 0;
+          for(int i = 0; i < fleets.length; i++) {
+            quantity += fleets[i].getQuantity(_unitIndex, _sourceId);
+          }
+          return quantity;
+        }
+        default:
+          throw new IllegalArgumentException("Illegal player:" + _operand);
+      }
+    } catch(Exception e) {
+      throw new RuntimeException("Error evaluating " + toString(), e);
+    }
+  }
+}
@@ -0,0 +1,36 @@
+package romeo.xfactors.compiled;
+
+import java.util.Objects;
+
+import romeo.battle.impl.RoundContext;
+import romeo.xfactors.api.ITypedExpression;
+import romeo.xfactors.expressions.Rnd;
+
+/**
+ * Compiled RND expression. It draws from the random number generator of the
+ * context exactly as the interpreter does.
+ */
+class TypedRnd extends NumericExpression {
+  private final int _min;
+  private final int _range;
+
+  /**
+   * Constructor
+   * @param source
+   */
+  TypedRnd(Rnd source) {
+    super(source, ITypedExpression.USES_RANDOM);
+    _min = source.getMin();
+    _range = source.getMax() + 1 - _min;
+  }
+
+  @Override
+  public double evalDouble(RoundContext context) {
+    Objects.requireNonNull(context, "context may not be null");
+    try {
+      return context.getRandom().nextInt(_range) + _min;
+    } catch(Exception e) {
+      throw new RuntimeException("Error evaluating " + toString(), e);
+    }
+  }
+}
@@ -11,6 +11,7 @@ import romeo.battle.impl.RoundContext;
 import romeo.utils.Convert;
 import romeo.xfactors.api.IExpression;
 import romeo.xfactors.api.IExpressionParser;
+import romeo.xfactors.api.ITypedExpression;
 
 /**
  * Implements the ARITHMETIC expression. This is used to perform various simple
@@ -180,7 +181,8 @@ public class Arithmetic implements IExpression {
   }
 
   /**
-   * Converts the result of the expression to a primitive double
+   * Converts the result of the expression to a primitive double. Compiled
+   * expressions are evaluated straight to a double.
    * @param expression
    * @param context
    * @return result
@@ -188,6 +190,9 @@ public class Arithmetic implements IExpression {
   public static double evalDouble(IExpression expression, RoundContext context) {
     Objects.requireNonNull(expression, "expression may not be null");
     Objects.requireNonNull(context, "context may not be null");
+    if(expression instanceof ITypedExpression) {
+      return ((ITypedExpression) expression).evalDouble(context);
+    }
     Object value = expression.evaluate(context);
     return Convert.toDouble(value);
   }
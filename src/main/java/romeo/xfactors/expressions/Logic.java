@@ -11,6 +11,7 @@ import romeo.battle.impl.RoundContext;
 import romeo.utils.Convert;
 import romeo.xfactors.api.IExpression;
 import romeo.xfactors.api.IExpressionParser;
+import romeo.xfactors.api.ITypedExpression;
 
 /**
  * Implements the LOGIC expression which allows one to perform various logic
@@ -64,7 +65,8 @@ public class Logic implements IExpression {
   /**
    * Converts the expressions result to a Boolean applying various heuristics
    * for non boolean result types. (Null is considered false, as is 0, a string
-   * must be "TRUE" to be true or else it too is false).
+   * must be "TRUE" to be true or else it too is false). Compiled expressions
+   * are evaluated straight to a boolean.
    * @param expression
    * @param context
    * @return bool
@@ -74,10 +76,23 @@ public class Logic implements IExpression {
     Objects.requireNonNull(context, "context may not be null");
     Object value = null;
     try {
+      if(expression instanceof ITypedExpression) {
+        return ((ITypedExpression) expression).evalBoolean(context);
+      }
       value = expression.evaluate(context);
     } catch(Exception e) {
       throw new RuntimeException("Failed to evaluate expression:" + expression, e);
     }
+    return toBoolean(value);
+  }
+
+  /**
+   * Converts a value to a boolean in the manner described for
+   * {@link #evalBool(IExpression, RoundContext)}
+   * @param value
+   * @return bool
+   */
+  public static boolean toBoolean(Object value) {
     if(value == null)
       return false;
     if(value instanceof Boolean) {
@@ -1,11 +1,10 @@
 package romeo.xfactors.expressions;
 
-import java.util.Locale;
 import java.util.Objects;
 
 import romeo.battle.impl.RoundContext;
 import romeo.fleet.model.FleetContents;
-import romeo.fleet.model.FleetElement;
+import romeo.fleet.model.UnitIndex;
 import romeo.utils.Convert;
 import romeo.xfactors.api.IExpression;
 import romeo.xfactors.api.IExpressionParser;
@@ -20,7 +19,7 @@ public class Present implements IExpression {
   
   /**
    * Utility method that will search the specified fleet for live units with the
-   * specified acronym
+   * specified acronym. See {@link FleetContents#isUnitPresent(int)}.
    * @param fleet
    * @param acronym
    * @return present
@@ -28,16 +27,7 @@ public class Present implements IExpression {
   public static boolean unitPresent(FleetContents fleet, String acronym) {
     Objects.requireNonNull(fleet, "fleet may not be null");
     Objects.requireNonNull(acronym, "acronym may not be null");
-    acronym = acronym.toUpperCase(Locale.US);
-    for(FleetElement element : fleet) {
-      String elementAcronym = element.getUnit().getAcronym();
-      if(elementAcronym != null && acronym.equals(elementAcronym.toUpperCase())) {
-        if(element.getQuantity() > 0) {
-          return true;
-        }
-      }
-    }
-    return false;
+    return fleet.isUnitPresent(UnitIndex.indexOf(acronym));
   }
   
   ////////////////////////////////////////////////////////////////////////////
@@ -5,7 +5,7 @@ import java.util.Objects;
 
 import romeo.battle.impl.RoundContext;
 import romeo.fleet.model.FleetContents;
-import romeo.fleet.model.FleetElement;
+import romeo.fleet.model.UnitIndex;
 import romeo.utils.Convert;
 import romeo.xfactors.api.IExpression;
 import romeo.xfactors.api.IExpressionParser;
@@ -47,24 +47,15 @@ public class Quantity implements IExpression {
    * Utility method that counts the number of the specified unit within the
    * specified fleet and option subfleet as specified by sourceId. This doesnt
    * take casualties into account as it assumes this is the start of a round and
-   * these have been removed.
+   * these have been removed. See {@link FleetContents#getQuantity(int, Integer)}.
    * @param fleet
    * @param acronym
    * @param sourceId may be null, in which case it is ignored and any element can be source
    * @return quantity
    */
   public static double getQuantity(FleetContents fleet, String acronym, Integer sourceId) {
-    acronym = acronym.toUpperCase(Locale.US);
-    double quantity = 0;
-    for(FleetElement element : fleet) {
-      String elementAcronym = element.getUnit().getAcronym();
-      if(elementAcronym != null && acronym.equals(elementAcronym.toUpperCase(Locale.US))) {
-        if(sourceId == null || element.getSource() == sourceId.intValue()) {
-          quantity += element.getQuantity();
-        }
-      }
-    }
-    return quantity;
+    Objects.requireNonNull(acronym, "acronym may not be null");
+    return fleet.getQuantity(UnitIndex.indexOf(acronym), sourceId);
   }
   
   ////////////////////////////////////////////////////////////////////////////
@@ -5,7 +5,6 @@
 package romeo.xfactors.expressions;
 
 import java.util.Objects;
-import java.util.Random;
 
 import romeo.battle.impl.RoundContext;
 import romeo.xfactors.api.IExpression;
@@ -16,7 +15,6 @@ import romeo.xfactors.api.IExpressionParser;
  * reference help in the resources folder for details.
  */
 public class Rnd implements IExpression {
-  protected Random _rnd = new Random();
   private int _min;
   private int _range;
 
@@ -81,14 +79,14 @@ public class Rnd implements IExpression {
 
   /**
    * Returns a random value between min and max inclusive
-   * @param context (unused for now but still required)
+   * @param context provides the random number generator
    * @return value
    */
   @Override
   public Object evaluate(RoundContext context) {
     Objects.requireNonNull(context, "context may not be null");
     try {
-      return new Integer(_rnd.nextInt(_range) + _min);
+      return new Integer(context.getRandom().nextInt(_range) + _min);
     } catch(Exception e) {
       throw new RuntimeException("Error evaluating " + toString(), e);
     }
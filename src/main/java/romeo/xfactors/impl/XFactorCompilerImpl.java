@@ -1,8 +1,8 @@
 package romeo.xfactors.impl;
 
 import java.util.EventObject;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import romeo.model.api.IServiceListener;
 import romeo.xfactors.api.CompiledXFactor;
@@ -13,17 +13,23 @@ import romeo.xfactors.api.IXFactorCompiler;
 import romeo.xfactors.api.IXFactorService;
 import romeo.xfactors.api.NoSuchXFactorException;
 import romeo.xfactors.api.XFactorId;
+import romeo.xfactors.compiled.ExpressionCompiler;
 
 /**
  * Implementation of the XFactorCompiler. It uses an IExpressionParser to
  * perform the hard work of interpreting the expression text for each individual
- * xf expression.
+ * xf expression, and then an ExpressionCompiler to turn the parsed expressions
+ * into ones that the battle simulator can evaluate without boxing the results
+ * (folding any constant parts of them along the way). Compiled xFactors are
+ * cached in a concurrent map so the battle simulator's lookups don't need to
+ * lock the compiler.
  */
 public class XFactorCompilerImpl implements IXFactorCompiler, IServiceListener {
   
   protected IExpressionParser _parser;
   protected IXFactorService _xfactorService;
-  protected Map<XFactorId, CompiledXFactor> _compiledXfactors = new HashMap<>();
+  protected ExpressionCompiler _expressionCompiler = new ExpressionCompiler();
+  protected volatile Map<XFactorId, CompiledXFactor> _compiledXfactors = new ConcurrentHashMap<>();
 
   /**
    * Constructor. An xfactor parser and the xfactor service reference are
@@ -40,7 +46,8 @@ public class XFactorCompilerImpl implements IXFactorCompiler, IServiceListener {
 
   /**
    * Compile the specified XFactor. This method is synchronised as it will be
-   * called from a different thread to the UI (that of the battle simulator).
+   * called from a different thread to the UI (that of the battle simulator)
+   * and the expression compiler isn't safe for concurrent use.
    * @param xfactor
    *          the xfactor bean that holds the XFEL
    * @return compiledXfactor bean holding the compiled IExpressions
@@ -52,12 +59,12 @@ public class XFactorCompilerImpl implements IXFactorCompiler, IServiceListener {
     }
     try {
       CompiledXFactor compiled = new CompiledXFactor();
-      IExpression trigger = _parser.getExpression(xFactor.getTrigger());
-      IExpression xfAttacks = _parser.getExpression(xFactor.getXfAttacks());
-      IExpression xfOffense = _parser.getExpression(xFactor.getXfOffense());
-      IExpression xfDefense = _parser.getExpression(xFactor.getXfDefense());
-      IExpression xfPd = _parser.getExpression(xFactor.getXfPd());
-      IExpression xfRemove = _parser.getExpression(xFactor.getXfRemove());
+      IExpression trigger = _expressionCompiler.compile(_parser.getExpression(xFactor.getTrigger()));
+      IExpression xfAttacks = _expressionCompiler.compile(_parser.getExpression(xFactor.getXfAttacks()));
+      IExpression xfOffense = _expressionCompiler.compile(_parser.getExpression(xFactor.getXfOffense()));
+      IExpression xfDefense = _expressionCompiler.compile(_parser.getExpression(xFactor.getXfDefense()));
+      IExpression xfPd = _expressionCompiler.compile(_parser.getExpression(xFactor.getXfPd()));
+      IExpression xfRemove = _expressionCompiler.compile(_parser.getExpression(xFactor.getXfRemove()));
       compiled.setTrigger(trigger);
       compiled.setXfAttacks(xfAttacks);
       compiled.setXfOffense(xfOffense);
@@ -75,7 +82,9 @@ public class XFactorCompilerImpl implements IXFactorCompiler, IServiceListener {
    * caching a copy of the compiled version in its map. Future requests for that
    * x factor will return the compiled one from the cache. The cache is cleared
    * if a dataChanged message is received from the XFactorService. If the named
-   * factor is not found then an exception is raised.
+   * factor is not found then an exception is raised. Cached xFactors are
+   * returned without locking. (Two threads asking for the same uncached xFactor
+   * at once may both compile it, which is harmless.)
    * @param id
    *          The id of the xFactor 
    * @return compiledXFactor
@@ -83,29 +92,31 @@ public class XFactorCompilerImpl implements IXFactorCompiler, IServiceListener {
    *           if the named factor doesnt exist
    */
   @Override
-  public synchronized CompiledXFactor getXFactor(XFactorId id) {
-    CompiledXFactor cxf = _compiledXfactors.get(id);
+  public CompiledXFactor getXFactor(XFactorId id) {
+    Map<XFactorId, CompiledXFactor> compiledXfactors = _compiledXfactors;
+    CompiledXFactor cxf = compiledXfactors.get(id);
     if(cxf == null) {
       IXFactor xf = _xfactorService.loadXFactor(id);
       if(xf == null) {
         throw new NoSuchXFactorException(id.toString());
       }
       cxf = compile(xf);
-      _compiledXfactors.put(id, cxf);
+      //If the xfactors changed meanwhile this goes into the discarded map, so the stale one isn't kept
+      compiledXfactors.put(id, cxf);
     }
     return cxf;
   }
 
   /**
    * Listener callback. Will clear the tree of compiled xfactors if any xfactor
-   * is modified. This method is synchronized as the battle simulator may also
-   * be in operation. Changing the xfactors while the simulator is running isnt
-   * a great idea though.
+   * is modified. The map is replaced rather than cleared as the battle
+   * simulator may also be in operation. Changing the xfactors while the
+   * simulator is running isnt a great idea though.
    * @param event
    */
   @Override
-  public synchronized void dataChanged(EventObject event) {
-    _compiledXfactors = new HashMap<XFactorId, CompiledXFactor>();
+  public void dataChanged(EventObject event) {
+    _compiledXfactors = new ConcurrentHashMap<XFactorId, CompiledXFactor>();
   }
 
 }
@@ -0,0 +1,167 @@
+package romeo.battle.batch;
+
+import static org.junit.Assert.*;
+
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import romeo.battle.impl.BattleCalculatorImpl;
+import romeo.fleet.model.FleetContents;
+import romeo.fleet.model.FleetElement;
+import romeo.units.impl.MockUnitService;
+import romeo.units.impl.UnitImpl;
+import romeo.utils.Convert;
+import romeo.xfactors.api.CompiledXFactor;
+import romeo.xfactors.api.IXFactor;
+import romeo.xfactors.api.IXFactorCompiler;
+import romeo.xfactors.api.NoSuchXFactorException;
+import romeo.xfactors.api.XFactorId;
+
+public class TestBatchSimulator {
+
+  /**
+   * Compiler for fleets whose units dont reference any xFactors
+   */
+  private static final IXFactorCompiler NO_XFACTORS = new IXFactorCompiler() {
+    @Override
+    public CompiledXFactor compile(IXFactor xFactor) {
+      return null;
+    }
+
+    @Override
+    public CompiledXFactor getXFactor(XFactorId id) {
+      throw new NoSuchXFactorException(id.toString());
+    }
+  };
+
+  private BatchSimulator _simulator;
+  private BatchScenario _scenario;
+
+  @Before
+  public void setUp() {
+    MockUnitService unitService = new MockUnitService();
+    unitService.saveUnit(new UnitImpl(null, "Viper", 2, 40, 60, 0, 120, 0, 100, 30, 25, 200, "VIP", null));
+    unitService.saveUnit(new UnitImpl(null, "Raider", 1, 50, 50, 0, 120, 0, 100, 30, 25, 200, "RDR", null));
+    _simulator = new BatchSimulator(unitService, null, NO_XFACTORS);
+    _simulator.setNumberOfBattles(50);
+    _simulator.setSeed(3L);
+    _scenario = new BatchScenario("skirmish", Arrays.asList("20 * VIP, -A", "30*RDR, 1:10*RDR"));
+  }
+
+  @Test
+  public void testSweep() {
+    BatchSweep sweep = BatchSweep.parse("1:rdr:100:1000:300");
+    List<BatchScenario> scenarios = sweep.expand(_scenario);
+    assertEquals(4, scenarios.size());
+    assertEquals(1, scenarios.get(3).getQuantities().size());
+    assertEquals(1000, scenarios.get(3).getQuantities().get(0).getQuantity());
+    assertEquals(1, scenarios.get(3).getQuantities().get(0).getPlayer());
+    assertEquals("skirmish", scenarios.get(3).getName());
+
+    //The quantity replaces that from source 0 but leaves other sources and flags alone
+    BattleCalculatorImpl calculator = _simulator.createCalculator(scenarios.get(1), 1);
+    calculator.setNumberOfBattles(1);
+    FleetContents attacker = calculator.simulate().getFleet("Attacker");
+    double[] quantities = new double[2];
+    for(FleetElement element : attacker) {
+      quantities[element.getSource()] += element.getQuantity();
+    }
+    assertEquals(400, quantities[0], 0);
+    assertEquals(10, quantities[1], 0);
+    assertTrue(calculator.simulate().getFleet("Defender").hasFlag("A"));
+
+    String[] invalid = { "1:RDR:100:1000", "1:RDR:100:10:1", "1:RDR:1:10:0", "-1:RDR:1:10:1", "1:RDR:x:10:1" };
+    for(String text : invalid) {
+      try {
+        BatchSweep.parse(text);
+        fail("expected IllegalArgumentException for " + text);
+      } catch(IllegalArgumentException expected) {}
+    }
+  }
+
+  @Test
+  public void testTwoSweeps() throws Exception {
+    List<BatchScenario> scenarios = new ArrayList<BatchScenario>();
+    for(BatchScenario scenario : BatchSweep.parse("0:VIP:5:10:5").expand(_scenario)) {
+      scenarios.addAll(BatchSweep.parse("1:RDR:100:300:100").expand(scenario));
+    }
+    assertEquals(6, scenarios.size());
+    BatchScenario last = scenarios.get(5);
+    assertEquals("skirmish [0:10*VIP, 1:300*RDR]", last.toString());
+
+    //Both quantities are applied
+    BattleCalculatorImpl calculator = _simulator.createCalculator(last, 1);
+    calculator.setNumberOfBattles(1);
+    assertEquals(10, calculator.simulate().getFleet("Defender").getSize(false));
+    assertEquals(310, calculator.simulate().getFleet("Attacker").getSize(false));
+
+    //Sweeping the same unit again replaces the earlier quantity
+    BatchScenario again = last.withQuantity(1, "rdr", 50);
+    assertEquals("skirmish [0:10*VIP, 1:50*rdr]", again.toString());
+
+    StringWriter out = new StringWriter();
+    assertEquals(0, _simulator.run(Arrays.asList(last), new BatchResultWriter(out, BatchResultWriter.FORMAT_CSV)));
+    List<String> row = Convert.fromCsv(out.toString().split("\n")[1]);
+    assertEquals(Arrays.asList("skirmish", "0;1", "VIP;RDR", "10;300"), row.subList(0, 4));
+    out = new StringWriter();
+    _simulator.run(Arrays.asList(last), new BatchResultWriter(out, BatchResultWriter.FORMAT_JSON));
+    assertTrue(out.toString(), out.toString().contains(
+        "\"sweep\":[{\"player\":0,\"unit\":\"VIP\",\"quantity\":10},{\"player\":1,\"unit\":\"RDR\",\"quantity\":300}]"));
+  }
+
+  @Test
+  public void testCsv() throws Exception {
+    List<BatchScenario> scenarios = new ArrayList<BatchScenario>(BatchSweep.parse("1:RDR:10:50:20").expand(_scenario));
+    scenarios.add(new BatchScenario("bad", Arrays.asList("20 * VIP", "30 * XYZ")));
+    StringWriter out = new StringWriter();
+    _simulator.setParallel(2);
+    assertEquals(1, _simulator.run(scenarios, new BatchResultWriter(out, BatchResultWriter.FORMAT_CSV)));
+
+    String[] lines = out.toString().split("\n");
+    assertEquals(1 + 3 * 2, lines.length);
+    assertEquals(BatchResultWriter.CSV_COLUMNS, Convert.fromCsv(lines[0]));
+    for(int i = 1; i < lines.length; i++) {
+      List<String> row = Convert.fromCsv(lines[i]);
+      assertEquals(BatchResultWriter.CSV_COLUMNS.size(), row.size());
+      assertEquals("skirmish", row.get(0));
+      assertEquals("RDR", row.get(2));
+      assertEquals("50", row.get(6));
+      assertEquals("3", row.get(15));
+    }
+
+    //Results are the same however many scenarios run at once
+    StringWriter serial = new StringWriter();
+    _simulator.setParallel(1);
+    _simulator.run(scenarios.subList(0, 1), new BatchResultWriter(serial, BatchResultWriter.FORMAT_CSV));
+    String row = serial.toString().split("\n")[1];
+    String expected = row.substring(0, row.lastIndexOf(',')); //excluding the time taken
+    boolean found = false;
+    for(String line : lines) {
+      found |= line.startsWith(expected);
+    }
+    assertTrue(found);
+  }
+
+  @Test
+  public void testJson() throws Exception {
+    StringWriter out = new StringWriter();
+    assertEquals(0, _simulator.run(Arrays.asList(_scenario, _scenario.withQuantity(0, "VIP", 5)),
+        new BatchResultWriter(out, BatchResultWriter.FORMAT_JSON)));
+    String[] lines = out.toString().split("\n");
+    assertEquals(2, lines.length);
+    for(String line : lines) {
+      assertTrue(line, line.startsWith("{\"scenario\":\"skirmish\","));
+      assertTrue(line, line.endsWith("}]}"));
+      assertTrue(line, line.contains("{\"name\":\"Defender\",\"defender\":true,"));
+      assertTrue(line, line.contains("{\"name\":\"Attacker\",\"defender\":false,"));
+      assertTrue(line, line.contains("\"battles\":50,"));
+    }
+    assertEquals("\"a\\\"b\\\\c\\n\\u0001\"", BatchResultWriter.quote("a\"b\\c\n\u0001"));
+    assertEquals("null", BatchResultWriter.number(Double.NaN));
+  }
+}
@@ -0,0 +1,447 @@
+package romeo.battle.impl;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import romeo.battle.IBattleCalculator.IProgressor;
+import romeo.battle.IBattleMetrics;
+import romeo.fleet.model.FleetContents;
+import romeo.fleet.model.FleetElement;
+import romeo.units.api.IUnit;
+import romeo.units.impl.UnitImpl;
+import romeo.xfactors.api.CompiledXFactor;
+import romeo.xfactors.api.IXFactor;
+import romeo.xfactors.api.IXFactorCompiler;
+import romeo.xfactors.api.NoSuchXFactorException;
+import romeo.xfactors.api.XFactorId;
+
+public class TestBattleCalculatorImpl {
+
+  /**
+   * Compiler for fleets whose units dont reference any xFactors
+   */
+  private static final IXFactorCompiler NO_XFACTORS = new IXFactorCompiler() {
+    @Override
+    public CompiledXFactor compile(IXFactor xFactor) {
+      return null;
+    }
+
+    @Override
+    public CompiledXFactor getXFactor(XFactorId id) {
+      throw new NoSuchXFactorException(id.toString());
+    }
+  };
+
+  /**
+   * Progressor that records the highest progress and the complete() calls and
+   * can be told to cancel once a number of battles have been reported. (The
+   * workers may report concurrently and out of order.)
+   */
+  private static class RecordingProgressor implements IProgressor {
+    private int _cancelAfter;
+    private int _maxProgress = -1;
+    private int _updates = 0;
+    private boolean _complete = false;
+    private IBattleMetrics _metrics;
+
+    RecordingProgressor(int cancelAfter) {
+      _cancelAfter = cancelAfter;
+    }
+
+    @Override
+    public synchronized boolean setCurrentBattle(int progress) {
+      _maxProgress = Math.max(_maxProgress, progress);
+      _updates++;
+      return progress >= _cancelAfter;
+    }
+
+    @Override
+    public synchronized void complete(IBattleMetrics metrics) {
+      assertFalse("complete called twice", _complete);
+      _complete = true;
+      _metrics = metrics;
+    }
+  }
+
+  private IUnit _viper;
+  private IUnit _raider;
+  private IUnit _tanker;
+
+  @Before
+  public void setup() {
+    _viper = new UnitImpl(null, "Viper", 2, 40, 60, 0, 120, 0, 100, 30, 25, 200, "VIP", null);
+    _raider = new UnitImpl(null, "Raider", 1, 50, 50, 0, 120, 0, 100, 30, 25, 200, "RDR", null);
+    _tanker = new UnitImpl(null, "Tanker", 0, 0, 0, 0, 100, 500, 100, 30, 25, 200, "TNK", null);
+  }
+
+  private BattleCalculatorImpl newCalculator(int battles, int threads) {
+    BattleCalculatorImpl calculator = new BattleCalculatorImpl(NO_XFACTORS);
+    FleetContents earth = new FleetContents();
+    earth.addElement(new FleetElement(_viper, 20, 0));
+    earth.addElement(new FleetElement(_tanker, 3, 0));
+    FleetContents mars = new FleetContents();
+    mars.addElement(new FleetElement(_raider, 30, 0));
+    mars.addElement(new FleetElement(_raider, 10, 1));
+    calculator.setFleet("Earth", earth);
+    calculator.setFleet("Mars", mars);
+    calculator.setDefender("Earth");
+    calculator.setNumberOfBattles(battles);
+    calculator.setThreads(threads);
+    return calculator;
+  }
+
+  private static void assertConsistent(IBattleMetrics metrics, int battles) {
+    assertNotNull(metrics);
+    assertEquals(battles, metrics.getNumberOfBattles());
+    assertEquals(battles, metrics.getBattleLengths().size());
+    assertEquals(battles, metrics.getRoundAchievement(0));
+    assertEquals(battles, metrics.getRoundAchievement(1));
+    int outcomes = metrics.getWinCount(null);
+    for(String player : metrics.getPlayers()) {
+      outcomes += metrics.getWinCount(player);
+    }
+    assertEquals(battles, outcomes);
+  }
+
+  @Test
+  public void testThreads() {
+    BattleCalculatorImpl calculator = new BattleCalculatorImpl(NO_XFACTORS);
+    assertTrue(calculator.getThreads() >= 1);
+    calculator.setThreads(3);
+    assertEquals(3, calculator.getThreads());
+    try {
+      calculator.setThreads(0);
+      fail("Expected IllegalArgumentException");
+    } catch(IllegalArgumentException expected) {}
+  }
+
+  @Test
+  public void testSerial() {
+    BattleCalculatorImpl calculator = newCalculator(500, 1);
+    RecordingProgressor progressor = new RecordingProgressor(Integer.MAX_VALUE);
+    calculator.setProgressor(progressor);
+    calculator.run();
+    assertTrue(progressor._complete);
+    assertSame(calculator.getBattleMetrics(), progressor._metrics);
+    assertConsistent(progressor._metrics, 500);
+    assertEquals(500, progressor._maxProgress);
+  }
+
+  @Test
+  public void testSnapshot() {
+    final BattleCalculatorImpl calculator = newCalculator(10000, 1);
+    calculator.setSeed(42L);
+    assertNull(calculator.getSnapshot());
+    final List<IBattleMetrics> snapshots = new ArrayList<IBattleMetrics>();
+    calculator.setProgressor(new RecordingProgressor(Integer.MAX_VALUE) {
+      @Override
+      public boolean setCurrentBattle(int progress) {
+        if(progress == 5000) {
+          snapshots.add(calculator.getSnapshot());
+        }
+        return super.setCurrentBattle(progress);
+      }
+    });
+    calculator.run();
+    assertNull(calculator.getSnapshot());
+    assertTrue(calculator.getBattleMetrics().isComplete());
+    assertConsistent(calculator.getBattleMetrics(), 10000);
+
+    //The worker will have last published its results after 4000 battles
+    IBattleMetrics snapshot = snapshots.get(0);
+    int battles = 2 * BattleCalculatorImpl.SNAPSHOT_INTERVAL;
+    assertFalse(snapshot.isComplete());
+    assertConsistent(snapshot, battles);
+
+    //which should be the same as just running those battles
+    BattleCalculatorImpl shorter = newCalculator(battles, 1);
+    shorter.setSeed(42L);
+    shorter.run();
+    IBattleMetrics expected = shorter.getBattleMetrics();
+    assertEquals(expected.getWinCount(null), snapshot.getWinCount(null));
+    for(String player : new String[] { "Earth", "Mars" }) {
+      assertEquals(expected.getWinCount(player), snapshot.getWinCount(player));
+      assertEquals(expected.getFirepower(player, true), snapshot.getFirepower(player, true));
+      assertEquals(expected.getAverageSurvivingFirepower(player, true),
+          snapshot.getAverageSurvivingFirepower(player, true), 1e-9);
+    }
+    assertEquals(expected.getAverageRounds(), snapshot.getAverageRounds(), 1e-9);
+    assertEquals(expected.getBattleLengths(), snapshot.getBattleLengths());
+  }
+
+  @Test
+  public void testParallelMatchesSerial() {
+    int battles = 4000;
+    BattleCalculatorImpl serial = newCalculator(battles, 1);
+    serial.run();
+    IBattleMetrics s = serial.getBattleMetrics();
+    assertConsistent(s, battles);
+
+    BattleCalculatorImpl parallel = newCalculator(battles, 4);
+    RecordingProgressor progressor = new RecordingProgressor(Integer.MAX_VALUE);
+    parallel.setProgressor(progressor);
+    parallel.run();
+    IBattleMetrics p = parallel.getBattleMetrics();
+    assertConsistent(p, battles);
+    assertEquals(battles, progressor._maxProgress);
+    assertEquals(battles / BattleCalculatorImpl.PROGRESS_INTERVAL + 1, progressor._updates); //initial zero plus one per interval
+
+    //Independent runs wont give the same numbers but should agree within a few standard errors
+    for(String player : new String[] { "Earth", "Mars" }) {
+      double ps = s.getWinsPercentage(player);
+      double pp = p.getWinsPercentage(player);
+      double stdErr = Math.sqrt(Math.max(ps * (1 - ps), 0.01) * 2d / battles);
+      assertEquals(player + " win percentage", ps, pp, 5 * stdErr);
+    }
+    assertEquals(s.getAverageRounds(), p.getAverageRounds(), 0.1 * s.getAverageRounds());
+
+    //Round zero figures are recorded once, not per worker
+    assertEquals(s.getFirepower("Mars", false).get(0).doubleValue(),
+        p.getFirepower("Mars", false).get(0).doubleValue(), 0.0000001);
+
+    //Winners collect the non-combat units of the losers, so on average some tankers survive
+    FleetContents survivors = p.getAverageSurvivors("Earth", true);
+    boolean foundTanker = false;
+    for(FleetElement element : survivors) {
+      if(element.getUnit() == _tanker) {
+        foundTanker = true;
+        assertEquals(3, element.getQuantity(), 0.0000001);
+      }
+    }
+    assertEquals(p.getWinCount("Earth") > 0, foundTanker);
+  }
+
+  @Test
+  public void testSeedReproducesBattles() {
+    int battles = 1500;
+    BattleCalculatorImpl serial = newCalculator(battles, 1);
+    serial.setSeed(12345L);
+    assertEquals(Long.valueOf(12345L), serial.getSeed());
+    serial.run();
+    IBattleMetrics s = serial.getBattleMetrics();
+    assertEquals(12345L, s.getSeed());
+
+    BattleCalculatorImpl parallel = newCalculator(battles, 3);
+    parallel.setSeed(12345L);
+    parallel.run();
+    IBattleMetrics p = parallel.getBattleMetrics();
+    assertEquals(12345L, p.getSeed());
+
+    //Every battle should have played out identically
+    assertSameBattles(s, p);
+
+    //And a different seed should give different battles
+    BattleCalculatorImpl other = newCalculator(battles, 3);
+    other.setSeed(54321L);
+    other.run();
+    assertFalse(s.getBattleLengths().equals(other.getBattleMetrics().getBattleLengths())
+        && s.getWinCount("Earth") == other.getBattleMetrics().getWinCount("Earth"));
+  }
+
+  @Test
+  public void testSeedReproducesSampledBattles() {
+    //The first round kills on Earth are drawn from the normal approximation but not those on Mars, so each
+    //battle draws an odd number of gaussians (which with a cached spare would leak into the next battle). The
+    //workers start at odd battle indexes so they dont just happen to line up with the serial run.
+    IUnit gunship = new UnitImpl(null, "Gunship", 1, 100, 0, 0, 120, 0, 100, 30, 25, 200, "GUN", null);
+    int battles = 204;
+    IBattleMetrics[] results = new IBattleMetrics[2];
+    int[] threads = { 1, 4 };
+    for(int t = 0; t < threads.length; t++) {
+      BattleCalculatorImpl calculator = new BattleCalculatorImpl(NO_XFACTORS);
+      FleetContents earth = new FleetContents();
+      earth.addElement(new FleetElement(gunship, 2000, 0));
+      FleetContents mars = new FleetContents();
+      mars.addElement(new FleetElement(_raider, 4000, 0));
+      calculator.setFleet("Earth", earth);
+      calculator.setFleet("Mars", mars);
+      calculator.setDefender("Earth");
+      calculator.setNumberOfBattles(battles);
+      calculator.setThreads(threads[t]);
+      calculator.setSampling(true);
+      calculator.setSeed(5L);
+      calculator.run();
+      results[t] = calculator.getBattleMetrics();
+    }
+    assertSameBattles(results[0], results[1]);
+  }
+
+  private static void assertSameBattles(IBattleMetrics s, IBattleMetrics p) {
+    assertEquals(s.getBattleLengths(), p.getBattleLengths());
+    assertEquals(s.getWinCount(null), p.getWinCount(null));
+    assertEquals(s.getAverageRounds(), p.getAverageRounds(), 0);
+    for(String player : s.getPlayers()) {
+      assertEquals(s.getWinCount(player), p.getWinCount(player));
+      assertEquals(s.getAverageSurvivingFirepower(player, false), p.getAverageSurvivingFirepower(player, false),
+          0.000001);
+      List<? extends Number> sfp = s.getFirepower(player, false);
+      List<? extends Number> pfp = p.getFirepower(player, false);
+      assertEquals(sfp.size(), pfp.size());
+      for(int round = 0; round < sfp.size(); round++) {
+        assertEquals(sfp.get(round).doubleValue(), pfp.get(round).doubleValue(), 0.000001);
+      }
+    }
+  }
+
+  @Test
+  public void testPrecision() {
+    int battles = 2000;
+    BattleCalculatorImpl calculator = newCalculator(battles, 2);
+    calculator.run();
+    IBattleMetrics metrics = calculator.getBattleMetrics();
+    assertConsistent(metrics, battles);
+    double precision = 0;
+    for(String player : metrics.getPlayers()) {
+      double p = metrics.getWinsPercentage(player);
+      double halfWidth = metrics.getWinsHalfWidth(player);
+      assertTrue(halfWidth > 0);
+      if(p > 0.05 && p < 0.95) { //the Wilson interval is close to the normal one away from the extremes
+        assertEquals(BattleMetricsImpl.Z_95 * Math.sqrt(p * (1 - p) / battles), halfWidth, 0.001);
+      }
+      assertTrue(metrics.getSurvivingFirepowerHalfWidth(player) >= 0);
+      precision = Math.max(precision, halfWidth);
+    }
+    assertTrue(metrics.getPrecision() >= precision);
+    assertTrue(metrics.getPrecision() < 0.1);
+  }
+
+  @Test
+  public void testTargetPrecision() {
+    int maxBattles = 100000;
+    BattleCalculatorImpl calculator = newCalculator(maxBattles, 3);
+    assertEquals(0, calculator.getTargetPrecision(), 0);
+    assertEquals(BattleCalculatorImpl.DEFAULT_MINIMUM_BATTLES, calculator.getMinimumBattles());
+    calculator.setTargetPrecision(0.02);
+    calculator.setMinimumBattles(300);
+    calculator.setSeed(99L);
+    RecordingProgressor progressor = new RecordingProgressor(Integer.MAX_VALUE);
+    calculator.setProgressor(progressor);
+    calculator.run();
+    IBattleMetrics adaptive = calculator.getBattleMetrics();
+    int battles = adaptive.getNumberOfBattles();
+    assertTrue("stopped after " + battles, battles >= 300 && battles < maxBattles);
+    assertConsistent(adaptive, battles);
+    assertTrue(adaptive.getPrecision() <= 0.02);
+    assertEquals(battles, progressor._maxProgress);
+
+    //The batches dont depend on the threads, so the same seed stops at the same place
+    BattleCalculatorImpl serial = newCalculator(maxBattles, 1);
+    serial.setTargetPrecision(0.02);
+    serial.setMinimumBattles(300);
+    serial.setSeed(99L);
+    serial.run();
+    assertEquals(adaptive.getBattleLengths(), serial.getBattleMetrics().getBattleLengths());
+
+    //and gives the same results as running that many battles outright
+    BattleCalculatorImpl fixed = newCalculator(battles, 2);
+    fixed.setSeed(99L);
+    fixed.run();
+    IBattleMetrics f = fixed.getBattleMetrics();
+    assertEquals(f.getBattleLengths(), adaptive.getBattleLengths());
+    for(String player : f.getPlayers()) {
+      assertEquals(f.getWinCount(player), adaptive.getWinCount(player));
+      assertEquals(f.getAverageSurvivingFirepower(player, true), adaptive.getAverageSurvivingFirepower(player, true),
+          0.000001);
+      assertEquals(f.getWinsHalfWidth(player), adaptive.getWinsHalfWidth(player), 0.000001);
+    }
+
+    //A precision that cant be reached runs all the battles
+    BattleCalculatorImpl all = newCalculator(1000, 2);
+    all.setTargetPrecision(0.0001);
+    all.setMinimumBattles(100);
+    all.run();
+    assertConsistent(all.getBattleMetrics(), 1000);
+    try {
+      all.setTargetPrecision(-1);
+      fail("Expected IllegalArgumentException");
+    } catch(IllegalArgumentException expected) {}
+  }
+
+  @Test
+  public void testMoreThreadsThanBattles() {
+    BattleCalculatorImpl calculator = newCalculator(3, 8);
+    calculator.run();
+    assertConsistent(calculator.getBattleMetrics(), 3);
+  }
+
+  @Test
+  public void testCancel() {
+    BattleCalculatorImpl calculator = newCalculator(100000, 4);
+    RecordingProgressor progressor = new RecordingProgressor(50);
+    calculator.setProgressor(progressor);
+    calculator.run();
+    assertTrue(progressor._complete);
+    assertNull(progressor._metrics);
+    assertNull(calculator.getBattleMetrics());
+    assertTrue(progressor._maxProgress < 100000);
+  }
+
+  @Test
+  public void testInterruptCancels() {
+    BattleCalculatorImpl calculator = newCalculator(1000, 1);
+    RecordingProgressor progressor = new RecordingProgressor(Integer.MAX_VALUE);
+    calculator.setProgressor(progressor);
+    Thread.currentThread().interrupt();
+    try {
+      calculator.run();
+    } finally {
+      assertTrue("interrupt status should be preserved", Thread.interrupted());
+    }
+    assertTrue(progressor._complete);
+    assertNull(progressor._metrics);
+    assertNull(calculator.getBattleMetrics());
+  }
+
+  @Test
+  public void testResultCache() {
+    BattleResultCache cache = new BattleResultCache(5);
+    BattleCalculatorImpl first = newCalculator(200, 2);
+    first.setSeed(11L);
+    first.setResultCache(cache);
+    first.run();
+    IBattleMetrics metrics = first.getBattleMetrics();
+    assertConsistent(metrics, 200);
+
+    //The same scenario is answered from the cache
+    BattleCalculatorImpl again = newCalculator(200, 4);
+    again.setSeed(11L);
+    again.setResultCache(cache);
+    RecordingProgressor progressor = new RecordingProgressor(Integer.MAX_VALUE);
+    again.setProgressor(progressor);
+    again.run();
+    assertSame(metrics, again.getBattleMetrics());
+    assertSame(metrics, progressor._metrics);
+    assertEquals(1, cache.size());
+
+    //but one without a seed is simulated afresh and not cached, as is a different seed or number of battles
+    BattleCalculatorImpl unseeded = newCalculator(200, 1);
+    unseeded.setResultCache(cache);
+    unseeded.run();
+    assertNotSame(metrics, unseeded.getBattleMetrics());
+    assertConsistent(unseeded.getBattleMetrics(), 200);
+    assertEquals(1, cache.size());
+    BattleCalculatorImpl otherSeed = newCalculator(200, 2);
+    otherSeed.setSeed(12L);
+    otherSeed.setResultCache(cache);
+    otherSeed.run();
+    assertNotSame(metrics, otherSeed.getBattleMetrics());
+    BattleCalculatorImpl otherBattles = newCalculator(300, 2);
+    otherBattles.setSeed(11L);
+    otherBattles.setResultCache(cache);
+    otherBattles.run();
+    assertConsistent(otherBattles.getBattleMetrics(), 300);
+
+    cache.dataChanged(null);
+    BattleCalculatorImpl afterChange = newCalculator(200, 2);
+    afterChange.setSeed(11L);
+    afterChange.setResultCache(cache);
+    afterChange.run();
+    assertNotSame(metrics, afterChange.getBattleMetrics());
+    assertEquals(metrics.getBattleLengths(), afterChange.getBattleMetrics().getBattleLengths());
+  }
+}
@@ -0,0 +1,333 @@
+package romeo.battle.impl;
+
+import static org.junit.Assert.*;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import romeo.fleet.model.FleetContents;
+import romeo.fleet.model.FleetElement;
+import romeo.fleet.model.UnitIndex;
+import romeo.units.api.IUnit;
+import romeo.units.impl.UnitImpl;
+import romeo.utils.StreamRandom;
+import romeo.xfactors.api.CompiledXFactor;
+import romeo.xfactors.api.ITypedExpression;
+import romeo.xfactors.api.IXFactor;
+import romeo.xfactors.api.IXFactorCompiler;
+import romeo.xfactors.api.XFactorId;
+
+public class TestBattleFleet {
+
+  private IUnit _viper;
+  private IUnit _raider;
+  private IUnit _tanker;
+  private FleetContents _master;
+
+  @Before
+  public void setup() {
+    _viper = new UnitImpl(null, "Viper", 2, 40, 60, 5, 120, 0, 100, 30, 25, 200, "VIP", null);
+    _raider = new UnitImpl(null, "Raider", 1, 50, 50, 0, 120, 0, 100, 30, 25, 200, "RDR", null);
+    _tanker = new UnitImpl(null, "Tanker", 0, 0, 0, 0, 100, 500, 100, 30, 25, 200, "TNK", null);
+    _master = new FleetContents();
+    _master.addElement(new FleetElement(_viper, 20, 0));
+    _master.addElement(new FleetElement(_tanker, 3, 0));
+    _master.addElement(new FleetElement(_raider, 10, 1));
+    _master.setFlag("BIO", true);
+    RoundContext context = new RoundContext(new String[] { "Earth" });
+    context.setFleet("Earth", _master);
+    _master.evaluateXFactors(context);
+  }
+
+  @Test
+  public void testConstructor() {
+    BattleFleet fleet = new BattleFleet("Earth", _master);
+    assertEquals("Earth", fleet.getPlayer());
+    assertEquals(3, fleet.getElementCount());
+    assertEquals(20, fleet.getQuantity(0));
+    assertTrue(fleet.isCombatUnit(0));
+    assertFalse(fleet.isCombatUnit(1));
+    assertEquals(_viper, fleet.getElement(0).getUnit());
+
+    FleetContents contents = fleet.getContents();
+    assertNotSame(_master, contents);
+    assertNotSame(_master.getElements().get(0), contents.getElements().get(0));
+    assertTrue(contents.hasFlag("BIO"));
+    assertSame(contents, fleet.getElement(2).getFleet());
+
+    assertEquals(33, fleet.getSize(false));
+    assertEquals(30, fleet.getSize(true));
+    assertEquals(_master.getFirepower(), fleet.getFirepower(), 0.0000001);
+    assertEquals(_master.getFleetPd(), fleet.getFleetPd());
+    assertEquals(100, fleet.getFleetPd());
+
+    try {
+      new BattleFleet(null, _master);
+      fail("Expected NullPointerException");
+    } catch(NullPointerException expected) {}
+  }
+
+  @Test
+  public void testFireOnFleet() {
+    BattleFleet fleet = new BattleFleet("Earth", _master);
+    StreamRandom random = new StreamRandom(42);
+    int kills = fleet.fireOnFleet(200, random);
+    assertTrue(kills > 0);
+    assertTrue(kills <= 30);
+    //Casualties arent removed until cleared
+    assertEquals(30, fleet.getSize(true));
+    assertEquals(kills, fleet.getElement(0).getCasualties() + fleet.getElement(2).getCasualties());
+    assertEquals(0, fleet.getElement(1).getCasualties()); //noncoms arent targetted
+
+    assertEquals(kills, fleet.clearCasualties());
+    assertEquals(30 - kills, fleet.getSize(true));
+    assertEquals(3, fleet.getQuantity(1));
+    for(int i = 0; i < fleet.getElementCount(); i++) { //the view is kept in step
+      assertEquals(fleet.getQuantity(i), fleet.getElement(i).getQuantity(), 0);
+      assertEquals(0, fleet.getElement(i).getCasualties());
+    }
+    assertEquals(fleet.getContents().getFirepower(), fleet.getFirepower(), 0.0000001);
+    assertEquals(0, fleet.clearCasualties());
+
+    //The master is not touched and reset restores its quantities
+    assertEquals(30, _master.getSize(true));
+    fleet.reset();
+    assertEquals(30, fleet.getSize(true));
+    assertEquals(20, fleet.getElement(0).getQuantity(), 0);
+  }
+
+  @Test
+  public void testUnitQuantities() {
+    _master.addElement(new FleetElement(_viper, 7, 1));
+    BattleFleet fleet = new BattleFleet("Earth", _master);
+    FleetContents contents = fleet.getContents();
+    int viper = UnitIndex.indexOf("vip");
+    assertEquals(viper, fleet.getElement(0).getUnitIndex());
+    assertEquals(27, contents.getQuantity(viper, null), 0);
+    assertEquals(20, contents.getQuantity(viper, 0), 0);
+    assertEquals(7, contents.getQuantity(viper, 1), 0);
+    assertEquals(0, contents.getQuantity(viper, 2), 0);
+    assertEquals(0, contents.getQuantity(UnitIndex.indexOf("NotInFleet"), null), 0);
+    assertTrue(contents.isUnitPresent(UnitIndex.indexOf("TNK")));
+    assertFalse(contents.isUnitPresent(UnitIndex.indexOf("NotInFleet")));
+    assertFalse(contents.isUnitPresent(UnitIndex.NONE));
+
+    //The table is kept in step as casualties are cleared and the fleet reset
+    fleet.fireOnFleet(200, new StreamRandom(42));
+    fleet.clearCasualties();
+    FleetContents search = new FleetContents(contents); //a copy has no table so searches its elements
+    for(String acronym : new String[] { "VIP", "RDR", "TNK" }) {
+      int unit = UnitIndex.indexOf(acronym);
+      assertEquals(search.getQuantity(unit, null), contents.getQuantity(unit, null), 0);
+      assertEquals(search.getQuantity(unit, 1), contents.getQuantity(unit, 1), 0);
+      assertEquals(search.isUnitPresent(unit), contents.isUnitPresent(unit));
+    }
+    fleet.reset();
+    assertEquals(27, contents.getQuantity(viper, null), 0);
+    assertEquals(10, contents.getQuantity(UnitIndex.indexOf("rdr"), 1), 0);
+  }
+
+  @Test
+  public void testTargetting() {
+    checkTargetting(false);
+  }
+
+  @Test
+  public void testSampledTargetting() {
+    checkTargetting(true);
+  }
+
+  private void checkTargetting(boolean sampling) {
+    //A large mixed fleet with defenceless units so that every hit on a live unit kills it
+    FleetContents master = new FleetContents();
+    int types = 300;
+    for(int t = 0; t < types; t++) {
+      IUnit unit = new UnitImpl(null, "Drone" + t, 1, 10, 0, 0, 100, 0, 10, 1, 1, 1, "D" + t, null);
+      master.addElement(new FleetElement(unit, t % 2 == 0 ? 100 : 300, 0));
+    }
+    master.addElement(new FleetElement(_tanker, 5000, 0));
+    RoundContext context = new RoundContext(new String[] { "Earth" });
+    context.setFleet("Earth", master);
+    master.evaluateXFactors(context);
+
+    BattleFleet fleet = new BattleFleet("Earth", master);
+    fleet.setSampling(sampling);
+    StreamRandom random = new StreamRandom(11);
+    int hits = 6000;
+    int kills = fleet.fireOnFleet(hits, random);
+    int even = 0;
+    int odd = 0;
+    for(int i = 0; i < types; i++) {
+      int casualties = fleet.getElement(i).getCasualties();
+      assertTrue(casualties <= fleet.getQuantity(i));
+      if(i % 2 == 0) {
+        even += casualties;
+      } else {
+        odd += casualties;
+      }
+    }
+    assertEquals(0, fleet.getElement(types).getCasualties());
+    assertEquals(kills, even + odd);
+    assertTrue(kills <= hits);
+    //Elements are hit in proportion to their size, so the odd elements take three times the losses
+    assertEquals(3d, (double) odd / even, 0.3);
+  }
+
+  @Test
+  public void testFightToTheDeath() {
+    BattleFleet fleet = new BattleFleet("Earth", _master);
+    StreamRandom random = new StreamRandom(7);
+    int rounds = 0;
+    while(fleet.getSize(true) > 0) {
+      fleet.fireOnFleet(fleet.rollHits(random) + 1, random);
+      fleet.clearCasualties();
+      rounds++;
+      assertTrue("fleet wont die", rounds < 10000);
+    }
+    assertEquals(3, fleet.getSize(false));
+    assertEquals(0, fleet.getFirepower(), 0);
+    assertEquals(0, fleet.getElement(0).getQuantity(), 0);
+  }
+
+  @Test
+  public void testRollHits() {
+    BattleFleet fleet = new BattleFleet("Earth", _master);
+    StreamRandom random = new StreamRandom(3);
+    //Vipers roll 40 attacks at 40% and raiders 10 at 50%
+    double total = 0;
+    int trials = 2000;
+    for(int t = 0; t < trials; t++) {
+      int hits = fleet.rollHits(random);
+      assertTrue(hits >= 0 && hits <= 50);
+      total += hits;
+    }
+    assertEquals(21, total / trials, 0.5);
+  }
+
+  @Test
+  public void testXFactorReevaluation() {
+    final CountingExpression constant = new CountingExpression(ITypedExpression.DEPENDS_ON_ELEMENT);
+    final CountingExpression round = new CountingExpression(ITypedExpression.DEPENDS_ON_ROUND);
+    final CountingExpression quantities = new CountingExpression(ITypedExpression.DEPENDS_ON_QUANTITIES);
+    final CountingExpression random = new CountingExpression(ITypedExpression.USES_RANDOM);
+    IXFactorCompiler compiler = new IXFactorCompiler() {
+      @Override
+      public CompiledXFactor compile(IXFactor xFactor) {
+        throw new UnsupportedOperationException();
+      }
+
+      @Override
+      public CompiledXFactor getXFactor(XFactorId id) {
+        CountingExpression trigger = id.toString().equals("CONSTANT") ? constant
+            : id.toString().equals("ROUND") ? round : id.toString().equals("QUANTITIES") ? quantities : random;
+        return new CompiledXFactor(trigger, null, null, null, null, null);
+      }
+    };
+    FleetContents master = new FleetContents();
+    for(String xf : new String[] { "CONSTANT", "ROUND", "QUANTITIES", "RANDOM" }) {
+      IUnit unit = new UnitImpl(null, xf, 1, 50, 0, 0, 100, 0, 100, 30, 25, 200, xf, new XFactorId(xf));
+      master.addElement(new FleetElement(unit, 10, 0));
+    }
+    master.addElement(new FleetElement(_viper, 20, 0));
+    master.compileXFactors(compiler);
+
+    BattleFleet fleet = new BattleFleet("Earth", master);
+    RoundContext context = new RoundContext(new String[] { "Earth" });
+    context.setFleet("Earth", fleet.getContents());
+    context.setRound(1);
+
+    fleet.evaluateXFactors(context); //all evaluated the first time
+    assertCounts(new int[] { 1, 1, 1, 1 }, constant, round, quantities, random);
+    fleet.evaluateXFactors(context); //only the random one when nothing has changed
+    assertCounts(new int[] { 1, 1, 1, 2 }, constant, round, quantities, random);
+    context.setRound(2);
+    fleet.evaluateXFactors(context);
+    assertCounts(new int[] { 1, 2, 1, 3 }, constant, round, quantities, random);
+    context.quantitiesChanged();
+    fleet.evaluateXFactors(context);
+    assertCounts(new int[] { 1, 2, 2, 4 }, constant, round, quantities, random);
+
+    //A change in the quantity of an element means it is evaluated again whatever it depends on
+    //(the context isnt told about it here, so only the elements hit are evaluated)
+    int[] expected = new int[] { 1, 2, 2, 5 };
+    double[] before = new double[4];
+    for(int i = 0; i < 4; i++) {
+      before[i] = fleet.getElement(i).getQuantity();
+    }
+    assertTrue(fleet.fireOnFleet(40, new StreamRandom(1)) > 0);
+    fleet.clearCasualties();
+    boolean anyHit = false;
+    for(int i = 0; i < 3; i++) {
+      if(fleet.getElement(i).getQuantity() != before[i]) {
+        expected[i]++;
+        anyHit = true;
+      }
+    }
+    assertTrue(anyHit);
+    fleet.evaluateXFactors(context);
+    assertCounts(expected, constant, round, quantities, random);
+
+    //Everything is evaluated again after a reset
+    fleet.reset();
+    fleet.evaluateXFactors(context);
+    assertCounts(new int[] { expected[0] + 1, expected[1] + 1, expected[2] + 1, 6 }, constant, round, quantities,
+        random);
+
+    //A fleet without xFactors doesnt even set its player into the context
+    BattleFleet plain = new BattleFleet("Earth", _master);
+    RoundContext plainContext = new RoundContext(new String[] { "Earth" });
+    plainContext.setFleet("Earth", plain.getContents());
+    plain.evaluateXFactors(plainContext);
+    assertNull(plainContext.getThisPlayer());
+  }
+
+  private void assertCounts(int[] expected, CountingExpression... expressions) {
+    for(int i = 0; i < expected.length; i++) {
+      assertEquals("expression " + i, expected[i], expressions[i]._evaluations);
+    }
+  }
+
+  /**
+   * A trigger that is always true and counts how many times it has been
+   * evaluated
+   */
+  private static class CountingExpression implements ITypedExpression {
+    private final int _dependencies;
+    private int _evaluations;
+
+    CountingExpression(int dependencies) {
+      _dependencies = dependencies;
+    }
+
+    @Override
+    public Object evaluate(RoundContext context) {
+      return evalBoolean(context) ? Boolean.TRUE : Boolean.FALSE;
+    }
+
+    @Override
+    public int getResultType() {
+      return ITypedExpression.BOOLEAN;
+    }
+
+    @Override
+    public int getDependencies() {
+      return _dependencies;
+    }
+
+    @Override
+    public double evalDouble(RoundContext context) {
+      return evalBoolean(context) ? 1d : 0d;
+    }
+
+    @Override
+    public boolean evalBoolean(RoundContext context) {
+      _evaluations++;
+      return true;
+    }
+
+    @Override
+    public int evalInt(RoundContext context) {
+      return (int) evalDouble(context);
+    }
+  }
+}
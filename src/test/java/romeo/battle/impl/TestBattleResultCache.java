@@ -0,0 +1,123 @@
+package romeo.battle.impl;
+
+import static org.junit.Assert.*;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import romeo.battle.IBattleMetrics;
+import romeo.fleet.model.FleetContents;
+import romeo.fleet.model.FleetElement;
+import romeo.units.api.IUnit;
+import romeo.units.impl.UnitImpl;
+import romeo.xfactors.api.CompiledXFactor;
+import romeo.xfactors.api.IXFactor;
+import romeo.xfactors.api.IXFactorCompiler;
+import romeo.xfactors.api.XFactorId;
+import romeo.xfactors.expressions.Value;
+
+public class TestBattleResultCache {
+
+  private BattleResultCache _cache;
+  private IUnit _viper;
+  private IUnit _raider;
+  private CompiledXFactor _cloak;
+  private IXFactorCompiler _compiler;
+
+  @Before
+  public void setUp() {
+    _cache = new BattleResultCache(3);
+    _viper = new UnitImpl(null, "Viper", 2, 40, 60, 0, 120, 0, 100, 30, 25, 200, "VIP", null);
+    _raider = new UnitImpl(null, "Raider", 1, 50, 50, 0, 120, 0, 100, 30, 25, 200, "RDR", new XFactorId("cloak"));
+    _cloak = new CompiledXFactor();
+    _cloak.setTrigger(new Value(true));
+    _compiler = new IXFactorCompiler() {
+      @Override
+      public CompiledXFactor compile(IXFactor xFactor) {
+        return null;
+      }
+
+      @Override
+      public CompiledXFactor getXFactor(XFactorId id) {
+        return _cloak;
+      }
+    };
+  }
+
+  private Map<String, FleetContents> fleets(double raiders) {
+    Map<String, FleetContents> fleets = new LinkedHashMap<String, FleetContents>();
+    FleetContents earth = new FleetContents();
+    earth.addElement(new FleetElement(_viper, 20, 0));
+    FleetContents mars = new FleetContents();
+    mars.addElement(new FleetElement(_raider, raiders, 0));
+    fleets.put("Earth", earth);
+    fleets.put("Mars", mars);
+    return fleets;
+  }
+
+  private String key(double raiders, long seed) {
+    return _cache.createKey(fleets(raiders), "Earth", 100, seed, false, 0, 500, _compiler);
+  }
+
+  private static IBattleMetrics metrics() {
+    return new BattleMetricsImpl(new String[] { "Earth", "Mars" }, "Earth", 100);
+  }
+
+  @Test
+  public void testKey() {
+    assertEquals(key(10, 1L), key(10, 1L));
+    assertFalse(key(10, 1L).equals(key(11, 1L)));
+    assertFalse(key(10, 1L).equals(key(10, 2L)));
+    String key = key(10, 1L);
+    assertFalse(key.equals(_cache.createKey(fleets(10), "Mars", 100, 1L, false, 0, 500, _compiler)));
+    assertFalse(key.equals(_cache.createKey(fleets(10), "Earth", 101, 1L, false, 0, 500, _compiler)));
+    assertFalse(key.equals(_cache.createKey(fleets(10), "Earth", 100, 1L, true, 0, 500, _compiler)));
+    assertFalse(key.equals(_cache.createKey(fleets(10), "Earth", 100, 1L, false, 0.01, 500, _compiler)));
+
+    //The definitions of the xFactors are part of the key
+    _cloak.setTrigger(new Value(false));
+    assertFalse(key.equals(key(10, 1L)));
+
+    Map<String, FleetContents> flagged = fleets(10);
+    flagged.get("Mars").setFlag("A", true);
+    assertFalse(key(10, 1L).equals(_cache.createKey(flagged, "Earth", 100, 1L, false, 0, 500, _compiler)));
+  }
+
+  @Test
+  public void testSeed() {
+    IBattleMetrics seeded = metrics();
+    _cache.put(key(10, 1L), seeded);
+    assertSame(seeded, _cache.get(key(10, 1L)));
+    assertNull(_cache.get(key(10, 2L)));
+    assertEquals(1, _cache.size());
+  }
+
+  @Test
+  public void testLeastRecentlyUsed() {
+    IBattleMetrics one = metrics();
+    IBattleMetrics two = metrics();
+    IBattleMetrics three = metrics();
+    _cache.put(key(1, 1L), one);
+    _cache.put(key(2, 1L), two);
+    _cache.put(key(3, 1L), three);
+    assertEquals(3, _cache.size());
+    _cache.get(key(1, 1L));
+    _cache.put(key(4, 1L), metrics());
+    assertEquals(3, _cache.size());
+    assertSame(one, _cache.get(key(1, 1L)));
+    assertNull(_cache.get(key(2, 1L)));
+    assertSame(three, _cache.get(key(3, 1L)));
+
+    _cache.dataChanged(null);
+    assertEquals(0, _cache.size());
+    assertNull(_cache.get(key(1, 1L)));
+
+    try {
+      new BattleResultCache(0);
+      fail("expected IllegalArgumentException");
+    } catch(IllegalArgumentException expected) {}
+  }
+}
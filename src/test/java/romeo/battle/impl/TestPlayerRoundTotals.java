@@ -0,0 +1,95 @@
+package romeo.battle.impl;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestPlayerRoundTotals {
+
+  private static final double D = 0.00000001;
+
+  private PlayerRoundTotals _t;
+
+  @Before
+  public void setUp() {
+    _t = new PlayerRoundTotals(new String[] { "jupiter", "saturn", "neptune" });
+  }
+
+  @Test
+  public void testConstructor() {
+    try {
+      new PlayerRoundTotals(null);
+      fail("expected NullPointerException");
+    } catch(NullPointerException expected) {}
+
+    try {
+      new PlayerRoundTotals(new String[] {});
+      fail("expected IllegalArgumentException");
+    } catch(IllegalArgumentException expected) {}
+
+    assertEquals(0, _t.getRoundCount());
+  }
+
+  @Test
+  public void testPlayerIndex() {
+    assertEquals(0, _t.getPlayerIndex("jupiter"));
+    assertEquals(2, _t.getPlayerIndex("neptune"));
+    try {
+      _t.getPlayerIndex("pluto");
+      fail("expected IllegalArgumentException");
+    } catch(IllegalArgumentException expected) {}
+  }
+
+  @Test
+  public void testValues() {
+    _t.setValue(1, 0, 5);
+    assertEquals(1, _t.getRoundCount());
+    _t.addValue(1, 0, 2.5);
+    assertEquals(7.5, _t.getValue(1, 0), D);
+    assertEquals(0, _t.getValue(0, 0), D);
+    assertEquals(0, _t.getValue(1, 99), D); //rounds not yet written read as zero
+
+    //Writing past the end grows all the players lists
+    _t.addValue(2, 40, 3);
+    assertEquals(41, _t.getRoundCount());
+    assertEquals(3, _t.getValue(2, 40), D);
+    assertEquals(0, _t.getValue(0, 40), D);
+    assertEquals(7.5, _t.getValue(1, 0), D);
+
+    List<Double> list = _t.getList(2);
+    assertEquals(41, list.size());
+    assertEquals(3, list.get(40), D);
+    assertEquals(0, list.get(39), D);
+    try {
+      list.get(41);
+      fail("expected IndexOutOfBoundsException");
+    } catch(IndexOutOfBoundsException expected) {}
+    try {
+      list.set(0, 1d);
+      fail("expected UnsupportedOperationException");
+    } catch(UnsupportedOperationException expected) {}
+  }
+
+  @Test
+  public void testAdd() {
+    _t.setValue(0, 0, 100);
+    _t.setValue(0, 1, 1);
+    PlayerRoundTotals other = new PlayerRoundTotals(new String[] { "jupiter", "saturn", "neptune" });
+    other.setValue(0, 0, 50);
+    other.setValue(0, 1, 2);
+    other.setValue(1, 3, 4);
+    _t.add(other, 1); //round zero is skipped
+    assertEquals(4, _t.getRoundCount());
+    assertEquals(Arrays.asList(100d, 3d, 0d, 0d), _t.getList(0));
+    assertEquals(Arrays.asList(0d, 0d, 0d, 4d), _t.getList(1));
+
+    try {
+      _t.add(new PlayerRoundTotals(new String[] { "jupiter" }), 0);
+      fail("expected IllegalArgumentException");
+    } catch(IllegalArgumentException expected) {}
+  }
+}
@@ -0,0 +1,113 @@
+package romeo.fleet.model;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import romeo.utils.StreamRandom;
+
+public class TestFleetElement {
+
+  /**
+   * Approximate upper critical value of the chi-square distribution at the
+   * 0.1% level (Wilson-Hilferty)
+   */
+  private static double chiSquareCritical(int df) {
+    double z = 3.09;
+    double h = 2d / (9d * df);
+    return df * Math.pow(1 - h + z * Math.sqrt(h), 3);
+  }
+
+  /**
+   * Chi-square test that two sets of counts come from the same distribution.
+   * Bins are pooled until both sets have a reasonable number of observations.
+   */
+  private static void assertSameDistribution(String message, int[] a, int[] b) {
+    double totalA = 0;
+    double totalB = 0;
+    for(int i = 0; i < a.length; i++) {
+      totalA += a[i];
+      totalB += b[i];
+    }
+    double ka = Math.sqrt(totalB / totalA);
+    double kb = Math.sqrt(totalA / totalB);
+    double chiSquare = 0;
+    int df = -1;
+    int pooledA = 0;
+    int pooledB = 0;
+    for(int i = 0; i < a.length; i++) {
+      pooledA += a[i];
+      pooledB += b[i];
+      if(pooledA + pooledB >= 20 || (i == a.length - 1 && pooledA + pooledB > 0)) {
+        double d = ka * pooledA - kb * pooledB;
+        chiSquare += d * d / (pooledA + pooledB);
+        df++;
+        pooledA = 0;
+        pooledB = 0;
+      }
+    }
+    assertTrue(message + ": chi-square " + chiSquare + " with df=" + df, chiSquare < chiSquareCritical(df));
+  }
+
+  private static void compareHits(int rolls, int offense, int trials) {
+    Random rollRnd = new StreamRandom(rolls * 31L + offense);
+    Random sampleRnd = new StreamRandom(rolls * 17L + offense);
+    int[] rolled = new int[rolls + 1];
+    int[] sampled = new int[rolls + 1];
+    for(int t = 0; t < trials; t++) {
+      rolled[FleetElement.rollHits(rolls, offense, rollRnd)]++;
+      sampled[FleetElement.sampleHits(rolls, offense, sampleRnd)]++;
+    }
+    assertSameDistribution("hits for rolls=" + rolls + ",offense=" + offense, rolled, sampled);
+  }
+
+  private static void compareDefence(int hits, int quantity, int dead, int defense, int trials) {
+    Random rollRnd = new StreamRandom(hits * 31L + quantity + dead + defense);
+    Random sampleRnd = new StreamRandom(hits * 17L + quantity + dead + defense);
+    int[] rolled = new int[quantity + 1];
+    int[] sampled = new int[quantity + 1];
+    for(int t = 0; t < trials; t++) {
+      int rolledKills = FleetElement.rollDefence(hits, quantity, dead, defense, rollRnd);
+      int sampledKills = FleetElement.sampleDefence(hits, quantity, dead, defense, sampleRnd);
+      assertTrue(sampledKills >= 0 && sampledKills <= quantity - dead);
+      rolled[rolledKills]++;
+      sampled[sampledKills]++;
+    }
+    assertSameDistribution("kills for hits=" + hits + ",quantity=" + quantity + ",dead=" + dead + ",defense="
+        + defense, rolled, sampled);
+  }
+
+  @Test
+  public void testSampleHitsMatchesRolling() {
+    compareHits(1, 50, 20000);
+    compareHits(12, 30, 20000);
+    compareHits(60, 5, 20000);
+    compareHits(400, 45, 20000);
+    compareHits(3000, 80, 10000);
+    assertEquals(0, FleetElement.sampleHits(0, 50, new StreamRandom(1)));
+    assertEquals(0, FleetElement.sampleHits(100, 0, new StreamRandom(1)));
+    assertEquals(100, FleetElement.sampleHits(100, 100, new StreamRandom(1)));
+  }
+
+  @Test
+  public void testSampleDefenceMatchesRolling() {
+    compareDefence(1, 10, 0, 50, 20000);
+    compareDefence(15, 20, 0, 30, 20000);
+    compareDefence(50, 30, 10, 60, 20000); //overkill with some already dead
+    compareDefence(200, 100, 0, 90, 20000); //heavily armoured
+    compareDefence(500, 600, 50, 20, 10000);
+    compareDefence(40, 20, 0, 0, 20000); //no defence
+    compareDefence(5000, 20000, 0, 30, 10000); //large stacks use the normal approximation
+    compareDefence(30000, 10000, 2000, 50, 5000);
+    compareDefence(4000, 10000, 0, 0, 10000);
+    assertEquals(0, FleetElement.sampleDefence(0, 10, 0, 50, new StreamRandom(1)));
+    assertEquals(0, FleetElement.sampleDefence(10, 10, 10, 0, new StreamRandom(1)));
+    assertEquals(0, FleetElement.sampleDefence(10, 10, 0, 100, new StreamRandom(1)));
+    try {
+      FleetElement.sampleDefence(-1, 10, 0, 50, new StreamRandom(1));
+      fail("Expected IllegalArgumentException");
+    } catch(IllegalArgumentException expected) {}
+  }
+}
@@ -0,0 +1,51 @@
+package romeo.fleet.model;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import romeo.units.impl.MockUnitService;
+import romeo.units.impl.UnitImpl;
+
+public class TestFleetParser {
+
+  private FleetParser _parser;
+
+  @Before
+  public void setUp() {
+    MockUnitService unitService = new MockUnitService();
+    unitService.saveUnit(new UnitImpl(null, "Viper", 2, 40, 60, 0, 120, 0, 100, 30, 25, 200, "VIP", null));
+    unitService.saveUnit(new UnitImpl(null, "Raider", 1, 50, 50, 0, 120, 0, 100, 30, 25, 200, "RDR", null));
+    _parser = new FleetParser(unitService);
+  }
+
+  @Test
+  public void testParseFleet() {
+    FleetContents fleet = _parser.parseFleet("10 * VIP, 2:5*rdr,\n -a, 0*RDR,");
+    assertTrue(fleet.hasFlag("A"));
+    List<FleetElement> elements = fleet.getElements();
+    assertEquals(2, elements.size());
+    assertEquals("Viper", elements.get(0).getUnit().getName());
+    assertEquals(10, elements.get(0).getQuantity(), 0);
+    assertEquals(0, elements.get(0).getSource());
+    assertEquals("Raider", elements.get(1).getUnit().getName());
+    assertEquals(5, elements.get(1).getQuantity(), 0);
+    assertEquals(2, elements.get(1).getSource());
+
+    assertEquals(0, _parser.parseFleet("").getElements().size());
+  }
+
+  @Test
+  public void testInvalid() {
+    String[] invalid = { "10 VIP", "10 * XYZ", "ten * VIP", "x:10 * VIP", "2: * VIP", "-" };
+    for(String text : invalid) {
+      try {
+        _parser.parseFleet(text);
+        fail("expected IllegalArgumentException for " + text);
+      } catch(IllegalArgumentException expected) {}
+    }
+  }
+}
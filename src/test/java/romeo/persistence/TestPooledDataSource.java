@@ -0,0 +1,191 @@
+package romeo.persistence;
+
+import static org.junit.Assert.*;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import romeo.utils.DbUtils;
+
+public class TestPooledDataSource {
+
+  private PooledDataSource _ds;
+
+  @Before
+  public void setUp() throws Exception {
+    _ds = new PooledDataSource();
+    _ds.setDriver("org.hsqldb.jdbcDriver");
+    _ds.setDatabase("jdbc:hsqldb:mem:pooledTestDb");
+    _ds.setValidationQuery("VALUES(1)");
+    try(Connection connection = _ds.getConnection()) {
+      DbUtils.writeQuery("CREATE TABLE PLANETS (name VARCHAR(20), moons INT)", null, connection);
+      DbUtils.writeQuery("INSERT INTO PLANETS VALUES ('Jupiter', 79)", null, connection);
+      DbUtils.writeQuery("INSERT INTO PLANETS VALUES ('Saturn', 82)", null, connection);
+    }
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    try(Connection connection = _ds.getConnection()) {
+      DbUtils.writeQuery("SHUTDOWN", null, connection);
+    }
+    _ds.close();
+  }
+
+  @Test
+  public void testReuse() throws Exception {
+    assertEquals(1, _ds.getConnectionsOpened());
+    Connection first = _ds.getConnection();
+    assertEquals(1, _ds.getActiveConnections());
+    assertEquals(0, _ds.getIdleConnections());
+    first.close();
+    first.close(); //closing twice is harmless
+    assertTrue(first.isClosed());
+    try {
+      first.createStatement();
+      fail("expected SQLException");
+    } catch(SQLException expected) {}
+    assertEquals(0, _ds.getActiveConnections());
+    assertEquals(1, _ds.getIdleConnections());
+
+    Connection second = _ds.getConnection();
+    Connection third = _ds.getConnection();
+    assertFalse(second.isClosed());
+    assertEquals(2, _ds.getConnectionsOpened());
+    second.close();
+    third.close();
+    assertEquals(2, _ds.getIdleConnections());
+  }
+
+  @Test
+  public void testStatementCache() throws Exception {
+    String sql = "SELECT moons FROM PLANETS WHERE name=?";
+    int prepared = _ds.getStatementsPrepared();
+    try(Connection connection = _ds.getConnection()) {
+      assertEquals(79, ((Number) DbUtils.readSingleValue(sql, new Object[] { "Jupiter" }, connection)).intValue());
+      assertEquals(82, ((Number) DbUtils.readSingleValue(sql, new Object[] { "Saturn" }, connection)).intValue());
+      assertEquals(prepared + 1, _ds.getStatementsPrepared());
+
+      //While a ResultSet of the cached statement is open the same sql gets a statement of its own
+      ResultSet open = DbUtils.readQuery(sql, new Object[] { "Jupiter" }, connection);
+      assertEquals(82, ((Number) DbUtils.readSingleValue(sql, new Object[] { "Saturn" }, connection)).intValue());
+      assertEquals(prepared + 2, _ds.getStatementsPrepared());
+      assertTrue(open.next());
+      assertEquals(79, open.getInt(1));
+      PreparedStatement statement = (PreparedStatement) open.getStatement();
+      open.close();
+      statement.close();
+      assertTrue(statement.isClosed());
+      try {
+        statement.executeQuery();
+        fail("expected SQLException");
+      } catch(SQLException expected) {}
+
+      assertEquals(79, ((Number) DbUtils.readSingleValue(sql, new Object[] { "Jupiter" }, connection)).intValue());
+      assertEquals(prepared + 2, _ds.getStatementsPrepared());
+    }
+    //The cache belongs to the connection, so survives it going back in the pool
+    try(Connection connection = _ds.getConnection()) {
+      assertEquals(82, ((Number) DbUtils.readSingleValue(sql, new Object[] { "Saturn" }, connection)).intValue());
+      assertEquals(prepared + 2, _ds.getStatementsPrepared());
+    }
+  }
+
+  @Test
+  public void testAbandonedBatch() throws Exception {
+    String sql = "INSERT INTO PLANETS VALUES (?, ?)";
+    try(Connection connection = _ds.getConnection()) {
+      connection.setAutoCommit(false);
+      try(PreparedStatement statement = connection.prepareStatement(sql)) {
+        statement.setString(1, "Vulcan");
+        statement.setInt(2, 666);
+        statement.addBatch(); //never executed, as if the caller failed part way through
+      }
+      connection.rollback();
+
+      try(PreparedStatement statement = connection.prepareStatement(sql)) {
+        statement.setString(1, "Neptune");
+        statement.setInt(2, 14);
+        statement.addBatch();
+        assertArrayEquals(new int[] { 1 }, statement.executeBatch());
+      }
+      connection.commit();
+      connection.setAutoCommit(true);
+      assertEquals(0, ((Number) DbUtils.readSingleValue("SELECT COUNT(*) FROM PLANETS WHERE moons=666", null,
+          connection)).intValue());
+      assertEquals(14, ((Number) DbUtils.readSingleValue("SELECT moons FROM PLANETS WHERE name=?",
+          new Object[] { "Neptune" }, connection)).intValue());
+    }
+  }
+
+  @Test
+  public void testBounded() throws Exception {
+    _ds.setMaxConnections(2);
+    _ds.setMaxWait(50);
+    Connection a = _ds.getConnection();
+    final Connection b = _ds.getConnection();
+    long start = System.currentTimeMillis();
+    try {
+      _ds.getConnection();
+      fail("expected SQLException");
+    } catch(SQLException expected) {}
+    assertTrue(System.currentTimeMillis() - start >= 50);
+
+    //A waiting request gets a connection as soon as one is returned
+    _ds.setMaxWait(10000);
+    Thread returner = new Thread() {
+      @Override
+      public void run() {
+        try {
+          Thread.sleep(20);
+          b.close();
+        } catch(Exception e) {
+          throw new RuntimeException(e);
+        }
+      }
+    };
+    returner.start();
+    Connection c = _ds.getConnection();
+    returner.join();
+    assertEquals(2, _ds.getActiveConnections());
+    a.close();
+    c.close();
+  }
+
+  @Test
+  public void testValidationAndEviction() throws Exception {
+    Connection a = _ds.getConnection();
+    Connection b = _ds.getConnection();
+    Connection c = _ds.getConnection();
+    a.close();
+    b.close();
+    c.close();
+    assertEquals(3, _ds.getIdleConnections());
+
+    //All but the most recently used are closed once idle too long
+    _ds.setIdleTimeout(0);
+    Thread.sleep(5);
+    _ds.getConnection().close();
+    assertEquals(1, _ds.getIdleConnections());
+    _ds.setIdleTimeout(60000);
+
+    //An idle connection that has been closed underneath us is replaced
+    Connection idle = _ds.getConnection();
+    Connection other = _ds.getConnection();
+    idle.close();
+    DbUtils.writeQuery("SHUTDOWN", null, other);
+    other.close();
+    int opened = _ds.getConnectionsOpened();
+    try(Connection connection = _ds.getConnection()) {
+      assertFalse(connection.isClosed());
+      DbUtils.writeQuery("CREATE TABLE MOONS (name VARCHAR(20))", null, connection);
+    }
+    assertEquals(opened + 1, _ds.getConnectionsOpened());
+  }
+}
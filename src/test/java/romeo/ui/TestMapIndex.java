@@ -0,0 +1,161 @@
+package romeo.ui;
+
+import static org.junit.Assert.*;
+
+import java.awt.Point;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import javax.swing.JComponent;
+
+import org.junit.Test;
+
+import romeo.model.api.MapInfo;
+import romeo.ui.GenericMap.IMapLogic;
+import romeo.ui.GenericMap.IObjectRenderer;
+
+public class TestMapIndex {
+
+  /**
+   * Minimal logic for maps of Point objects
+   */
+  private static class PointLogic implements IMapLogic {
+    @Override
+    public void addListener(GenericMap map) {
+      ;
+    }
+
+    @Override
+    public JComponent supplyControls(GenericMap map) {
+      return null;
+    }
+
+    @Override
+    public Set<? extends Object> getData() {
+      return null;
+    }
+
+    @Override
+    public MapInfo getMapInfo() {
+      return null;
+    }
+
+    @Override
+    public boolean isSameObject(Object object1, Object object2) {
+      return object1.equals(object2);
+    }
+
+    @Override
+    public int getObjectX(Object object) {
+      return ((Point) object).x;
+    }
+
+    @Override
+    public int getObjectY(Object object) {
+      return ((Point) object).y;
+    }
+
+    @Override
+    public IObjectRenderer getRenderer(Object object) {
+      return null;
+    }
+
+    @Override
+    public String getNoDataMessage() {
+      return null;
+    }
+
+    @Override
+    public void closing(GenericMap map) {
+      ;
+    }
+
+    @Override
+    public String getDescription(Object object) {
+      return null;
+    }
+  }
+
+  private static Set<Point> randomPoints(Random random, int count, int left, int top, int width, int height) {
+    Set<Point> points = new LinkedHashSet<Point>();
+    while(points.size() < count) {
+      points.add(new Point(left + random.nextInt(width), top + random.nextInt(height)));
+    }
+    return points;
+  }
+
+  private static long distance(Point p, int x, int y) {
+    long dx = p.x - x;
+    long dy = p.y - y;
+    return dx * dx + dy * dy;
+  }
+
+  @Test
+  public void testEmpty() {
+    MapIndex index = new MapIndex(Collections.<Point> emptySet(), new PointLogic());
+    assertEquals(0, index.size());
+    assertNull(index.findClosest(10, 10));
+    assertTrue(index.findWithin(-100, -100, 100, 100).isEmpty());
+  }
+
+  @Test
+  public void testSinglePoint() {
+    Point p = new Point(-50, 75);
+    MapIndex index = new MapIndex(Collections.singleton(p), new PointLogic());
+    assertSame(p, index.findClosest(-50, 75));
+    assertSame(p, index.findClosest(10000, -10000));
+    assertEquals(Collections.singletonList(p), index.findWithin(-50, 75, -50, 75));
+    assertTrue(index.findWithin(-49, 75, 0, 100).isEmpty());
+  }
+
+  @Test
+  public void testFindClosest() {
+    Random random = new Random(42);
+    PointLogic logic = new PointLogic();
+    //A uniform spread and a clustered one with a distant outlier
+    List<Set<Point>> sets = new ArrayList<Set<Point>>();
+    sets.add(randomPoints(random, 500, -1000, -500, 3000, 2000));
+    Set<Point> clustered = randomPoints(random, 200, 0, 0, 50, 50);
+    clustered.add(new Point(5000, 5000));
+    sets.add(clustered);
+    for(Set<Point> points : sets) {
+      MapIndex index = new MapIndex(points, logic);
+      assertEquals(points.size(), index.size());
+      for(int i = 0; i < 1000; i++) {
+        int x = random.nextInt(8000) - 2000;
+        int y = random.nextInt(8000) - 2000;
+        long expected = Long.MAX_VALUE;
+        for(Point p : points) {
+          expected = Math.min(expected, distance(p, x, y));
+        }
+        Point closest = (Point) index.findClosest(x, y);
+        assertEquals("closest to " + x + "," + y, expected, distance(closest, x, y));
+      }
+    }
+  }
+
+  @Test
+  public void testFindWithin() {
+    Random random = new Random(7);
+    Set<Point> points = randomPoints(random, 500, -1000, -500, 3000, 2000);
+    MapIndex index = new MapIndex(points, new PointLogic());
+    for(int i = 0; i < 200; i++) {
+      int left = random.nextInt(4000) - 1500;
+      int top = random.nextInt(3000) - 1000;
+      int right = left + random.nextInt(1000);
+      int bottom = top + random.nextInt(1000);
+      List<Object> expected = new ArrayList<Object>();
+      for(Point p : points) {
+        if(p.x >= left && p.x <= right && p.y >= top && p.y <= bottom) {
+          expected.add(p);
+        }
+      }
+      assertEquals(expected, index.findWithin(left, top, right, bottom));
+    }
+    assertEquals(new ArrayList<Object>(points), index.findWithin(-1000, -500, 2000, 1500));
+  }
+}
@@ -7,6 +7,7 @@ import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
 
 import javax.sql.DataSource;
 
@@ -415,6 +416,41 @@ public class TestUnitServiceImpl {
     } catch(NullPointerException expected) {}    
   }
   
+  /**
+   * Tests that cached units can be read while another thread holds the lock on
+   * the service, as it would during a save
+   */
+  @Test(timeout = 10000)
+  public void testReadsDontLock() throws InterruptedException {
+    _unitService.getUnits();
+    final CountDownLatch locked = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    Thread writer = new Thread() {
+      @Override
+      public void run() {
+        synchronized(_unitService) {
+          locked.countDown();
+          try {
+            release.await();
+          } catch(InterruptedException e) {
+            ;
+          }
+        }
+      }
+    };
+    writer.start();
+    locked.await();
+    try {
+      assertEquals(2, _unitService.getUnits().size());
+      assertEquals(BS_ID, _unitService.getByAcronym("bs").getId());
+      assertEquals(VIP_ID, _unitService.loadUnit(VIP_ID).getId());
+      assertArrayEquals(new int[] { 0, 80, 120 }, _unitService.getSpeeds());
+    } finally {
+      release.countDown();
+      writer.join();
+    }
+  }
+  
   @Test
   public void notifiesOnEdc() {
     _unitService.dataChangedExternally();
@@ -160,6 +160,49 @@ public class TestConvert {
     }catch(NullPointerException expected) { }
       
   }
+
+  @Test
+  public void testGetIndexOfCumulativeItem() {
+    assertEquals(2, Convert.getIndexOfCumulativeItem(new int[] {5,10,15} , 11) );
+    assertEquals(0, Convert.getIndexOfCumulativeItem(new int[] {5,10,15} , 0) );
+    assertEquals(1, Convert.getIndexOfCumulativeItem(new int[] {5,10,15} , 5) );
+    assertEquals(2, Convert.getIndexOfCumulativeItem(new int[] {5,10,15} , 14) );
+    //empty containers are skipped
+    assertEquals(3, Convert.getIndexOfCumulativeItem(new int[] {0,2,2,3,3} , 2) );
+    assertEquals(1, Convert.getIndexOfCumulativeItem(new int[] {0,2,2,3,3} , 0) );
+
+    //should agree with the linear search
+    int[] sizes = new int[] { 3, 0, 7, 1, 0, 0, 12, 4 };
+    int[] cumulative = new int[sizes.length];
+    int total = 0;
+    for(int i = 0; i < sizes.length; i++) {
+      total += sizes[i];
+      cumulative[i] = total;
+    }
+    for(int item = 0; item < total; item++) {
+      assertEquals(Convert.getIndexOfItem(sizes, item), Convert.getIndexOfCumulativeItem(cumulative, item));
+    }
+    
+    try {
+      int i = Convert.getIndexOfCumulativeItem( new int[] { 5 } , 5);
+      fail("Expected an IndexOutOfBoundsException, but found " + i);
+    }catch(IndexOutOfBoundsException expected) { }
+    
+    try {
+      int i = Convert.getIndexOfCumulativeItem( new int[] { 5 } , -1);
+      fail("Expected an IndexOutOfBoundsException, but found " + i);
+    }catch(IndexOutOfBoundsException expected) { }
+    
+    try {
+      int i = Convert.getIndexOfCumulativeItem( new int[] { } , 0);
+      fail("Expected an IndexOutOfBoundsException, but found " + i);
+    }catch(IndexOutOfBoundsException expected) { }
+    
+    try {
+      int i = Convert.getIndexOfCumulativeItem( null , 0);
+      fail("Expected a NullPointerException, but found " + i);
+    }catch(NullPointerException expected) { }
+  }
   
   @Test
   public void testReplace() {
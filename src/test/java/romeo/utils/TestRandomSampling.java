@@ -0,0 +1,156 @@
+package romeo.utils;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class TestRandomSampling {
+
+  /**
+   * Returns log(k!) for k=0..n
+   */
+  private static double[] logFactorials(int n) {
+    double[] logFactorial = new double[n + 1];
+    for(int k = 1; k <= n; k++) {
+      logFactorial[k] = logFactorial[k - 1] + Math.log(k);
+    }
+    return logFactorial;
+  }
+
+  /**
+   * Approximate upper critical value of the chi-square distribution at the
+   * 0.1% level (Wilson-Hilferty)
+   */
+  private static double chiSquareCritical(int df) {
+    double z = 3.09;
+    double h = 2d / (9d * df);
+    return df * Math.pow(1 - h + z * Math.sqrt(h), 3);
+  }
+
+  /**
+   * Draws samples and does a chi-square goodness of fit test against the exact
+   * binomial distribution, pooling the tails where the expected counts are
+   * small
+   */
+  private void assertBinomialFits(int n, double p, int samples, long seed) {
+    Random rnd = new StreamRandom(seed);
+    int[] observed = new int[n + 1];
+    for(int i = 0; i < samples; i++) {
+      int k = RandomSampling.binomial(n, p, rnd);
+      assertTrue("sample out of range:" + k, k >= 0 && k <= n);
+      observed[k]++;
+    }
+    double[] logFactorial = logFactorials(n);
+    double chiSquare = 0;
+    int df = -1;
+    double pooledExpected = 0;
+    int pooledObserved = 0;
+    for(int k = 0; k <= n; k++) {
+      double logPmf = logFactorial[n] - logFactorial[k] - logFactorial[n - k] + k * Math.log(p) + (n - k)
+          * Math.log1p(-p);
+      pooledExpected += Math.exp(logPmf) * samples;
+      pooledObserved += observed[k];
+      if(pooledExpected >= 10 || k == n) {
+        chiSquare += (pooledObserved - pooledExpected) * (pooledObserved - pooledExpected) / pooledExpected;
+        df++;
+        pooledExpected = 0;
+        pooledObserved = 0;
+      }
+    }
+    assertTrue("chi-square " + chiSquare + " too large for n=" + n + ",p=" + p + " (df=" + df + ")",
+        chiSquare < chiSquareCritical(df));
+  }
+
+  @Test
+  public void testBinomialInversion() {
+    assertBinomialFits(10, 0.3, 50000, 1);
+    assertBinomialFits(200, 0.01, 50000, 2);
+    assertBinomialFits(100000, 0.00005, 50000, 3);
+    assertBinomialFits(12, 0.75, 50000, 4);
+  }
+
+  @Test
+  public void testBinomialRejection() {
+    assertBinomialFits(40, 0.5, 50000, 5);
+    assertBinomialFits(100, 0.15, 50000, 6);
+    assertBinomialFits(1000, 0.35, 50000, 7);
+    assertBinomialFits(5000, 0.9, 50000, 8);
+    assertBinomialFits(200000, 0.4, 20000, 9);
+  }
+
+  @Test
+  public void testBinomialMoments() {
+    Random rnd = new StreamRandom(10);
+    int n = 150000;
+    double p = 0.37;
+    int samples = 20000;
+    double sum = 0;
+    double sumSq = 0;
+    for(int i = 0; i < samples; i++) {
+      double k = RandomSampling.binomial(n, p, rnd);
+      sum += k;
+      sumSq += k * k;
+    }
+    double mean = sum / samples;
+    double variance = sumSq / samples - mean * mean;
+    double expectedVariance = n * p * (1 - p);
+    assertEquals(n * p, mean, 5 * Math.sqrt(expectedVariance / samples));
+    assertEquals(expectedVariance, variance, 0.05 * expectedVariance);
+  }
+
+  @Test
+  public void testBinomialEdgeCases() {
+    Random rnd = new StreamRandom(11);
+    assertEquals(0, RandomSampling.binomial(0, 0.5, rnd));
+    assertEquals(0, RandomSampling.binomial(100, 0, rnd));
+    assertEquals(100, RandomSampling.binomial(100, 1, rnd));
+    try {
+      RandomSampling.binomial(-1, 0.5, rnd);
+      fail("Expected IllegalArgumentException");
+    } catch(IllegalArgumentException expected) {}
+    try {
+      RandomSampling.binomial(10, 1.5, rnd);
+      fail("Expected IllegalArgumentException");
+    } catch(IllegalArgumentException expected) {}
+    try {
+      RandomSampling.binomial(10, Double.NaN, rnd);
+      fail("Expected IllegalArgumentException");
+    } catch(IllegalArgumentException expected) {}
+    try {
+      RandomSampling.binomial(10, 0.5, null);
+      fail("Expected NullPointerException");
+    } catch(NullPointerException expected) {}
+  }
+
+  @Test
+  public void testGeometric() {
+    Random rnd = new StreamRandom(12);
+    assertEquals(1, RandomSampling.geometric(1, rnd));
+    double p = 0.2;
+    int samples = 50000;
+    int[] observed = new int[20];
+    double sum = 0;
+    for(int i = 0; i < samples; i++) {
+      int trials = RandomSampling.geometric(p, rnd);
+      assertTrue(trials >= 1);
+      sum += trials;
+      observed[Math.min(trials, observed.length) - 1]++;
+    }
+    assertEquals(1 / p, sum / samples, 0.05);
+    //P(trials=k) = (1-p)^(k-1)p, with the last bin holding the tail
+    double chiSquare = 0;
+    for(int k = 1; k <= observed.length; k++) {
+      double expected = samples * (k < observed.length ? Math.pow(1 - p, k - 1) * p : Math.pow(1 - p, k - 1));
+      double d = observed[k - 1] - expected;
+      chiSquare += d * d / expected;
+    }
+    assertTrue(chiSquare < chiSquareCritical(observed.length - 1));
+
+    try {
+      RandomSampling.geometric(0, rnd);
+      fail("Expected IllegalArgumentException");
+    } catch(IllegalArgumentException expected) {}
+  }
+}
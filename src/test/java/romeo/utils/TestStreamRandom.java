@@ -0,0 +1,94 @@
+package romeo.utils;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class TestStreamRandom {
+
+  @Test
+  public void testSameSeedSameSequence() {
+    StreamRandom a = new StreamRandom(42);
+    StreamRandom b = new StreamRandom(42);
+    for(int i = 0; i < 1000; i++) {
+      assertEquals(a.nextLong(), b.nextLong());
+      assertEquals(a.nextInt(100), b.nextInt(100));
+    }
+    a.setSeed(7);
+    b.setSeed(7);
+    assertEquals(a.nextDouble(), b.nextDouble(), 0);
+  }
+
+  @Test
+  public void testStreams() {
+    StreamRandom a = new StreamRandom(42, 3);
+    StreamRandom b = new StreamRandom(1);
+    b.nextLong();
+    b.setStream(42, 3);
+    for(int i = 0; i < 100; i++) {
+      assertEquals(a.nextLong(), b.nextLong());
+    }
+
+    //Neighbouring streams and seeds should not be the same
+    StreamRandom s3 = new StreamRandom(42, 3);
+    StreamRandom s4 = new StreamRandom(42, 4);
+    StreamRandom t3 = new StreamRandom(43, 3);
+    int same = 0;
+    for(int i = 0; i < 100; i++) {
+      long v = s3.nextLong();
+      if(v == s4.nextLong() || v == t3.nextLong()) {
+        same++;
+      }
+    }
+    assertEquals(0, same);
+  }
+
+  @Test
+  public void testGaussianStreams() {
+    StreamRandom a = new StreamRandom(1);
+    a.setStream(7, 3);
+    double first = a.nextGaussian();
+    a.setStream(7, 3);
+    assertEquals(first, a.nextGaussian(), 0); //nothing cached from before the stream was set
+    StreamRandom b = new StreamRandom(7, 3);
+    assertEquals(first, b.nextGaussian(), 0);
+
+    double sum = 0;
+    double sumOfSquares = 0;
+    int n = 100000;
+    for(int i = 0; i < n; i++) {
+      double g = b.nextGaussian();
+      sum += g;
+      sumOfSquares += g * g;
+    }
+    assertEquals(0, sum / n, 0.02);
+    assertEquals(1, sumOfSquares / n, 0.02);
+  }
+
+  @Test
+  public void testSplit() {
+    StreamRandom a = new StreamRandom(42);
+    StreamRandom b = new StreamRandom(42);
+    StreamRandom splitA = a.split();
+    StreamRandom splitB = b.split();
+    //Splitting is deterministic too
+    assertEquals(splitA.nextLong(), splitB.nextLong());
+    assertEquals(a.nextLong(), b.nextLong());
+  }
+
+  @Test
+  public void testNextIntDistribution() {
+    StreamRandom rnd = new StreamRandom(99);
+    int[] counts = new int[10];
+    int n = 100000;
+    for(int i = 0; i < n; i++) {
+      int v = rnd.nextInt(10);
+      assertTrue(v >= 0 && v < 10);
+      counts[v]++;
+    }
+    for(int i = 0; i < counts.length; i++) {
+      //Expected 10000 each with a std deviation of about 95
+      assertEquals(10000, counts[i], 500);
+    }
+  }
+}
@@ -2,11 +2,14 @@ package romeo.worlds.impl;
 
 import static org.junit.Assert.*;
 
+import java.awt.Color;
 import java.sql.Connection;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
 
 import javax.sql.DataSource;
 
@@ -18,12 +21,17 @@ import org.junit.Test;
 
 import romeo.model.api.InvalidTurnException;
 import romeo.model.api.MapInfo;
+import romeo.model.api.RecordsChangedEvent;
 import romeo.persistence.DuplicateRecordException;
+import romeo.players.api.PlayerId;
+import romeo.players.api.PlayerUtils;
 import romeo.players.impl.MockPlayerService;
 import romeo.players.impl.PlayerServiceInitialiser;
 import romeo.settings.api.ISettings;
 import romeo.settings.api.ISettingsService;
+import romeo.settings.api.ISettingsService.SettingType;
 import romeo.settings.impl.MockSettingsService;
+import romeo.settings.impl.SettingChangedEvent;
 import romeo.test.ServiceListenerChecker;
 import romeo.test.TestUtils;
 import romeo.units.api.IUnit;
@@ -38,6 +46,7 @@ import romeo.utils.KeyGenImpl;
 import romeo.worlds.api.HistorySummary;
 import romeo.worlds.api.IHistory;
 import romeo.worlds.api.IWorld;
+import romeo.worlds.api.WorldAndHistory;
 import romeo.worlds.api.WorldId;
 
 public class TestWorldServiceImpl {
@@ -554,6 +563,220 @@ public class TestWorldServiceImpl {
     } catch(NullPointerException expected) {}    
   }
   
+  @Test
+  public void testSaveWorldsWithHistories() {
+    IWorld luna = _worldService.loadWorld(new WorldId("idLuna"));
+    IWorld a = new WorldImpl(null, "A", 100, 200, null, "new", 300, 400);
+    IWorld b = new WorldImpl(luna.getId(), "Luna", 1, 2, null, "updated", 3, 4);
+    IHistory aHistory = new HistoryImpl(null, 4, "Earth", 10d, 20, 30);
+    IHistory bHistory = new HistoryImpl(null, 4, "Mars", 40d, 50, 60);
+    
+    List<WorldId> ids = _worldService.saveWorldsWithHistories(Arrays.asList(a,b), Arrays.asList(aHistory,bHistory));
+    assertEquals(1, _listener.getDataChangedCount());
+    assertEquals(2, ids.size());
+    assertNotNull( ids.get(0) );
+    assertEquals(luna.getId(), ids.get(1));
+    assertRowCount(9);
+    
+    assertEquals("new", _worldService.loadWorld(ids.get(0)).getNotes());
+    assertEquals("updated", _worldService.loadWorld(ids.get(1)).getNotes());
+    IHistory saved = _worldService.loadHistory(ids.get(0), 4);
+    assertEquals(ids.get(0), saved.getWorldId());
+    assertEquals("Earth", saved.getOwner());
+    assertEquals(20, saved.getLabour());
+    saved = _worldService.loadHistory(ids.get(1), 4);
+    assertEquals("Mars", saved.getOwner());
+    assertEquals(60, saved.getCapital());
+    
+    //Saving again updates the same rows
+    aHistory = new HistoryImpl(null, 4, "Venus", 10d, 20, 30);
+    a = new WorldImpl(ids.get(0), a);
+    _worldService.saveWorldsWithHistories(Arrays.asList(a,b), Arrays.asList(aHistory,bHistory));
+    assertRowCount(9);
+    assertEquals("Venus", _worldService.loadHistory(ids.get(0), 4).getOwner());
+    
+    try {
+      _worldService.saveWorldsWithHistories(Arrays.asList(a,b), Arrays.asList(aHistory));
+      fail("Expected IllegalArgumentException");
+    } catch(IllegalArgumentException expected) {}
+    
+    try {
+      _worldService.saveWorldsWithHistories(null, Arrays.asList(aHistory));
+      fail("Expected NullPointerException");
+    } catch(NullPointerException expected) {}
+  }
+  
+  /**
+   * Tests that when saveWorldsWithHistories() fails part way through none of the worlds or histories are saved
+   */
+  @Test
+  public void testSaveWorldsWithHistories_rollback() {
+    IWorld a = new WorldImpl(null, "A", 100, 200, null, "", 300, 400);
+    IWorld b = new WorldImpl(null, "B", 1, 2, null, "", 3, 4);
+    IHistory aHistory = new HistoryImpl(null, 4, "Earth", 10d, 20, 30);
+    try {
+      //The worlds will have been written before the missing history is found
+      _worldService.saveWorldsWithHistories(Arrays.asList(a,b), Arrays.asList(aHistory,null));
+      fail("Expected RuntimeException");
+    } catch(RuntimeException expected) {}
+    assertRowCount(8);
+    assertNull(_worldService.loadWorldByName("A"));
+    TestUtils.assertRowCount(__dataSource, "WORLDS_HISTORY", 24);
+  }
+  
+  /**
+   * Tests that saving and deleting worlds updates the loaded cache and notifies listeners of what changed
+   */
+  @Test
+  public void testRefreshWorlds() {
+    WorldId idLuna = new WorldId("idLuna");
+    assertEquals(8, _worldService.getWorlds().size()); //loads the cache
+    
+    IWorld luna = new WorldImpl(idLuna, "Selene", 267, 48, null, "renamed", 10, 100);
+    _worldService.saveWorld(luna);
+    RecordsChangedEvent event = (RecordsChangedEvent)_listener.getLastEvent();
+    assertEquals(Collections.singleton(idLuna), event.getIds(WorldId.class));
+    assertTrue(event.getTurns().isEmpty());
+    assertEquals("renamed", _worldService.loadWorld(idLuna).getNotes());
+    assertEquals("renamed", findWorld(2, idLuna).getWorld().getNotes());
+    assertNull(_worldService.loadWorldByName("Luna"));
+    assertEquals(idLuna, _worldService.loadWorldByName("Selene").getId());
+    assertEquals("Venus", _worldService.loadHistory(idLuna, 2).getOwner());
+    assertEquals(8, _worldService.getWorlds().size());
+    
+    //History for a new turn extends the map info
+    _worldService.saveHistory(new HistoryImpl(idLuna, 4, "Mars", 1d, 2, 3));
+    event = (RecordsChangedEvent)_listener.getLastEvent();
+    assertEquals(Collections.singleton(4), event.getTurns());
+    assertEquals(4, _worldService.getMapInfo().getMaxTurn());
+    assertEquals(1, _worldService.getWorldHistory(4).size());
+    assertEquals("Mars", _worldService.loadHistory(idLuna, 4).getOwner());
+    assertEquals(5, _worldService.loadHistory(idLuna).size());
+    
+    _worldService.deleteWorld(idLuna);
+    assertNull(_worldService.loadWorld(idLuna));
+    assertNull(_worldService.loadWorldByName("Selene"));
+    assertEquals(7, _worldService.getWorlds().size());
+    assertEquals(3, _worldService.getMapInfo().getMaxTurn());
+    for(WorldAndHistory wh : _worldService.getWorldHistory(2)) {
+      assertFalse(idLuna.equals(wh.getWorld().getId()));
+    }
+  }
+  
+  /**
+   * Tests that player and unit changes patch the colour and scanner range in the loaded cache
+   */
+  @Test
+  public void testRefreshPlayersAndScanners() {
+    WorldId idTerra = new WorldId("idTerra");
+    WorldId idVenus = new WorldId("idVenus");
+    assertEquals(PlayerUtils.SOMEBODY_COLOR, findWorld(3, idTerra).getColor());
+    int scannerRange = findWorld(3, idVenus).getScannerRange();
+    
+    try(Connection connection = __dataSource.getConnection()) {
+      DbUtils.writeQuery("INSERT INTO PLAYERS (id,name,color,team) VALUES (?,?,?,?)", 
+          new Object[] { "idEarth", "EARTH", "255,0,0", "Sol" }, connection);
+      DbUtils.writeQuery("UPDATE UNITS SET scanner=? WHERE id=?", new Object[] { scannerRange + 50, "RAP" }, connection);
+      
+      _worldService.dataChanged(new RecordsChangedEvent(_mockPlayerService, Arrays.asList(new PlayerId("idEarth"))));
+      assertEquals(new Color(255,0,0), findWorld(3, idTerra).getColor());
+      assertEquals("Sol", findWorld(3, idTerra).getTeam());
+      assertEquals(new Color(255,0,0), findWorld(3, idVenus).getColor()); //Venus is owned by Earth in turn 3
+      assertEquals(scannerRange, findWorld(3, idVenus).getScannerRange());
+      
+      _worldService.dataChanged(new RecordsChangedEvent(_mockUnitService, Arrays.asList(new UnitId("RAP"))));
+      assertEquals(scannerRange + 50, findWorld(3, idVenus).getScannerRange());
+      assertEquals(scannerRange + 50, findWorld(1, idVenus).getScannerRange());
+    } catch(SQLException e) {
+      throw new RuntimeException(e);
+    } finally {
+      try(Connection connection = __dataSource.getConnection()) {
+        DbUtils.writeQuery("DELETE FROM PLAYERS WHERE id=?", new Object[] { "idEarth" }, connection);
+        DbUtils.writeQuery("UPDATE UNITS SET scanner=? WHERE id=?", new Object[] { scannerRange, "RAP" }, connection);
+      } catch(SQLException e) {
+        throw new RuntimeException(e);
+      }
+    }
+  }
+  
+  /**
+   * Tests that turns are loaded into the cache on demand and the least recently used dropped
+   */
+  @Test
+  public void testTurnCache() {
+    _worldService.setTurnCacheSize(2);
+    assertEquals(8, _worldService.getWorlds().size());
+    assertEquals(0, _worldService._cache._turns.size()); //no history loaded yet
+    
+    assertEquals(8, _worldService.getWorldHistory(1).size());
+    assertEquals(8, _worldService.getWorldHistory(2).size());
+    assertEquals(2, _worldService._cache._turns.size());
+    _worldService.getWorldHistory(1);
+    assertEquals("Earth", _worldService.loadHistory(new WorldId("idTerra"), 3).getOwner());
+    assertEquals(2, _worldService._cache._turns.size());
+    assertTrue(_worldService._cache._turns.containsKey(1));
+    assertTrue(_worldService._cache._turns.containsKey(3));
+    
+    //History of a single world is read without loading every turn
+    List<IHistory> history = _worldService.loadHistory(new WorldId("idVenus"));
+    assertEquals(4, history.size());
+    assertEquals("Venus", history.get(2).getOwner());
+    assertFalse(_worldService._cache._turns.containsKey(2));
+  }
+  
+  /**
+   * Tests that changing the current turn loads the turns either side of it in the background
+   */
+  @Test
+  public void testPrefetch() throws InterruptedException {
+    _worldService.getWorlds();
+    _worldService.dataChanged(new SettingChangedEvent(_mockSettingsService, ISettings.CURRENT_TURN, SettingType.LONG, 2L));
+    for(int i = 0; i < 100 && _worldService._cache._turns.size() < 2; i++) {
+      Thread.sleep(50);
+    }
+    assertEquals(2, _worldService._cache._turns.size());
+    assertEquals(8, _worldService._cache._turns.get(1).size());
+    assertEquals(8, _worldService._cache._turns.get(3).size());
+    assertFalse(_worldService._cache._turns.containsKey(2));
+  }
+  
+  /**
+   * Tests that cached worlds and history can be read while another thread holds
+   * the lock on the service, as it would during a save
+   */
+  @Test(timeout = 10000)
+  public void testReadsDontLock() throws InterruptedException {
+    _worldService.getWorldHistory(3);
+    final CountDownLatch locked = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    Thread writer = new Thread() {
+      @Override
+      public void run() {
+        synchronized(_worldService) {
+          locked.countDown();
+          try {
+            release.await();
+          } catch(InterruptedException e) {
+            ;
+          }
+        }
+      }
+    };
+    writer.start();
+    locked.await();
+    try {
+      assertEquals(8, _worldService.getWorlds().size());
+      assertEquals("Terra", _worldService.loadWorld(new WorldId("idTerra")).getName());
+      assertEquals(new WorldId("idTerra"), _worldService.loadWorldByName("TERRA").getId());
+      assertEquals(3, _worldService.getMapInfo().getMaxTurn());
+      assertEquals(8, _worldService.getWorldHistory(3).size());
+      assertEquals("Earth", _worldService.loadHistory(new WorldId("idTerra"), 3).getOwner());
+    } finally {
+      release.countDown();
+      writer.join();
+    }
+  }
+  
   @Test
   public void testGetSummary() {
     
@@ -649,6 +872,15 @@ public class TestWorldServiceImpl {
 
   //////////////////////////////////////
 
+  private WorldAndHistory findWorld(int turn, WorldId id) {
+    for(WorldAndHistory wh : _worldService.getWorldHistory(turn)) {
+      if(wh.getWorld().getId().equals(id)) {
+        return wh;
+      }
+    }
+    return null;
+  }
+
   private void assertRowCount(int expectedCount) {
     TestUtils.assertRowCount(__dataSource, "WORLDS", expectedCount);
   }
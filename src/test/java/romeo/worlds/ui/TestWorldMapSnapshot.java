@@ -0,0 +1,90 @@
+package romeo.worlds.ui;
+
+import static org.junit.Assert.*;
+
+import java.awt.Color;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import org.junit.Test;
+
+import romeo.utils.Convert;
+import romeo.worlds.api.WorldAndHistory;
+import romeo.worlds.api.WorldId;
+import romeo.worlds.impl.HistoryImpl;
+import romeo.worlds.impl.WorldImpl;
+
+public class TestWorldMapSnapshot {
+
+  private static WorldAndHistory world(String id, int x, int y, int scanner, int turn, String owner, double firepower,
+      int labour, int capital) {
+    WorldId worldId = new WorldId(id);
+    WorldImpl world = new WorldImpl(worldId, "World" + id, x, y, null, "", 0, 0);
+    HistoryImpl history = new HistoryImpl(worldId, turn, owner, firepower, labour, capital);
+    return new WorldAndHistory(world, history, Color.RED, scanner, "");
+  }
+
+  @Test
+  public void testDeltas() {
+    Set<WorldAndHistory> previous = new LinkedHashSet<WorldAndHistory>();
+    previous.add(world("1", 0, 0, 100, 1, "Alice", 10, 20, 30));
+    previous.add(world("2", 300, 400, 50, 1, "Bob", 5, 5, 5));
+    Set<WorldAndHistory> current = new LinkedHashSet<WorldAndHistory>();
+    current.add(world("1", 0, 0, 100, 2, "alice", 12.5, 18, 30));
+    current.add(world("2", 300, 400, 50, 2, "Alice", 5, 5, 7));
+    current.add(world("3", -100, 0, 0, 2, "Carol", 1, 1, 1));
+
+    WorldMapSnapshot snapshot = new WorldMapSnapshot(current, previous, true);
+    assertSame(current, snapshot.getData());
+    assertTrue(snapshot.isPreviousTurnLoaded());
+    assertEquals(3, snapshot.size());
+
+    assertEquals(0, snapshot.indexOf(world("1", 0, 0, 0, 2, "", 0, 0, 0)));
+    assertEquals(300, snapshot.getX(1));
+    assertEquals(400, snapshot.getY(1));
+    assertEquals(50, snapshot.getScannerRange(1));
+    assertEquals(2.5, snapshot.getFirepowerDelta(0), 0);
+    assertEquals(-2, snapshot.getLabourDelta(0));
+    assertEquals(0, snapshot.getCapitalDelta(0));
+    assertFalse(snapshot.isChangedOwner(0)); //owners are compared ignoring case
+    assertTrue(snapshot.isChangedOwner(1));
+    assertEquals(2, snapshot.getCapitalDelta(1));
+    assertNull(snapshot.getPreviousHistory(2));
+    assertFalse(snapshot.isChangedOwner(2));
+    assertEquals(-1, snapshot.indexOf(world("4", 0, 0, 0, 2, "", 0, 0, 0)));
+
+    WorldMapSnapshot noPrevious = new WorldMapSnapshot(current, null, false);
+    assertFalse(noPrevious.isPreviousTurnLoaded());
+    assertNull(noPrevious.getPreviousHistory(0));
+    assertFalse(noPrevious.isChangedOwner(1));
+  }
+
+  @Test
+  public void testOriginTable() {
+    Set<WorldAndHistory> current = new LinkedHashSet<WorldAndHistory>();
+    WorldAndHistory origin = world("1", 10, 20, 120, 1, "Alice", 0, 0, 0);
+    current.add(origin);
+    current.add(world("2", 1210, 20, 420, 1, "Bob", 0, 0, 0));
+    current.add(world("3", 500, -700, 25, 1, "Carol", 0, 0, 0));
+    WorldMapSnapshot snapshot = new WorldMapSnapshot(current, null, false);
+
+    int speed = 120;
+    WorldMapSnapshot.OriginTable table = snapshot.getOriginTable(origin, speed);
+    assertSame(table, snapshot.getOriginTable(origin, speed));
+    int i = 0;
+    for(WorldAndHistory wh : current) {
+      int distance = Convert.toDistance(10, 20, wh.getWorld().getWorldX(), wh.getWorld().getWorldY());
+      assertEquals(distance, table.getDistance(i));
+      assertEquals((distance + speed - 1) / speed, table.getEta(i));
+      assertEquals(WorldMapLogic.calcVisibility(distance, speed, wh.getScannerRange()), table.getVisibilityToTarget(i));
+      assertEquals(WorldMapLogic.calcVisibility(distance, speed, 120), table.getVisibilityToOrigin(i));
+      i++;
+    }
+
+    WorldMapSnapshot.OriginTable stopped = snapshot.getOriginTable(origin, 0);
+    assertNotSame(table, stopped);
+    assertEquals(1200, stopped.getDistance(1));
+    assertEquals(0, stopped.getEta(1));
+    assertNull(snapshot.getOriginTable(world("9", 0, 0, 0, 1, "", 0, 0, 0), speed));
+  }
+}
@@ -0,0 +1,350 @@
+package romeo.xfactors.compiled;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.core.io.FileSystemResource;
+
+import romeo.battle.impl.RoundContext;
+import romeo.fleet.model.FleetContents;
+import romeo.fleet.model.FleetElement;
+import romeo.importdata.impl.XFactorFileReader;
+import romeo.units.api.IUnit;
+import romeo.units.impl.TestUnitImpl;
+import romeo.xfactors.api.CompiledXFactor;
+import romeo.xfactors.api.ExpressionFailure;
+import romeo.xfactors.api.IExpression;
+import romeo.xfactors.api.ITypedExpression;
+import romeo.xfactors.expressions.Arithmetic;
+import romeo.xfactors.expressions.Comparison;
+import romeo.xfactors.expressions.Logic;
+import romeo.xfactors.expressions.Value;
+import romeo.xfactors.impl.ExpressionParserImpl;
+
+public class TestExpressionCompiler {
+
+  /**
+   * Expressions that exercise the conversions between types, the operands of
+   * each expression and the random numbers and failures
+   */
+  private static final String[] EXPRESSIONS = new String[] {
+      "VALUE(7)", "VALUE(7.5)", "VALUE(-0.0)", "VALUE(true)", "VALUE(false)", "VALUE(null)",
+      "VALUE(\"TRUE\")", "VALUE(\"12.5\")", "VALUE(\"abc\")",
+      "ARITHMETIC(VALUE(\"7\"),ADD,VALUE(true))", "ARITHMETIC(VALUE(7),SUBTRACT,VALUE(null))",
+      "ARITHMETIC(CONTEXT(OFFENSE),MULTIPLY,VALUE(0.6666))", "ARITHMETIC(VALUE(1),DIVIDE,VALUE(0))",
+      "ARITHMETIC(VALUE(0.0),DIVIDE,VALUE(0))", "ARITHMETIC(CONTEXT(ROUND),MIN,CONTEXT(ATTACKS))",
+      "ARITHMETIC(CONTEXT(ROUND),MAX,CONTEXT(ATTACKS))", "ARITHMETIC(CONTEXT(DEFENSE),ROOT,VALUE(2))",
+      "ARITHMETIC(CONTEXT(DEFENSE),ROOT,VALUE(3))", "ARITHMETIC(CONTEXT(ROUND),POWER,VALUE(1.5))",
+      "ADJUST(ARITHMETIC(CONTEXT(OFFENSE),DIVIDE,VALUE(7.0)),ROUND)",
+      "ADJUST(ARITHMETIC(VALUE(-5),DIVIDE,VALUE(2.0)),ROUND)",
+      "ADJUST(ARITHMETIC(CONTEXT(OFFENSE),DIVIDE,VALUE(7.0)),FLOOR)",
+      "ADJUST(ARITHMETIC(CONTEXT(OFFENSE),DIVIDE,VALUE(7.0)),CEILING)",
+      "CONTEXT(ROUND)", "CONTEXT(IS_ATTACKER)", "CONTEXT(IS_DEFENDER)", "CONTEXT(SOURCE)", "CONTEXT(ATTACKS)",
+      "CONTEXT(OFFENSE)", "CONTEXT(DEFENSE)", "CONTEXT(IS_BASE)", "CONTEXT(IS_NOT_BASE)", "CONTEXT(PD)",
+      "COMPARISON(CONTEXT(ROUND),LESS_THAN,VALUE(3))", "COMPARISON(CONTEXT(ROUND),GREATER_OR_EQUAL,VALUE(3.0))",
+      "COMPARISON(VALUE(true),GREATER_THAN,VALUE(false))", "COMPARISON(CONTEXT(IS_BASE),EQUAL,VALUE(false))",
+      "COMPARISON(VALUE(1),EQUAL,VALUE(true))", "COMPARISON(VALUE(\"abc\"),LESS_THAN,VALUE(\"abd\"))",
+      "COMPARISON(VALUE(null),LESS_OR_EQUAL,CONTEXT(ROUND))", "COMPARISON(VALUE(\"10\"),GREATER_THAN,VALUE(9))",
+      "COMPARISON(ARITHMETIC(VALUE(0.0),DIVIDE,VALUE(0)),EQUAL,ARITHMETIC(VALUE(0.0),DIVIDE,VALUE(0)))",
+      "COMPARISON(ARITHMETIC(VALUE(0.0),DIVIDE,VALUE(0)),NOT_EQUAL,VALUE(1))",
+      "COMPARISON(IF(CONTEXT(IS_DEFENDER),VALUE(3),VALUE(true)),NOT_EQUAL,VALUE(1))",
+      "LOGIC(CONTEXT(IS_NOT_BASE),AND,COMPARISON(CONTEXT(ROUND),LESS_THAN,VALUE(5)))",
+      "LOGIC(RND(0,1),OR,RND(0,1))", "LOGIC(VALUE(\"true\"),XOR,CONTEXT(IS_ATTACKER))",
+      "LOGIC(VALUE(0),NOR,VALUE(null))", "LOGIC(CONTEXT(SOURCE),NOT,CONTEXT(IS_DEFENDER))",
+      "LOGIC(RND(0,1),EQUAL,RND(0,1))",
+      "IF(CONTEXT(IS_DEFENDER),VALUE(\"3\"),VALUE(true))", "IF(PRESENT(BS),CONTEXT(ATTACKS),VALUE(null))",
+      "IF(RND(0,1),RND(1,6),RND(10,20))", "IF(CONTEXT(IS_BASE),FAIL(VALUE(\"base\")),CONTEXT(PD))",
+      "QUANTITY(THIS_PLAYER,VIP,null)", "QUANTITY(ANY_PLAYER,VIP,1)", "QUANTITY(OPPOSING_PLAYERS,BS,null)",
+      "ARITHMETIC(QUANTITY(ANY_PLAYER,BS,888),DIVIDE,VALUE(100.0))",
+      "PRESENT(BS)", "PRESENT(vip)", "PRESENT(NONE)",
+      "FLAG(THIS_PLAYER,VALUE(\"orn\"))", "FLAG(ANY_PLAYER,VALUE(\"BIO\"))",
+      "FLAG(OPPOSING_PLAYERS,VALUE(\"ORN\"))", "FLAG(ANY_PLAYER,VALUE(null))", "FLAG(THIS_PLAYER,CONTEXT(ROUND))",
+      "FLAG(OPPOSING_PLAYERS,IF(CONTEXT(IS_DEFENDER),VALUE(\"BIO\"),VALUE(null)))",
+      "RND(1,6)", "ARITHMETIC(RND(1,6),MULTIPLY,RND(-6,-1))", "COMPARISON(RND(1,100),GREATER_THAN,VALUE(50))",
+      "FAIL(VALUE(\"oops\"))", "ARITHMETIC(VALUE(1),ADD,FAIL(CONTEXT(ROUND)))",
+      "ARITHMETIC(ARITHMETIC(VALUE(2),POWER,VALUE(10)),SUBTRACT,CONTEXT(ROUND))",
+      "ARITHMETIC(VALUE(3),ROOT,VALUE(3))", "LOGIC(VALUE(false),AND,RND(0,1))", "LOGIC(RND(0,1),OR,VALUE(true))",
+      "LOGIC(VALUE(true),NOR,FAIL(VALUE(1)))", "LOGIC(VALUE(true),NOR,CONTEXT(IS_BASE))",
+      "LOGIC(VALUE(true),AND,CONTEXT(IS_BASE))", "LOGIC(CONTEXT(IS_BASE),OR,VALUE(null))",
+      "LOGIC(CONTEXT(IS_BASE),EQUAL,VALUE(\"TRUE\"))", "LOGIC(VALUE(0),XOR,CONTEXT(ROUND))",
+      "LOGIC(VALUE(1),NOT,PRESENT(BS))", "IF(VALUE(\"true\"),CONTEXT(ROUND),RND(1,6))",
+      "IF(COMPARISON(VALUE(1),GREATER_THAN,VALUE(2)),FAIL(VALUE(1)),QUANTITY(ANY_PLAYER,VIP,null))",
+      "IF(VALUE(true),FAIL(CONTEXT(ROUND)),VALUE(1))", "IF(VALUE(false),RND(1,6),VALUE(\"x\"))", };
+
+  private static final String[] PLAYERS = new String[] { "Mars", "Earth", "Venus" };
+
+  private ExpressionParserImpl _parser;
+  private ExpressionCompiler _compiler;
+  private RoundContext _context;
+
+  @Before
+  public void setup() {
+    _parser = new ExpressionParserImpl();
+    _compiler = new ExpressionCompiler();
+
+    IUnit viper = TestUnitImpl.newVip();
+    IUnit bstar = TestUnitImpl.newBStar();
+
+    _context = new RoundContext(PLAYERS);
+    _context.setDefendingPlayer("Earth");
+
+    FleetContents marsFleet = new FleetContents();
+    marsFleet.addElement(new FleetElement(viper, 100, 0));
+    marsFleet.addElement(new FleetElement(bstar, 2, 1));
+    marsFleet.setFlag("BIO", true);
+    _context.setFleet("Mars", marsFleet);
+
+    FleetContents earthFleet = new FleetContents();
+    FleetElement earthBase = new FleetElement(viper, 50, 0);
+    earthFleet.addElement(earthBase);
+    earthFleet.addElement(new FleetElement(viper, 25, 1));
+    earthFleet.addElement(new FleetElement(bstar, 0, 2));
+    earthFleet.setFlag("ORN", true);
+    earthFleet.setFlag("3", true);
+    _context.setFleet("Earth", earthFleet);
+
+    FleetContents venusFleet = new FleetContents();
+    venusFleet.addElement(new FleetElement(bstar, 1, 888));
+    _context.setFleet("Venus", venusFleet);
+
+    _context.setThisPlayer("Earth");
+    _context.setFleetElement(earthBase);
+  }
+
+  @Test
+  public void testCompile() {
+    assertNull(_compiler.compile(null));
+
+    ITypedExpression compiled = _compiler.compile(_parser.getExpression("CONTEXT(ROUND)"));
+    assertSame(compiled, _compiler.compile(compiled));
+    assertEquals("CONTEXT(ROUND)", compiled.toString());
+
+    assertEquals(ITypedExpression.NUMBER, compile("VALUE(7)").getResultType());
+    assertEquals(ITypedExpression.BOOLEAN, compile("VALUE(true)").getResultType());
+    assertEquals(ITypedExpression.OTHER, compile("VALUE(\"7\")").getResultType());
+    assertEquals(ITypedExpression.OTHER, compile("VALUE(null)").getResultType());
+    assertEquals(ITypedExpression.NUMBER, compile("ARITHMETIC(VALUE(\"7\"),ADD,VALUE(1))").getResultType());
+    assertEquals(ITypedExpression.BOOLEAN, compile("CONTEXT(IS_BASE)").getResultType());
+    assertEquals(ITypedExpression.NUMBER, compile("CONTEXT(PD)").getResultType());
+    assertEquals(ITypedExpression.NUMBER, compile("IF(VALUE(true),RND(1,6),CONTEXT(ROUND))").getResultType());
+    assertEquals(ITypedExpression.OTHER, compile("IF(CONTEXT(IS_BASE),RND(1,6),VALUE(false))").getResultType());
+    assertEquals(ITypedExpression.OTHER, compile("FAIL(VALUE(1))").getResultType());
+  }
+
+  @Test
+  public void testConstantFolding() {
+    assertConstant("ARITHMETIC(VALUE(2),POWER,VALUE(10))", 1024d);
+    assertConstant("ADJUST(ARITHMETIC(VALUE(7),DIVIDE,VALUE(2)),CEILING)", 4d);
+    assertConstant("COMPARISON(ARITHMETIC(VALUE(1),ADD,VALUE(1)),EQUAL,VALUE(2))", Boolean.TRUE);
+    assertConstant("IF(VALUE(false),FAIL(VALUE(1)),VALUE(\"x\"))", "x");
+    assertConstant("IF(VALUE(true),VALUE(3),RND(1,6))", 3l);
+    assertConstant("LOGIC(VALUE(false),AND,CONTEXT(IS_BASE))", Boolean.FALSE);
+    assertConstant("LOGIC(QUANTITY(THIS_PLAYER,VIP,null),OR,VALUE(true))", Boolean.TRUE);
+    assertConstant("LOGIC(VALUE(true),NOR,FLAG(ANY_PLAYER,VALUE(\"ORN\")))", Boolean.FALSE);
+
+    //The xfel is kept, and expressions that raise errors, draw random numbers or fail arent folded
+    assertEquals("ARITHMETIC(VALUE(2),POWER,VALUE(10))", compile("ARITHMETIC(VALUE(2),POWER,VALUE(10))").toString());
+    assertFalse(compile("ARITHMETIC(VALUE(3),ROOT,VALUE(3))") instanceof ConstantExpression);
+    assertFalse(compile("LOGIC(VALUE(false),AND,RND(0,1))") instanceof ConstantExpression);
+    assertFalse(compile("LOGIC(VALUE(true),OR,FAIL(VALUE(1)))") instanceof ConstantExpression);
+    assertFalse(compile("IF(VALUE(true),FAIL(VALUE(1)),VALUE(3))") instanceof ConstantExpression);
+    assertFalse(compile("CONTEXT(ROUND)") instanceof ConstantExpression);
+  }
+
+  @Test
+  public void testShortCircuits() {
+    //The LOGIC or IF is replaced by its boolean operand
+    assertAlias("LOGIC(VALUE(true),AND,CONTEXT(IS_BASE))", TypedContext.class);
+    assertAlias("LOGIC(FLAG(ANY_PLAYER,VALUE(\"ORN\")),OR,VALUE(0))", TypedFlag.class);
+    assertAlias("LOGIC(VALUE(false),XOR,PRESENT(BS))", TypedPresent.class);
+    assertAlias("LOGIC(VALUE(null),NOT,PRESENT(BS))", TypedPresent.class);
+    assertAlias("LOGIC(PRESENT(BS),EQUAL,VALUE(\"true\"))", TypedPresent.class);
+    assertAlias("IF(VALUE(1),CONTEXT(ROUND),RND(1,6))", TypedContext.class);
+    assertAlias("IF(VALUE(0),CONTEXT(ROUND),RND(1,6))", TypedRnd.class);
+
+    //But not when it would have a different value or type
+    assertTrue(compile("LOGIC(VALUE(true),AND,CONTEXT(ROUND))") instanceof TypedLogic);
+    assertTrue(compile("LOGIC(VALUE(true),XOR,CONTEXT(IS_BASE))") instanceof TypedLogic);
+    assertTrue(compile("LOGIC(VALUE(false),NOR,CONTEXT(IS_BASE))") instanceof TypedLogic);
+  }
+
+  @Test
+  public void testDependencies() {
+    assertEquals(0, compile("VALUE(1)").getDependencies());
+    assertEquals(ITypedExpression.DEPENDS_ON_ROUND, compile("CONTEXT(ROUND)").getDependencies());
+    assertEquals(ITypedExpression.DEPENDS_ON_ELEMENT, compile("CONTEXT(IS_DEFENDER)").getDependencies());
+    assertEquals(ITypedExpression.DEPENDS_ON_QUANTITIES, compile("QUANTITY(ANY_PLAYER,VIP,null)").getDependencies());
+    assertEquals(ITypedExpression.DEPENDS_ON_QUANTITIES, compile("PRESENT(VIP)").getDependencies());
+    assertEquals(ITypedExpression.DEPENDS_ON_FLAGS, compile("FLAG(ANY_PLAYER,VALUE(\"ORN\"))").getDependencies());
+    assertEquals(ITypedExpression.USES_RANDOM, compile("RND(1,2)").getDependencies());
+    assertEquals(ITypedExpression.MAY_FAIL, compile("FAIL(VALUE(1))").getDependencies());
+    assertEquals(ITypedExpression.DEPENDS_ON_FLAGS | ITypedExpression.DEPENDS_ON_ROUND,
+        compile("FLAG(THIS_PLAYER,CONTEXT(ROUND))").getDependencies());
+    assertEquals(
+        ITypedExpression.DEPENDS_ON_ROUND | ITypedExpression.DEPENDS_ON_ELEMENT | ITypedExpression.USES_RANDOM,
+        compile("IF(CONTEXT(IS_BASE),ARITHMETIC(CONTEXT(ROUND),ADD,RND(1,6)),VALUE(0))").getDependencies());
+    //the untaken result of a constant IF doesnt count
+    assertEquals(ITypedExpression.DEPENDS_ON_ROUND, compile("IF(VALUE(true),CONTEXT(ROUND),RND(1,6))")
+        .getDependencies());
+  }
+
+  @Test
+  public void testXFactorDependencies() {
+    CompiledXFactor xf = new CompiledXFactor();
+    assertEquals(0, xf.getDependencies());
+    ITypedExpression trigger = compile("CONTEXT(IS_NOT_BASE)");
+    xf.setTrigger(trigger);
+    xf.setXfDefense(compile("VALUE(1)"));
+    int expected = trigger.getDependencies(); //nb: the constant adds nothing
+    assertEquals(0, expected & ~ITypedExpression.DEPENDS_ON_ELEMENT);
+    assertEquals(expected, xf.getDependencies());
+    xf.setXfOffense(compile("ARITHMETIC(CONTEXT(OFFENSE),ADD,CONTEXT(ROUND))"));
+    expected |= ITypedExpression.DEPENDS_ON_ELEMENT | ITypedExpression.DEPENDS_ON_ROUND;
+    assertEquals(expected, xf.getDependencies());
+    xf.setXfAttacks(compile("IF(FLAG(THIS_PLAYER,VALUE(\"ORN\")),VALUE(2),VALUE(1))"));
+    assertEquals(expected | ITypedExpression.DEPENDS_ON_FLAGS, xf.getDependencies());
+    xf.setXfAttacks(null);
+    xf.setXfRemove(compile("COMPARISON(QUANTITY(OPPOSING_PLAYERS,VIP,null),EQUAL,VALUE(0))"));
+    expected |= ITypedExpression.DEPENDS_ON_QUANTITIES;
+    assertEquals(expected, xf.getDependencies());
+    xf.setXfPd(compile("RND(0,10)"));
+    assertEquals(expected | ITypedExpression.USES_RANDOM, xf.getDependencies());
+    xf.setXfPd(null);
+    assertEquals(expected, xf.getDependencies());
+    xf.setXfPd(_parser.getExpression("VALUE(1)")); //not compiled, so could be anything
+    assertEquals(ITypedExpression.ALL_DEPENDENCIES, xf.getDependencies());
+  }
+
+  @Test
+  public void testSameObjectComparison() {
+    //BeanComparator considers the same object to be equal even if it is NaN
+    Value nan = new Value(Double.valueOf(Double.NaN));
+    IExpression source = new Comparison(nan, Comparison.EQUAL, nan);
+    assertEquals(Boolean.TRUE, source.evaluate(_context));
+    assertTrue(_compiler.compile(source).evalBoolean(_context));
+  }
+
+  @Test
+  public void testExpressions() {
+    for(String xfel : EXPRESSIONS) {
+      assertSameResults(xfel);
+    }
+  }
+
+  @Test
+  public void testDefaultXFactors() {
+    XFactorFileReader reader = new XFactorFileReader(new FileSystemResource("src/main/config/defaultXFactors.xml"));
+    List<Map<String, Object>> xFactors = reader.read();
+    assertFalse(xFactors.isEmpty());
+    int count = 0;
+    for(Map<String, Object> xFactor : xFactors) {
+      for(String key : new String[] { "trigger", "attacks", "offense", "defense", "pd", "remove" }) {
+        String xfel = (String) xFactor.get(key);
+        if(_parser.getExpression(xfel) != null) {
+          assertSameResults(xfel);
+          count++;
+        }
+      }
+    }
+    assertTrue(count > xFactors.size());
+  }
+
+  private ITypedExpression compile(String xfel) {
+    return _compiler.compile(_parser.getExpression(xfel));
+  }
+
+  private void assertConstant(String xfel, Object value) {
+    ITypedExpression compiled = compile(xfel);
+    assertTrue(xfel, compiled instanceof ConstantExpression);
+    assertEquals(xfel, value, compiled.evaluate(_context));
+    assertEquals(xfel, _parser.getExpression(xfel).evaluate(_context), compiled.evaluate(_context));
+  }
+
+  private void assertAlias(String xfel, Class<?> target) {
+    ITypedExpression compiled = compile(xfel);
+    assertTrue(xfel, compiled instanceof AliasExpression);
+    assertEquals(_parser.getExpression(xfel).toString(), compiled.toString());
+    assertSame(xfel, target, ((AliasExpression) compiled).getTarget().getClass());
+  }
+
+  /**
+   * Evaluates the parsed expression and its compiled form for each element in
+   * each round and checks that they give the same results, draw the same
+   * random numbers and fail in the same way
+   * @param xfel
+   */
+  private void assertSameResults(String xfel) {
+    IExpression interpreted = _parser.getExpression(xfel);
+    ITypedExpression compiled = compile(xfel);
+    assertEquals(interpreted.toString(), compiled.toString());
+    long seed = 0;
+    for(int round = 1; round <= 6; round++) {
+      _context.setRound(round);
+      for(String player : PLAYERS) {
+        _context.setThisPlayer(player);
+        for(FleetElement element : _context.getFleet(player)) {
+          _context.setFleetElement(element);
+          String where = xfel + " for " + element + " of " + player + " in round " + round;
+          seed++;
+
+          Object expected = evaluate(interpreted, seed, 0);
+          assertEquals(where, expected, evaluate(compiled, seed, 0));
+          assertEquals(where, evaluate(interpreted, seed, 1), evaluate(compiled, seed, 1));
+          assertEquals(where, evaluate(interpreted, seed, 2), evaluate(compiled, seed, 2));
+          assertEquals(where, evaluate(interpreted, seed, 3), evaluate(compiled, seed, 3));
+        }
+      }
+    }
+  }
+
+  /**
+   * Evaluates the expression using a Random with the specified seed, as an
+   * object (0), a double (1), a boolean (2) or an int (3). Returns a list of
+   * the result (or the message of the exception thrown) and the next random
+   * number.
+   * @param expression
+   * @param seed
+   * @param as
+   * @return results
+   */
+  private List<Object> evaluate(IExpression expression, long seed, int as) {
+    Random random = new Random(seed);
+    _context.setRandom(random);
+    List<Object> results = new ArrayList<>();
+    try {
+      switch (as){
+        case 0:
+          results.add(expression.evaluate(_context));
+          break;
+        case 1:
+          results.add(Arithmetic.evalDouble(expression, _context));
+          break;
+        case 2:
+          results.add(Logic.evalBool(expression, _context));
+          break;
+        default:
+          results.add(expression instanceof ITypedExpression ? ((ITypedExpression) expression).evalInt(_context)
+              : (int) Math.floor(Arithmetic.evalDouble(expression, _context)));
+      }
+    } catch(RuntimeException e) {
+      results.add(e.getClass().getName() + ":" + e.getMessage() + " " + (failure(e) ? "failed" : ""));
+    }
+    results.add(random.nextInt());
+    return results;
+  }
+
+  private boolean failure(Throwable t) {
+    for(; t != null; t = t.getCause()) {
+      if(t instanceof ExpressionFailure) {
+        return true;
+      }
+    }
+    return false;
+  }
+}